@@ -3,59 +3,115 @@ package com.pjinkim.arcore_data_logger;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Color;
 import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.YuvImage;
 import android.media.Image;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.google.ar.core.Camera;
+import com.google.ar.core.CameraIntrinsics;
+import com.google.ar.core.Config;
 import com.google.ar.core.Frame;
+import com.google.ar.core.Plane;
 import com.google.ar.core.PointCloud;
 import com.google.ar.core.Pose;
+import com.google.ar.core.Session;
 import com.google.ar.core.TrackingFailureReason;
 import com.google.ar.core.TrackingState;
 import com.google.ar.core.exceptions.NotYetAvailableException;
 import com.google.ar.sceneform.FrameTime;
-import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.ux.ArFragment;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.security.KeyException;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 public class ARCoreSession {
 
     // properties
     private static final String LOG_TAG = ARCoreSession.class.getName();
     private static final long mulSecondToNanoSecond = 1000000000;
+    private static final long POINT_CLOUD_HEAP_BUDGET = 32 * AccumulatedPointCloud.SEGMENT_BYTES;
+    private static final int COMPRESS_THREADS = 2;
+    private static final int IMAGE_ENCODE_THREADS = 2;
+    private static final int IMAGE_BUFFERS = 4;
+    private static final int OCTREE_DEFLATE_LEVEL = 9;
+    private static final long FLIGHT_RECORDER_POST_TRIGGER = 2 * mulSecondToNanoSecond;
+    private static final int FLIGHT_RECORDER_FRAME_RATE = 60;
+    private static final int FLIGHT_RECORDER_POINTS_PER_FRAME = 256;
+    private static final long MEMORY_RECOVERY_MILLIS = 30000;
     private long previousTimestamp = 0;
 
     private MainActivity mContext;
     private ArFragment mArFragment;
     private PointCloudNode mPointCloudNode;
+    private TrajectoryNode mTrajectoryNode;
+    private boolean mWasRecording = false;
     private AccumulatedPointCloud mAccumulatedPointCloud;
-    private WorldToScreenTranslator mWorldToScreenTranslator;
+    private final float[] mViewMatrix = new float[16];
+    private final float[] mProjectionMatrix = new float[16];
     private ARCoreResultStreamer mFileStreamer = null;
-
-    private AtomicBoolean mIsRecording = new AtomicBoolean(false);
-    private AtomicBoolean mIsWritingFile = new AtomicBoolean(false);
-
-    private int mNumberOfFeatures = 0;
-    private TrackingState mTrackingState;
-    private TrackingFailureReason mTrackingFailureReason;
-    private double mUpdateRate = 0;
+    private SessionManifest mSessionManifest = null;
+    private FrameRecorder mFrameRecorder = null;
+    private PointCloudCheckpoint mPointCloudCheckpoint = null;
+    private final HashMap<Plane, Integer> mPlaneIds = new HashMap<>();
+    private boolean mIsPlaneFindingConfigured = false;
+    private String mLiveStreamHost = null;
+    private int mLiveStreamPort = 0;
+    private int mCompressionLevel = 0;
+    private String mImageFormat = null;
+    private int mImageQuality = 90;
+    private ImageExportPool mImageExportPool = null;
+    private float mPointCloudLeafSize = 0;
+    private LiveStreamSink mLiveStreamSink = null;
+    private FlightRecorder mFlightRecorder = null;
+    private String mFlightRecorderFolder = null;
+    private ExecutorService mFlightRecorderExecutor = null;
+    private AtomicBoolean mIsFlightRecorderTriggered = new AtomicBoolean(false);
+
+    // output folder and open writers of the next session, prepared in the background while idle
+    private final ExecutorService mPrepareExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicReference<PreparedSession> mPreparedSession = new AtomicReference<>(null);
+    private final AtomicBoolean mIsPreparing = new AtomicBoolean(false);
+    private volatile Future<?> mPreparation = null;
+    private long mStartRequestNanos = 0;
+
+    // the point cloud export and the final flush of a stopped session, off the UI thread
+    private final ExecutorService mStopExecutor = Executors.newSingleThreadExecutor();
+
+    // recording state shared by the UI, the stopping thread and the frame thread without locks
+    private final SessionLifecycle mLifecycle = new SessionLifecycle();
+
+    private final SessionTelemetry mTelemetry = new SessionTelemetry();
+    private long mNumberOfRecordedFrames = 0;
+
+    // limits lowered under memory pressure, kept across sessions until the pressure is over
+    private final MemoryPressurePolicy mMemoryPressurePolicy = new MemoryPressurePolicy(IMAGE_BUFFERS, POINT_CLOUD_HEAP_BUDGET, MEMORY_RECOVERY_MILLIS);
+    private int mColorizationInterval = 1;
 
 
     // constructor
@@ -70,72 +126,542 @@ public class ARCoreSession {
         // render 3D point cloud on the screen
         mPointCloudNode = new PointCloudNode(mContext);
         mArFragment.getArSceneView().getScene().addChild(mPointCloudNode);
-        mAccumulatedPointCloud = new AccumulatedPointCloud();
-        mWorldToScreenTranslator = new WorldToScreenTranslator();
+        mTrajectoryNode = new TrajectoryNode(mContext);
+        mArFragment.getArSceneView().getScene().addChild(mTrajectoryNode);
+        mAccumulatedPointCloud = new AccumulatedPointCloud(POINT_CLOUD_HEAP_BUDGET);
+    }
+
+
+    // definition of 'PreparedSession' class
+    private static class PreparedSession {
+        final String mOutputFolder;
+        final ARCoreResultStreamer mFileStreamer;
+
+        PreparedSession(final String outputFolder, final ARCoreResultStreamer fileStreamer) {
+            mOutputFolder = outputFolder;
+            mFileStreamer = fileStreamer;
+        }
     }
 
 
     // methods
-    public void startSession(String streamFolder) {
+    public void prepareNextSession() {
+        if ((mFlightRecorder != null) || mPrepareExecutor.isShutdown() || (mPreparedSession.get() != null)
+                || !mIsPreparing.compareAndSet(false, true)) {
+            return;
+        }
+
+        // create the folder, open the files and write their headers off the UI thread
+        try {
+            mPreparation = mPrepareExecutor.submit(() -> {
+                String outputFolder = null;
+                try {
+                    OutputDirectoryManager folder = new OutputDirectoryManager("", "R_pjinkim_ARCore");
+                    outputFolder = folder.getOutputDirectory();
+                    PreparedSession prepared = new PreparedSession(outputFolder, new ARCoreResultStreamer(mContext, outputFolder));
+
+                    // only one prepared session is kept, a second one is removed again
+                    if (!mPreparedSession.compareAndSet(null, prepared)) {
+                        discard(prepared);
+                    }
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "prepareNextSession: Cannot prepare the next session.");
+                    e.printStackTrace();
+
+                    // no folder is left behind by a preparation that failed half way
+                    if (outputFolder != null) {
+                        deleteFolder(outputFolder);
+                    }
+                } finally {
+                    mIsPreparing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+
+            // the activity is being torn down
+            mIsPreparing.set(false);
+        }
+    }
+
+    public void discardPreparedSession() {
+
+        // close the unused writers and remove their header-only files and folder
+        if (mPrepareExecutor.isShutdown()) {
+            return;
+        }
+        mPrepareExecutor.execute(() -> {
+            PreparedSession prepared = mPreparedSession.getAndSet(null);
+            if (prepared != null) {
+                discard(prepared);
+            }
+        });
+    }
+
+    private static void discard(PreparedSession prepared) {
+        try {
+            prepared.mFileStreamer.endFiles();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        deleteFolder(prepared.mOutputFolder);
+    }
+
+    private static void deleteFolder(String outputFolder) {
+        File folder = new File(outputFolder);
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    public void shutdown() {
+
+        // called once by the activity's teardown, after which the queued work still runs:
+        // a stopped session being finished and a prepared session being discarded
+        mPrepareExecutor.shutdown();
+        mStopExecutor.shutdown();
+    }
+
+    public boolean startPreparedSession(long startRequestNanos) {
+
+        // swap in the ready writers, or let the caller fall back to 'startSession'
+        if (mFlightRecorder != null) {
+            return false;
+        }
+        if (!mLifecycle.beginStart()) {
+            Log.w(LOG_TAG, "startPreparedSession: A session is already recording.");
+            return true;
+        }
+
+        // a preparation still in flight is waited for, rather than opening a second folder next to it
+        // and leaving it to be picked up by a later session under an old name
+        Future<?> preparation = mPreparation;
+        if (preparation != null) {
+            try {
+                preparation.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "startPreparedSession: Preparation failed: " + e.getCause());
+            }
+        }
+        PreparedSession prepared = mPreparedSession.getAndSet(null);
+        if (prepared == null) {
+            mLifecycle.abortStart();
+            return false;
+        }
+        beginSession(prepared.mOutputFolder, prepared.mFileStreamer, startRequestNanos);
+        return true;
+    }
+
+    public void startSession(String streamFolder, long startRequestNanos) {
+
+        // one recording at a time, set up before the frame thread can see it
+        if (!mLifecycle.beginStart()) {
+            Log.w(LOG_TAG, "startSession: A session is already recording.");
+            return;
+        }
+
+        // in flight recorder mode nothing is written until a trigger, and then on a thread of this session
+        if (mFlightRecorder != null) {
+            mFlightRecorder.reset();
+            mFlightRecorderFolder = streamFolder;
+            mFlightRecorderExecutor = Executors.newSingleThreadExecutor();
+            mIsFlightRecorderTriggered.set(false);
+            mLifecycle.endStart();
+            return;
+        }
 
         // initialize text file stream
+        ARCoreResultStreamer fileStreamer = null;
         if (streamFolder != null) {
             try {
-                mFileStreamer = new ARCoreResultStreamer(mContext, streamFolder);
-                mIsWritingFile.set(true);
+                fileStreamer = new ARCoreResultStreamer(mContext, streamFolder);
             } catch (IOException e) {
                 mContext.showToast("Cannot create file for ARCore tracking results.");
                 e.printStackTrace();
             }
         }
-        mIsRecording.set(true);
+        beginSession(streamFolder, fileStreamer, startRequestNanos);
     }
 
+    private void beginSession(String streamFolder, ARCoreResultStreamer fileStreamer, long startRequestNanos) {
 
-    public void stopSession() {
+        // spill the accumulated point cloud beyond its heap budget into the session folder
+        mAccumulatedPointCloud.setSpillFolder(streamFolder);
 
-        // save ARCore 3D point cloud only for visualization
-        ArrayList<Vector3> pointsPosition = mAccumulatedPointCloud.getPoints();
-        ArrayList<Vector3> pointsColor = mAccumulatedPointCloud.getColors();
-        for (int i = 0; i < pointsPosition.size(); i++) {
-            Vector3 currentPointPosition = pointsPosition.get(i);
-            Vector3 currentPointColor = pointsColor.get(i);
-            float pointX = currentPointPosition.x;
-            float pointY = currentPointPosition.y;
-            float pointZ = currentPointPosition.z;
-            float r = currentPointColor.x;
-            float g = currentPointColor.y;
-            float b = currentPointColor.z;
+        // checkpoint the changes to the accumulated point cloud, starting with the points it already holds
+        mPointCloudCheckpoint = null;
+        if (fileStreamer != null) {
             try {
-                mFileStreamer.addARCorePointRecord(pointX, pointY, pointZ, r, g, b);
-            } catch (IOException | KeyException e) {
-                Log.d(LOG_TAG, "stopSession: Something is wrong.");
+                mPointCloudCheckpoint = new PointCloudCheckpoint(new File(streamFolder, PointCloudCheckpoint.FILE_NAME));
+                mAccumulatedPointCloud.setTrackingChanges(true);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "beginSession: Point cloud checkpoints are not written: " + e.getMessage());
+            }
+        }
+
+        // planes get session-local IDs in the order they are first seen
+        mPlaneIds.clear();
+
+        // the manifest is first saved with the first frame, without a folder nothing is written
+        mFileStreamer = fileStreamer;
+        mSessionManifest = null;
+        mFrameRecorder = null;
+        if (fileStreamer != null) {
+            if (!ChannelFileWriter.hasFreeSpace(new File(streamFolder), FileStreamer.LOW_SPACE_THRESHOLD)) {
+                mContext.showToast("Storage is almost full, recording may stop early.");
+            }
+            mSessionManifest = new SessionManifest(new File(streamFolder));
+            mSessionManifest.start(System.currentTimeMillis());
+
+            // the encoders and the keyframe selection of this session, the first tracked frame is a keyframe
+            mFrameRecorder = new FrameRecorder(fileStreamer, mSessionManifest, mAccumulatedPointCloud,
+                    enumNames(TrackingState.values()), enumNames(TrackingFailureReason.values()));
+        }
+
+        // optionally save the camera image of every keyframe, encoded off the AR thread
+        mImageExportPool = null;
+        if ((fileStreamer != null) && (mImageFormat != null)) {
+            try {
+                mImageExportPool = new ImageExportPool(new File(streamFolder, "keyframe_images"), CameraImageEncoder.forFormat(mImageFormat),
+                        mImageQuality, IMAGE_ENCODE_THREADS, IMAGE_BUFFERS);
+            } catch (IOException e) {
+                mContext.showToast("Cannot create folder for keyframe images.");
                 e.printStackTrace();
             }
         }
+        mStartRequestNanos = startRequestNanos;
+        mNumberOfRecordedFrames = 0;
 
-        // close text file and reset variables
-        if (mIsWritingFile.get()) {
+        // a session started under memory pressure begins with the lowered limits
+        if (mMemoryPressurePolicy.getStage() != MemoryPressurePolicy.NORMAL) {
+            applyMemoryActions("SESSION_START", MemoryPressurePolicy.ACTION_IMAGE_BUFFERS
+                    | MemoryPressurePolicy.ACTION_POINT_CLOUD_BUDGET | MemoryPressurePolicy.ACTION_COLORIZATION);
+        }
+
+        // optionally stream poses and point clouds to a workstation while recording
+        if (mLiveStreamHost != null) {
+            mLiveStreamSink = new LiveStreamSink(mLiveStreamHost, mLiveStreamPort);
+        }
+        mLifecycle.endStart();
+    }
+
+
+    public void stopSession(final Runnable onStopped) {
+
+        // stop admitting frames and wait for the one being recorded, then this thread owns the writers
+        if (!mLifecycle.beginStop()) {
+            Log.w(LOG_TAG, "stopSession: No session is recording.");
+            onStopped.run();
+            return;
+        }
+
+        // write the window of a trigger that is still open, the thread ends once the queued windows are written
+        if (mFlightRecorder != null) {
+            FlightRecorder.Snapshot snapshot = mFlightRecorder.takeSnapshot();
+            if (snapshot != null) {
+                writeFlightRecord(snapshot);
+            }
+            mFlightRecorderExecutor.shutdown();
+            mFlightRecorderExecutor = null;
+            mLifecycle.endStop();
+            onStopped.run();
+            return;
+        }
+
+        // the outlier filter and the final flush take seconds on a large map, so the writers are
+        // handed to the stop thread, and no session can start until it is done with them
+        mStopExecutor.execute(() -> {
             try {
-                mFileStreamer.endFiles();
+                finishSession();
+            } finally {
+                onStopped.run();
+            }
+        });
+    }
+
+
+    private void finishSession() {
+        try {
+
+            // close text files and reset variables
+            if (mFileStreamer != null) {
+                endFiles();
+            }
+            mFileStreamer = null;
+            mSessionManifest = null;
+            mFrameRecorder = null;
+
+            // stop the live stream and report what a slow receiver missed
+            if (mLiveStreamSink != null) {
+                mLiveStreamSink.close();
+                Log.d(LOG_TAG, String.format(Locale.US, "finishSession: live stream sent %d bytes, dropped %d poses, coalesced %d point clouds",
+                        mLiveStreamSink.getBytesSent(), mLiveStreamSink.getDroppedPoses(), mLiveStreamSink.getCoalescedPointBatches()));
+                mLiveStreamSink = null;
+            }
+        } finally {
+
+            // a failed export must not keep the next session from starting
+            mLifecycle.endStop();
+        }
+    }
+
+
+    private void endFiles() {
+
+        // remove statistical outliers from the accumulated 3D point cloud
+        boolean[] inliers = removeOutliers();
+
+        // save ARCore 3D point cloud only for visualization
+        int numberOfSavedPoints = 0;
+        try {
+            numberOfSavedPoints = mFrameRecorder.exportPointCloud(inliers);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "endFiles: Cannot save the point cloud: " + e.getMessage());
+        }
+
+        // the same points octree-coded, a fraction of the size of the text file
+        if (mPointCloudLeafSize > 0) {
+            saveOctreePointCloud(inliers);
+        }
+
+        // let the image encoders finish and list the images they wrote, a slow or failed export must not keep the session files open
+        if (mImageExportPool != null) {
+            try {
+                mImageExportPool.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "endFiles: Keyframe images are incomplete: " + e.getMessage());
+            }
+            mSessionManifest.addRecords("ARCore_keyframe_images", mImageExportPool.getNumberOfWritten());
+            Log.i(LOG_TAG, String.format(Locale.US, "endFiles: %d keyframe images written, %d dropped, %d failed, %.1f ms per image",
+                    mImageExportPool.getNumberOfWritten(), mImageExportPool.getNumberOfDropped(),
+                    mImageExportPool.getNumberOfFailed(), mImageExportPool.getMeanEncodeMillis()));
+            mImageExportPool = null;
+        }
+
+        // flush and close the files, everything still queued is written first
+        boolean isSaved = false;
+        try {
+
+            // index the tracking segment that was still open
+            mFrameRecorder.finish();
+            mFileStreamer.endFiles();
+
+            // finalize the session manifest with exact file sizes and checksums
+            mFileStreamer.reportFileStatistics(mSessionManifest);
+            mSessionManifest.finish(System.currentTimeMillis(), numberOfSavedPoints);
+            mSessionManifest.save(System.currentTimeMillis());
+
+            // size of the raw point observations per minute of recording
+            PointObservationLog pointObservationLog = mFrameRecorder.getPointObservationLog();
+            Log.i(LOG_TAG, String.format(Locale.US, "endFiles: %d point observations in %.2f MB, %.2f MB per minute",
+                    pointObservationLog.getNumberOfObservations(), pointObservationLog.getNumberOfBytes() / 1e6,
+                    pointObservationLog.getBytesPerMinute() / 1e6));
+            isSaved = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // the checkpoints are only kept if the final point cloud could not be saved
+        if (mPointCloudCheckpoint != null) {
+            try {
+                mPointCloudCheckpoint.close();
+                Log.i(LOG_TAG, String.format(Locale.US, "endFiles: %d point cloud checkpoints of %d points in %.2f MB, %d skipped, %.2f ms copy each",
+                        mPointCloudCheckpoint.getNumberOfCheckpoints(), mPointCloudCheckpoint.getNumberOfPoints(),
+                        mPointCloudCheckpoint.getBytesWritten() / 1e6, mPointCloudCheckpoint.getNumberOfSkipped(),
+                        mPointCloudCheckpoint.getMeanCopyMillis()));
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            if (isSaved) {
+                mPointCloudCheckpoint.getFile().delete();
+            }
+            mAccumulatedPointCloud.setTrackingChanges(false);
+            mPointCloudCheckpoint = null;
+        }
+
+        // the spilled segments are working memory, not part of the recording
+        int numberOfDeleted = mAccumulatedPointCloud.deleteSpillFiles();
+        if (numberOfDeleted > 0) {
+            Log.i(LOG_TAG, String.format(Locale.US, "endFiles: %d spilled point cloud segments deleted", numberOfDeleted));
         }
-        mIsWritingFile.set(false);
-        mIsRecording.set(false);
     }
 
 
-    private void onUpdateFrame(FrameTime frameTime) {
+    private void saveOctreePointCloud(final boolean[] inliers) {
+        String fileName = "ARCore_point_cloud" + OctreePointCloudCodec.FILE_SUFFIX;
+        File file = new File(mFileStreamer.getOutputFolder(), fileName);
+        OctreePointCloudCodec codec = new OctreePointCloudCodec(mPointCloudLeafSize, new DeflateBlockCodec(OCTREE_DEFLATE_LEVEL));
+        CRC32 checksum = new CRC32();
+        long startTime = System.nanoTime();
+        try (OutputStream outputStream = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16), checksum)) {
+
+            // the inliers are read from the accumulated point cloud in place, without another copy of the points
+            long numberOfBytes = codec.encode(mAccumulatedPointCloud, inliers, outputStream);
+            int numberOfPoints = codec.getNumberOfPoints();
+            mSessionManifest.setFileStatistics(fileName, numberOfBytes, checksum.getValue());
+            Log.i(LOG_TAG, String.format(Locale.US, "saveOctreePointCloud: %d points in %.1f KB (%.2f bytes per point), %d subtrees in %.1f ms",
+                    numberOfPoints, numberOfBytes / 1e3, (double) numberOfBytes / Math.max(1, numberOfPoints),
+                    codec.getNumberOfSubtrees(), (System.nanoTime() - startTime) / 1e6));
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(LOG_TAG, "saveOctreePointCloud: Cannot save " + fileName + ": " + e.getMessage());
+            file.delete();
+        }
+    }
+
+
+    private boolean[] removeOutliers() {
+
+        // statistical outlier removal with k nearest neighbors, on a spatial index over the one copy of the positions
+        long startTime = System.nanoTime();
+        int numberOfPoints = mAccumulatedPointCloud.getNumberOfFeatures();
+        boolean[] inliers = mFrameRecorder.filterOutliers();
+        long filterTime = System.nanoTime();
+
+        int numberOfInliers = 0;
+        for (boolean inlier : inliers) {
+            if (inlier) {
+                numberOfInliers++;
+            }
+        }
+        Log.i(LOG_TAG, String.format(Locale.US, "removeOutliers: %d of %d points kept in %.1f ms",
+                numberOfInliers, numberOfPoints, (filterTime - startTime) / 1e6));
+        return inliers;
+    }
+
+
+    public void onTrimMemory(int level) {
+
+        // take the writers over from the frame thread for a moment to act on the new stage
+        int actions = mMemoryPressurePolicy.onTrimMemory(level, SystemClock.elapsedRealtime());
+        Log.w(LOG_TAG, "onTrimMemory: " + MemoryPressurePolicy.levelName(level) + ", stage "
+                + MemoryPressurePolicy.stageName(mMemoryPressurePolicy.getStage()));
+        if (!mLifecycle.beginMaintenance()) {
+            return;
+        }
+        try {
+            applyMemoryActions(MemoryPressurePolicy.levelName(level), actions);
+        } finally {
+            mLifecycle.endMaintenance();
+        }
+    }
+
+
+    private void applyMemoryActions(String trigger, int actions) {
+
+        // called by whichever thread owns the writers: the frame thread, or a maintaining or starting thread
+        StringBuilder stringBuilder = new StringBuilder();
+        try {
+            if ((actions & MemoryPressurePolicy.ACTION_IMAGE_BUFFERS) != 0) {
+                int bufferLimit = mMemoryPressurePolicy.getImageBufferLimit();
+                if (mImageExportPool != null) {
+                    mImageExportPool.setBufferLimit(bufferLimit);
+                }
+                stringBuilder.append(" image_buffers=").append(bufferLimit);
+            }
+            if ((actions & MemoryPressurePolicy.ACTION_POINT_CLOUD_BUDGET) != 0) {
+                long heapBudget = mMemoryPressurePolicy.getPointCloudHeapBudget();
+                int numberOfSpilled = mAccumulatedPointCloud.setHeapBudget(heapBudget);
+                stringBuilder.append(" point_cloud_heap_mb=").append(heapBudget / (1024 * 1024));
+                stringBuilder.append(" spilled_segments=").append(numberOfSpilled);
+            }
+            if ((actions & MemoryPressurePolicy.ACTION_COLORIZATION) != 0) {
+                mColorizationInterval = mMemoryPressurePolicy.getColorizationInterval();
+                stringBuilder.append(" colorize_every=").append(mColorizationInterval);
+            }
+            boolean isSynced = ((actions & MemoryPressurePolicy.ACTION_SYNC) != 0);
+            if ((actions & MemoryPressurePolicy.ACTION_FLUSH) != 0) {
+                stringBuilder.append(isSynced ? " flush sync" : " flush");
+            }
+
+            // the event is recorded before the flush, so the I/O thread puts it on the storage device with the
+            // records before it, while the calling thread, often the main thread, only hands the buffers over
+            if (mFileStreamer != null) {
+                mFileStreamer.addARCoreMemoryEventRecord(SystemClock.elapsedRealtimeNanos(), trigger,
+                        MemoryPressurePolicy.stageName(mMemoryPressurePolicy.getStage()), stringBuilder.toString());
+                mSessionManifest.addRecords("ARCore_memory_events", 1);
+                if ((actions & MemoryPressurePolicy.ACTION_FLUSH) != 0) {
+                    mFileStreamer.flushFiles(isSynced);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "applyMemoryActions: Cannot apply" + stringBuilder + ": " + e.getMessage());
+            return;
+        }
+        Log.i(LOG_TAG, "applyMemoryActions: " + trigger + stringBuilder);
+    }
 
-        // set some variables
-        boolean isFileSaved = (mIsRecording.get() && mIsWritingFile.get());
+
+    public void triggerFlightRecorder() {
+        mIsFlightRecorderTriggered.set(true);
+    }
+
+
+    private void writeFlightRecord(final FlightRecorder.Snapshot snapshot) {
+        if (mFlightRecorderFolder == null) {
+            Log.e(LOG_TAG, "writeFlightRecord: No output folder.");
+            return;
+        }
+
+        // write the window in the session file formats away from the AR thread
+        final File folder = new File(mFlightRecorderFolder, String.format(Locale.US, "flight_%02d_%s",
+                mFlightRecorder.getNumberOfSnapshots(), snapshot.getCause()));
+        mFlightRecorderExecutor.execute(() -> {
+            if (!folder.mkdirs()) {
+                Log.e(LOG_TAG, "writeFlightRecord: Cannot create " + folder);
+                return;
+            }
+            try {
+                FileStreamer fileStreamer = new FileStreamer(mContext, folder.getAbsolutePath());
+                fileStreamer.addFile("ARCore_sensor_pose", "ARCore_sensor_pose.txt");
+                fileStreamer.addFile("ARCore_tracking_state", "ARCore_tracking_state.txt");
+                fileStreamer.addFile("ARCore_point_observations", "ARCore_point_observations.txt");
+                Writer trackingWriter = fileStreamer.getFileWriter("ARCore_tracking_state");
+                Writer observationWriter = fileStreamer.getFileWriter("ARCore_point_observations");
+
+                float[] pose = new float[7];
+                int pointIndex = 0;
+                for (int i = 0; i < snapshot.getNumberOfFrames(); i++) {
+                    long timestamp = snapshot.getTimestamp(i);
+
+                    // 1) timestamp and 6-DoF pose, as in ARCore_sensor_pose.txt
+                    for (int j = 0; j < 7; j++) {
+                        pose[j] = snapshot.getPose(i, j);
+                    }
+                    fileStreamer.addRecord(timestamp, "ARCore_sensor_pose", 7, pose);
+
+                    // 2) timestamp, tracking state and tracking failure reason
+                    trackingWriter.write(timestamp + " " + TrackingState.values()[snapshot.getTrackingState(i)].name() + " "
+                            + TrackingFailureReason.values()[snapshot.getFailureReason(i)].name() + " \n");
+
+                    // 3) timestamp, point ID, 3D position and confidence of each observation
+                    for (int k = 0; k < snapshot.getPointCount(i); k++, pointIndex++) {
+                        observationWriter.write(String.format(Locale.US, "%d %d %.6f %.6f %.6f %.6f \n", timestamp,
+                                snapshot.getPointId(pointIndex), snapshot.getPointValue(pointIndex, 0), snapshot.getPointValue(pointIndex, 1),
+                                snapshot.getPointValue(pointIndex, 2), snapshot.getPointValue(pointIndex, 3)));
+                    }
+                }
+                fileStreamer.endFiles();
+                mContext.showToast("Flight record saved: " + folder.getName());
+            } catch (IOException | KeyException e) {
+                Log.e(LOG_TAG, "writeFlightRecord: Cannot write " + folder);
+                e.printStackTrace();
+            }
+        });
+    }
+
+
+    private void onUpdateFrame(FrameTime frameTime) {
 
         // obtain current ARCore information
         mArFragment.onUpdate(frameTime);
         Frame frame = mArFragment.getArSceneView().getArFrame();
         Camera camera = frame.getCamera();
+        configurePlaneFinding();
 
         // update ARCore measurements
         long timestamp = frame.getTimestamp();
@@ -161,52 +687,227 @@ public class ARCoreSession {
         FloatBuffer bufferPoint3D = pointCloud.getPoints();
         mPointCloudNode.visualize(pointCloud);
         int numberOfFeatures = mAccumulatedPointCloud.getNumberOfFeatures();
-        pointCloud.release();
+
+        // records of this frame are written inside the lifecycle bracket, which 'stopSession' drains
+        boolean isRecording = mLifecycle.enterRecord();
+        boolean isFileSaved = (isRecording && (mFileStreamer != null));
+
+        // draw the path recorded in this session, starting afresh with every session
+        if (isRecording && !mWasRecording) {
+            mTrajectoryNode.clear();
+        }
+        mWasRecording = isRecording;
+        if (isRecording && (trackingState == TrackingState.TRACKING)) {
+            mTrajectoryNode.visualize(tx, ty, tz);
+        }
 
         // display and save ARCore information
         try {
-            mNumberOfFeatures = numberOfFeatures;
-            mTrackingState = trackingState;
-            mTrackingFailureReason = trackingFailureReason;
-            mUpdateRate = updateRate;
+            publishTelemetry(timestamp, numberOfFeatures, trackingState, trackingFailureReason, updateRate, isFileSaved);
+            if (isRecording && (mFlightRecorder != null)) {
+
+                // keep the frame in memory and write a window only once a trigger has passed
+                mFlightRecorder.record(timestamp, qx, qy, qz, qw, tx, ty, tz,
+                        trackingState.ordinal(), trackingFailureReason.ordinal(), bufferPointID, bufferPoint3D);
+                if (mIsFlightRecorderTriggered.getAndSet(false)) {
+                    mFlightRecorder.trigger(timestamp, "button");
+                }
+                FlightRecorder.Snapshot snapshot = mFlightRecorder.takeSnapshotIfDue(timestamp);
+                if (snapshot != null) {
+                    writeFlightRecord(snapshot);
+                }
+            }
             if (isFileSaved) {
 
                 // 1) record ARCore 6-DoF sensor pose
-                mFileStreamer.addARCorePoseRecord(timestamp, qx, qy, qz, qw, tx, ty, tz);
-
-                // 2) record ARCore 3D point cloud only for visualization
-                Image imageFrame = frame.acquireCameraImage();
-                Bitmap imageBitmap = imageToBitmap(imageFrame);
-                imageFrame.close();
-                for (int i = 0; i < (bufferPoint3D.limit() / 4); i++) {
-
-                    // check each point's confidence level
-                    float pointConfidence = bufferPoint3D.get(i * 4 + 3);
-                    if (pointConfidence < 0.5) {
-                        continue;
+                mFrameRecorder.recordPose(timestamp, qx, qy, qz, qw, tx, ty, tz, trackingState.ordinal(), trackingFailureReason.ordinal());
+                if (mStartRequestNanos != 0) {
+
+                    // tap-to-first-record latency of this session
+                    long startLatencyMicros = (SystemClock.elapsedRealtimeNanos() - mStartRequestNanos) / 1000;
+                    mSessionManifest.setStartLatencyMicros(startLatencyMicros);
+                    Log.i(LOG_TAG, String.format(Locale.US, "onUpdateFrame: first record %.1f ms after the start request", startLatencyMicros / 1e3));
+                    mStartRequestNanos = 0;
+                }
+                if (mLiveStreamSink != null) {
+                    mLiveStreamSink.offerPose(timestamp, qx, qy, qz, qw, tx, ty, tz);
+                    mLiveStreamSink.offerPoints(timestamp, bufferPointID, bufferPoint3D);
+                }
+
+                // 2) record camera metadata, with tracking transitions and intrinsics only on change
+                recordCameraMetadata(frame, camera, timestamp, trackingState, trackingFailureReason);
+
+                // 3) record the raw point observations of this frame
+                mFrameRecorder.recordPointObservations(timestamp, bufferPointID, bufferPoint3D);
+
+                // 4) select keyframes from device motion and point covisibility
+                boolean isKeyframe = mFrameRecorder.recordKeyframe(trackingState == TrackingState.TRACKING,
+                        timestamp, qx, qy, qz, qw, tx, ty, tz, bufferPointID);
+
+                // 5) record ARCore 3D point cloud only for visualization (keyframes only, fewer under memory pressure)
+                Bitmap imageBitmap = null;
+                if (isKeyframe) {
+                    Image imageFrame = frame.acquireCameraImage();
+                    exportKeyframeImage(timestamp, imageFrame);
+                    if ((mFrameRecorder.getKeyframeId() % mColorizationInterval) == 0) {
+                        imageBitmap = imageToBitmap(imageFrame);
                     }
+                    imageFrame.close();
+                }
+                if (imageBitmap != null) {
+
+                    // append the visible points with the color of the pixel under each of them
+                    camera.getProjectionMatrix(mProjectionMatrix, 0, 0.1f, 100.0f);
+                    camera.getViewMatrix(mViewMatrix, 0);
+                    mFrameRecorder.colorizePoints(bufferPointID, bufferPoint3D, mViewMatrix, mProjectionMatrix,
+                            imageBitmap.getWidth(), imageBitmap.getHeight(), imageBitmap::getPixel);
+                }
+
+                // 6) record planes that changed by more than the tolerances
+                recordPlanes(frame, timestamp);
 
-                    // obtain point ID and XYZ world position
-                    int pointID = bufferPointID.get(i);
-                    float pointX = bufferPoint3D.get(i * 4);
-                    float pointY = bufferPoint3D.get(i * 4 + 1);
-                    float pointZ = bufferPoint3D.get(i * 4 + 2);
-
-                    // get each point RGB color information
-                    float[] worldPosition = new float[]{pointX, pointY, pointZ};
-                    Vector3 pointColor = getScreenPixel(worldPosition, imageBitmap);
-                    if (pointColor == null) {
-                        continue;
+                // 7) update the session manifest every few seconds, and restore the limits once memory pressure is over
+                long currentTimeMillis = System.currentTimeMillis();
+                if (mSessionManifest.isSaveDue(currentTimeMillis)) {
+                    int memoryActions = mMemoryPressurePolicy.update(SystemClock.elapsedRealtime());
+                    if (memoryActions != 0) {
+                        applyMemoryActions(MemoryPressurePolicy.levelName(MemoryPressurePolicy.RECOVERED), memoryActions);
                     }
+                    mFileStreamer.reportFileStatistics(mSessionManifest);
+                    saveManifestInBackground(mSessionManifest.snapshot(currentTimeMillis));
+                }
 
-                    // append each point position and color information
-                    mAccumulatedPointCloud.appendPointCloud(pointID, pointX, pointY, pointZ, pointColor.x, pointColor.y, pointColor.z);
+                // 8) checkpoint the points of the map changed since the last checkpoint, written in the background
+                if ((mPointCloudCheckpoint != null) && mPointCloudCheckpoint.isDue(currentTimeMillis)) {
+                    mPointCloudCheckpoint.checkpoint(mAccumulatedPointCloud, timestamp, currentTimeMillis);
                 }
             }
-        } catch (IOException | KeyException | NotYetAvailableException e) {
+        } catch (IOException | NotYetAvailableException e) {
             Log.d(LOG_TAG, "onUpdateFrame: Something is wrong.");
             e.printStackTrace();
+        } finally {
+            if (isRecording) {
+                mLifecycle.exitRecord();
+            }
+            pointCloud.release();
+        }
+    }
+
+
+    private void saveManifestInBackground(final SessionManifest.Snapshot snapshot) {
+
+        // only the copy of the fields is taken on the frame thread, the file is written on the I/O thread
+        final SessionManifest sessionManifest = mSessionManifest;
+        mFileStreamer.execute(() -> {
+            try {
+                sessionManifest.write(snapshot);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "saveManifestInBackground: Cannot save the session manifest: " + e.getMessage());
+            }
+        });
+    }
+
+
+    private void exportKeyframeImage(long timestamp, Image image) {
+
+        // copy the planes into a pooled buffer and leave the encoding to the worker pool
+        if (mImageExportPool == null) {
+            return;
+        }
+        ImageExportPool.ImageBuffer imageBuffer = mImageExportPool.acquireBuffer();
+        if (imageBuffer == null) {
+            return;
+        }
+        Image.Plane[] planes = image.getPlanes();
+        imageBuffer.putYuv(timestamp, image.getWidth(), image.getHeight(), planes[0].getBuffer(), planes[0].getRowStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride());
+        mImageExportPool.submit(imageBuffer);
+    }
+
+
+    private void configurePlaneFinding() {
+
+        // walls as well as floors; the session only exists once the fragment has resumed
+        Session session = mArFragment.getArSceneView().getSession();
+        if (mIsPlaneFindingConfigured || (session == null)) {
+            return;
         }
+        Config config = session.getConfig();
+        config.setPlaneFindingMode(Config.PlaneFindingMode.HORIZONTAL_AND_VERTICAL);
+        session.configure(config);
+        mIsPlaneFindingConfigured = true;
+    }
+
+
+    private void recordCameraMetadata(Frame frame, Camera camera, long timestamp, TrackingState trackingState,
+                                      TrackingFailureReason trackingFailureReason) throws IOException {
+        CameraIntrinsics imageIntrinsics = camera.getImageIntrinsics();
+        float[] focalLength = imageIntrinsics.getFocalLength();
+        float[] principalPoint = imageIntrinsics.getPrincipalPoint();
+        int[] imageDimensions = imageIntrinsics.getImageDimensions();
+        mFrameRecorder.recordCameraMetadata(timestamp, frame.getAndroidCameraTimestamp(),
+                trackingState.ordinal(), trackingFailureReason.ordinal(), focalLength[0], focalLength[1],
+                principalPoint[0], principalPoint[1], imageDimensions[0], imageDimensions[1]);
+    }
+
+
+    private static String[] enumNames(Enum<?>[] values) {
+        String[] names = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = values[i].name();
+        }
+        return names;
+    }
+
+
+    private void recordPlanes(Frame frame, long timestamp) throws IOException {
+        PlaneChangeLog planeChangeLog = mFrameRecorder.getPlaneChangeLog();
+        for (Plane plane : frame.getUpdatedTrackables(Plane.class)) {
+            int planeId = getPlaneId(plane);
+            Plane subsumingPlane = plane.getSubsumedBy();
+            if (subsumingPlane != null) {
+                planeChangeLog.subsumed(timestamp, planeId, getPlaneId(subsumingPlane));
+            } else if (plane.getTrackingState() == TrackingState.STOPPED) {
+                planeChangeLog.stopped(timestamp, planeId);
+            } else if (plane.getTrackingState() == TrackingState.TRACKING) {
+                Pose centerPose = plane.getCenterPose();
+                planeChangeLog.update(timestamp, planeId, plane.getType().ordinal(),
+                        centerPose.qx(), centerPose.qy(), centerPose.qz(), centerPose.qw(),
+                        centerPose.tx(), centerPose.ty(), centerPose.tz(),
+                        plane.getExtentX(), plane.getExtentZ(), plane.getPolygon());
+            }
+        }
+        mFrameRecorder.recordPlanes();
+    }
+
+
+    private int getPlaneId(Plane plane) {
+        Integer planeId = mPlaneIds.get(plane);
+        if (planeId == null) {
+            planeId = mPlaneIds.size();
+            mPlaneIds.put(plane, planeId);
+        }
+        return planeId;
+    }
+
+
+    private void publishTelemetry(long timestamp, int numberOfFeatures, TrackingState trackingState,
+                                  TrackingFailureReason trackingFailureReason, double updateRate, boolean isFileSaved) {
+
+        // gather the I/O counters and publish everything once per frame
+        if (isFileSaved) {
+            mNumberOfRecordedFrames++;
+        }
+        long bytesWritten = isFileSaved ? mFileStreamer.getBytesWritten() : 0;
+        int queueDepth = 0;
+        long numberOfDrops = 0;
+        LiveStreamSink liveStreamSink = mLiveStreamSink;
+        if (liveStreamSink != null) {
+            queueDepth = liveStreamSink.getQueueDepth();
+            numberOfDrops = liveStreamSink.getDroppedPoses() + liveStreamSink.getCoalescedPointBatches();
+        }
+        mTelemetry.publish(timestamp, numberOfFeatures, trackingState.ordinal(), trackingFailureReason.ordinal(),
+                updateRate, mNumberOfRecordedFrames, queueDepth, numberOfDrops, bytesWritten);
     }
 
 
@@ -243,102 +944,169 @@ public class ARCoreSession {
     }
 
 
-    private Vector3 getScreenPixel(float[] worldPosition, Bitmap imageBitmap) throws NotYetAvailableException {
+    // definition of 'ARCoreResultStreamer' class, written without locks: by the frame thread while
+    // recording, and by the stopping thread only after 'SessionLifecycle' has drained the frame thread
+    class ARCoreResultStreamer extends FileStreamer implements FrameRecorder.Output {
+
+        // properties
+        private Writer mWriterPoint;
+        private Writer mWriterKeyframe;
+        private ChannelFileWriter mWriterPlane;
+        private ChannelFileWriter mWriterCameraMetadata;
+        private ChannelFileWriter mWriterPointObservation;
+        private Writer mWriterTrackingSegment;
+        private Writer mWriterMemoryEvent;
+        private final PoseRecordWriter mPoseRecordWriter;
 
-        // clip to screen space (ViewMatrix * ProjectionMatrix * Anchor Matrix)
-        double[] pos2D = mWorldToScreenTranslator.worldToScreen(imageBitmap.getWidth(), imageBitmap.getHeight(), mArFragment.getArSceneView().getArFrame().getCamera(), worldPosition);
 
-        // check if inside the screen
-        if ((pos2D[0] < 0) || (pos2D[0] > imageBitmap.getWidth()) || (pos2D[1] < 0) || (pos2D[1] > imageBitmap.getHeight())) {
-            return null;
+        // constructor
+        ARCoreResultStreamer(final Context context, final String outputFolder) throws IOException {
+            super(context, outputFolder);
+            setLowSpaceListener((file, usableBytes) -> mContext.showToast("Storage is running low: " + (usableBytes / (1024 * 1024)) + " MB left."));
+            if (mCompressionLevel > 0) {
+                setBlockCodec(new DeflateBlockCodec(mCompressionLevel), COMPRESS_THREADS);
+            }
+            addFile("ARCore_sensor_pose", "ARCore_sensor_pose.txt", true);
+            addFile("ARCore_point_cloud", "ARCore_point_cloud.txt", true);
+            addFile("ARCore_keyframes", "ARCore_keyframes.txt");
+            addFile("ARCore_tracking_segments", "ARCore_tracking_segments.txt");
+            addFile("ARCore_memory_events", "ARCore_memory_events.txt");
+            mWriterPoint = getFileWriter("ARCore_point_cloud");
+            mWriterKeyframe = getFileWriter("ARCore_keyframes");
+            mWriterTrackingSegment = getFileWriter("ARCore_tracking_segments");
+            mWriterMemoryEvent = getFileWriter("ARCore_memory_events");
+            mWriterPlane = addBinaryFile("ARCore_planes", "ARCore_planes.bin", PlaneChangeLog.header());
+            mWriterCameraMetadata = addBinaryFile("ARCore_camera_metadata", "ARCore_camera_metadata.bin", CameraMetadataLog.header());
+            mWriterPointObservation = addBinaryFile("ARCore_point_observations", "ARCore_point_observations.bin", PointObservationLog.header());
+            mPoseRecordWriter = new PoseRecordWriter(getFileWriter("ARCore_sensor_pose"),
+                    addBinaryFile("ARCore_sensor_pose_index", "ARCore_sensor_pose" + SparseTimeIndex.FILE_SUFFIX, SparseTimeIndex.header()),
+                    getHeaderLength("ARCore_sensor_pose"));
         }
 
-        int pixel = imageBitmap.getPixel((int) pos2D[0], (int) pos2D[1]);
-        int r = Color.red(pixel);
-        int g = Color.green(pixel);
-        int b = Color.blue(pixel);
-        Vector3 pointColor = new Vector3(r, g, b);
 
-        return pointColor;
-    }
+        // methods
+        @Override
+        public void addARCorePoseRecord(long timestamp, float qx, float qy, float qz, float qw, float tx, float ty, float tz) throws IOException {
 
+            // record timestamp and 6-DoF device pose in text file, formatted and indexed without allocation
+            mPoseRecordWriter.write(timestamp, qx, qy, qz, qw, tx, ty, tz);
+        }
 
-    // definition of 'ARCoreResultStreamer' class
-    class ARCoreResultStreamer extends FileStreamer {
 
-        // properties
-        private BufferedWriter mWriterPose;
-        private BufferedWriter mWriterPoint;
+        @Override
+        public void addARCoreKeyframeRecord(final int keyframeId, final long timestamp) throws IOException {
+
+            // record keyframe ID and timestamp in text file
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(keyframeId);
+            stringBuilder.append(' ');
+            stringBuilder.append(timestamp);
+            stringBuilder.append(" \n");
+            mWriterKeyframe.write(stringBuilder.toString());
+        }
 
 
-        // constructor
-        ARCoreResultStreamer(final Context context, final String outputFolder) throws IOException {
-            super(context, outputFolder);
-            addFile("ARCore_sensor_pose", "ARCore_sensor_pose.txt");
-            addFile("ARCore_point_cloud", "ARCore_point_cloud.txt");
-            mWriterPose = getFileWriter("ARCore_sensor_pose");
-            mWriterPoint = getFileWriter("ARCore_point_cloud");
+        @Override
+        public void addARCorePlaneRecords(final PlaneChangeLog planeChangeLog) throws IOException {
+
+            // append the encoded plane records of this frame to the binary file
+            mWriterPlane.writeBytes(planeChangeLog.getBytes(), 0, planeChangeLog.getLength());
+            planeChangeLog.clear();
         }
 
 
-        // methods
-        public void addARCorePoseRecord(long timestamp, float qx, float qy, float qz, float qw, float tx, float ty, float tz) throws IOException, KeyException {
+        @Override
+        public void addARCoreCameraMetadataRecords(final CameraMetadataLog cameraMetadataLog) throws IOException {
+
+            // append the encoded camera metadata of this frame to the binary file
+            mWriterCameraMetadata.writeBytes(cameraMetadataLog.getBytes(), 0, cameraMetadataLog.getLength());
+            cameraMetadataLog.clear();
+        }
 
-            // execute the block with only one thread
-            synchronized (this) {
 
-                // record timestamp and 6-DoF device pose in text file
-                StringBuilder stringBuilder = new StringBuilder();
-                stringBuilder.append(timestamp);
-                stringBuilder.append(String.format(Locale.US, " %.6f %.6f %.6f %.6f %.6f %.6f %.6f", qx, qy, qz, qw, tx, ty, tz));
-                stringBuilder.append(" \n");
-                mWriterPose.write(stringBuilder.toString());
-            }
+        @Override
+        public void addARCorePointObservationRecords(final PointObservationLog pointObservationLog) throws IOException {
+
+            // append the encoded point observations of this frame to the binary file
+            mWriterPointObservation.writeBytes(pointObservationLog.getBytes(), 0, pointObservationLog.getLength());
+            pointObservationLog.clear();
         }
 
 
-        public void addARCorePointRecord(final float pointX, final float pointY, final float pointZ, final float r, final float g, final float b) throws IOException, KeyException {
+        @Override
+        public void addARCoreTrackingSegmentRecord(final TrackingSegment trackingSegment) throws IOException {
+
+            // record the closed tracking segment and its byte offset in text file
+            mWriterTrackingSegment.write(trackingSegment.toLine());
+        }
 
-            // execute the block with only one thread
-            synchronized (this) {
 
-                // record 3D point cloud in text file
-                StringBuilder stringBuilder = new StringBuilder();
-                stringBuilder.append(String.format(Locale.US, "%.6f %.6f %.6f %.2f %.2f %.2f", pointX, pointY, pointZ, r, g, b));
-                stringBuilder.append(" \n");
-                mWriterPoint.write(stringBuilder.toString());
-            }
+        public void addARCoreMemoryEventRecord(final long timestamp, final String trigger, final String stage, final String actions) throws IOException {
+
+            // record the memory pressure signal, the stage it led to and the actions taken in text file
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(timestamp);
+            stringBuilder.append(' ');
+            stringBuilder.append(trigger);
+            stringBuilder.append(' ');
+            stringBuilder.append(stage);
+            stringBuilder.append(actions);
+            stringBuilder.append(" \n");
+            mWriterMemoryEvent.write(stringBuilder.toString());
         }
 
 
         @Override
-        public void endFiles() throws IOException {
-
-            // execute the block with only one thread
-            synchronized (this) {
-                mWriterPose.flush();
-                mWriterPose.close();
-                mWriterPoint.flush();
-                mWriterPoint.close();
-            }
+        public void addARCorePointRecord(final float pointX, final float pointY, final float pointZ, final float r, final float g, final float b) throws IOException {
+
+            // record 3D point cloud in text file
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(String.format(Locale.US, "%.6f %.6f %.6f %.2f %.2f %.2f", pointX, pointY, pointZ, r, g, b));
+            stringBuilder.append(" \n");
+            mWriterPoint.write(stringBuilder.toString());
         }
     }
 
 
     // getter and setter
-    public int getNumberOfFeatures() {
-        return mNumberOfFeatures;
+    public void setLiveStreamTarget(String host, int port) {
+        mLiveStreamHost = host;
+        mLiveStreamPort = port;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        mCompressionLevel = compressionLevel;
+    }
+
+    public void setKeyframeImageFormat(String format, int quality) {
+        try {
+            CameraImageEncoder.forFormat(format);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_TAG, "setKeyframeImageFormat: Keyframe images are not saved: " + e.getMessage());
+            return;
+        }
+        mImageFormat = format;
+        mImageQuality = quality;
+    }
+
+    public void setPointCloudOctreeLeafSize(float leafSize) {
+        mPointCloudLeafSize = leafSize;
     }
 
-    public TrackingState getTrackingState() {
-        return mTrackingState;
+    public void setFlightRecorderSeconds(int seconds) {
+
+        // ring buffers sized for the window at a generous frame rate and point count
+        long windowSeconds = seconds + (FLIGHT_RECORDER_POST_TRIGGER / mulSecondToNanoSecond);
+        int frameCapacity = (int) (windowSeconds * FLIGHT_RECORDER_FRAME_RATE);
+        mFlightRecorder = new FlightRecorder(frameCapacity, frameCapacity * FLIGHT_RECORDER_POINTS_PER_FRAME,
+                seconds * mulSecondToNanoSecond, FLIGHT_RECORDER_POST_TRIGGER);
     }
 
-    public TrackingFailureReason getTrackingFailureReason() {
-        return mTrackingFailureReason;
+    public boolean isFlightRecorderEnabled() {
+        return (mFlightRecorder != null);
     }
 
-    public double getUpdateRate() {
-        return mUpdateRate;
+    public SessionTelemetry getTelemetry() {
+        return mTelemetry;
     }
 }
@@ -1,45 +1,236 @@
 package com.pjinkim.arcore_data_logger;
 
-import com.google.ar.sceneform.math.Vector3;
-
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
 
 public class AccumulatedPointCloud {
 
     // properties
     private static final int BASE_CAPACITY = 100000;
-    private ArrayList<Vector3> mPoints = new ArrayList<Vector3>();
-    private ArrayList<Vector3> mColors = new ArrayList<Vector3>();
-    private int[] mIdentifiedIndices = new int[BASE_CAPACITY];
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_POINTS = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_POINTS - 1;
+    private static final int FLOATS_PER_POINT = 6;
+    public static final long SEGMENT_BYTES = (long) SEGMENT_POINTS * FLOATS_PER_POINT * 4;
+    public static final long UNLIMITED_HEAP_BUDGET = Long.MAX_VALUE;
+
+    // each segment stores {x, y, z, r, g, b} for a fixed number of slots,
+    // either as a heap array or as a memory-mapped file once the heap budget is used up
+    private ArrayList<FloatBuffer> mSegments = new ArrayList<FloatBuffer>();
+    private IntIntHashMap mIdentifiedIndices = new IntIntHashMap(BASE_CAPACITY);
     private int mNumberOfFeatures = 0;
 
+    private long mHeapBudget;
+    private int mNumberOfHeapSegments = 0;
+    private int mNumberOfMappedSegments = 0;
+    private String mSpillFolder = null;
+    private final ArrayList<File> mSpillFiles = new ArrayList<File>();
+
+    // points changed since the last checkpoint: one bit per slot, and their IDs in the order they first changed
+    private boolean mIsTrackingChanges = false;
+    private long[] mDirtyBits = new long[(BASE_CAPACITY >>> 6) + 1];
+    private int[] mDirtyIds = new int[1024];
+    private int mNumberOfDirtyPoints = 0;
+
 
-    // constructor
+    // constructors
     public AccumulatedPointCloud() {
+        this(UNLIMITED_HEAP_BUDGET);
+    }
 
-        // initialize properties
-        for (int i = 0; i < BASE_CAPACITY; i++) {
-            mIdentifiedIndices[i] = -99;
-        }
+    public AccumulatedPointCloud(final long heapBudget) {
+        mHeapBudget = heapBudget;
     }
 
 
     // methods
-    public void appendPointCloud(int pointID, float pointX, float pointY, float pointZ, float r, float g, float b) {
-        if (mIdentifiedIndices[pointID] != -99) {
-            int existingIndex = mIdentifiedIndices[pointID];
-            Vector3 pointPosition = new Vector3(pointX, pointY, pointZ);
-            Vector3 pointColor = new Vector3(r, g, b);
-            mPoints.set(existingIndex, pointPosition);
-            mColors.set(existingIndex, pointColor);
-        } else {
-            mIdentifiedIndices[pointID] = mNumberOfFeatures;
-            Vector3 pointPosition = new Vector3(pointX, pointY, pointZ);
-            Vector3 pointColor = new Vector3(r, g, b);
-            mPoints.add(pointPosition);
-            mColors.add(pointColor);
+    public void appendPointCloud(int pointID, float pointX, float pointY, float pointZ, float r, float g, float b) throws IOException {
+
+        // find the slot of this point ID, or allocate the next one
+        int slot = mIdentifiedIndices.get(pointID);
+        if (slot == -1) {
+            slot = mNumberOfFeatures;
+            if ((slot >>> SEGMENT_SHIFT) == mSegments.size()) {
+                mSegments.add(allocateSegment());
+            }
+            mIdentifiedIndices.put(pointID, slot);
             mNumberOfFeatures++;
         }
+        if (mIsTrackingChanges) {
+            markDirty(pointID, slot);
+        }
+
+        // overwrite position and color in place
+        FloatBuffer segment = mSegments.get(slot >>> SEGMENT_SHIFT);
+        int offset = (slot & SEGMENT_MASK) * FLOATS_PER_POINT;
+        segment.put(offset, pointX);
+        segment.put(offset + 1, pointY);
+        segment.put(offset + 2, pointZ);
+        segment.put(offset + 3, r);
+        segment.put(offset + 4, g);
+        segment.put(offset + 5, b);
+    }
+
+    private void markDirty(final int pointID, final int slot) {
+        int word = slot >>> 6;
+        if (word >= mDirtyBits.length) {
+            mDirtyBits = Arrays.copyOf(mDirtyBits, Math.max(word + 1, mDirtyBits.length * 2));
+        }
+        long bit = 1L << slot;
+        if ((mDirtyBits[word] & bit) != 0) {
+            return;
+        }
+        mDirtyBits[word] |= bit;
+        if (mNumberOfDirtyPoints == mDirtyIds.length) {
+            mDirtyIds = Arrays.copyOf(mDirtyIds, mDirtyIds.length * 2);
+        }
+        mDirtyIds[mNumberOfDirtyPoints++] = pointID;
+    }
+
+    public void setTrackingChanges(final boolean isTrackingChanges) {
+
+        // tracking starts with every point in slot order, so the first checkpoint holds the whole cloud
+        clearDirtyPoints();
+        mIsTrackingChanges = isTrackingChanges;
+        if (!isTrackingChanges) {
+            return;
+        }
+        int[] pointIDs = new int[mNumberOfFeatures];
+        for (int position = 0; position < mIdentifiedIndices.capacity(); position++) {
+            int slot = mIdentifiedIndices.valueAt(position);
+            if (slot != -1) {
+                pointIDs[slot] = mIdentifiedIndices.keyAt(position);
+            }
+        }
+        for (int slot = 0; slot < mNumberOfFeatures; slot++) {
+            markDirty(pointIDs[slot], slot);
+        }
+    }
+
+    public void clearDirtyPoints() {
+
+        // only the words of the listed points are touched, so clearing costs as much as the changes
+        for (int k = 0; k < mNumberOfDirtyPoints; k++) {
+            int slot = mIdentifiedIndices.get(mDirtyIds[k]);
+            mDirtyBits[slot >>> 6] &= ~(1L << slot);
+        }
+        mNumberOfDirtyPoints = 0;
+    }
+
+    private FloatBuffer allocateSegment() throws IOException {
+
+        // keep segments on the heap while they fit in the budget
+        long heapBytes = (mNumberOfHeapSegments + 1) * SEGMENT_BYTES;
+        if ((heapBytes <= mHeapBudget) || (mSpillFolder == null)) {
+            mNumberOfHeapSegments++;
+            return FloatBuffer.wrap(new float[SEGMENT_POINTS * FLOATS_PER_POINT]);
+        }
+        return mapSegment();
+    }
+
+    private FloatBuffer mapSegment() throws IOException {
+
+        // spill into a fixed-size memory-mapped segment file in the session folder
+        File segmentFile = new File(mSpillFolder, String.format(Locale.US, "ARCore_point_cloud_segment_%04d.bin", mNumberOfMappedSegments));
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(segmentFile, "rw")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            commitSegment(channel);
+            MappedByteBuffer mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+            mNumberOfMappedSegments++;
+            mSpillFiles.add(segmentFile);
+            return mappedBuffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+        } catch (IOException e) {
+            segmentFile.delete();
+            throw e;
+        }
+    }
+
+    private static void commitSegment(final FileChannel channel) throws IOException {
+
+        // write the zeros rather than only setting the length, so the storage blocks are allocated now and a full
+        // device fails here with an IOException instead of faulting on the first store into a page of a sparse file
+        ByteBuffer zeros = ByteBuffer.allocate(64 * 1024);
+        long position = 0;
+        while (position < SEGMENT_BYTES) {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), SEGMENT_BYTES - position));
+            while (zeros.hasRemaining()) {
+                position += channel.write(zeros, position);
+            }
+        }
+    }
+
+    public int deleteSpillFiles() {
+
+        // the mapped segments stay valid after their files are unlinked, and keep their pages until collected
+        int numberOfDeleted = 0;
+        for (File spillFile : mSpillFiles) {
+            if (spillFile.delete()) {
+                numberOfDeleted++;
+            }
+        }
+        mSpillFiles.clear();
+        return numberOfDeleted;
+    }
+
+    public int indexOf(final int pointID) {
+        return mIdentifiedIndices.get(pointID);
+    }
+
+    public int setHeapBudget(final long heapBudget) throws IOException {
+
+        // move the oldest heap segments beyond the new budget into mapped files, whose pages the kernel can drop
+        mHeapBudget = heapBudget;
+        int numberOfSpilled = 0;
+        for (int i = 0; (i < mSegments.size()) && (mSpillFolder != null); i++) {
+            if (mNumberOfHeapSegments * SEGMENT_BYTES <= mHeapBudget) {
+                break;
+            }
+            FloatBuffer segment = mSegments.get(i);
+            if (!segment.hasArray()) {
+                continue;
+            }
+            FloatBuffer mappedSegment = mapSegment();
+            mappedSegment.put(segment.array());
+            mappedSegment.clear();
+            mSegments.set(i, mappedSegment);
+            mNumberOfHeapSegments--;
+            numberOfSpilled++;
+        }
+        return numberOfSpilled;
+    }
+
+    public void getPoint(final int index, final float[] point) {
+
+        // copy {x, y, z, r, g, b} of the point at 'index' into 'point'
+        FloatBuffer segment = mSegments.get(index >>> SEGMENT_SHIFT);
+        int offset = (index & SEGMENT_MASK) * FLOATS_PER_POINT;
+        for (int i = 0; i < FLOATS_PER_POINT; i++) {
+            point[i] = segment.get(offset + i);
+        }
+    }
+
+    public float[] getPointArray() {
+
+        // flatten the point positions into {x, y, z} triplets for spatial indexing, half the size of the points
+        float[] pointArray = new float[mNumberOfFeatures * 3];
+        for (int i = 0; i < mNumberOfFeatures; i++) {
+            FloatBuffer segment = mSegments.get(i >>> SEGMENT_SHIFT);
+            int offset = (i & SEGMENT_MASK) * FLOATS_PER_POINT;
+            pointArray[i * 3] = segment.get(offset);
+            pointArray[i * 3 + 1] = segment.get(offset + 1);
+            pointArray[i * 3 + 2] = segment.get(offset + 2);
+        }
+        return pointArray;
     }
 
 
@@ -48,11 +239,23 @@ public class AccumulatedPointCloud {
         return mNumberOfFeatures;
     }
 
-    public ArrayList<Vector3> getPoints() {
-        return mPoints;
+    public int getNumberOfDirtyPoints() {
+        return mNumberOfDirtyPoints;
+    }
+
+    public int getDirtyPointId(final int k) {
+        return mDirtyIds[k];
+    }
+
+    public int getNumberOfHeapSegments() {
+        return mNumberOfHeapSegments;
+    }
+
+    public int getNumberOfMappedSegments() {
+        return mNumberOfMappedSegments;
     }
 
-    public ArrayList<Vector3> getColors() {
-        return mColors;
+    public void setSpillFolder(final String spillFolder) {
+        mSpillFolder = spillFolder;
     }
 }
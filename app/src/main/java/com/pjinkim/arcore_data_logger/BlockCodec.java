@@ -0,0 +1,18 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.IOException;
+
+/**
+ * Compresses and decompresses independent blocks of a {@link BlockCompressedWriter} file. Both
+ * methods are called from several worker threads at once.
+ */
+public interface BlockCodec {
+
+    // identifies the codec in the file header, see BlockCompressedInputStream.codecFor
+    byte getId();
+
+    // returns the compressed length, or -1 if the block does not get smaller than 'dst.length'
+    int compress(byte[] src, int srcLength, byte[] dst);
+
+    void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException;
+}
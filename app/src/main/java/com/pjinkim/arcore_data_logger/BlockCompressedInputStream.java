@@ -0,0 +1,315 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a file written through {@link BlockCompressedWriter} as the plain byte stream it was
+ * written from. The block index comes from the end of the file, or from a scan of the block
+ * headers when the file was cut off by a crash, in which case the stream ends after the last
+ * complete block, and a last block that does not decode to its checksum counts as cut off too.
+ * {@link #seek(long)} jumps to any uncompressed offset by decoding only the block
+ * that holds it, and {@link #readBlock(int, byte[])} decodes blocks independently, so callers can
+ * decode several blocks in parallel.
+ */
+public class BlockCompressedInputStream extends InputStream {
+
+    // properties
+    private final FileChannel mChannel;
+    private final BlockCodec mCodec;
+    private final int mBlockSize;
+
+    // file offset, raw offset and raw length of each data block
+    private long[] mFileOffsets = new long[64];
+    private long[] mRawOffsets = new long[64];
+    private int[] mRawLengths = new int[64];
+    private int mNumberOfBlocks = 0;
+    private boolean mHasIndex = false;
+
+    // decoded current block
+    private final byte[] mBlock;
+    private int mBlockIndex = -1;
+    private int mBlockLength = 0;
+    private int mBlockPosition = 0;
+
+
+    // constructor
+    public BlockCompressedInputStream(final File file) throws IOException {
+        mChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readFully(0, BlockCompressedWriter.HEADER_BYTES);
+            for (int i = 0; i < BlockCompressedWriter.MAGIC.length; i++) {
+                if (header.get(i) != BlockCompressedWriter.MAGIC[i]) {
+                    throw new IOException("BlockCompressedInputStream: Not a block compressed file: " + file);
+                }
+            }
+            int version = header.getInt(4);
+            if (version != BlockCompressedWriter.FORMAT_VERSION) {
+                throw new IOException("BlockCompressedInputStream: Unsupported version " + version);
+            }
+            mCodec = codecFor(header.get(8));
+            mBlockSize = header.getInt(12);
+            mBlock = new byte[mBlockSize];
+            if (!loadIndex()) {
+                scanBlocks();
+            }
+        } catch (IOException e) {
+            mChannel.close();
+            throw e;
+        }
+    }
+
+
+    // methods
+    public static BlockCodec codecFor(final byte id) throws IOException {
+        if (id == DeflateBlockCodec.ID) {
+            return new DeflateBlockCodec(DeflateBlockCodec.DEFAULT_LEVEL);
+        }
+        throw new IOException("codecFor: Unknown codec " + id);
+    }
+
+    public static boolean isBlockCompressed(final File file) throws IOException {
+        if (!file.isFile() || (file.length() < BlockCompressedWriter.HEADER_BYTES)) {
+            return false;
+        }
+        byte[] magic = new byte[BlockCompressedWriter.MAGIC.length];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int length = 0;
+            while (length < magic.length) {
+                int count = inputStream.read(magic, length, magic.length - length);
+                if (count < 0) {
+                    return false;
+                }
+                length += count;
+            }
+        }
+        return Arrays.equals(magic, BlockCompressedWriter.MAGIC);
+    }
+
+    public static InputStream open(final File file) throws IOException {
+
+        // block compressed files are decoded transparently, anything else is read as is
+        if (isBlockCompressed(file)) {
+            return new BlockCompressedInputStream(file);
+        }
+        return new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    }
+
+    private boolean loadIndex() throws IOException {
+
+        // the footer points at the index block written on close
+        long size = mChannel.size();
+        if (size < BlockCompressedWriter.HEADER_BYTES + BlockCompressedWriter.BLOCK_HEADER_BYTES + BlockCompressedWriter.FOOTER_BYTES) {
+            return false;
+        }
+        ByteBuffer footer = readFully(size - BlockCompressedWriter.FOOTER_BYTES, BlockCompressedWriter.FOOTER_BYTES);
+        for (int i = 0; i < BlockCompressedWriter.END_MAGIC.length; i++) {
+            if (footer.get(8 + i) != BlockCompressedWriter.END_MAGIC[i]) {
+                return false;
+            }
+        }
+        long indexOffset = footer.getLong(0);
+        if ((indexOffset < BlockCompressedWriter.HEADER_BYTES) || (indexOffset > size - BlockCompressedWriter.FOOTER_BYTES)) {
+            return false;
+        }
+        ByteBuffer blockHeader = readFully(indexOffset, BlockCompressedWriter.BLOCK_HEADER_BYTES);
+        int indexLength = blockHeader.getInt(0);
+        if ((blockHeader.get(12) != BlockCompressedWriter.BLOCK_INDEX) || (indexLength % 16 != 0)) {
+            return false;
+        }
+        ByteBuffer index = readFully(indexOffset + BlockCompressedWriter.BLOCK_HEADER_BYTES, indexLength);
+        int numberOfBlocks = indexLength / 16;
+        for (int i = 0; i < numberOfBlocks; i++) {
+
+            // raw lengths follow from the next raw offset, only the last block header is read
+            long fileOffset = index.getLong(i * 16);
+            long rawOffset = index.getLong(i * 16 + 8);
+            int rawLength = (i + 1 < numberOfBlocks) ? (int) (index.getLong((i + 1) * 16 + 8) - rawOffset)
+                    : readFully(fileOffset, BlockCompressedWriter.BLOCK_HEADER_BYTES).getInt(4);
+            addBlock(fileOffset, rawOffset, rawLength);
+        }
+        mHasIndex = true;
+        return true;
+    }
+
+    private void scanBlocks() throws IOException {
+
+        // walk the block headers up to the first incomplete block, the writer never writes an empty one
+        long size = mChannel.size();
+        long fileOffset = BlockCompressedWriter.HEADER_BYTES;
+        long rawOffset = 0;
+        while (fileOffset + BlockCompressedWriter.BLOCK_HEADER_BYTES <= size) {
+            ByteBuffer blockHeader = readFully(fileOffset, BlockCompressedWriter.BLOCK_HEADER_BYTES);
+            int storedLength = blockHeader.getInt(0);
+            int rawLength = blockHeader.getInt(4);
+            byte kind = blockHeader.get(12);
+            long blockEnd = fileOffset + BlockCompressedWriter.BLOCK_HEADER_BYTES + storedLength;
+            if ((kind == BlockCompressedWriter.BLOCK_INDEX) || (storedLength <= 0) || (rawLength <= 0)
+                    || (rawLength > mBlockSize) || (blockEnd > size)) {
+                break;
+            }
+            addBlock(fileOffset, rawOffset, rawLength);
+            fileOffset = blockEnd;
+            rawOffset += rawLength;
+        }
+
+        // a crash can leave the header of the last block on the storage device but not all of its payload
+        if ((mNumberOfBlocks > 0) && !isReadable(mNumberOfBlocks - 1)) {
+            mNumberOfBlocks--;
+        }
+    }
+
+    private boolean isReadable(final int blockIndex) {
+        try {
+            readBlock(blockIndex, mBlock);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void addBlock(final long fileOffset, final long rawOffset, final int rawLength) {
+        if (mNumberOfBlocks == mFileOffsets.length) {
+            mFileOffsets = Arrays.copyOf(mFileOffsets, mNumberOfBlocks * 2);
+            mRawOffsets = Arrays.copyOf(mRawOffsets, mNumberOfBlocks * 2);
+            mRawLengths = Arrays.copyOf(mRawLengths, mNumberOfBlocks * 2);
+        }
+        mFileOffsets[mNumberOfBlocks] = fileOffset;
+        mRawOffsets[mNumberOfBlocks] = rawOffset;
+        mRawLengths[mNumberOfBlocks] = rawLength;
+        mNumberOfBlocks++;
+    }
+
+    public int readBlock(final int blockIndex, final byte[] dst) throws IOException {
+
+        // positional reads only, so blocks can be decoded from several threads at once
+        long fileOffset = mFileOffsets[blockIndex];
+        ByteBuffer blockHeader = readFully(fileOffset, BlockCompressedWriter.BLOCK_HEADER_BYTES);
+        int storedLength = blockHeader.getInt(0);
+        int rawLength = blockHeader.getInt(4);
+        int rawChecksum = blockHeader.getInt(8);
+        byte kind = blockHeader.get(12);
+        ByteBuffer payload = readFully(fileOffset + BlockCompressedWriter.BLOCK_HEADER_BYTES, storedLength);
+        if (kind == BlockCompressedWriter.BLOCK_COMPRESSED) {
+            mCodec.decompress(payload.array(), storedLength, dst, rawLength);
+        } else {
+            System.arraycopy(payload.array(), 0, dst, 0, rawLength);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(dst, 0, rawLength);
+        if ((int) checksum.getValue() != rawChecksum) {
+            throw new IOException("readBlock: Checksum mismatch in block " + blockIndex);
+        }
+        return rawLength;
+    }
+
+    private ByteBuffer readFully(final long position, final int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("readFully: File ends at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public void seek(final long rawOffset) throws IOException {
+
+        // binary search for the block holding the offset and decode only that one
+        int low = 0;
+        int high = mNumberOfBlocks - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mRawOffsets[middle] <= rawOffset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if ((mNumberOfBlocks == 0) || (rawOffset >= getLength())) {
+            mBlockIndex = mNumberOfBlocks;
+            mBlockLength = 0;
+            mBlockPosition = 0;
+            return;
+        }
+        loadBlock(low);
+        mBlockPosition = (int) (rawOffset - mRawOffsets[low]);
+    }
+
+    private void loadBlock(final int blockIndex) throws IOException {
+        mBlockIndex = blockIndex;
+        mBlockLength = readBlock(blockIndex, mBlock);
+        mBlockPosition = 0;
+    }
+
+    private boolean ensureBlock() throws IOException {
+        while (mBlockPosition >= mBlockLength) {
+            if (mBlockIndex + 1 >= mNumberOfBlocks) {
+                return false;
+            }
+            loadBlock(mBlockIndex + 1);
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBlock()) {
+            return -1;
+        }
+        return mBlock[mBlockPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        while ((count < len) && ensureBlock()) {
+            int chunk = Math.min(len - count, mBlockLength - mBlockPosition);
+            System.arraycopy(mBlock, mBlockPosition, b, off + count, chunk);
+            mBlockPosition += chunk;
+            count += chunk;
+        }
+        return (count == 0) ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+
+    // getter and setter
+    public int getNumberOfBlocks() {
+        return mNumberOfBlocks;
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    public long getBlockRawOffset(final int blockIndex) {
+        return mRawOffsets[blockIndex];
+    }
+
+    public long getLength() {
+        return (mNumberOfBlocks == 0) ? 0 : mRawOffsets[mNumberOfBlocks - 1] + mRawLengths[mNumberOfBlocks - 1];
+    }
+
+    public boolean hasIndex() {
+        return mHasIndex;
+    }
+}
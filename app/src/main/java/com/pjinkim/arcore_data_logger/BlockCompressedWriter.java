@@ -0,0 +1,436 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Session file writer that splits its output into independent blocks and compresses them with a
+ * {@link BlockCodec} on a small worker pool, off the thread that writes the records.
+ *
+ * Full blocks are compressed in parallel and appended to the file in order by the single I/O
+ * executor, which waits for each block's compression in turn. At most a few blocks are in flight;
+ * when all of them are busy the caller waits, so memory stays bounded. On close a block index is
+ * appended so readers can seek by uncompressed offset; a file cut off by a crash has no index, but
+ * every complete block before the cut is still readable. A high surrogate at the end of a write
+ * waits for the low surrogate of the next one, as in {@link ChannelFileWriter}.
+ *
+ * File layout (little-endian): magic "ARBZ", int32 version, uint8 codec ID, 3 bytes padding,
+ * int32 block size, then blocks of int32 stored length, int32 raw length, int32 CRC32 of the raw
+ * bytes, uint8 kind (stored, compressed or index) and the payload. The index block holds int64
+ * file offset and int64 raw offset per data block, and the file ends with the int64 offset of the
+ * index block and magic "ARBE". See {@link BlockCompressedInputStream}.
+ */
+public class BlockCompressedWriter extends Writer implements ChecksummedOutput {
+
+    // properties
+    public static final byte[] MAGIC = {'A', 'R', 'B', 'Z'};
+    public static final byte[] END_MAGIC = {'A', 'R', 'B', 'E'};
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int BLOCK_HEADER_BYTES = 13;
+    public static final int FOOTER_BYTES = 12;
+    public static final String FILE_SUFFIX = ".blk";
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    public static final byte BLOCK_STORED = 0;
+    public static final byte BLOCK_COMPRESSED = 1;
+    public static final byte BLOCK_INDEX = 2;
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final BlockCodec mCodec;
+    private final ExecutorService mCompressExecutor;
+    private final ExecutorService mIoExecutor;
+
+    // blocks cycle from the caller to a compression worker, to the I/O executor and back to the pool
+    private final ArrayBlockingQueue<Block> mFreeBlocks;
+    private final Future<?>[] mPendingWrites;
+    private int mNextPendingWrite = 0;
+    private Block mBlock;
+    private ByteBuffer mBlockBuffer;
+    private long mRawOffset = 0;
+
+    private final char[] mCharScratch = new char[1024];
+    private final CharBuffer mCharBuffer = CharBuffer.wrap(mCharScratch);
+    private int mPendingLength = 0;
+    private final CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // written only on the I/O executor
+    private final CRC32 mFileChecksum = new CRC32();
+    private final ByteBuffer mBlockHeader = ByteBuffer.allocate(BLOCK_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private long mFilePosition = 0;
+    private long[] mIndex = new long[64];
+    private int mNumberOfBlocks = 0;
+
+    private volatile long mBytesWritten = 0;
+    private volatile long mChecksumValue = 0;
+    private volatile IOException mWriteError = null;
+    private boolean mIsClosed = false;
+
+
+    // definition of 'Block' class
+    private static class Block {
+        final byte[] mRaw;
+        final byte[] mCompressed;
+        final CRC32 mChecksum = new CRC32();
+        int mRawLength;
+        long mRawOffset;
+        int mStoredLength;
+        byte mKind;
+
+        Block(final int blockSize) {
+            mRaw = new byte[blockSize];
+            mCompressed = new byte[blockSize];
+        }
+    }
+
+
+    // constructors
+    public BlockCompressedWriter(final File file, final BlockCodec codec, final ExecutorService compressExecutor,
+                                 final ExecutorService ioExecutor) throws IOException {
+        this(file, codec, compressExecutor, ioExecutor, DEFAULT_BLOCK_SIZE, 4);
+    }
+
+    public BlockCompressedWriter(final File file, final BlockCodec codec, final ExecutorService compressExecutor,
+                                 final ExecutorService ioExecutor, final int blockSize, final int maxBlocksInFlight) throws IOException {
+        mFile = file;
+        mCodec = codec;
+        mCompressExecutor = compressExecutor;
+        mIoExecutor = ioExecutor;
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        mRandomAccessFile.setLength(0);
+        mChannel = mRandomAccessFile.getChannel();
+
+        // one block is filled by the caller while the others are compressed or written
+        mFreeBlocks = new ArrayBlockingQueue<>(maxBlocksInFlight + 1);
+        for (int i = 0; i < maxBlocksInFlight + 1; i++) {
+            mFreeBlocks.add(new Block(blockSize));
+        }
+        mPendingWrites = new Future<?>[maxBlocksInFlight + 1];
+        nextBlock();
+
+        // the file header is written synchronously, so the file is recognizable from the start
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(FORMAT_VERSION).put(codec.getId()).put(new byte[3]).putInt(blockSize);
+        header.flip();
+        mFileChecksum.update(header.array(), 0, HEADER_BYTES);
+        while (header.hasRemaining()) {
+            mFilePosition += mChannel.write(header, mFilePosition);
+        }
+        mBytesWritten = mFilePosition;
+        mChecksumValue = mFileChecksum.getValue();
+    }
+
+
+    // methods
+    @Override
+    public void write(final int c) throws IOException {
+        mCharScratch[mPendingLength] = (char) c;
+        encodeCharScratch(mPendingLength + 1);
+    }
+
+    @Override
+    public void write(final char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int chunk = Math.min(len, mCharScratch.length - mPendingLength);
+            System.arraycopy(cbuf, off, mCharScratch, mPendingLength, chunk);
+            encodeCharScratch(mPendingLength + chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    @Override
+    public void write(final String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int chunk = Math.min(len, mCharScratch.length - mPendingLength);
+            str.getChars(off, off + chunk, mCharScratch, mPendingLength);
+            encodeCharScratch(mPendingLength + chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    public void writeBytes(final byte[] b, int off, int len) throws IOException {
+        encodePendingChar();
+        while (len > 0) {
+            if (!mBlockBuffer.hasRemaining()) {
+                sealBlock();
+            }
+            int chunk = Math.min(len, mBlockBuffer.remaining());
+            mBlockBuffer.put(b, off, chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    private void encodeCharScratch(final int length) throws IOException {
+
+        // encode straight into the raw block, sealing it whenever it is full
+        mCharBuffer.clear();
+        mCharBuffer.limit(length);
+        while (true) {
+            CoderResult result = mEncoder.encode(mCharBuffer, mBlockBuffer, false);
+            if (!result.isOverflow()) {
+                break;
+            }
+            sealBlock();
+        }
+
+        // a high surrogate at the end waits at the start of the scratch array for the low surrogate of the next write
+        mPendingLength = mCharBuffer.remaining();
+        if (mPendingLength > 0) {
+            mCharScratch[0] = mCharBuffer.get();
+        }
+    }
+
+    private void encodePendingChar() throws IOException {
+
+        // a high surrogate that did not get its low surrogate is written as a replacement
+        if (mPendingLength == 0) {
+            return;
+        }
+        mCharBuffer.clear();
+        mCharBuffer.limit(mPendingLength);
+        while (mEncoder.encode(mCharBuffer, mBlockBuffer, true).isOverflow()) {
+            sealBlock();
+        }
+        mEncoder.reset();
+        mPendingLength = 0;
+    }
+
+    private void sealBlock() throws IOException {
+        checkOpen();
+        if (mBlockBuffer.position() == 0) {
+            return;
+        }
+
+        // compress on a worker, then append in order on the I/O executor
+        final Block block = mBlock;
+        block.mRawLength = mBlockBuffer.position();
+        block.mRawOffset = mRawOffset;
+        mRawOffset += block.mRawLength;
+        final Future<?> compression = mCompressExecutor.submit(() -> compressBlock(block));
+        mPendingWrites[mNextPendingWrite] = mIoExecutor.submit(() -> writeBlock(block, compression));
+        mNextPendingWrite = (mNextPendingWrite + 1) % mPendingWrites.length;
+        nextBlock();
+    }
+
+    private void nextBlock() throws IOException {
+
+        // wait for a block to come back from the I/O executor
+        try {
+            mBlock = mFreeBlocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("nextBlock: Interrupted while writing " + mFile);
+        }
+        mBlockBuffer = ByteBuffer.wrap(mBlock.mRaw);
+        if (mWriteError != null) {
+            throw mWriteError;
+        }
+    }
+
+    private void compressBlock(final Block block) {
+        block.mChecksum.reset();
+        block.mChecksum.update(block.mRaw, 0, block.mRawLength);
+        int compressedLength = mCodec.compress(block.mRaw, block.mRawLength, block.mCompressed);
+        if ((compressedLength >= 0) && (compressedLength < block.mRawLength)) {
+            block.mKind = BLOCK_COMPRESSED;
+            block.mStoredLength = compressedLength;
+        } else {
+            block.mKind = BLOCK_STORED;
+            block.mStoredLength = block.mRawLength;
+        }
+    }
+
+    private void writeBlock(final Block block, final Future<?> compression) {
+        try {
+            compression.get();
+            if (mWriteError != null) {
+                return;
+            }
+
+            // remember where the block starts, then append its header and payload
+            if (mIndex.length < (mNumberOfBlocks + 1) * 2) {
+                mIndex = Arrays.copyOf(mIndex, mIndex.length * 2);
+            }
+            mIndex[mNumberOfBlocks * 2] = mFilePosition;
+            mIndex[mNumberOfBlocks * 2 + 1] = block.mRawOffset;
+            mNumberOfBlocks++;
+            byte[] payload = (block.mKind == BLOCK_COMPRESSED) ? block.mCompressed : block.mRaw;
+            append(block.mKind, block.mRawLength, (int) block.mChecksum.getValue(), ByteBuffer.wrap(payload, 0, block.mStoredLength));
+        } catch (IOException e) {
+            mWriteError = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mWriteError = new InterruptedIOException("writeBlock: Interrupted while writing " + mFile);
+        } catch (ExecutionException e) {
+            mWriteError = new IOException("writeBlock: Cannot compress a block of " + mFile, e.getCause());
+        } finally {
+            mFreeBlocks.add(block);
+        }
+    }
+
+    private void writeIndex() {
+        if (mWriteError != null) {
+            return;
+        }
+        try {
+
+            // index block, then the offset of the index block and the end magic
+            ByteBuffer index = ByteBuffer.allocate(mNumberOfBlocks * 16 + FOOTER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < mNumberOfBlocks * 2; i++) {
+                index.putLong(mIndex[i]);
+            }
+            long indexOffset = mFilePosition;
+            index.flip();
+            CRC32 indexChecksum = new CRC32();
+            indexChecksum.update(index.array(), 0, index.limit());
+            append(BLOCK_INDEX, index.limit(), (int) indexChecksum.getValue(), index);
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            footer.putLong(indexOffset).put(END_MAGIC);
+            footer.flip();
+            appendBytes(footer);
+        } catch (IOException e) {
+            mWriteError = e;
+        }
+    }
+
+    private void append(final byte kind, final int rawLength, final int rawChecksum, final ByteBuffer payload) throws IOException {
+        mBlockHeader.clear();
+        mBlockHeader.putInt(payload.remaining()).putInt(rawLength).putInt(rawChecksum).put(kind);
+        mBlockHeader.flip();
+        appendBytes(mBlockHeader);
+        appendBytes(payload);
+    }
+
+    private void appendBytes(final ByteBuffer buffer) throws IOException {
+        mFileChecksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        while (buffer.hasRemaining()) {
+            mFilePosition += mChannel.write(buffer, mFilePosition);
+        }
+        mBytesWritten = mFilePosition;
+        mChecksumValue = mFileChecksum.getValue();
+    }
+
+    private void awaitWrites() throws IOException {
+        for (int i = 0; i < mPendingWrites.length; i++) {
+            Future<?> pendingWrite = mPendingWrites[i];
+            if (pendingWrite == null) {
+                continue;
+            }
+            try {
+                pendingWrite.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("awaitWrites: Interrupted while writing " + mFile);
+            } catch (ExecutionException e) {
+                throw new IOException("awaitWrites: Cannot write " + mFile, e.getCause());
+            }
+            mPendingWrites[i] = null;
+        }
+        if (mWriteError != null) {
+            throw mWriteError;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (mIsClosed) {
+            throw new IOException("checkOpen: " + mFile + " is already closed.");
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+
+        // seal the partially filled block and wait until every block is in the file
+        sealBlock();
+        awaitWrites();
+    }
+
+    @Override
+    public void sync() throws IOException {
+
+        // the partial block is sealed by the flush, so the file stays readable up to here
+        checkOpen();
+        flush();
+        mChannel.force(false);
+    }
+
+    @Override
+    public void flushInBackground(final boolean isSynced) throws IOException {
+
+        // seal the partially filled block, the force is queued behind its write on the same thread
+        checkOpen();
+        sealBlock();
+        if (isSynced) {
+            mIoExecutor.execute(this::forceChannel);
+        }
+    }
+
+    private void forceChannel() {
+        try {
+            mChannel.force(false);
+        } catch (IOException e) {
+            mWriteError = e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mIsClosed) {
+            return;
+        }
+        try {
+            encodePendingChar();
+            flush();
+            mPendingWrites[0] = mIoExecutor.submit(this::writeIndex);
+            awaitWrites();
+        } finally {
+            mIsClosed = true;
+            mChannel.close();
+            mRandomAccessFile.close();
+        }
+    }
+
+
+    // getter and setter
+    @Override
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    @Override
+    public long getChecksum() {
+        return mChecksumValue;
+    }
+
+    public long getRawBytesWritten() {
+        return mRawOffset + mBlockBuffer.position();
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+}
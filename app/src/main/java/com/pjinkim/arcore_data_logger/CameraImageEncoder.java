@@ -0,0 +1,94 @@
+package com.pjinkim.arcore_data_logger;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Encodes the pooled NV21 camera images of {@link ImageExportPool} as JPEG, straight from YUV, or
+ * as lossless PNG through an ARGB bitmap.
+ */
+public class CameraImageEncoder implements ImageExportPool.Encoder {
+
+    // properties
+    private final boolean mIsPng;
+
+    // ARGB pixels of the PNG path, one array per encoder thread
+    private final ThreadLocal<int[]> mPixels = new ThreadLocal<>();
+
+
+    // constructor
+    private CameraImageEncoder(final boolean isPng) {
+        mIsPng = isPng;
+    }
+
+
+    // methods
+    public static CameraImageEncoder forFormat(final String format) {
+        String name = format.toLowerCase(Locale.US);
+        if (name.equals("jpeg") || name.equals("jpg")) {
+            return new CameraImageEncoder(false);
+        } else if (name.equals("png")) {
+            return new CameraImageEncoder(true);
+        }
+        throw new IllegalArgumentException("forFormat: Unknown image format " + format);
+    }
+
+    @Override
+    public void encode(final ImageExportPool.ImageBuffer image, final int quality, final OutputStream outputStream) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean isEncoded;
+        if (!mIsPng) {
+            YuvImage yuvImage = new YuvImage(image.getNv21(), ImageFormat.NV21, width, height, null);
+            isEncoded = yuvImage.compressToJpeg(new Rect(0, 0, width, height), quality, outputStream);
+        } else {
+            int[] pixels = mPixels.get();
+            if ((pixels == null) || (pixels.length < width * height)) {
+                pixels = new int[width * height];
+                mPixels.set(pixels);
+            }
+            nv21ToArgb(image.getNv21(), width, height, pixels);
+            Bitmap bitmap = Bitmap.createBitmap(pixels, 0, width, width, height, Bitmap.Config.ARGB_8888);
+            isEncoded = bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
+            bitmap.recycle();
+        }
+        if (!isEncoded) {
+            throw new IOException("encode: Cannot encode image " + image.getTimestamp());
+        }
+    }
+
+    private static void nv21ToArgb(final byte[] nv21, final int width, final int height, final int[] pixels) {
+
+        // BT.601 video range in 10-bit fixed point
+        int chromaOffset = width * height;
+        for (int row = 0; row < height; row++) {
+            int chromaRow = chromaOffset + (row >> 1) * width;
+            for (int column = 0; column < width; column++) {
+                int y = Math.max(0, (nv21[row * width + column] & 0xFF) - 16) * 1192;
+                int v = (nv21[chromaRow + (column & ~1)] & 0xFF) - 128;
+                int u = (nv21[chromaRow + (column & ~1) + 1] & 0xFF) - 128;
+                int r = clamp((y + 1634 * v) >> 10);
+                int g = clamp((y - 833 * v - 400 * u) >> 10);
+                int b = clamp((y + 2066 * u) >> 10);
+                pixels[row * width + column] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static int clamp(final int value) {
+        return (value < 0) ? 0 : ((value > 255) ? 255 : value);
+    }
+
+
+    // getter and setter
+    @Override
+    public String getExtension() {
+        return mIsPng ? "png" : "jpg";
+    }
+}
@@ -0,0 +1,185 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes per-frame camera metadata compactly, with slowly changing fields written only on change.
+ *
+ * File layout (little-endian): magic "ARCM", int32 version, then records starting with a uint8
+ * kind. A tracking record (int64 timestamp, int64 Android camera timestamp, uint8 state, uint8
+ * failure reason) starts every tracking segment and resets the timestamp bases, so a reader can
+ * start decoding at its byte offset. An intrinsics record (int64 timestamp, float32 fx fy cx cy,
+ * int32 image width and height) follows every change of the CPU image intrinsics and every tracking
+ * record, so a segment decodes without the records before it. A frame record
+ * holds, for both timestamps, the zigzag varint change of the frame interval, which is a single
+ * byte each at a steady frame rate. Closed segments are handed out as {@link TrackingSegment}s.
+ */
+public class CameraMetadataLog {
+
+    // properties
+    public static final byte[] MAGIC = {'A', 'R', 'C', 'M'};
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+
+    public static final byte RECORD_FRAME = 1;
+    public static final byte RECORD_TRACKING = 2;
+    public static final byte RECORD_INTRINSICS = 3;
+
+    private final String[] mTrackingStateNames;
+    private final String[] mFailureReasonNames;
+
+    // delta bases and last written slowly changing fields
+    private long mLastTimestamp = 0;
+    private long mLastCameraTimestamp = 0;
+    private long mLastInterval = 0;
+    private long mLastCameraInterval = 0;
+    private int mTrackingState = -1;
+    private int mFailureReason = -1;
+    private final float[] mIntrinsics = new float[4];
+    private int mWidth = -1;
+    private int mHeight = -1;
+
+    // current tracking segment
+    private long mSegmentStart = 0;
+    private long mSegmentOffset = 0;
+    private int mSegmentFrames = 0;
+    private TrackingSegment mClosedSegment = null;
+
+    // encoded records since the last 'clear'
+    private static final int MAX_FRAME_BYTES = 19 + 37 + 21;
+    private ByteBuffer mBuffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+    private long mBytesFlushed = HEADER_BYTES;
+    private long mNumberOfFrames = 0;
+    private long mNumberOfEvents = 0;
+
+
+    // constructor
+    public CameraMetadataLog(final String[] trackingStateNames, final String[] failureReasonNames) {
+        mTrackingStateNames = trackingStateNames;
+        mFailureReasonNames = failureReasonNames;
+    }
+
+
+    // methods
+    public static byte[] header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(FORMAT_VERSION);
+        return header.array();
+    }
+
+    public boolean addFrame(final long timestamp, final long cameraTimestamp, final int trackingState, final int failureReason,
+                            final float fx, final float fy, final float cx, final float cy, final int width, final int height) {
+
+        ensureRemaining(MAX_FRAME_BYTES);
+
+        // 1) a tracking transition closes the current segment and opens the next one
+        boolean isSegmentClosed = false;
+        if ((trackingState != mTrackingState) || (failureReason != mFailureReason)) {
+            isSegmentClosed = closeSegment();
+            mSegmentStart = timestamp;
+            mSegmentOffset = mBytesFlushed + mBuffer.position();
+            mSegmentFrames = 0;
+            mTrackingState = trackingState;
+            mFailureReason = failureReason;
+            mBuffer.put(RECORD_TRACKING).putLong(timestamp).putLong(cameraTimestamp);
+            mBuffer.put((byte) trackingState).put((byte) failureReason);
+            mLastTimestamp = timestamp;
+            mLastCameraTimestamp = cameraTimestamp;
+            mLastInterval = 0;
+            mLastCameraInterval = 0;
+            mWidth = -1;
+            mNumberOfEvents++;
+        }
+
+        // 2) intrinsics and image size only when they change
+        if ((fx != mIntrinsics[0]) || (fy != mIntrinsics[1]) || (cx != mIntrinsics[2]) || (cy != mIntrinsics[3])
+                || (width != mWidth) || (height != mHeight)) {
+            mIntrinsics[0] = fx;
+            mIntrinsics[1] = fy;
+            mIntrinsics[2] = cx;
+            mIntrinsics[3] = cy;
+            mWidth = width;
+            mHeight = height;
+            mBuffer.put(RECORD_INTRINSICS).putLong(timestamp);
+            mBuffer.putFloat(fx).putFloat(fy).putFloat(cx).putFloat(cy).putInt(width).putInt(height);
+            mNumberOfEvents++;
+        }
+
+        // 3) both timestamps as the change of their frame interval
+        long interval = timestamp - mLastTimestamp;
+        long cameraInterval = cameraTimestamp - mLastCameraTimestamp;
+        mBuffer.put(RECORD_FRAME);
+        putVarLong(interval - mLastInterval);
+        putVarLong(cameraInterval - mLastCameraInterval);
+        mLastInterval = interval;
+        mLastCameraInterval = cameraInterval;
+        mLastTimestamp = timestamp;
+        mLastCameraTimestamp = cameraTimestamp;
+        mSegmentFrames++;
+        mNumberOfFrames++;
+        return isSegmentClosed;
+    }
+
+    public TrackingSegment finish() {
+        return closeSegment() ? mClosedSegment : null;
+    }
+
+    public void clear() {
+        mBytesFlushed += mBuffer.position();
+        mBuffer.clear();
+    }
+
+    private boolean closeSegment() {
+        if (mTrackingState < 0) {
+            return false;
+        }
+        mClosedSegment = new TrackingSegment(mSegmentStart, mLastTimestamp, mTrackingStateNames[mTrackingState],
+                mFailureReasonNames[mFailureReason], mSegmentOffset, mSegmentFrames);
+        mTrackingState = -1;
+        mFailureReason = -1;
+        return true;
+    }
+
+    private void ensureRemaining(final int bytes) {
+        if (mBuffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(mBuffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            mBuffer.flip();
+            larger.put(mBuffer);
+            mBuffer = larger;
+        }
+    }
+
+    private void putVarLong(final long value) {
+
+        // zigzag, then 7 bits per byte with a continuation bit
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            mBuffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        mBuffer.put((byte) zigzag);
+    }
+
+
+    // getter and setter
+    public byte[] getBytes() {
+        return mBuffer.array();
+    }
+
+    public int getLength() {
+        return mBuffer.position();
+    }
+
+    public TrackingSegment getClosedSegment() {
+        return mClosedSegment;
+    }
+
+    public long getNumberOfFrames() {
+        return mNumberOfFrames;
+    }
+
+    public long getNumberOfEvents() {
+        return mNumberOfEvents;
+    }
+}
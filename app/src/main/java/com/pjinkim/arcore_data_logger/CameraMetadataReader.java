@@ -0,0 +1,205 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the camera metadata records written through {@link CameraMetadataLog} and the tracking
+ * segment index next to them. {@link #seek(long)} jumps to the byte offset of a segment, which
+ * always starts with a tracking record, so decoding can start there. A file cut off by a crash
+ * ends at the last complete record, and so do the zeros a file system can leave at the end of a
+ * file after a power loss, as no record kind is 0.
+ */
+public class CameraMetadataReader implements Closeable {
+
+    // properties
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    // current record and decoder state
+    private byte mKind;
+    private long mTimestamp = 0;
+    private long mCameraTimestamp = 0;
+    private long mBaseTimestamp = 0;
+    private long mBaseCameraTimestamp = 0;
+    private long mInterval = 0;
+    private long mCameraInterval = 0;
+    private int mTrackingState = -1;
+    private int mFailureReason = -1;
+    private final float[] mIntrinsics = new float[4];
+    private int mWidth = 0;
+    private int mHeight = 0;
+
+
+    // constructor
+    public CameraMetadataReader(final File file) throws IOException {
+        mChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        mBuffer.limit(0);
+        try {
+            require(CameraMetadataLog.HEADER_BYTES);
+        } catch (EOFException e) {
+            close();
+            throw new IOException("CameraMetadataReader: Missing header", e);
+        }
+        for (int i = 0; i < CameraMetadataLog.MAGIC.length; i++) {
+            if (mBuffer.get() != CameraMetadataLog.MAGIC[i]) {
+                close();
+                throw new IOException("CameraMetadataReader: Not a camera metadata file");
+            }
+        }
+        int version = mBuffer.getInt();
+        if (version != CameraMetadataLog.FORMAT_VERSION) {
+            close();
+            throw new IOException("CameraMetadataReader: Unsupported version " + version);
+        }
+    }
+
+
+    // methods
+    public static List<TrackingSegment> readSegments(final File file) throws IOException {
+        List<TrackingSegment> segments = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    segments.add(TrackingSegment.parse(line));
+                } catch (IllegalArgumentException e) {
+
+                    // a line cut off by a crash
+                    break;
+                }
+            }
+        }
+        return segments;
+    }
+
+    public void seek(final long byteOffset) throws IOException {
+        mChannel.position(byteOffset);
+        mBuffer.clear().limit(0);
+        mTrackingState = -1;
+        mFailureReason = -1;
+    }
+
+    public boolean next() throws IOException {
+        try {
+            require(1);
+            mKind = mBuffer.get();
+            if (mKind == 0) {
+                return false;
+            }
+            if (mKind == CameraMetadataLog.RECORD_FRAME) {
+                mInterval += getVarLong();
+                mCameraInterval += getVarLong();
+                mBaseTimestamp += mInterval;
+                mBaseCameraTimestamp += mCameraInterval;
+                mTimestamp = mBaseTimestamp;
+                mCameraTimestamp = mBaseCameraTimestamp;
+            } else if (mKind == CameraMetadataLog.RECORD_TRACKING) {
+                require(18);
+                mTimestamp = mBuffer.getLong();
+                mCameraTimestamp = mBuffer.getLong();
+                mBaseTimestamp = mTimestamp;
+                mBaseCameraTimestamp = mCameraTimestamp;
+                mInterval = 0;
+                mCameraInterval = 0;
+                mTrackingState = mBuffer.get();
+                mFailureReason = mBuffer.get();
+            } else if (mKind == CameraMetadataLog.RECORD_INTRINSICS) {
+                require(32);
+                mTimestamp = mBuffer.getLong();
+                for (int i = 0; i < 4; i++) {
+                    mIntrinsics[i] = mBuffer.getFloat();
+                }
+                mWidth = mBuffer.getInt();
+                mHeight = mBuffer.getInt();
+            } else {
+                throw new IOException("next: Unknown record kind " + mKind);
+            }
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private long getVarLong() throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            require(1);
+            byte b = mBuffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("getVarLong: Malformed varint");
+    }
+
+    private void require(final int bytes) throws IOException {
+        if (mBuffer.remaining() >= bytes) {
+            return;
+        }
+
+        // move the undecoded tail to the front and refill behind it; a cut-off record ends the file
+        mBuffer.compact();
+        while (mBuffer.position() < bytes) {
+            if (mChannel.read(mBuffer) < 0) {
+                mBuffer.flip();
+                throw new EOFException();
+            }
+        }
+        mBuffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+
+    // getter and setter
+    public byte getKind() {
+        return mKind;
+    }
+
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public long getCameraTimestamp() {
+        return mCameraTimestamp;
+    }
+
+    public int getTrackingState() {
+        return mTrackingState;
+    }
+
+    public int getFailureReason() {
+        return mFailureReason;
+    }
+
+    // fx fy cx cy of the CPU image
+    public float getIntrinsic(final int component) {
+        return mIntrinsics[component];
+    }
+
+    public int getImageWidth() {
+        return mWidth;
+    }
+
+    public int getImageHeight() {
+        return mHeight;
+    }
+}
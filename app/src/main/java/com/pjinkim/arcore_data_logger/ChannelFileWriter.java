@@ -0,0 +1,344 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Session file writer on top of a {@link FileChannel}.
+ *
+ * Characters are encoded in bulk and copied into one of two direct byte buffers; when the active
+ * buffer is full it is handed to the I/O executor and the caller keeps encoding into the other
+ * one, so encoding overlaps the write system call. Buffers are written at the real end of the
+ * file, so a file that is never closed, because the app crashed or was killed, ends after its last
+ * written buffer, at most with its last record cut off. The free space of the storage device is
+ * checked every few megabytes written.
+ *
+ * A high surrogate at the end of a write waits for the low surrogate of the next one, and is only
+ * written as a replacement if the file is closed or raw bytes are written before it gets one.
+ */
+public class ChannelFileWriter extends Writer implements ChecksummedOutput {
+
+    // properties
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final long DEFAULT_SPACE_CHECK_INTERVAL = 8 * 1024 * 1024;
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final ExecutorService mIoExecutor;
+    private final long mSpaceCheckInterval;
+    private final long mLowSpaceThreshold;
+    private final LowSpaceListener mLowSpaceListener;
+
+    // characters are encoded into a small heap array and copied into the direct buffers in bulk
+    private static final int CHAR_CHUNK = 1024;
+    private static final int SCRATCH_SIZE = 8192;
+    private final char[] mCharScratch = new char[CHAR_CHUNK];
+    private final CharBuffer mCharBuffer = CharBuffer.wrap(mCharScratch);
+    private int mPendingLength = 0;
+    private final byte[] mScratch = new byte[SCRATCH_SIZE];
+    private final ByteBuffer mScratchBuffer = ByteBuffer.wrap(mScratch);
+    private final CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final ByteBuffer[] mBuffers = new ByteBuffer[2];
+    private final Future<?>[] mPendingWrites = new Future<?>[2];
+    private int mActiveBuffer = 0;
+
+    // written only on the I/O executor
+    private final CRC32 mChecksum = new CRC32();
+    private long mFilePosition = 0;
+    private long mNextSpaceCheck = 0;
+    private boolean mIsLowSpaceReported = false;
+
+    private volatile long mBytesWritten = 0;
+    private volatile long mChecksumValue = 0;
+    private volatile IOException mWriteError = null;
+    private boolean mIsClosed = false;
+
+
+    // definition of 'LowSpaceListener' interface
+    public interface LowSpaceListener {
+        void onLowSpace(File file, long usableBytes);
+    }
+
+
+    // constructors
+    public ChannelFileWriter(final File file, final ExecutorService ioExecutor) throws IOException {
+        this(file, ioExecutor, DEFAULT_BUFFER_SIZE, DEFAULT_SPACE_CHECK_INTERVAL, 0, null);
+    }
+
+    public ChannelFileWriter(final File file, final ExecutorService ioExecutor, final int bufferSize, final long spaceCheckInterval,
+                             final long lowSpaceThreshold, final LowSpaceListener lowSpaceListener) throws IOException {
+        mFile = file;
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        mRandomAccessFile.setLength(0);
+        mChannel = mRandomAccessFile.getChannel();
+        mIoExecutor = ioExecutor;
+        mSpaceCheckInterval = spaceCheckInterval;
+        mLowSpaceThreshold = lowSpaceThreshold;
+        mLowSpaceListener = lowSpaceListener;
+        mBuffers[0] = ByteBuffer.allocateDirect(bufferSize);
+        mBuffers[1] = ByteBuffer.allocateDirect(bufferSize);
+        mChecksumValue = mChecksum.getValue();
+    }
+
+
+    // methods
+    public static boolean hasFreeSpace(final File folder, final long requiredBytes) {
+        return folder.getUsableSpace() >= requiredBytes;
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        mCharScratch[mPendingLength] = (char) c;
+        encodeCharScratch(mPendingLength + 1);
+    }
+
+    @Override
+    public void write(final char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int chunk = Math.min(len, CHAR_CHUNK - mPendingLength);
+            System.arraycopy(cbuf, off, mCharScratch, mPendingLength, chunk);
+            encodeCharScratch(mPendingLength + chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    @Override
+    public void write(final String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int chunk = Math.min(len, CHAR_CHUNK - mPendingLength);
+            str.getChars(off, off + chunk, mCharScratch, mPendingLength);
+            encodeCharScratch(mPendingLength + chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    public void writeBytes(final byte[] b, final int off, final int len) throws IOException {
+        encodePendingChar();
+        drainScratch();
+        putBytes(b, off, len);
+    }
+
+    private void encodeCharScratch(final int length) throws IOException {
+
+        // encode into the heap scratch array, draining it into the direct buffer when full
+        mCharBuffer.clear();
+        mCharBuffer.limit(length);
+        while (true) {
+            CoderResult result = mEncoder.encode(mCharBuffer, mScratchBuffer, false);
+            if (!result.isOverflow()) {
+                break;
+            }
+            drainScratch();
+        }
+
+        // a high surrogate at the end is kept at the start of the scratch array for the low surrogate of the next write
+        mPendingLength = mCharBuffer.remaining();
+        if (mPendingLength > 0) {
+            mCharScratch[0] = mCharBuffer.get();
+        }
+    }
+
+    private void encodePendingChar() throws IOException {
+
+        // a high surrogate that did not get its low surrogate is written as a replacement
+        if (mPendingLength == 0) {
+            return;
+        }
+        mCharBuffer.clear();
+        mCharBuffer.limit(mPendingLength);
+        while (mEncoder.encode(mCharBuffer, mScratchBuffer, true).isOverflow()) {
+            drainScratch();
+        }
+        mEncoder.reset();
+        mPendingLength = 0;
+    }
+
+    private void drainScratch() throws IOException {
+
+        // bulk copy the encoded bytes into the active direct buffer
+        putBytes(mScratch, 0, mScratchBuffer.position());
+        mScratchBuffer.clear();
+    }
+
+    private void putBytes(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ensureRemaining(1);
+            ByteBuffer buffer = mBuffers[mActiveBuffer];
+            int chunk = Math.min(len, buffer.remaining());
+            buffer.put(b, off, chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    private void ensureRemaining(final int bytes) throws IOException {
+        if (mBuffers[mActiveBuffer].remaining() < bytes) {
+            swapBuffers();
+        }
+    }
+
+    private void swapBuffers() throws IOException {
+        checkOpen();
+
+        // hand the active buffer to the I/O executor
+        final ByteBuffer fullBuffer = mBuffers[mActiveBuffer];
+        fullBuffer.flip();
+        mBytesWritten += fullBuffer.remaining();
+        mPendingWrites[mActiveBuffer] = mIoExecutor.submit(() -> writeBuffer(fullBuffer));
+
+        // continue in the other buffer once its previous write has completed
+        mActiveBuffer = 1 - mActiveBuffer;
+        awaitWrite(mActiveBuffer);
+        mBuffers[mActiveBuffer].clear();
+    }
+
+    private void writeBuffer(final ByteBuffer buffer) {
+        try {
+
+            // check the free space whenever the file has grown by another interval
+            if (mFilePosition >= mNextSpaceCheck) {
+                mNextSpaceCheck = mFilePosition + mSpaceCheckInterval;
+                checkLowSpace();
+            }
+
+            // checksum and write the whole buffer
+            ByteBuffer checksumView = buffer.duplicate();
+            mChecksum.update(checksumView);
+            mChecksumValue = mChecksum.getValue();
+            while (buffer.hasRemaining()) {
+                mFilePosition += mChannel.write(buffer, mFilePosition);
+            }
+        } catch (IOException e) {
+            mWriteError = e;
+        }
+    }
+
+    private void checkLowSpace() {
+        if ((mLowSpaceListener == null) || mIsLowSpaceReported) {
+            return;
+        }
+        long usableBytes = mFile.getUsableSpace();
+        if (usableBytes < mLowSpaceThreshold) {
+            mIsLowSpaceReported = true;
+            mLowSpaceListener.onLowSpace(mFile, usableBytes);
+        }
+    }
+
+    private void awaitWrite(final int index) throws IOException {
+        Future<?> pendingWrite = mPendingWrites[index];
+        if (pendingWrite != null) {
+            try {
+                pendingWrite.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("awaitWrite: Interrupted while writing " + mFile);
+            } catch (ExecutionException e) {
+                throw new IOException("awaitWrite: Cannot write " + mFile, e.getCause());
+            }
+            mPendingWrites[index] = null;
+        }
+        if (mWriteError != null) {
+            throw mWriteError;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (mIsClosed) {
+            throw new IOException("checkOpen: " + mFile + " is already closed.");
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+
+        // write out the partially filled buffer and wait for both buffers
+        drainScratch();
+        if (mBuffers[mActiveBuffer].position() > 0) {
+            swapBuffers();
+        }
+        awaitWrite(0);
+        awaitWrite(1);
+    }
+
+    @Override
+    public void sync() throws IOException {
+
+        // both buffers are in the file after the flush, so only the channel is left to force
+        checkOpen();
+        flush();
+        mChannel.force(false);
+    }
+
+    @Override
+    public void flushInBackground(final boolean isSynced) throws IOException {
+
+        // hand the partially filled buffer over, the force is queued behind its write on the same thread
+        checkOpen();
+        drainScratch();
+        if (mBuffers[mActiveBuffer].position() > 0) {
+            swapBuffers();
+        }
+        if (isSynced) {
+            mIoExecutor.execute(this::forceChannel);
+        }
+    }
+
+    private void forceChannel() {
+        try {
+            mChannel.force(false);
+        } catch (IOException e) {
+            mWriteError = e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mIsClosed) {
+            return;
+        }
+        try {
+            encodePendingChar();
+            flush();
+        } finally {
+            mIsClosed = true;
+            mChannel.close();
+            mRandomAccessFile.close();
+        }
+    }
+
+
+    // getter and setter
+    @Override
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    @Override
+    public long getChecksum() {
+        return mChecksumValue;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+}
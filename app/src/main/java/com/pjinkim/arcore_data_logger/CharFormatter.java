@@ -0,0 +1,119 @@
+package com.pjinkim.arcore_data_logger;
+
+/**
+ * Formats numbers into a reused char array, so that screen labels refreshed several times a
+ * second can be updated with TextView.setText(char[], int, int) without creating strings.
+ */
+public class CharFormatter {
+
+    // properties
+    private final char[] mChars;
+    private int mLength = 0;
+
+
+    // constructor
+    public CharFormatter(final int capacity) {
+        mChars = new char[capacity];
+    }
+
+
+    // methods
+    public CharFormatter reset() {
+        mLength = 0;
+        return this;
+    }
+
+    public CharFormatter append(final String text) {
+        int length = Math.min(text.length(), mChars.length - mLength);
+        text.getChars(0, length, mChars, mLength);
+        mLength += length;
+        return this;
+    }
+
+    public CharFormatter append(final char c) {
+        if (mLength < mChars.length) {
+            mChars[mLength++] = c;
+        }
+        return this;
+    }
+
+    public CharFormatter appendLong(long value, final int minDigits) {
+
+        // sign, then the digits written backwards into their final place, taken from the negative
+        // value with its negative remainders, as only the negative range also holds Long.MIN_VALUE
+        boolean isNegative = (value < 0);
+        if (!isNegative) {
+            value = -value;
+        }
+        int numberOfDigits = 1;
+        for (long rest = value / 10; rest < 0; rest /= 10) {
+            numberOfDigits++;
+        }
+        numberOfDigits = Math.max(numberOfDigits, minDigits);
+
+        // a number cut to its low-order digits would read as a different value, unlike cut text
+        int length = numberOfDigits + (isNegative ? 1 : 0);
+        if (length > mChars.length - mLength) {
+            throw new IllegalStateException("appendLong: " + length + " chars do not fit into the remaining " + (mChars.length - mLength));
+        }
+        if (isNegative) {
+            mChars[mLength++] = '-';
+        }
+        for (int i = numberOfDigits - 1; i >= 0; i--) {
+            mChars[mLength + i] = (char) ('0' - (value % 10));
+            value /= 10;
+        }
+        mLength += numberOfDigits;
+        return this;
+    }
+
+    public CharFormatter appendFixed(final double value, final int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return append(Double.isNaN(value) ? "NaN" : ((value > 0) ? "Infinity" : "-Infinity"));
+        }
+
+        // round once to the requested number of decimals, then print integer and fraction
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        long scaled = Math.round(Math.abs(value) * scale);
+        if ((value < 0) && (scaled != 0)) {
+            append('-');
+        }
+        appendLong(scaled / scale, 1);
+        if (decimals > 0) {
+            append('.');
+            appendLong(scaled % scale, decimals);
+        }
+        return this;
+    }
+
+    public CharFormatter appendBytes(final long bytes) {
+
+        // one decimal in the largest unit below 1024
+        if (bytes < 1024) {
+            return appendLong(bytes, 1).append(" B");
+        } else if (bytes < 1024L * 1024) {
+            return appendFixed(bytes / 1024.0, 1).append(" KB");
+        } else if (bytes < 1024L * 1024 * 1024) {
+            return appendFixed(bytes / (1024.0 * 1024), 1).append(" MB");
+        }
+        return appendFixed(bytes / (1024.0 * 1024 * 1024), 1).append(" GB");
+    }
+
+    @Override
+    public String toString() {
+        return new String(mChars, 0, mLength);
+    }
+
+
+    // getter and setter
+    public char[] getChars() {
+        return mChars;
+    }
+
+    public int length() {
+        return mLength;
+    }
+}
@@ -0,0 +1,75 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Output stream that keeps a running CRC32 and byte count of everything written through it.
+ */
+public class ChecksumOutputStream extends FilterOutputStream implements ChecksummedOutput {
+
+    // properties
+    private final CRC32 mChecksum = new CRC32();
+    private volatile long mBytesWritten = 0;
+    private volatile long mChecksumValue = 0;
+
+
+    // constructor
+    public ChecksumOutputStream(final OutputStream outputStream) {
+        super(outputStream);
+        mChecksumValue = mChecksum.getValue();
+    }
+
+
+    // methods
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        mChecksum.update(b);
+        mChecksumValue = mChecksum.getValue();
+        mBytesWritten++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        mChecksum.update(b, off, len);
+        mChecksumValue = mChecksum.getValue();
+        mBytesWritten += len;
+    }
+
+
+    @Override
+    public void sync() throws IOException {
+        flush();
+        if (out instanceof FileOutputStream) {
+            ((FileOutputStream) out).getFD().sync();
+        }
+    }
+
+    @Override
+    public void flushInBackground(final boolean isSynced) throws IOException {
+
+        // a plain stream has no I/O thread of its own
+        if (isSynced) {
+            sync();
+        } else {
+            flush();
+        }
+    }
+
+
+    // getter and setter
+    @Override
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    @Override
+    public long getChecksum() {
+        return mChecksumValue;
+    }
+}
@@ -0,0 +1,20 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.IOException;
+
+/**
+ * Byte count and CRC32 of the data written to one session file so far.
+ */
+public interface ChecksummedOutput {
+
+    long getBytesWritten();
+
+    long getChecksum();
+
+    // flushes and forces everything written so far onto the storage device
+    void sync() throws IOException;
+
+    // hands everything written so far to the I/O thread without waiting for it, and forces it onto
+    // the storage device there after it is written if 'isSynced'
+    void flushInBackground(boolean isSynced) throws IOException;
+}
@@ -7,32 +7,62 @@ import android.util.Log;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.security.KeyException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FileStreamer {
 
     // properties
     private final static String LOG_TAG = FileStreamer.class.getName();
 
+    public static final long LOW_SPACE_THRESHOLD = 200L * 1024 * 1024;
+
     private Context mContext;
-    private HashMap<String, BufferedWriter> mFileWriters = new HashMap<>();
+    private HashMap<String, Writer> mFileWriters = new HashMap<>();
+    private HashMap<String, ChecksummedOutput> mFileOutputs = new HashMap<>();
+    private HashMap<String, String> mFileNames = new HashMap<>();
+    private HashMap<String, Integer> mHeaderLengths = new HashMap<>();
+    private ArrayList<ChecksummedOutput> mOutputList = new ArrayList<>();
     private String mOutputFolder;
 
+    // files are written through 'ChannelFileWriter' on one shared I/O thread unless disabled
+    private boolean mUseChannelWriter;
+    private ExecutorService mIoExecutor = null;
+    private ChannelFileWriter.LowSpaceListener mLowSpaceListener = null;
+
+    // compressible text files are split into blocks compressed on a small worker pool when a codec is set
+    private BlockCodec mBlockCodec = null;
+    private int mNumberOfCompressThreads = 0;
+    private ExecutorService mCompressExecutor = null;
 
-    // constructor
+
+    // constructors
     public FileStreamer(Context mContext, final String mOutputFolder) {
+        this(mContext, mOutputFolder, true);
+    }
+
+    public FileStreamer(Context mContext, final String mOutputFolder, final boolean useChannelWriter) {
         this.mContext = mContext;
         this.mOutputFolder = mOutputFolder;
+        this.mUseChannelWriter = useChannelWriter;
     }
 
 
     // methods
     public void addFile(final String writerId, final String fileName) throws IOException {
+        addFile(writerId, fileName, false);
+    }
+
+    public void addFile(final String writerId, final String fileName, final boolean isCompressible) throws IOException {
 
         // check if there is a already generated text file
         if (mFileWriters.containsKey(writerId)) {
@@ -44,15 +74,55 @@ public class FileStreamer {
         Calendar fileTimestamp = Calendar.getInstance();
         String timeHeader = "# Created at " + fileTimestamp.getTime().toString() + " in Burnaby Canada \n";
 
-        // generate text file
-        BufferedWriter newWriter = createFile(mOutputFolder + "/" + fileName, timeHeader);
+        // generate text file, block compressed under its name with a suffix if enabled
+        Writer newWriter;
+        String outputFileName = fileName;
+        if (isCompressible && (mBlockCodec != null)) {
+            outputFileName = fileName + BlockCompressedWriter.FILE_SUFFIX;
+            newWriter = createCompressedFile(writerId, mOutputFolder + "/" + outputFileName, timeHeader);
+        } else {
+            newWriter = createFile(writerId, mOutputFolder + "/" + fileName, timeHeader, mUseChannelWriter);
+        }
+        mFileWriters.put(writerId, newWriter);
+        mFileNames.put(writerId, outputFileName);
+        mHeaderLengths.put(writerId, timeHeader.length());
+    }
+
+    public ChannelFileWriter addBinaryFile(final String writerId, final String fileName, final byte[] header) throws IOException {
+
+        // check if there is a already generated file
+        if (mFileWriters.containsKey(writerId)) {
+            Log.w(LOG_TAG, "addBinaryFile: " + writerId + " already exist.");
+            return (ChannelFileWriter) mFileWriters.get(writerId);
+        }
+
+        // binary files always go through 'ChannelFileWriter' for its raw byte path
+        ChannelFileWriter newWriter = (ChannelFileWriter) createFile(writerId, mOutputFolder + "/" + fileName, null, true);
+        newWriter.writeBytes(header, 0, header.length);
         mFileWriters.put(writerId, newWriter);
+        mFileNames.put(writerId, fileName);
+        return newWriter;
     }
 
-    private BufferedWriter createFile(final String path, final String timeHeader) throws IOException {
+    private Writer createFile(final String writerId, final String path, final String timeHeader, final boolean useChannelWriter) throws IOException {
 
         File file = new File(path);
-        BufferedWriter writer = new BufferedWriter((new FileWriter(file)));
+        Writer writer;
+        if (useChannelWriter) {
+            if (mIoExecutor == null) {
+                mIoExecutor = Executors.newSingleThreadExecutor();
+            }
+            ChannelFileWriter channelWriter = new ChannelFileWriter(file, mIoExecutor, ChannelFileWriter.DEFAULT_BUFFER_SIZE,
+                    ChannelFileWriter.DEFAULT_SPACE_CHECK_INTERVAL, LOW_SPACE_THRESHOLD, mLowSpaceListener);
+            mFileOutputs.put(writerId, channelWriter);
+            mOutputList.add(channelWriter);
+            writer = channelWriter;
+        } else {
+            ChecksumOutputStream stream = new ChecksumOutputStream(new FileOutputStream(file));
+            mFileOutputs.put(writerId, stream);
+            mOutputList.add(stream);
+            writer = new BufferedWriter(new OutputStreamWriter(stream));
+        }
 
         Intent scanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
         scanIntent.setData(Uri.fromFile(file));
@@ -64,21 +134,80 @@ public class FileStreamer {
         return writer;
     }
 
+    private Writer createCompressedFile(final String writerId, final String path, final String timeHeader) throws IOException {
+
+        // blocks are compressed on the worker pool and appended in order on the shared I/O thread
+        File file = new File(path);
+        if (mIoExecutor == null) {
+            mIoExecutor = Executors.newSingleThreadExecutor();
+        }
+        if (mCompressExecutor == null) {
+            mCompressExecutor = Executors.newFixedThreadPool(mNumberOfCompressThreads);
+        }
+        BlockCompressedWriter compressedWriter = new BlockCompressedWriter(file, mBlockCodec, mCompressExecutor, mIoExecutor,
+                BlockCompressedWriter.DEFAULT_BLOCK_SIZE, mNumberOfCompressThreads * 2);
+        mFileOutputs.put(writerId, compressedWriter);
+        mOutputList.add(compressedWriter);
+
+        Intent scanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
+        scanIntent.setData(Uri.fromFile(file));
+        mContext.sendBroadcast(scanIntent);
+
+        // the header goes into the first block instead of being flushed on its own
+        compressedWriter.append(timeHeader);
+        return compressedWriter;
+    }
+
     public String getOutputFolder() {
         return mOutputFolder;
     }
 
-    public BufferedWriter getFileWriter(final String writerId) {
+    public Writer getFileWriter(final String writerId) {
         return mFileWriters.get(writerId);
     }
 
+    public int getHeaderLength(final String writerId) {
+
+        // records of a text file start after its one-line ASCII header
+        Integer headerLength = mHeaderLengths.get(writerId);
+        return (headerLength == null) ? 0 : headerLength;
+    }
+
+    public void setBlockCodec(final BlockCodec blockCodec, final int numberOfCompressThreads) {
+        mBlockCodec = blockCodec;
+        mNumberOfCompressThreads = Math.max(1, numberOfCompressThreads);
+    }
+
+    public void setLowSpaceListener(final ChannelFileWriter.LowSpaceListener lowSpaceListener) {
+        mLowSpaceListener = lowSpaceListener;
+    }
+
+    public void reportFileStatistics(final SessionManifest manifest) {
+
+        // byte sizes and checksums cover what has been flushed to the files so far
+        for (String writerId : mFileOutputs.keySet()) {
+            ChecksummedOutput output = mFileOutputs.get(writerId);
+            manifest.setFileStatistics(mFileNames.get(writerId), output.getBytesWritten(), output.getChecksum());
+        }
+    }
+
+    public long getBytesWritten() {
+
+        // indexed loop: called every frame for the telemetry, so no iterator garbage
+        long bytesWritten = 0;
+        for (int i = 0; i < mOutputList.size(); i++) {
+            bytesWritten += mOutputList.get(i).getBytesWritten();
+        }
+        return bytesWritten;
+    }
+
     public void addRecord(final long timestamp, final String writerId, final int numValues, final float[] values) throws IOException, KeyException {
 
         // execute the block with only one thread
         synchronized (this) {
 
-            // get BufferedWriter of 'writerId'
-            BufferedWriter writer = getFileWriter(writerId);
+            // get Writer of 'writerId'
+            Writer writer = getFileWriter(writerId);
             if (writer == null) {
                 throw new KeyException("addRecord: " + writerId + " not found.");
             }
@@ -94,14 +223,80 @@ public class FileStreamer {
         }
     }
 
+    public void flushFiles(final boolean isSynced) throws IOException {
+
+        // hand the buffered records to the I/O thread, which writes them and forces them onto the
+        // storage device if 'isSynced' in order behind the earlier writes, so the caller never waits on the device
+        synchronized (this) {
+            for (Writer eachWriter : mFileWriters.values()) {
+                if (!(eachWriter instanceof ChecksummedOutput)) {
+                    eachWriter.flush();
+                }
+            }
+            for (int i = 0; i < mOutputList.size(); i++) {
+                mOutputList.get(i).flushInBackground(isSynced);
+            }
+        }
+    }
+
+    public void execute(final Runnable task) {
+
+        // background work shares the single I/O thread, so it is queued behind the pending file writes
+        synchronized (this) {
+            if (mIoExecutor == null) {
+                mIoExecutor = Executors.newSingleThreadExecutor();
+            }
+            if (!mIoExecutor.isShutdown()) {
+                mIoExecutor.execute(task);
+                return;
+            }
+        }
+
+        // the files are already closed, there is nothing left to wait for
+        task.run();
+    }
+
     public void endFiles() throws IOException {
 
         // execute the block with only one thread
         synchronized (this) {
-            for (BufferedWriter eachWriter : mFileWriters.values()) {
-                eachWriter.flush();
-                eachWriter.close();
+
+            // every writer is closed even if another one fails, and the first failure is reported
+            IOException closeError = null;
+            try {
+                for (Writer eachWriter : mFileWriters.values()) {
+                    try {
+                        eachWriter.flush();
+                        eachWriter.close();
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "endFiles: Cannot close a file: " + e.getMessage());
+                        if (closeError == null) {
+                            closeError = e;
+                        }
+                        closeQuietly(eachWriter);
+                    }
+                }
+            } finally {
+                if (mIoExecutor != null) {
+                    mIoExecutor.shutdown();
+                }
+                if (mCompressExecutor != null) {
+                    mCompressExecutor.shutdown();
+                }
+            }
+            if (closeError != null) {
+                throw closeError;
             }
         }
     }
+
+    private static void closeQuietly(final Writer writer) {
+
+        // a writer whose flush failed still releases its file
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // already reported
+        }
+    }
 }
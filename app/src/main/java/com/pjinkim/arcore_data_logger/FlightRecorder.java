@@ -0,0 +1,272 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Keeps the most recent poses, tracking states and point observations in fixed-size primitive
+ * ring buffers, so that only the window around an event has to be written to disk.
+ *
+ * A trigger at time t (a tracking failure reason change, or an explicit {@link #trigger}) selects
+ * the window [t - preTrigger, t + postTrigger]; once the stream has passed its end a
+ * {@link Snapshot} of the window is handed out for writing. Triggers that arrive while a window
+ * is still open are merged into it. Not thread-safe: call it from the AR thread only.
+ */
+public class FlightRecorder {
+
+    // properties
+    public static final String CAUSE_TRACKING_FAILURE = "tracking_failure";
+
+    private final long mPreTriggerNanos;
+    private final long mPostTriggerNanos;
+
+    // frame ring
+    private final int mFrameCapacity;
+    private final long[] mFrameTimestamps;
+    private final float[] mFramePoses;
+    private final byte[] mTrackingStates;
+    private final byte[] mFailureReasons;
+    private final long[] mFramePointStarts;
+    private final int[] mFramePointCounts;
+    private long mFrameHead = 0;
+
+    // point observation ring
+    private final int mPointCapacity;
+    private final int[] mPointIds;
+    private final float[] mPointValues;
+    private long mPointHead = 0;
+
+    // pending trigger
+    private long mTriggerTimestamp = -1;
+    private String mTriggerCause = null;
+    private int mLastFailureReason = -1;
+    private int mNumberOfSnapshots = 0;
+
+
+    // definition of 'Snapshot' class
+    public static final class Snapshot {
+
+        // properties
+        private final String mCause;
+        private final long mTriggerTimestamp;
+        private final int mNumberOfFrames;
+        private final long[] mTimestamps;
+        private final float[] mPoses;
+        private final byte[] mTrackingStates;
+        private final byte[] mFailureReasons;
+        private final int[] mPointCounts;
+        private final int[] mPointIds;
+        private final float[] mPointValues;
+
+
+        // constructor
+        private Snapshot(final String cause, final long triggerTimestamp, final int numberOfFrames, final int numberOfPoints) {
+            mCause = cause;
+            mTriggerTimestamp = triggerTimestamp;
+            mNumberOfFrames = numberOfFrames;
+            mTimestamps = new long[numberOfFrames];
+            mPoses = new float[numberOfFrames * 7];
+            mTrackingStates = new byte[numberOfFrames];
+            mFailureReasons = new byte[numberOfFrames];
+            mPointCounts = new int[numberOfFrames];
+            mPointIds = new int[numberOfPoints];
+            mPointValues = new float[numberOfPoints * 4];
+        }
+
+
+        // getter and setter
+        public String getCause() {
+            return mCause;
+        }
+
+        public long getTriggerTimestamp() {
+            return mTriggerTimestamp;
+        }
+
+        public int getNumberOfFrames() {
+            return mNumberOfFrames;
+        }
+
+        public long getTimestamp(final int frame) {
+            return mTimestamps[frame];
+        }
+
+        // qx qy qz qw tx ty tz of the frame
+        public float getPose(final int frame, final int component) {
+            return mPoses[frame * 7 + component];
+        }
+
+        public int getTrackingState(final int frame) {
+            return mTrackingStates[frame];
+        }
+
+        public int getFailureReason(final int frame) {
+            return mFailureReasons[frame];
+        }
+
+        // point observations of all frames, in frame order
+        public int getPointCount(final int frame) {
+            return mPointCounts[frame];
+        }
+
+        public int getNumberOfPoints() {
+            return mPointIds.length;
+        }
+
+        public int getPointId(final int point) {
+            return mPointIds[point];
+        }
+
+        // x y z confidence of the observation
+        public float getPointValue(final int point, final int component) {
+            return mPointValues[point * 4 + component];
+        }
+    }
+
+
+    // constructor
+    public FlightRecorder(final int frameCapacity, final int pointCapacity, final long preTriggerNanos, final long postTriggerNanos) {
+        mFrameCapacity = frameCapacity;
+        mFrameTimestamps = new long[frameCapacity];
+        mFramePoses = new float[frameCapacity * 7];
+        mTrackingStates = new byte[frameCapacity];
+        mFailureReasons = new byte[frameCapacity];
+        mFramePointStarts = new long[frameCapacity];
+        mFramePointCounts = new int[frameCapacity];
+        mPointCapacity = pointCapacity;
+        mPointIds = new int[pointCapacity];
+        mPointValues = new float[pointCapacity * 4];
+        mPreTriggerNanos = preTriggerNanos;
+        mPostTriggerNanos = postTriggerNanos;
+    }
+
+
+    // methods
+    public void reset() {
+        mFrameHead = 0;
+        mPointHead = 0;
+        mTriggerTimestamp = -1;
+        mTriggerCause = null;
+        mLastFailureReason = -1;
+    }
+
+    public void record(final long timestamp, final float qx, final float qy, final float qz, final float qw,
+                       final float tx, final float ty, final float tz,
+                       final int trackingState, final int failureReason, final IntBuffer ids, final FloatBuffer points) {
+
+        // 1) overwrite the oldest frame
+        int slot = (int) (mFrameHead % mFrameCapacity);
+        mFrameTimestamps[slot] = timestamp;
+        mFramePoses[slot * 7] = qx;
+        mFramePoses[slot * 7 + 1] = qy;
+        mFramePoses[slot * 7 + 2] = qz;
+        mFramePoses[slot * 7 + 3] = qw;
+        mFramePoses[slot * 7 + 4] = tx;
+        mFramePoses[slot * 7 + 5] = ty;
+        mFramePoses[slot * 7 + 6] = tz;
+        mTrackingStates[slot] = (byte) trackingState;
+        mFailureReasons[slot] = (byte) failureReason;
+
+        // 2) overwrite the oldest point observations
+        int count = (ids == null) ? 0 : Math.min(ids.remaining(), mPointCapacity);
+        mFramePointStarts[slot] = mPointHead;
+        mFramePointCounts[slot] = count;
+        for (int i = 0; i < count; i++) {
+            int pointSlot = (int) ((mPointHead + i) % mPointCapacity);
+            mPointIds[pointSlot] = ids.get(ids.position() + i);
+            for (int j = 0; j < 4; j++) {
+                mPointValues[pointSlot * 4 + j] = points.get(points.position() + i * 4 + j);
+            }
+        }
+        mPointHead += count;
+        mFrameHead++;
+
+        // 3) a change of the tracking failure reason is an event
+        if ((mLastFailureReason >= 0) && (failureReason != mLastFailureReason)) {
+            trigger(timestamp, CAUSE_TRACKING_FAILURE);
+        }
+        mLastFailureReason = failureReason;
+    }
+
+    public void trigger(final long timestamp, final String cause) {
+        if (mTriggerTimestamp < 0) {
+            mTriggerTimestamp = timestamp;
+            mTriggerCause = cause;
+        }
+    }
+
+    public Snapshot takeSnapshotIfDue(final long timestamp) {
+        if ((mTriggerTimestamp < 0) || (timestamp < mTriggerTimestamp + mPostTriggerNanos)) {
+            return null;
+        }
+        return takeSnapshot();
+    }
+
+    public Snapshot takeSnapshot() {
+        if (mTriggerTimestamp < 0) {
+            return null;
+        }
+
+        // 1) frames still in the ring that fall into the window
+        long windowStart = mTriggerTimestamp - mPreTriggerNanos;
+        long windowEnd = mTriggerTimestamp + mPostTriggerNanos;
+        long oldestFrame = Math.max(0, mFrameHead - mFrameCapacity);
+        long oldestPoint = Math.max(0, mPointHead - mPointCapacity);
+        long firstFrame = -1;
+        int numberOfFrames = 0;
+        int numberOfPoints = 0;
+        for (long frame = oldestFrame; frame < mFrameHead; frame++) {
+            int slot = (int) (frame % mFrameCapacity);
+            long timestamp = mFrameTimestamps[slot];
+            if ((timestamp < windowStart) || (timestamp > windowEnd)) {
+                continue;
+            }
+            if (firstFrame < 0) {
+                firstFrame = frame;
+            }
+            numberOfFrames++;
+            numberOfPoints += availablePoints(slot, oldestPoint);
+        }
+
+        // 2) copy them out, skipping observations the point ring has already overwritten
+        Snapshot snapshot = new Snapshot(mTriggerCause, mTriggerTimestamp, numberOfFrames, numberOfPoints);
+        int pointIndex = 0;
+        for (int i = 0; i < numberOfFrames; i++) {
+            int slot = (int) ((firstFrame + i) % mFrameCapacity);
+            snapshot.mTimestamps[i] = mFrameTimestamps[slot];
+            System.arraycopy(mFramePoses, slot * 7, snapshot.mPoses, i * 7, 7);
+            snapshot.mTrackingStates[i] = mTrackingStates[slot];
+            snapshot.mFailureReasons[i] = mFailureReasons[slot];
+            int count = availablePoints(slot, oldestPoint);
+            long start = mFramePointStarts[slot] + mFramePointCounts[slot] - count;
+            snapshot.mPointCounts[i] = count;
+            for (int k = 0; k < count; k++) {
+                int pointSlot = (int) ((start + k) % mPointCapacity);
+                snapshot.mPointIds[pointIndex] = mPointIds[pointSlot];
+                System.arraycopy(mPointValues, pointSlot * 4, snapshot.mPointValues, pointIndex * 4, 4);
+                pointIndex++;
+            }
+        }
+
+        mTriggerTimestamp = -1;
+        mTriggerCause = null;
+        mNumberOfSnapshots++;
+        return snapshot;
+    }
+
+    private int availablePoints(final int slot, final long oldestPoint) {
+        long start = mFramePointStarts[slot];
+        long end = start + mFramePointCounts[slot];
+        return (int) Math.max(0, end - Math.max(start, oldestPoint));
+    }
+
+
+    // getter and setter
+    public boolean isTriggered() {
+        return (mTriggerTimestamp >= 0);
+    }
+
+    public int getNumberOfSnapshots() {
+        return mNumberOfSnapshots;
+    }
+}
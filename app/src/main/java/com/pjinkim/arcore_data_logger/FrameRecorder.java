@@ -0,0 +1,207 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * The recording stages of one session on plain values: the per-frame records of
+ * ARCoreSession.onUpdateFrame and the point cloud export of its endFiles. ARCoreSession feeds it
+ * from the ARCore frame and the soak harness from synthetic frames, so both run the same code and
+ * only the ARCore and Android calls differ.
+ *
+ * The recorder owns the encoders and the keyframe selection of its session, updates the counters
+ * of the session manifest, and hands every encoded record to an {@link Output}.
+ */
+public class FrameRecorder {
+
+    // properties
+    private static final float KEYFRAME_TRANSLATION = 0.10f;
+    private static final float KEYFRAME_ROTATION = (float) Math.toRadians(10.0);
+    private static final float KEYFRAME_COVISIBILITY = 0.6f;
+    private static final float PLANE_POSITION_TOLERANCE = 0.02f;
+    private static final float PLANE_ANGLE_TOLERANCE = (float) Math.toRadians(2.0);
+    private static final float PLANE_EXTENT_TOLERANCE = 0.02f;
+    private static final float PLANE_POLYGON_TOLERANCE = 0.02f;
+    private static final float POINT_OBSERVATION_STEP = 0.001f;
+    private static final float MIN_COLORED_CONFIDENCE = 0.5f;
+    private static final int OUTLIER_NEIGHBORS = 8;
+    private static final double OUTLIER_STD_RATIO = 2.0;
+
+    private final Output mOutput;
+    private final SessionManifest mSessionManifest;
+    private final AccumulatedPointCloud mPointCloud;
+    private final String[] mTrackingStateNames;
+    private final String[] mFailureReasonNames;
+
+    private final KeyframeSelector mKeyframeSelector = new KeyframeSelector(KEYFRAME_TRANSLATION, KEYFRAME_ROTATION, KEYFRAME_COVISIBILITY);
+    private final VisibilityCuller mVisibilityCuller = new VisibilityCuller();
+    private final CameraMetadataLog mCameraMetadataLog;
+    private final PlaneChangeLog mPlaneChangeLog = new PlaneChangeLog(PLANE_POSITION_TOLERANCE, PLANE_ANGLE_TOLERANCE,
+            PLANE_EXTENT_TOLERANCE, PLANE_POLYGON_TOLERANCE);
+    private final PointObservationLog mPointObservationLog = new PointObservationLog(POINT_OBSERVATION_STEP);
+    private long mNumberOfReportedPlaneRecords = 0;
+
+
+    // definition of 'Output' interface
+    public interface Output {
+        void addARCorePoseRecord(long timestamp, float qx, float qy, float qz, float qw, float tx, float ty, float tz) throws IOException;
+
+        void addARCoreCameraMetadataRecords(CameraMetadataLog cameraMetadataLog) throws IOException;
+
+        void addARCoreTrackingSegmentRecord(TrackingSegment trackingSegment) throws IOException;
+
+        void addARCorePointObservationRecords(PointObservationLog pointObservationLog) throws IOException;
+
+        void addARCoreKeyframeRecord(int keyframeId, long timestamp) throws IOException;
+
+        void addARCorePlaneRecords(PlaneChangeLog planeChangeLog) throws IOException;
+
+        void addARCorePointRecord(float pointX, float pointY, float pointZ, float r, float g, float b) throws IOException;
+    }
+
+
+    // definition of 'PixelSampler' interface
+    public interface PixelSampler {
+
+        // color of a pixel of the keyframe image as 0xAARRGGBB
+        int getPixel(int x, int y);
+    }
+
+
+    // constructor
+    public FrameRecorder(final Output output, final SessionManifest sessionManifest, final AccumulatedPointCloud pointCloud,
+                         final String[] trackingStateNames, final String[] failureReasonNames) {
+        mOutput = output;
+        mSessionManifest = sessionManifest;
+        mPointCloud = pointCloud;
+        mTrackingStateNames = trackingStateNames;
+        mFailureReasonNames = failureReasonNames;
+        mCameraMetadataLog = new CameraMetadataLog(trackingStateNames, failureReasonNames);
+    }
+
+
+    // methods
+    public void recordPose(final long timestamp, final float qx, final float qy, final float qz, final float qw,
+                           final float tx, final float ty, final float tz, final int trackingState, final int failureReason) throws IOException {
+
+        // 1) 6-DoF sensor pose, and the frame in the manifest
+        mOutput.addARCorePoseRecord(timestamp, qx, qy, qz, qw, tx, ty, tz);
+        mSessionManifest.addRecords("ARCore_sensor_pose", 1);
+        mSessionManifest.updateTimestamp(timestamp);
+        mSessionManifest.addTrackingFrame(mTrackingStateNames[trackingState], mFailureReasonNames[failureReason]);
+    }
+
+    public void recordCameraMetadata(final long timestamp, final long cameraTimestamp, final int trackingState, final int failureReason,
+                                     final float fx, final float fy, final float cx, final float cy,
+                                     final int imageWidth, final int imageHeight) throws IOException {
+
+        // 2) camera metadata, with tracking transitions and intrinsics only on change
+        long numberOfEvents = mCameraMetadataLog.getNumberOfEvents();
+        boolean isSegmentClosed = mCameraMetadataLog.addFrame(timestamp, cameraTimestamp, trackingState, failureReason,
+                fx, fy, cx, cy, imageWidth, imageHeight);
+        mOutput.addARCoreCameraMetadataRecords(mCameraMetadataLog);
+        mSessionManifest.addRecords("ARCore_camera_metadata", 1 + mCameraMetadataLog.getNumberOfEvents() - numberOfEvents);
+        if (isSegmentClosed) {
+            mOutput.addARCoreTrackingSegmentRecord(mCameraMetadataLog.getClosedSegment());
+            mSessionManifest.addRecords("ARCore_tracking_segments", 1);
+        }
+    }
+
+    public void recordPointObservations(final long timestamp, final IntBuffer pointIds, final FloatBuffer points) throws IOException {
+
+        // 3) raw point observations of this frame
+        mPointObservationLog.addFrame(timestamp, pointIds, points);
+        mSessionManifest.addRecords("ARCore_point_observations", pointIds.remaining());
+        mOutput.addARCorePointObservationRecords(mPointObservationLog);
+    }
+
+    public boolean recordKeyframe(final boolean isTracking, final long timestamp, final float qx, final float qy, final float qz, final float qw,
+                                  final float tx, final float ty, final float tz, final IntBuffer pointIds) throws IOException {
+
+        // 4) keyframes from device motion and point covisibility, only while tracking
+        if (!isTracking || !mKeyframeSelector.isKeyframe(timestamp, qx, qy, qz, qw, tx, ty, tz, pointIds)) {
+            return false;
+        }
+        mOutput.addARCoreKeyframeRecord(mKeyframeSelector.getKeyframeId(), timestamp);
+        mSessionManifest.addRecords("ARCore_keyframes", 1);
+        return true;
+    }
+
+    public int colorizePoints(final IntBuffer pointIds, final FloatBuffer points, final float[] viewMatrix, final float[] projectionMatrix,
+                              final int imageWidth, final int imageHeight, final PixelSampler pixelSampler) throws IOException {
+
+        // 5) cull points outside the view frustum or hidden behind closer points, and color the rest from the keyframe image
+        mVisibilityCuller.setViewProjection(viewMatrix, projectionMatrix);
+        int numberOfVisiblePoints = mVisibilityCuller.cull(points, MIN_COLORED_CONFIDENCE, imageWidth, imageHeight);
+        for (int k = 0; k < numberOfVisiblePoints; k++) {
+            int i = mVisibilityCuller.getVisibleIndex(k);
+            int pixel = pixelSampler.getPixel(mVisibilityCuller.getVisiblePixelX(k), mVisibilityCuller.getVisiblePixelY(k));
+            mPointCloud.appendPointCloud(pointIds.get(i), points.get(i * 4), points.get(i * 4 + 1), points.get(i * 4 + 2),
+                    (pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+        }
+        return numberOfVisiblePoints;
+    }
+
+    public void recordPlanes() throws IOException {
+
+        // 6) the plane records added to the plane log during this frame
+        if (mPlaneChangeLog.getLength() > 0) {
+            mOutput.addARCorePlaneRecords(mPlaneChangeLog);
+            mSessionManifest.addRecords("ARCore_planes", mPlaneChangeLog.getNumberOfRecords() - mNumberOfReportedPlaneRecords);
+        }
+        mNumberOfReportedPlaneRecords = mPlaneChangeLog.getNumberOfRecords();
+    }
+
+    public void finish() throws IOException {
+
+        // index the tracking segment that was still open
+        TrackingSegment trackingSegment = mCameraMetadataLog.finish();
+        if (trackingSegment != null) {
+            mOutput.addARCoreTrackingSegmentRecord(trackingSegment);
+            mSessionManifest.addRecords("ARCore_tracking_segments", 1);
+        }
+    }
+
+    public boolean[] filterOutliers() {
+
+        // statistical outlier removal with k nearest neighbors over the accumulated points
+        StatisticalOutlierFilter outlierFilter = new StatisticalOutlierFilter(OUTLIER_NEIGHBORS, OUTLIER_STD_RATIO);
+        return outlierFilter.filter(new PointCloudIndex(mPointCloud));
+    }
+
+    public int exportPointCloud(final boolean[] inliers) throws IOException {
+
+        // the inliers as text records, one point at a time
+        float[] point = new float[6];
+        int numberOfSavedPoints = 0;
+        for (int i = 0; i < mPointCloud.getNumberOfFeatures(); i++) {
+            if (!inliers[i]) {
+                continue;
+            }
+            mPointCloud.getPoint(i, point);
+            mOutput.addARCorePointRecord(point[0], point[1], point[2], point[3], point[4], point[5]);
+            numberOfSavedPoints++;
+        }
+        mSessionManifest.addRecords("ARCore_point_cloud", numberOfSavedPoints);
+        return numberOfSavedPoints;
+    }
+
+
+    // getter and setter
+    public PlaneChangeLog getPlaneChangeLog() {
+        return mPlaneChangeLog;
+    }
+
+    public PointObservationLog getPointObservationLog() {
+        return mPointObservationLog;
+    }
+
+    public int getKeyframeId() {
+        return mKeyframeSelector.getKeyframeId();
+    }
+
+    public int getNumberOfKeyframes() {
+        return mKeyframeSelector.getNumberOfKeyframes();
+    }
+}
@@ -0,0 +1,282 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encodes camera images of selected frames on a bounded pool of worker threads.
+ *
+ * The AR thread only copies the YUV planes into one of a fixed number of pooled NV21 buffers and
+ * hands it over; a worker encodes it into {@code <timestamp>.<extension>} and returns the buffer to
+ * the pool. When every buffer is still waiting for an encoder the frame is dropped and counted, so
+ * memory never grows with a backlog. Under memory pressure {@link #setBufferLimit(int)} lowers the
+ * number of buffers; free buffers are released at once and busy ones when their image is done. On
+ * {@link #close()} the finished images are listed in
+ * {@link #INDEX_FILE_NAME}, one {@code timestamp file_name bytes} line each in timestamp order.
+ */
+public class ImageExportPool {
+
+    // properties
+    public static final String INDEX_FILE_NAME = "images.txt";
+
+    private final File mFolder;
+    private final Encoder mEncoder;
+    private final int mQuality;
+    private final ExecutorService mEncodeExecutor;
+    private final ArrayBlockingQueue<ImageBuffer> mFreeBuffers;
+    private final AtomicInteger mNumberOfBuffers;
+    private volatile int mBufferLimit;
+
+    // written images, appended by the workers
+    private final List<IndexEntry> mIndex = Collections.synchronizedList(new ArrayList<IndexEntry>());
+    private final AtomicLong mNumberOfDropped = new AtomicLong(0);
+    private final AtomicLong mNumberOfFailed = new AtomicLong(0);
+    private final AtomicLong mEncodeNanos = new AtomicLong(0);
+
+
+    // definition of 'Encoder' interface
+    public interface Encoder {
+        void encode(ImageBuffer image, int quality, OutputStream outputStream) throws IOException;
+
+        String getExtension();
+    }
+
+
+    // definition of 'ImageBuffer' class
+    public static class ImageBuffer {
+
+        // properties
+        private byte[] mNv21 = new byte[0];
+        private long mTimestamp;
+        private int mWidth;
+        private int mHeight;
+
+
+        // methods
+        public void putYuv(final long timestamp, final int width, final int height,
+                           final ByteBuffer yPlane, final int yRowStride,
+                           final ByteBuffer uPlane, final ByteBuffer vPlane, final int uvRowStride, final int uvPixelStride) {
+
+            // grows only for a larger image size, so a pooled buffer is allocated once per session
+            int size = width * height * 3 / 2;
+            if (mNv21.length < size) {
+                mNv21 = new byte[size];
+            }
+            mTimestamp = timestamp;
+            mWidth = width;
+            mHeight = height;
+
+            // 1) luma rows without their row padding, leaving the caller's plane position alone
+            ByteBuffer luma = yPlane.duplicate();
+            for (int row = 0; row < height; row++) {
+                luma.position(row * yRowStride);
+                luma.get(mNv21, row * width, width);
+            }
+
+            // 2) chroma at half resolution, interleaved V then U as in NV21
+            int offset = width * height;
+            for (int row = 0; row < height / 2; row++) {
+                for (int column = 0; column < width / 2; column++) {
+                    int index = row * uvRowStride + column * uvPixelStride;
+                    mNv21[offset++] = vPlane.get(index);
+                    mNv21[offset++] = uPlane.get(index);
+                }
+            }
+        }
+
+
+        // getter and setter
+        public byte[] getNv21() {
+            return mNv21;
+        }
+
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+    }
+
+
+    // definition of 'IndexEntry' class
+    private static class IndexEntry {
+        final long mTimestamp;
+        final String mFileName;
+        final long mBytes;
+
+        IndexEntry(final long timestamp, final String fileName, final long bytes) {
+            mTimestamp = timestamp;
+            mFileName = fileName;
+            mBytes = bytes;
+        }
+    }
+
+
+    // constructor
+    public ImageExportPool(final File folder, final Encoder encoder, final int quality, final int numberOfThreads,
+                           final int numberOfBuffers) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("ImageExportPool: Cannot create " + folder);
+        }
+        mFolder = folder;
+        mEncoder = encoder;
+        mQuality = quality;
+        mEncodeExecutor = Executors.newFixedThreadPool(numberOfThreads);
+        mFreeBuffers = new ArrayBlockingQueue<>(numberOfBuffers);
+        for (int i = 0; i < numberOfBuffers; i++) {
+            mFreeBuffers.add(new ImageBuffer());
+        }
+        mNumberOfBuffers = new AtomicInteger(numberOfBuffers);
+        mBufferLimit = numberOfBuffers;
+    }
+
+
+    // methods
+    public ImageBuffer acquireBuffer() {
+
+        // never blocks the AR thread: no free buffer means the encoders are behind
+        ImageBuffer buffer = mFreeBuffers.poll();
+        if ((buffer == null) && reserveBuffer()) {
+            buffer = new ImageBuffer();
+        }
+        if (buffer == null) {
+            mNumberOfDropped.incrementAndGet();
+        }
+        return buffer;
+    }
+
+    private boolean reserveBuffer() {
+
+        // buffers released under memory pressure are allocated again once the limit is raised
+        int numberOfBuffers = mNumberOfBuffers.get();
+        while (numberOfBuffers < mBufferLimit) {
+            if (mNumberOfBuffers.compareAndSet(numberOfBuffers, numberOfBuffers + 1)) {
+                return true;
+            }
+            numberOfBuffers = mNumberOfBuffers.get();
+        }
+        return false;
+    }
+
+    private void releaseBuffer(final ImageBuffer buffer) {
+
+        // back into the pool, unless the pool is over its limit
+        int numberOfBuffers = mNumberOfBuffers.get();
+        while (numberOfBuffers > mBufferLimit) {
+            if (mNumberOfBuffers.compareAndSet(numberOfBuffers, numberOfBuffers - 1)) {
+                return;
+            }
+            numberOfBuffers = mNumberOfBuffers.get();
+        }
+        mFreeBuffers.add(buffer);
+    }
+
+    public void setBufferLimit(final int bufferLimit) {
+
+        // never above the capacity of the free queue; the free buffers beyond the limit go at once
+        mBufferLimit = Math.max(0, Math.min(bufferLimit, mFreeBuffers.remainingCapacity() + mFreeBuffers.size()));
+        ImageBuffer buffer;
+        while ((mNumberOfBuffers.get() > mBufferLimit) && ((buffer = mFreeBuffers.poll()) != null)) {
+            releaseBuffer(buffer);
+        }
+    }
+
+    public void submit(final ImageBuffer buffer) {
+        mEncodeExecutor.execute(() -> {
+            long startTime = System.nanoTime();
+            long timestamp = buffer.getTimestamp();
+            String fileName = timestamp + "." + mEncoder.getExtension();
+            File file = new File(mFolder, fileName);
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+                mEncoder.encode(buffer, mQuality, outputStream);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+
+                // a bad frame or a bitmap the heap cannot hold must not leave an unlisted partial image
+                mNumberOfFailed.incrementAndGet();
+                file.delete();
+                return;
+            } finally {
+
+                // the buffer may be refilled by the AR thread from here on
+                mEncodeNanos.addAndGet(System.nanoTime() - startTime);
+                releaseBuffer(buffer);
+            }
+            mIndex.add(new IndexEntry(timestamp, fileName, file.length()));
+        });
+    }
+
+    public void close() throws IOException {
+
+        // finish the images already handed over, then write the index in timestamp order
+        mEncodeExecutor.shutdown();
+        try {
+            if (!mEncodeExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                throw new IOException("close: Image encoders did not finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("close: Interrupted while waiting for image encoders", e);
+        }
+        List<IndexEntry> entries = new ArrayList<>(mIndex);
+        Collections.sort(entries, (a, b) -> Long.compare(a.mTimestamp, b.mTimestamp));
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(mFolder, INDEX_FILE_NAME)), StandardCharsets.US_ASCII)) {
+            for (IndexEntry entry : entries) {
+                writer.write(String.format(Locale.US, "%d %s %d \n", entry.mTimestamp, entry.mFileName, entry.mBytes));
+            }
+        }
+    }
+
+
+    // getter and setter
+    public File getFolder() {
+        return mFolder;
+    }
+
+    public int getNumberOfBuffers() {
+        return mNumberOfBuffers.get();
+    }
+
+    public int getBufferLimit() {
+        return mBufferLimit;
+    }
+
+    public long getNumberOfWritten() {
+        return mIndex.size();
+    }
+
+    public long getNumberOfDropped() {
+        return mNumberOfDropped.get();
+    }
+
+    public long getNumberOfFailed() {
+        return mNumberOfFailed.get();
+    }
+
+    public double getMeanEncodeMillis() {
+        long numberOfEncoded = mIndex.size() + mNumberOfFailed.get();
+        return (numberOfEncoded == 0) ? 0 : mEncodeNanos.get() / 1e6 / numberOfEncoded;
+    }
+}
@@ -0,0 +1,99 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing int to int hash map with linear probing, used for point ID to slot lookups
+ * without boxing. Values must be non-negative; {@link #get(int)} returns -1 for a missing key.
+ */
+class IntIntHashMap {
+
+    // properties
+    private static final int EMPTY = -1;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] mKeys;
+    private int[] mValues;
+    private int mSize = 0;
+    private int mMask;
+
+
+    // constructor
+    IntIntHashMap(final int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+
+    // methods
+    int get(final int key) {
+        int slot = mix(key) & mMask;
+        while (mValues[slot] != EMPTY) {
+            if (mKeys[slot] == key) {
+                return mValues[slot];
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return EMPTY;
+    }
+
+    void put(final int key, final int value) {
+        int slot = mix(key) & mMask;
+        while (mValues[slot] != EMPTY) {
+            if (mKeys[slot] == key) {
+                mValues[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        mSize++;
+        if (mSize > mKeys.length * LOAD_FACTOR) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        int[] oldKeys = mKeys;
+        int[] oldValues = mValues;
+        allocate(oldKeys.length * 2);
+        mSize = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        mKeys = new int[capacity];
+        mValues = new int[capacity];
+        Arrays.fill(mValues, EMPTY);
+        mMask = capacity - 1;
+    }
+
+    private static int mix(final int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+
+    // getter and setter
+    int size() {
+        return mSize;
+    }
+
+    // entries by table position for iteration; an unused position has the value -1
+    int capacity() {
+        return mKeys.length;
+    }
+
+    int keyAt(final int position) {
+        return mKeys[position];
+    }
+
+    int valueAt(final int position) {
+        return mValues[position];
+    }
+}
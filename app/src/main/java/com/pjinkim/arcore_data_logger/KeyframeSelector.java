@@ -0,0 +1,152 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Decides whether the current frame is a keyframe by comparing it with the last keyframe.
+ *
+ * A frame becomes a keyframe when the device moved more than the translation threshold, turned
+ * more than the rotation threshold, or when fewer than the covisibility ratio of the last
+ * keyframe's point IDs are still observed. Point IDs are compared as sorted primitive arrays, so
+ * the selector does not allocate once its buffers have grown to the typical frame size.
+ */
+public class KeyframeSelector {
+
+    // properties
+    private final float mTranslationThreshold;
+    private final float mRotationThreshold;
+    private final float mCovisibilityThreshold;
+
+    private boolean mHasKeyframe = false;
+    private int mNumberOfKeyframes = 0;
+    private long mKeyframeTimestamp = 0;
+    private final float[] mKeyframePose = new float[7];
+
+    private int[] mKeyframeIds = new int[1024];
+    private int mNumberOfKeyframeIds = 0;
+    private int[] mFrameIds = new int[1024];
+    private int mNumberOfFrameIds = 0;
+    private float mLastCovisibility = 1.0f;
+
+
+    // constructor
+    public KeyframeSelector(final float translationThreshold, final float rotationThreshold, final float covisibilityThreshold) {
+        mTranslationThreshold = translationThreshold;
+        mRotationThreshold = rotationThreshold;
+        mCovisibilityThreshold = covisibilityThreshold;
+    }
+
+
+    // methods
+    public void reset() {
+        mHasKeyframe = false;
+        mNumberOfKeyframes = 0;
+        mNumberOfKeyframeIds = 0;
+        mLastCovisibility = 1.0f;
+    }
+
+    public boolean isKeyframe(final long timestamp, final float qx, final float qy, final float qz, final float qw,
+                              final float tx, final float ty, final float tz, final IntBuffer pointIds) {
+
+        // sort the point IDs of the current frame
+        loadFrameIds(pointIds);
+
+        // the first frame is always a keyframe
+        boolean isKeyframe = !mHasKeyframe;
+        if (mHasKeyframe) {
+
+            // translation from the last keyframe
+            float dx = tx - mKeyframePose[4];
+            float dy = ty - mKeyframePose[5];
+            float dz = tz - mKeyframePose[6];
+            float translation = (float) Math.sqrt((dx * dx) + (dy * dy) + (dz * dz));
+
+            // rotation angle from the last keyframe
+            float dot = (qx * mKeyframePose[0]) + (qy * mKeyframePose[1]) + (qz * mKeyframePose[2]) + (qw * mKeyframePose[3]);
+            float rotation = (float) (2.0 * Math.acos(Math.min(1.0, Math.abs(dot))));
+
+            // ratio of the last keyframe's points that are still observed
+            mLastCovisibility = covisibility();
+
+            isKeyframe = (translation > mTranslationThreshold) || (rotation > mRotationThreshold)
+                    || (mLastCovisibility < mCovisibilityThreshold);
+        }
+
+        // remember this frame as the new reference
+        if (isKeyframe) {
+            mHasKeyframe = true;
+            mNumberOfKeyframes++;
+            mKeyframeTimestamp = timestamp;
+            mKeyframePose[0] = qx;
+            mKeyframePose[1] = qy;
+            mKeyframePose[2] = qz;
+            mKeyframePose[3] = qw;
+            mKeyframePose[4] = tx;
+            mKeyframePose[5] = ty;
+            mKeyframePose[6] = tz;
+            int[] swap = mKeyframeIds;
+            mKeyframeIds = mFrameIds;
+            mFrameIds = swap;
+            mNumberOfKeyframeIds = mNumberOfFrameIds;
+        }
+        return isKeyframe;
+    }
+
+    private void loadFrameIds(final IntBuffer pointIds) {
+        int count = (pointIds == null) ? 0 : pointIds.remaining();
+        if (mFrameIds.length < count) {
+            mFrameIds = new int[Math.max(count, mFrameIds.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            mFrameIds[i] = pointIds.get(pointIds.position() + i);
+        }
+        Arrays.sort(mFrameIds, 0, count);
+        mNumberOfFrameIds = count;
+    }
+
+    private float covisibility() {
+
+        // a keyframe without points cannot lose track of any
+        if (mNumberOfKeyframeIds == 0) {
+            return 1.0f;
+        }
+
+        // merge-count the intersection of the two sorted ID arrays
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while ((i < mNumberOfKeyframeIds) && (j < mNumberOfFrameIds)) {
+            int keyframeId = mKeyframeIds[i];
+            int frameId = mFrameIds[j];
+            if (keyframeId == frameId) {
+                shared++;
+                i++;
+                j++;
+            } else if (keyframeId < frameId) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (float) shared / mNumberOfKeyframeIds;
+    }
+
+
+    // getter and setter
+    public int getNumberOfKeyframes() {
+        return mNumberOfKeyframes;
+    }
+
+    public int getKeyframeId() {
+        return mNumberOfKeyframes - 1;
+    }
+
+    public long getKeyframeTimestamp() {
+        return mKeyframeTimestamp;
+    }
+
+    public float getLastCovisibility() {
+        return mLastCovisibility;
+    }
+}
@@ -0,0 +1,28 @@
+package com.pjinkim.arcore_data_logger;
+
+/**
+ * Wire format of the live pose/point stream (big-endian).
+ *
+ * Every frame starts with an 8 byte header: uint16 magic, uint8 type, uint8 reserved and
+ * uint32 payload length. A pose batch payload is uint32 count followed by count records of
+ * int64 timestamp (ns) and float32 qx qy qz qw tx ty tz. A point batch payload is int64
+ * timestamp, uint32 count and count records of int32 point ID and float32 x y z confidence.
+ */
+public final class LiveStreamProtocol {
+
+    // properties
+    public static final short MAGIC = 0x4C53;
+    public static final int HEADER_BYTES = 8;
+
+    public static final byte TYPE_POSE_BATCH = 1;
+    public static final byte TYPE_POINT_BATCH = 2;
+
+    public static final int POSE_RECORD_BYTES = 8 + 7 * 4;
+    public static final int POINT_RECORD_BYTES = 4 + 4 * 4;
+    public static final int MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+
+
+    // constructor
+    private LiveStreamProtocol() {
+    }
+}
@@ -0,0 +1,304 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional live stream of poses and point clouds to a workstation over a non-blocking socket.
+ *
+ * The AR thread never blocks on the network: poses go into a lock-free single-producer ring
+ * that drops new poses when full, and point clouds go into a triple buffer where an unsent
+ * cloud is replaced (coalesced) by the next one. A sender thread batches everything that is
+ * pending into {@link LiveStreamProtocol} frames and reconnects after a lost connection.
+ *
+ * The receiver's host name is resolved on the sender thread before every connection attempt, so
+ * the sink can be created on the UI thread; a host that does not resolve is retried like a lost
+ * connection, and an address the socket rejects disables the stream instead of the app.
+ */
+public class LiveStreamSink {
+
+    // properties
+    private static final int POSE_RING_CAPACITY = 1024;
+    private static final int INITIAL_POINT_CAPACITY = 4096;
+    private static final long RECONNECT_INTERVAL_MILLIS = 1000;
+    private static final long SELECT_TIMEOUT_MILLIS = 10;
+
+    private final InetSocketAddress mAddress;
+    private final Thread mSenderThread;
+    private final AtomicBoolean mIsRunning = new AtomicBoolean(true);
+
+    // pose ring written by the AR thread and read by the sender thread
+    private final long[] mPoseTimestamps = new long[POSE_RING_CAPACITY];
+    private final float[] mPoseValues = new float[POSE_RING_CAPACITY * 7];
+    private final AtomicLong mPoseHead = new AtomicLong(0);
+    private final AtomicLong mPoseTail = new AtomicLong(0);
+
+    // triple-buffered point clouds: the AR thread fills 'back', the sender reads 'front'
+    private final PointBatch[] mPointBatches = {new PointBatch(), new PointBatch(), new PointBatch()};
+    private int mBackIndex = 0;
+    private int mFrontIndex = 1;
+    private final AtomicInteger mMiddle = new AtomicInteger(2);
+    private static final int DIRTY_BIT = 4;
+
+    // counters
+    private final AtomicLong mDroppedPoses = new AtomicLong(0);
+    private final AtomicLong mCoalescedPointBatches = new AtomicLong(0);
+    private final AtomicLong mBytesSent = new AtomicLong(0);
+    private final AtomicLong mUnresolvedAttempts = new AtomicLong(0);
+    private volatile boolean mIsConnected = false;
+    private volatile boolean mIsDisabled = false;
+
+    // sender thread state
+    private ByteBuffer mOutput = ByteBuffer.allocateDirect(256 * 1024);
+
+
+    // definition of 'PointBatch' class
+    private static class PointBatch {
+        long mTimestamp;
+        int mCount;
+        int[] mIds = new int[INITIAL_POINT_CAPACITY];
+        float[] mPoints = new float[INITIAL_POINT_CAPACITY * 4];
+    }
+
+
+    // constructor
+    public LiveStreamSink(final String host, final int port) {
+        mAddress = InetSocketAddress.createUnresolved(host, port);
+        mSenderThread = new Thread(this::runSender, "live-stream-sender");
+        mSenderThread.setDaemon(true);
+        mSenderThread.start();
+    }
+
+
+    // methods
+    public boolean offerPose(final long timestamp, final float qx, final float qy, final float qz, final float qw,
+                             final float tx, final float ty, final float tz) {
+
+        // drop the pose if the ring is full
+        long head = mPoseHead.get();
+        if (head - mPoseTail.get() >= POSE_RING_CAPACITY) {
+            mDroppedPoses.incrementAndGet();
+            return false;
+        }
+        int slot = (int) (head % POSE_RING_CAPACITY);
+        mPoseTimestamps[slot] = timestamp;
+        mPoseValues[slot * 7] = qx;
+        mPoseValues[slot * 7 + 1] = qy;
+        mPoseValues[slot * 7 + 2] = qz;
+        mPoseValues[slot * 7 + 3] = qw;
+        mPoseValues[slot * 7 + 4] = tx;
+        mPoseValues[slot * 7 + 5] = ty;
+        mPoseValues[slot * 7 + 6] = tz;
+        mPoseHead.lazySet(head + 1);
+        return true;
+    }
+
+    public void offerPoints(final long timestamp, final IntBuffer ids, final FloatBuffer points) {
+
+        // copy the cloud into the back buffer
+        PointBatch batch = mPointBatches[mBackIndex];
+        int count = ids.remaining();
+        if (batch.mIds.length < count) {
+            batch.mIds = new int[count * 2];
+            batch.mPoints = new float[count * 8];
+        }
+        for (int i = 0; i < count; i++) {
+            batch.mIds[i] = ids.get(ids.position() + i);
+        }
+        for (int i = 0; i < count * 4; i++) {
+            batch.mPoints[i] = points.get(points.position() + i);
+        }
+        batch.mTimestamp = timestamp;
+        batch.mCount = count;
+
+        // publish it; a cloud the sender has not taken yet is coalesced away
+        int previous = mMiddle.getAndSet(mBackIndex | DIRTY_BIT);
+        if ((previous & DIRTY_BIT) != 0) {
+            mCoalescedPointBatches.incrementAndGet();
+        }
+        mBackIndex = previous & ~DIRTY_BIT;
+    }
+
+    public void close() {
+        mIsRunning.set(false);
+        try {
+            mSenderThread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runSender() {
+        long nextConnectTime = 0;
+        while (mIsRunning.get()) {
+            long now = System.currentTimeMillis();
+            if (now < nextConnectTime) {
+                sleep(SELECT_TIMEOUT_MILLIS);
+                continue;
+            }
+
+            // look the host up here, never on the thread that created the sink
+            InetSocketAddress address = new InetSocketAddress(mAddress.getHostString(), mAddress.getPort());
+            if (address.isUnresolved()) {
+                mUnresolvedAttempts.incrementAndGet();
+                nextConnectTime = System.currentTimeMillis() + RECONNECT_INTERVAL_MILLIS;
+                continue;
+            }
+            try (Selector selector = Selector.open(); SocketChannel channel = SocketChannel.open()) {
+                channel.configureBlocking(false);
+                channel.connect(address);
+                channel.register(selector, SelectionKey.OP_CONNECT);
+                stream(selector, channel);
+            } catch (IOException e) {
+
+                // the workstation went away: discard the partial frame and retry later
+                mOutput.clear();
+                mOutput.flip();
+            } catch (RuntimeException e) {
+
+                // an address the socket cannot use will not get better: stop streaming, keep recording
+                mIsConnected = false;
+                mIsDisabled = true;
+                return;
+            }
+            mIsConnected = false;
+            nextConnectTime = System.currentTimeMillis() + RECONNECT_INTERVAL_MILLIS;
+        }
+    }
+
+    private void stream(final Selector selector, final SocketChannel channel) throws IOException {
+        mOutput.clear();
+        mOutput.flip();
+        while (mIsRunning.get()) {
+            selector.select(SELECT_TIMEOUT_MILLIS);
+            SelectionKey key = channel.keyFor(selector);
+            if (!mIsConnected) {
+                if (key.isConnectable() && channel.finishConnect()) {
+                    mIsConnected = true;
+                    key.interestOps(0);
+                }
+                selector.selectedKeys().clear();
+                continue;
+            }
+            selector.selectedKeys().clear();
+
+            // refill the output with every pending pose and the latest point cloud
+            if (!mOutput.hasRemaining()) {
+                mOutput.clear();
+                encodePoses();
+                encodeLatestPoints();
+                mOutput.flip();
+            }
+
+            // write what the socket accepts and wait for writability for the rest
+            if (mOutput.hasRemaining()) {
+                mBytesSent.addAndGet(channel.write(mOutput));
+                key.interestOps(mOutput.hasRemaining() ? SelectionKey.OP_WRITE : 0);
+            }
+        }
+    }
+
+    private void encodePoses() {
+        long tail = mPoseTail.get();
+        long head = mPoseHead.get();
+        int maxRecords = (mOutput.remaining() - LiveStreamProtocol.HEADER_BYTES - 4) / LiveStreamProtocol.POSE_RECORD_BYTES;
+        int count = (int) Math.min(head - tail, maxRecords);
+        if (count <= 0) {
+            return;
+        }
+        writeHeader(LiveStreamProtocol.TYPE_POSE_BATCH, 4 + count * LiveStreamProtocol.POSE_RECORD_BYTES);
+        mOutput.putInt(count);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((tail + i) % POSE_RING_CAPACITY);
+            mOutput.putLong(mPoseTimestamps[slot]);
+            for (int j = 0; j < 7; j++) {
+                mOutput.putFloat(mPoseValues[slot * 7 + j]);
+            }
+        }
+        mPoseTail.lazySet(tail + count);
+    }
+
+    private void encodeLatestPoints() {
+
+        // take the newest published cloud, if there is one
+        if ((mMiddle.get() & DIRTY_BIT) == 0) {
+            return;
+        }
+        int previous = mMiddle.getAndSet(mFrontIndex);
+        mFrontIndex = previous & ~DIRTY_BIT;
+        PointBatch batch = mPointBatches[mFrontIndex];
+
+        // grow the output buffer for unusually large clouds
+        int payloadBytes = 8 + 4 + batch.mCount * LiveStreamProtocol.POINT_RECORD_BYTES;
+        if (mOutput.remaining() < LiveStreamProtocol.HEADER_BYTES + payloadBytes) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(mOutput.position() + LiveStreamProtocol.HEADER_BYTES + payloadBytes);
+            mOutput.flip();
+            larger.put(mOutput);
+            mOutput = larger;
+        }
+        writeHeader(LiveStreamProtocol.TYPE_POINT_BATCH, payloadBytes);
+        mOutput.putLong(batch.mTimestamp);
+        mOutput.putInt(batch.mCount);
+        for (int i = 0; i < batch.mCount; i++) {
+            mOutput.putInt(batch.mIds[i]);
+            mOutput.putFloat(batch.mPoints[i * 4]);
+            mOutput.putFloat(batch.mPoints[i * 4 + 1]);
+            mOutput.putFloat(batch.mPoints[i * 4 + 2]);
+            mOutput.putFloat(batch.mPoints[i * 4 + 3]);
+        }
+    }
+
+    private void writeHeader(final byte type, final int payloadBytes) {
+        mOutput.putShort(LiveStreamProtocol.MAGIC);
+        mOutput.put(type);
+        mOutput.put((byte) 0);
+        mOutput.putInt(payloadBytes);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    // getter and setter
+    public boolean isConnected() {
+        return mIsConnected;
+    }
+
+    public boolean isDisabled() {
+        return mIsDisabled;
+    }
+
+    public long getUnresolvedAttempts() {
+        return mUnresolvedAttempts.get();
+    }
+
+    public long getDroppedPoses() {
+        return mDroppedPoses.get();
+    }
+
+    public long getCoalescedPointBatches() {
+        return mCoalescedPointBatches.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    public int getQueueDepth() {
+        return (int) (mPoseHead.get() - mPoseTail.get());
+    }
+}
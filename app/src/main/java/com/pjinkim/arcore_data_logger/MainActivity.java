@@ -12,6 +12,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
@@ -49,6 +50,22 @@ public class MainActivity extends AppCompatActivity {
 
     private TextView mLabelNumberFeatures, mLabelUpdateRate;
     private TextView mLabelTrackingStatus, mLabelTrackingFailureReason;
+    private TextView mLabelIoStatus;
+
+    // telemetry is rendered from one reused snapshot and reused char arrays
+    private static final TrackingState[] TRACKING_STATES = TrackingState.values();
+    private static final TrackingFailureReason[] TRACKING_FAILURE_REASONS = TrackingFailureReason.values();
+    private final SessionTelemetry.Snapshot mTelemetrySnapshot = new SessionTelemetry.Snapshot();
+    private final CharFormatter mNumberFeaturesText = new CharFormatter(16);
+    private final CharFormatter mUpdateRateText = new CharFormatter(16);
+    private final CharFormatter mIoStatusText = new CharFormatter(64);
+    private int mDisplayedSequence = -1;
+    private final Runnable mDisplayRunnable = new Runnable() {
+        @Override
+        public void run() {
+            displayARCoreInformation();
+        }
+    };
 
     private Button mStartStopButton;
     private TextView mLabelInterfaceTime;
@@ -75,6 +92,41 @@ public class MainActivity extends AppCompatActivity {
         // setup sessions
         mARCoreSession = new ARCoreSession(this);
 
+        // live streaming target, e.g. 'adb shell am start -n com.pjinkim.arcore_data_logger/.MainActivity -e live_stream_host 192.168.0.10 --ei live_stream_port 5555'
+        String liveStreamHost = getIntent().getStringExtra("live_stream_host");
+        if (liveStreamHost != null) {
+            mARCoreSession.setLiveStreamTarget(liveStreamHost, getIntent().getIntExtra("live_stream_port", 5555));
+        }
+
+        // block-compress the pose and point cloud text files with deflate at this level (1-9, off by default)
+        mARCoreSession.setCompressionLevel(getIntent().getIntExtra("compression_level", 0));
+
+        // save the camera image of every keyframe as 'jpeg' or 'png', e.g. '-e keyframe_image_format jpeg --ei keyframe_image_quality 90'
+        String keyframeImageFormat = getIntent().getStringExtra("keyframe_image_format");
+        if (keyframeImageFormat != null) {
+            mARCoreSession.setKeyframeImageFormat(keyframeImageFormat, getIntent().getIntExtra("keyframe_image_quality", 90));
+        }
+
+        // also save the final point cloud octree-coded with leaves of this size, e.g. '--ef point_cloud_octree_leaf_mm 1'
+        mARCoreSession.setPointCloudOctreeLeafSize(getIntent().getFloatExtra("point_cloud_octree_leaf_mm", 0) / 1000);
+
+        // flight recorder mode keeps the last seconds in memory; a long press on the button saves them
+        int flightRecorderSeconds = getIntent().getIntExtra("flight_recorder_seconds", 0);
+        if (flightRecorderSeconds > 0) {
+            mARCoreSession.setFlightRecorderSeconds(flightRecorderSeconds);
+            mStartStopButton.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View view) {
+                    if (!mIsRecording.get()) {
+                        return false;
+                    }
+                    mARCoreSession.triggerFlightRecorder();
+                    showToast("Flight record triggered.");
+                    return true;
+                }
+            });
+        }
+
 
         // battery power setting
         PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
@@ -93,6 +145,30 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
         if (!hasPermissions(this, REQUIRED_PERMISSIONS)) {
             requestPermissions(REQUIRED_PERMISSIONS, REQUEST_CODE_ANDROID);
+        } else if (!mIsRecording.get()) {
+
+            // open the files of the next session in the background while idle
+            mARCoreSession.prepareNextSession();
+        }
+    }
+
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        // degrade the recording step by step rather than lose the whole session to the low memory killer
+        if (mARCoreSession != null) {
+            mARCoreSession.onTrimMemory(level);
+        }
+    }
+
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        if (mARCoreSession != null) {
+            mARCoreSession.onTrimMemory(MemoryPressurePolicy.LOW_MEMORY);
         }
     }
 
@@ -100,8 +176,17 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         if (mIsRecording.get()) {
-            stopRecording();
+
+            // the files are still finished in the background after the session has shut down
+            mARCoreSession.stopSession(new Runnable() {
+                @Override
+                public void run() {
+                    mIsRecording.set(false);
+                }
+            });
         }
+        mARCoreSession.discardPreparedSession();
+        mARCoreSession.shutdown();
         if (mWakeLock.isHeld()) {
             mWakeLock.release();
         }
@@ -114,7 +199,7 @@ public class MainActivity extends AppCompatActivity {
         if (!mIsRecording.get()) {
 
             // start recording sensor measurements when button is pressed
-            startRecording();
+            startRecording(SystemClock.elapsedRealtimeNanos());
 
             // start interface timer on display
             mSecondCounter = 0;
@@ -138,20 +223,22 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
-    private void startRecording() {
+    private void startRecording(long startRequestNanos) {
 
-        // output directory for text files
-        String outputFolder = null;
-        try {
-            OutputDirectoryManager folder = new OutputDirectoryManager("", "R_pjinkim_ARCore");
-            outputFolder = folder.getOutputDirectory();
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "startRecording: Cannot create output folder.");
-            e.printStackTrace();
-        }
+        // start ARCore session with the writers prepared while idle if they are ready
+        if (!mARCoreSession.startPreparedSession(startRequestNanos)) {
 
-        // start ARCore session
-        mARCoreSession.startSession(outputFolder);
+            // output directory for text files
+            String outputFolder = null;
+            try {
+                OutputDirectoryManager folder = new OutputDirectoryManager("", "R_pjinkim_ARCore");
+                outputFolder = folder.getOutputDirectory();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "startRecording: Cannot create output folder.");
+                e.printStackTrace();
+            }
+            mARCoreSession.startSession(outputFolder, startRequestNanos);
+        }
         mIsRecording.set(true);
 
         // update Start/Stop button UI
@@ -171,13 +258,19 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void run() {
 
-                // stop ARCore session
-                mARCoreSession.stopSession();
-                mIsRecording.set(false);
-
-                // update screen UI and button
-                showToast("Recording stops!");
-                resetUI();
+                // stop ARCore session, the files are finished in the background with the button disabled
+                mStartStopButton.setEnabled(false);
+                mARCoreSession.stopSession(new Runnable() {
+                    @Override
+                    public void run() {
+                        mIsRecording.set(false);
+                        mARCoreSession.prepareNextSession();
+
+                        // update screen UI and button
+                        showToast("Recording stops!");
+                        resetUI();
+                    }
+                });
             }
         });
     }
@@ -201,6 +294,7 @@ public class MainActivity extends AppCompatActivity {
                 mLabelTrackingStatus.setText("N/A");
                 mLabelTrackingFailureReason.setText("N/A");
                 mLabelUpdateRate.setText("N/A");
+                mLabelIoStatus.setText("N/A");
 
                 mStartStopButton.setEnabled(true);
                 mStartStopButton.setText(R.string.start_title);
@@ -283,6 +377,7 @@ public class MainActivity extends AppCompatActivity {
         mLabelTrackingStatus = (TextView) findViewById(R.id.label_tracking_status);
         mLabelTrackingFailureReason = (TextView) findViewById(R.id.label_tracking_failure_reason);
         mLabelUpdateRate = (TextView) findViewById(R.id.label_update_rate);
+        mLabelIoStatus = (TextView) findViewById(R.id.label_io_status);
 
         mStartStopButton = (Button) findViewById(R.id.button_start_stop);
         mLabelInterfaceTime = (TextView) findViewById(R.id.label_interface_time);
@@ -291,60 +386,58 @@ public class MainActivity extends AppCompatActivity {
 
     private void displayARCoreInformation() {
 
-        // get ARCore tracking information
-        int numberOfFeatures = mARCoreSession.getNumberOfFeatures();
-        TrackingState trackingState = mARCoreSession.getTrackingState();
-        TrackingFailureReason trackingFailureReason =  mARCoreSession.getTrackingFailureReason();
-        double updateRate = mARCoreSession.getUpdateRate();
+        // read a consistent telemetry snapshot and redraw only after a new frame was published
+        mARCoreSession.getTelemetry().read(mTelemetrySnapshot);
+        if ((mTelemetrySnapshot.getSequence() != mDisplayedSequence) && (mTelemetrySnapshot.getTrackingState() >= 0)) {
+            mDisplayedSequence = mTelemetrySnapshot.getSequence();
+
+            // update interface screen labels from reused char arrays
+            mNumberFeaturesText.reset().appendLong(mTelemetrySnapshot.getNumberOfFeatures(), 5);
+            mLabelNumberFeatures.setText(mNumberFeaturesText.getChars(), 0, mNumberFeaturesText.length());
+            mLabelTrackingStatus.setText(trackingStateText(TRACKING_STATES[mTelemetrySnapshot.getTrackingState()]));
+            mLabelTrackingFailureReason.setText(trackingFailureReasonText(TRACKING_FAILURE_REASONS[mTelemetrySnapshot.getTrackingFailureReason()]));
+            mUpdateRateText.reset().appendFixed(mTelemetrySnapshot.getUpdateRate(), 3).append(" Hz");
+            mLabelUpdateRate.setText(mUpdateRateText.getChars(), 0, mUpdateRateText.length());
+            mIoStatusText.reset().appendBytes(mTelemetrySnapshot.getBytesWritten())
+                    .append("  Q ").appendLong(mTelemetrySnapshot.getQueueDepth(), 1)
+                    .append("  D ").appendLong(mTelemetrySnapshot.getNumberOfDrops(), 1);
+            mLabelIoStatus.setText(mIoStatusText.getChars(), 0, mIoStatusText.length());
+        }
 
-        // update current screen (activity)
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
+        // determine display update rate (100 ms)
+        final long displayInterval = 100;
+        mHandler.postDelayed(mDisplayRunnable, displayInterval);
+    }
 
-                // determine TrackingState text
-                String ARCoreTrackingState = "";
-                if (trackingState == TrackingState.PAUSED) {
-                    ARCoreTrackingState = "PAUSED";
-                } else if (trackingState == TrackingState.STOPPED) {
-                    ARCoreTrackingState = "STOPPED";
-                } else if (trackingState == TrackingState.TRACKING) {
-                    ARCoreTrackingState = "TRACKING";
-                } else {
-                    ARCoreTrackingState = "ERROR?";
-                }
 
-                // determine TrackingFailureReason text
-                String ARCoreTrackingFailureReason = "";
-                if (trackingFailureReason == TrackingFailureReason.BAD_STATE) {
-                    ARCoreTrackingFailureReason = "BAD STATE";
-                } else if (trackingFailureReason == TrackingFailureReason.EXCESSIVE_MOTION) {
-                    ARCoreTrackingFailureReason = "FAST MOTION";
-                } else if (trackingFailureReason == TrackingFailureReason.INSUFFICIENT_FEATURES) {
-                    ARCoreTrackingFailureReason = "LOW FEATURES";
-                } else if (trackingFailureReason == TrackingFailureReason.INSUFFICIENT_LIGHT) {
-                    ARCoreTrackingFailureReason = "LOW LIGHT";
-                } else if (trackingFailureReason == TrackingFailureReason.NONE) {
-                    ARCoreTrackingFailureReason = "NONE";
-                } else {
-                    ARCoreTrackingFailureReason = "ERROR?";
-                }
+    private static String trackingStateText(final TrackingState trackingState) {
 
-                // update interface screen labels
-                mLabelNumberFeatures.setText(String.format(Locale.US, "%05d", numberOfFeatures));
-                mLabelTrackingStatus.setText(ARCoreTrackingState);
-                mLabelTrackingFailureReason.setText(ARCoreTrackingFailureReason);
-                mLabelUpdateRate.setText(String.format(Locale.US, "%.3f Hz", updateRate));
-            }
-        });
+        // determine TrackingState text
+        if (trackingState == TrackingState.PAUSED) {
+            return "PAUSED";
+        } else if (trackingState == TrackingState.STOPPED) {
+            return "STOPPED";
+        } else if (trackingState == TrackingState.TRACKING) {
+            return "TRACKING";
+        }
+        return "ERROR?";
+    }
 
-        // determine display update rate (100 ms)
-        final long displayInterval = 100;
-        mHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                displayARCoreInformation();
-            }
-        }, displayInterval);
+
+    private static String trackingFailureReasonText(final TrackingFailureReason trackingFailureReason) {
+
+        // determine TrackingFailureReason text
+        if (trackingFailureReason == TrackingFailureReason.BAD_STATE) {
+            return "BAD STATE";
+        } else if (trackingFailureReason == TrackingFailureReason.EXCESSIVE_MOTION) {
+            return "FAST MOTION";
+        } else if (trackingFailureReason == TrackingFailureReason.INSUFFICIENT_FEATURES) {
+            return "LOW FEATURES";
+        } else if (trackingFailureReason == TrackingFailureReason.INSUFFICIENT_LIGHT) {
+            return "LOW LIGHT";
+        } else if (trackingFailureReason == TrackingFailureReason.NONE) {
+            return "NONE";
+        }
+        return "ERROR?";
     }
 }
@@ -0,0 +1,199 @@
+package com.pjinkim.arcore_data_logger;
+
+/**
+ * Degradation steps of a recording under memory pressure, decided from the trim levels Android
+ * passes to {@code onTrimMemory} and {@code onLowMemory}.
+ *
+ * Every signal raises the stage to at least the stage of its level and returns the actions to
+ * take at that stage: flushing and syncing the session files, fewer pooled image buffers, a
+ * smaller heap budget of the accumulated point cloud and colorizing only every n-th keyframe.
+ * The stage never drops on a milder signal; once no signal has come for the recovery period it
+ * relaxes by one stage per period, returning the actions that restore the larger limits.
+ */
+public class MemoryPressurePolicy {
+
+    // properties
+    public static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+    public static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    public static final int TRIM_MEMORY_UI_HIDDEN = 20;
+    public static final int TRIM_MEMORY_BACKGROUND = 40;
+    public static final int TRIM_MEMORY_MODERATE = 60;
+    public static final int TRIM_MEMORY_COMPLETE = 80;
+
+    // not Android trim levels: 'onLowMemory', and the relaxation after a quiet period
+    public static final int LOW_MEMORY = 100;
+    public static final int RECOVERED = 0;
+
+    public static final int NORMAL = 0;
+    public static final int MODERATE = 1;
+    public static final int LOW = 2;
+    public static final int CRITICAL = 3;
+
+    public static final int ACTION_FLUSH = 1;
+    public static final int ACTION_SYNC = 1 << 1;
+    public static final int ACTION_IMAGE_BUFFERS = 1 << 2;
+    public static final int ACTION_POINT_CLOUD_BUDGET = 1 << 3;
+    public static final int ACTION_COLORIZATION = 1 << 4;
+
+    private static final String[] STAGE_NAMES = {"NORMAL", "MODERATE", "LOW", "CRITICAL"};
+    private static final int[] COLORIZATION_INTERVALS = {1, 1, 2, 4};
+
+    private final int mNumberOfImageBuffers;
+    private final long mPointCloudHeapBudget;
+    private final long mRecoveryMillis;
+
+    private int mStage = NORMAL;
+    private long mLastChangeMillis = 0;
+    private long mNumberOfSignals = 0;
+    private int mHighestStage = NORMAL;
+
+
+    // constructor
+    public MemoryPressurePolicy(final int numberOfImageBuffers, final long pointCloudHeapBudget, final long recoveryMillis) {
+        mNumberOfImageBuffers = numberOfImageBuffers;
+        mPointCloudHeapBudget = pointCloudHeapBudget;
+        mRecoveryMillis = recoveryMillis;
+    }
+
+
+    // methods
+    public static int stageOf(final int level) {
+
+        // a hidden or cached process is the next to be killed, so its files are synced early
+        if ((level >= TRIM_MEMORY_MODERATE) || (level == TRIM_MEMORY_RUNNING_CRITICAL)) {
+            return CRITICAL;
+        } else if ((level >= TRIM_MEMORY_BACKGROUND) || (level == TRIM_MEMORY_RUNNING_LOW)) {
+            return LOW;
+        } else if (level > RECOVERED) {
+            return MODERATE;
+        }
+        return NORMAL;
+    }
+
+    public synchronized int onTrimMemory(final int level, final long currentTimeMillis) {
+        mNumberOfSignals++;
+        mLastChangeMillis = currentTimeMillis;
+        int stage = Math.max(mStage, stageOf(level));
+        int actions = limitActions(stage);
+        mStage = stage;
+        mHighestStage = Math.max(mHighestStage, stage);
+
+        // files are flushed on every signal, and synced from the low stage on
+        actions |= ACTION_FLUSH;
+        if (stage >= LOW) {
+            actions |= ACTION_SYNC;
+        }
+        return actions;
+    }
+
+    public synchronized int update(final long currentTimeMillis) {
+
+        // one stage back after every quiet recovery period
+        if ((mStage == NORMAL) || (currentTimeMillis - mLastChangeMillis < mRecoveryMillis)) {
+            return 0;
+        }
+        mLastChangeMillis = currentTimeMillis;
+        int actions = limitActions(mStage - 1);
+        mStage--;
+        return actions;
+    }
+
+    private int limitActions(final int stage) {
+
+        // only the limits that differ from those of the current stage need to be applied
+        int actions = 0;
+        if (imageBufferLimit(stage) != imageBufferLimit(mStage)) {
+            actions |= ACTION_IMAGE_BUFFERS;
+        }
+        if (pointCloudHeapBudget(stage) != pointCloudHeapBudget(mStage)) {
+            actions |= ACTION_POINT_CLOUD_BUDGET;
+        }
+        if (COLORIZATION_INTERVALS[stage] != COLORIZATION_INTERVALS[mStage]) {
+            actions |= ACTION_COLORIZATION;
+        }
+        return actions;
+    }
+
+    private int imageBufferLimit(final int stage) {
+        switch (stage) {
+            case NORMAL:
+                return mNumberOfImageBuffers;
+            case MODERATE:
+                return Math.max(1, mNumberOfImageBuffers / 2);
+            case LOW:
+                return Math.min(1, mNumberOfImageBuffers);
+            default:
+                return 0;
+        }
+    }
+
+    private long pointCloudHeapBudget(final int stage) {
+
+        // from the low stage on the heap segments go to the mapped files the kernel can page out
+        switch (stage) {
+            case NORMAL:
+            case MODERATE:
+                return mPointCloudHeapBudget;
+            case LOW:
+                return mPointCloudHeapBudget / 4;
+            default:
+                return 0;
+        }
+    }
+
+    public static String levelName(final int level) {
+        switch (level) {
+            case RECOVERED:
+                return "RECOVERED";
+            case TRIM_MEMORY_RUNNING_MODERATE:
+                return "RUNNING_MODERATE";
+            case TRIM_MEMORY_RUNNING_LOW:
+                return "RUNNING_LOW";
+            case TRIM_MEMORY_RUNNING_CRITICAL:
+                return "RUNNING_CRITICAL";
+            case TRIM_MEMORY_UI_HIDDEN:
+                return "UI_HIDDEN";
+            case TRIM_MEMORY_BACKGROUND:
+                return "BACKGROUND";
+            case TRIM_MEMORY_MODERATE:
+                return "MODERATE";
+            case TRIM_MEMORY_COMPLETE:
+                return "COMPLETE";
+            case LOW_MEMORY:
+                return "LOW_MEMORY";
+            default:
+                return "LEVEL_" + level;
+        }
+    }
+
+    public static String stageName(final int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+
+    // getter and setter
+    public synchronized int getStage() {
+        return mStage;
+    }
+
+    public synchronized int getHighestStage() {
+        return mHighestStage;
+    }
+
+    public synchronized long getNumberOfSignals() {
+        return mNumberOfSignals;
+    }
+
+    public synchronized int getImageBufferLimit() {
+        return imageBufferLimit(mStage);
+    }
+
+    public synchronized long getPointCloudHeapBudget() {
+        return pointCloudHeapBudget(mStage);
+    }
+
+    public synchronized int getColorizationInterval() {
+        return COLORIZATION_INTERVALS[mStage];
+    }
+}
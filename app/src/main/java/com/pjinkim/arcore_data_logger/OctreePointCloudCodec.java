@@ -0,0 +1,367 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Compresses a colored point cloud by octree occupancy coding, read back by
+ * {@link OctreePointCloudReader}.
+ *
+ * Positions are quantized to cubic leaves of a configurable size and sorted along the Morton
+ * curve. Every inner node of the octree is then one byte with a bit per occupied child, written
+ * level by level, so a point costs a few bits instead of 12 bytes of floats. Decoded points lie at
+ * their leaf centers, at most half a leaf off per axis. Colors follow in the same traversal order
+ * as wrapped byte differences to the previous point, which are small for neighboring points.
+ *
+ * The levels above {@link #SPLIT_LEVEL} are written once; every node at that level roots an
+ * independent subtree, encoded in parallel and optionally compressed with a {@link BlockCodec}.
+ *
+ * Layout (little-endian): 'AROC', int32 version, float leaf size, float origin x, y, z, u8 depth,
+ * u8 split level, u8 codec id (0 for none), u8 reserved, int64 number of points, int32 number of
+ * subtrees, int32 top occupancy length and the top occupancy bytes. Each subtree follows as int32
+ * stored length, int32 raw length, int32 number of points and the stored payload, which holds the
+ * subtree occupancy bytes, a varint list of (leaf index delta, extra points) for leaves with more
+ * than one point, and the red, green and blue color differences as three planes.
+ */
+public class OctreePointCloudCodec {
+
+    // properties
+    public static final byte[] MAGIC = {'A', 'R', 'O', 'C'};
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_BYTES = 44;
+    public static final int SUBTREE_HEADER_BYTES = 12;
+    public static final String FILE_SUFFIX = ".oct";
+    public static final byte CODEC_NONE = 0;
+    public static final int MAX_DEPTH = 21;
+    public static final int SPLIT_LEVEL = 2;
+    public static final int FLOATS_PER_POINT = 6;
+
+    private final float mLeafSize;
+    private final BlockCodec mBlockCodec;
+
+    // statistics of the last encoded cloud
+    private int mNumberOfPoints = 0;
+    private int mNumberOfSubtrees = 0;
+    private int mNumberOfLeaves = 0;
+    private long mNumberOfBytes = 0;
+
+
+    // definition of 'PointSource' interface
+    private interface PointSource {
+
+        // copy {x, y, z, r, g, b} of the i-th point to encode into 'point'
+        void getPoint(int i, float[] point);
+    }
+
+
+    // constructor
+    public OctreePointCloudCodec(final float leafSize, final BlockCodec blockCodec) {
+        if (!(leafSize > 0)) {
+            throw new IllegalArgumentException("OctreePointCloudCodec: Leaf size must be positive: " + leafSize);
+        }
+        mLeafSize = leafSize;
+        mBlockCodec = blockCodec;
+    }
+
+
+    // methods
+    public long encode(final float[] points, final int numberOfPoints, final OutputStream outputStream) throws IOException {
+        return encode((i, point) -> System.arraycopy(points, i * FLOATS_PER_POINT, point, 0, FLOATS_PER_POINT),
+                numberOfPoints, outputStream);
+    }
+
+    public long encode(final AccumulatedPointCloud pointCloud, final boolean[] isSelected, final OutputStream outputStream) throws IOException {
+
+        // the selected points read in place from their segments, without a float copy of the cloud
+        int[] indices = new int[pointCloud.getNumberOfFeatures()];
+        int numberOfPoints = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (isSelected[i]) {
+                indices[numberOfPoints++] = i;
+            }
+        }
+        return encode((i, point) -> pointCloud.getPoint(indices[i], point), numberOfPoints, outputStream);
+    }
+
+    private long encode(final PointSource pointSource, final int numberOfPoints, final OutputStream outputStream) throws IOException {
+
+        // 1) bounding box, the octree depth that covers it with leaves, and the colors clamped to bytes
+        float[] point = new float[FLOATS_PER_POINT];
+        float[] origin = new float[3];
+        if (numberOfPoints > 0) {
+            Arrays.fill(origin, Float.POSITIVE_INFINITY);
+        }
+        for (int i = 0; i < numberOfPoints; i++) {
+            pointSource.getPoint(i, point);
+            for (int axis = 0; axis < 3; axis++) {
+                origin[axis] = Math.min(origin[axis], point[axis]);
+            }
+        }
+        int[] quantized = new int[numberOfPoints * 3];
+        final byte[] colors = new byte[numberOfPoints * 3];
+        int maxCell = 0;
+        for (int i = 0; i < numberOfPoints; i++) {
+            pointSource.getPoint(i, point);
+            for (int axis = 0; axis < 3; axis++) {
+                double cell = (point[axis] - (double) origin[axis]) / mLeafSize;
+                if (!(cell < (1 << MAX_DEPTH))) {
+                    throw new IllegalArgumentException("encode: Point " + i + " is more than 2^" + MAX_DEPTH + " leaves from the origin");
+                }
+                quantized[i * 3 + axis] = (int) cell;
+                maxCell = Math.max(maxCell, (int) cell);
+            }
+            for (int channel = 0; channel < 3; channel++) {
+                colors[i * 3 + channel] = (byte) Math.max(0, Math.min(255, Math.round(point[3 + channel])));
+            }
+        }
+        int depth = 32 - Integer.numberOfLeadingZeros(maxCell);
+        final int splitLevel = Math.min(SPLIT_LEVEL, depth);
+
+        // 2) Morton codes sorted with their point indices, which keeps the input order within a leaf
+        long[] codes = new long[numberOfPoints];
+        int[] order = new int[numberOfPoints];
+        for (int i = 0; i < numberOfPoints; i++) {
+            codes[i] = mortonCode(quantized[i * 3], quantized[i * 3 + 1], quantized[i * 3 + 2]);
+            order[i] = i;
+        }
+        radixSort(codes, order, numberOfPoints, 3 * depth);
+
+        // 3) subtree roots at the split level and the occupancy of the levels above them
+        int subtreeShift = 3 * (depth - splitLevel);
+        long[] roots = new long[Math.max(1, numberOfPoints)];
+        int[] starts = new int[Math.max(1, numberOfPoints) + 1];
+        int numberOfSubtrees = 0;
+        for (int i = 0; i < numberOfPoints; i++) {
+            long root = codes[i] >>> subtreeShift;
+            if ((numberOfSubtrees == 0) || (roots[numberOfSubtrees - 1] != root)) {
+                roots[numberOfSubtrees] = root;
+                starts[numberOfSubtrees] = i;
+                numberOfSubtrees++;
+            }
+        }
+        starts[numberOfSubtrees] = numberOfPoints;
+        byte[] topOccupancy = occupancy(Arrays.copyOf(roots, numberOfSubtrees), numberOfSubtrees, splitLevel);
+
+        // 4) the subtrees in parallel, each into its own header and payload
+        final int leafLevels = depth - splitLevel;
+        final byte[][] subtrees = new byte[numberOfSubtrees][];
+        final int[] leafCounts = new int[numberOfSubtrees];
+        IntStream.range(0, numberOfSubtrees).parallel().forEach(i ->
+                subtrees[i] = encodeSubtree(colors, codes, order, starts[i], starts[i + 1], leafLevels, leafCounts, i));
+
+        // 5) header, top occupancy and subtrees in Morton order
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(FORMAT_VERSION).putFloat(mLeafSize);
+        header.putFloat(origin[0]).putFloat(origin[1]).putFloat(origin[2]);
+        header.put((byte) depth).put((byte) splitLevel).put((mBlockCodec != null) ? mBlockCodec.getId() : CODEC_NONE).put((byte) 0);
+        header.putLong(numberOfPoints).putInt(numberOfSubtrees).putInt(topOccupancy.length);
+        outputStream.write(header.array());
+        outputStream.write(topOccupancy);
+        long numberOfBytes = HEADER_BYTES + topOccupancy.length;
+        int numberOfLeaves = 0;
+        for (int i = 0; i < numberOfSubtrees; i++) {
+            outputStream.write(subtrees[i]);
+            numberOfBytes += subtrees[i].length;
+            numberOfLeaves += leafCounts[i];
+        }
+        mNumberOfPoints = numberOfPoints;
+        mNumberOfSubtrees = numberOfSubtrees;
+        mNumberOfLeaves = numberOfLeaves;
+        mNumberOfBytes = numberOfBytes;
+        return numberOfBytes;
+    }
+
+    private byte[] encodeSubtree(final byte[] colors, final long[] codes, final int[] order, final int start, final int end,
+                                 final int leafLevels, final int[] leafCounts, final int subtree) {
+
+        // 1) distinct leaves, and the leaves that hold more than one point
+        int numberOfPoints = end - start;
+        long[] leaves = new long[numberOfPoints];
+        int numberOfLeaves = 0;
+        ByteArrayOutputStream duplicates = new ByteArrayOutputStream();
+        int numberOfDuplicates = 0;
+        int previousDuplicate = 0;
+        for (int i = start; i < end; ) {
+            int next = i + 1;
+            while ((next < end) && (codes[next] == codes[i])) {
+                next++;
+            }
+            if (next - i > 1) {
+                writeVarint(duplicates, numberOfLeaves - previousDuplicate);
+                writeVarint(duplicates, next - i - 1);
+                previousDuplicate = numberOfLeaves;
+                numberOfDuplicates++;
+            }
+            leaves[numberOfLeaves++] = codes[i];
+            i = next;
+        }
+        leafCounts[subtree] = numberOfLeaves;
+
+        // 2) occupancy of the subtree levels, the duplicate list and the color differences
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(numberOfLeaves / 2 + numberOfPoints * 3 + 16);
+        byte[] occupancy = occupancy(leaves, numberOfLeaves, leafLevels);
+        payload.write(occupancy, 0, occupancy.length);
+        writeVarint(payload, numberOfDuplicates);
+        payload.write(duplicates.toByteArray(), 0, duplicates.size());
+        byte[] colorDifferences = new byte[numberOfPoints * 3];
+        for (int channel = 0; channel < 3; channel++) {
+            int previous = 0;
+            for (int i = 0; i < numberOfPoints; i++) {
+                int color = colors[order[start + i] * 3 + channel] & 0xFF;
+                colorDifferences[channel * numberOfPoints + i] = (byte) (color - previous);
+                previous = color;
+            }
+        }
+        payload.write(colorDifferences, 0, colorDifferences.length);
+
+        // 3) compressed only if that saves space, which the decoder sees from equal lengths
+        byte[] raw = payload.toByteArray();
+        byte[] stored = raw;
+        int storedLength = raw.length;
+        if (mBlockCodec != null) {
+            byte[] compressed = new byte[raw.length - 1];
+            int compressedLength = mBlockCodec.compress(raw, raw.length, compressed);
+            if (compressedLength >= 0) {
+                stored = compressed;
+                storedLength = compressedLength;
+            }
+        }
+        ByteBuffer subtreeBuffer = ByteBuffer.allocate(SUBTREE_HEADER_BYTES + storedLength).order(ByteOrder.LITTLE_ENDIAN);
+        subtreeBuffer.putInt(storedLength).putInt(raw.length).putInt(numberOfPoints);
+        subtreeBuffer.put(stored, 0, storedLength);
+        return subtreeBuffer.array();
+    }
+
+    private static byte[] occupancy(final long[] nodes, final int numberOfNodes, final int numberOfLevels) {
+
+        // collapse the sorted distinct nodes level by level in place, then list the levels top-down
+        ArrayList<byte[]> levels = new ArrayList<>(numberOfLevels);
+        byte[] bytes = new byte[numberOfNodes];
+        int count = numberOfNodes;
+        int totalLength = 0;
+        for (int level = 0; level < numberOfLevels; level++) {
+            int numberOfParents = 0;
+            for (int i = 0; i < count; i++) {
+                long node = nodes[i];
+                long parent = node >>> 3;
+                if ((numberOfParents == 0) || (nodes[numberOfParents - 1] != parent)) {
+                    nodes[numberOfParents] = parent;
+                    bytes[numberOfParents] = 0;
+                    numberOfParents++;
+                }
+                bytes[numberOfParents - 1] |= (byte) (1 << (node & 7));
+            }
+            levels.add(Arrays.copyOf(bytes, numberOfParents));
+            totalLength += numberOfParents;
+            count = numberOfParents;
+        }
+        byte[] occupancy = new byte[totalLength];
+        int offset = 0;
+        for (int level = numberOfLevels - 1; level >= 0; level--) {
+            byte[] levelBytes = levels.get(level);
+            System.arraycopy(levelBytes, 0, occupancy, offset, levelBytes.length);
+            offset += levelBytes.length;
+        }
+        return occupancy;
+    }
+
+    private static void radixSort(final long[] codes, final int[] order, final int count, final int bits) {
+
+        // least significant byte first, only over the bits the codes actually use
+        long[] sourceCodes = codes;
+        int[] sourceOrder = order;
+        long[] targetCodes = new long[count];
+        int[] targetOrder = new int[count];
+        int[] offsets = new int[257];
+        for (int shift = 0; shift < bits; shift += 8) {
+            Arrays.fill(offsets, 0);
+            for (int i = 0; i < count; i++) {
+                offsets[(int) ((sourceCodes[i] >>> shift) & 0xFF) + 1]++;
+            }
+            for (int i = 0; i < 256; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            for (int i = 0; i < count; i++) {
+                int target = offsets[(int) ((sourceCodes[i] >>> shift) & 0xFF)]++;
+                targetCodes[target] = sourceCodes[i];
+                targetOrder[target] = sourceOrder[i];
+            }
+            long[] swapCodes = sourceCodes;
+            sourceCodes = targetCodes;
+            targetCodes = swapCodes;
+            int[] swapOrder = sourceOrder;
+            sourceOrder = targetOrder;
+            targetOrder = swapOrder;
+        }
+        if (sourceCodes != codes) {
+            System.arraycopy(sourceCodes, 0, codes, 0, count);
+            System.arraycopy(sourceOrder, 0, order, 0, count);
+        }
+    }
+
+    static long mortonCode(final int x, final int y, final int z) {
+        return spreadBits(x) | (spreadBits(y) << 1) | (spreadBits(z) << 2);
+    }
+
+    static int mortonCoordinate(final long code, final int axis) {
+        return compactBits(code >>> axis);
+    }
+
+    private static long spreadBits(final int value) {
+
+        // moves bit k of a 21-bit value to bit 3k
+        long bits = value & 0x1FFFFFL;
+        bits = (bits | (bits << 32)) & 0x1F00000000FFFFL;
+        bits = (bits | (bits << 16)) & 0x1F0000FF0000FFL;
+        bits = (bits | (bits << 8)) & 0x100F00F00F00F00FL;
+        bits = (bits | (bits << 4)) & 0x10C30C30C30C30C3L;
+        bits = (bits | (bits << 2)) & 0x1249249249249249L;
+        return bits;
+    }
+
+    private static int compactBits(final long code) {
+        long bits = code & 0x1249249249249249L;
+        bits = (bits | (bits >>> 2)) & 0x10C30C30C30C30C3L;
+        bits = (bits | (bits >>> 4)) & 0x100F00F00F00F00FL;
+        bits = (bits | (bits >>> 8)) & 0x1F0000FF0000FFL;
+        bits = (bits | (bits >>> 16)) & 0x1F00000000FFFFL;
+        bits = (bits | (bits >>> 32)) & 0x1FFFFFL;
+        return (int) bits;
+    }
+
+    private static void writeVarint(final ByteArrayOutputStream outputStream, int value) {
+        while ((value & ~0x7F) != 0) {
+            outputStream.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        outputStream.write(value);
+    }
+
+
+    // getter and setter
+    public float getLeafSize() {
+        return mLeafSize;
+    }
+
+    public int getNumberOfPoints() {
+        return mNumberOfPoints;
+    }
+
+    public int getNumberOfSubtrees() {
+        return mNumberOfSubtrees;
+    }
+
+    public int getNumberOfLeaves() {
+        return mNumberOfLeaves;
+    }
+
+    public long getNumberOfBytes() {
+        return mNumberOfBytes;
+    }
+}
@@ -0,0 +1,275 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Streaming decoder of the {@link OctreePointCloudCodec} format. Subtrees are decoded one at a time
+ * as the points are read, so memory stays bounded by the largest subtree rather than the cloud.
+ */
+public class OctreePointCloudReader implements Closeable {
+
+    // properties
+    private final DataInputStream mInputStream;
+    private final float mLeafSize;
+    private final float[] mOrigin = new float[3];
+    private final int mDepth;
+    private final int mSplitLevel;
+    private final BlockCodec mBlockCodec;
+    private final long mNumberOfPoints;
+    private final long[] mSubtreeRoots;
+
+    // decoded points {x, y, z, r, g, b} of the current subtree
+    private float[] mPoints = new float[0];
+    private int mNumberOfSubtreePoints = 0;
+    private int mPointIndex = -1;
+    private int mSubtreeIndex = 0;
+    private long mNumberOfReadPoints = 0;
+
+    // scratch space of the subtree decoder
+    private byte[] mStored = new byte[0];
+    private byte[] mRaw = new byte[0];
+    private long[] mNodes = new long[1];
+    private long[] mChildren = new long[8];
+    private int mPosition;
+    private final byte[] mSubtreeHeader = new byte[OctreePointCloudCodec.SUBTREE_HEADER_BYTES];
+
+
+    // constructor
+    public OctreePointCloudReader(final InputStream inputStream) throws IOException {
+        mInputStream = new DataInputStream(inputStream);
+
+        // 1) fixed header
+        byte[] headerBytes = new byte[OctreePointCloudCodec.HEADER_BYTES];
+        mInputStream.readFully(headerBytes);
+        ByteBuffer header = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[4];
+        header.get(magic);
+        if (!Arrays.equals(magic, OctreePointCloudCodec.MAGIC)) {
+            throw new IOException("OctreePointCloudReader: Not an octree point cloud");
+        }
+        int version = header.getInt();
+        if (version != OctreePointCloudCodec.FORMAT_VERSION) {
+            throw new IOException("OctreePointCloudReader: Unsupported version " + version);
+        }
+        mLeafSize = header.getFloat();
+        for (int axis = 0; axis < 3; axis++) {
+            mOrigin[axis] = header.getFloat();
+        }
+        mDepth = header.get();
+        mSplitLevel = header.get();
+        byte codecId = header.get();
+        header.get();
+        mBlockCodec = (codecId == OctreePointCloudCodec.CODEC_NONE) ? null : BlockCompressedInputStream.codecFor(codecId);
+        mNumberOfPoints = header.getLong();
+        int numberOfSubtrees = header.getInt();
+        int topLength = header.getInt();
+        if ((mDepth < 0) || (mDepth > OctreePointCloudCodec.MAX_DEPTH) || (mSplitLevel < 0) || (mSplitLevel > mDepth)
+                || (mNumberOfPoints < 0) || (numberOfSubtrees < 0) || (numberOfSubtrees > mNumberOfPoints) || (topLength < 0)) {
+            throw new IOException("OctreePointCloudReader: Corrupt header");
+        }
+
+        // 2) the levels above the split level give the subtree roots in Morton order
+        byte[] topOccupancy = new byte[topLength];
+        mInputStream.readFully(topOccupancy);
+        if (numberOfSubtrees == 0) {
+            mSubtreeRoots = new long[0];
+        } else {
+            mPosition = 0;
+            int numberOfRoots = descend(0L, topOccupancy, topLength, mSplitLevel);
+            if ((numberOfRoots != numberOfSubtrees) || (mPosition != topLength)) {
+                throw new IOException("OctreePointCloudReader: Top occupancy does not match " + numberOfSubtrees + " subtrees");
+            }
+            mSubtreeRoots = Arrays.copyOf(mNodes, numberOfRoots);
+        }
+    }
+
+    public static OctreePointCloudReader open(final File file) throws IOException {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        try {
+            return new OctreePointCloudReader(inputStream);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+
+    // methods
+    public boolean next() throws IOException {
+        mPointIndex++;
+        while (mPointIndex >= mNumberOfSubtreePoints) {
+            if (mSubtreeIndex == mSubtreeRoots.length) {
+                mPointIndex = mNumberOfSubtreePoints;
+                if (mNumberOfReadPoints != mNumberOfPoints) {
+                    throw new IOException("next: Subtrees hold " + mNumberOfReadPoints + " of " + mNumberOfPoints + " points");
+                }
+                return false;
+            }
+            readSubtree(mSubtreeRoots[mSubtreeIndex++]);
+            mPointIndex = 0;
+        }
+        return true;
+    }
+
+    public void getPoint(final float[] point) {
+        System.arraycopy(mPoints, mPointIndex * OctreePointCloudCodec.FLOATS_PER_POINT, point, 0, OctreePointCloudCodec.FLOATS_PER_POINT);
+    }
+
+    private void readSubtree(final long root) throws IOException {
+
+        // 1) header and payload, decompressed unless stored as is
+        mInputStream.readFully(mSubtreeHeader);
+        ByteBuffer subtreeHeader = ByteBuffer.wrap(mSubtreeHeader).order(ByteOrder.LITTLE_ENDIAN);
+        int storedLength = subtreeHeader.getInt();
+        int rawLength = subtreeHeader.getInt();
+        int numberOfPoints = subtreeHeader.getInt();
+        if ((storedLength < 0) || (storedLength > rawLength) || (numberOfPoints <= 0) || (numberOfPoints > rawLength / 3)
+                || ((storedLength < rawLength) && (mBlockCodec == null))) {
+            throw new IOException("readSubtree: Corrupt subtree " + (mSubtreeIndex - 1));
+        }
+        if (mRaw.length < rawLength) {
+            mRaw = new byte[rawLength];
+        }
+        if (storedLength == rawLength) {
+            mInputStream.readFully(mRaw, 0, rawLength);
+        } else {
+            if (mStored.length < storedLength) {
+                mStored = new byte[storedLength];
+            }
+            mInputStream.readFully(mStored, 0, storedLength);
+            mBlockCodec.decompress(mStored, storedLength, mRaw, rawLength);
+        }
+
+        // 2) leaves in Morton order from the subtree occupancy
+        mPosition = 0;
+        int numberOfLeaves = descend(root, mRaw, rawLength, mDepth - mSplitLevel);
+
+        // 3) points per leaf, one plus the extra points of the leaves in the duplicate list
+        if (mPoints.length < numberOfPoints * OctreePointCloudCodec.FLOATS_PER_POINT) {
+            mPoints = new float[numberOfPoints * OctreePointCloudCodec.FLOATS_PER_POINT];
+        }
+        int numberOfDuplicates = readVarint(mRaw, rawLength);
+        int nextDuplicate = -1;
+        int previousDuplicate = 0;
+        int extraPoints = 0;
+        int point = 0;
+        for (int leaf = 0; leaf < numberOfLeaves; leaf++) {
+            if ((nextDuplicate < leaf) && (numberOfDuplicates > 0)) {
+                nextDuplicate = previousDuplicate + readVarint(mRaw, rawLength);
+                extraPoints = readVarint(mRaw, rawLength);
+                numberOfDuplicates--;
+            }
+            int count = 1;
+            if (leaf == nextDuplicate) {
+                count += extraPoints;
+                previousDuplicate = leaf;
+            }
+            if ((extraPoints < 0) || (extraPoints >= numberOfPoints) || (point + count > numberOfPoints)) {
+                throw new IOException("readSubtree: Leaves hold more than " + numberOfPoints + " points");
+            }
+            long code = mNodes[leaf];
+            for (int i = 0; i < count; i++, point++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    int cell = OctreePointCloudCodec.mortonCoordinate(code, axis);
+                    mPoints[point * OctreePointCloudCodec.FLOATS_PER_POINT + axis] = mOrigin[axis] + (cell + 0.5f) * mLeafSize;
+                }
+            }
+        }
+        int offset = mPosition;
+        if ((point != numberOfPoints) || (numberOfDuplicates != 0) || (offset + numberOfPoints * 3 != rawLength)) {
+            throw new IOException("readSubtree: Subtree " + (mSubtreeIndex - 1) + " does not add up to " + numberOfPoints + " points");
+        }
+
+        // 4) colors accumulated from their differences, channel by channel
+        for (int channel = 0; channel < 3; channel++) {
+            int color = 0;
+            for (int i = 0; i < numberOfPoints; i++) {
+                color = (color + mRaw[offset++]) & 0xFF;
+                mPoints[i * OctreePointCloudCodec.FLOATS_PER_POINT + 3 + channel] = color;
+            }
+        }
+        mNumberOfSubtreePoints = numberOfPoints;
+        mNumberOfReadPoints += numberOfPoints;
+    }
+
+    private int descend(final long root, final byte[] occupancy, final int length, final int numberOfLevels) throws IOException {
+
+        // expands 'root' by 'numberOfLevels' levels of occupancy bytes from mPosition into mNodes, in Morton order
+        mNodes[0] = root;
+        int count = 1;
+        int position = mPosition;
+        for (int level = 0; level < numberOfLevels; level++) {
+            if (position + count > length) {
+                throw new IOException("descend: Occupancy ends after " + (position - mPosition) + " bytes");
+            }
+            if (mChildren.length < count * 8) {
+                mChildren = new long[count * 8];
+            }
+            int numberOfChildren = 0;
+            for (int i = 0; i < count; i++) {
+                int bits = occupancy[position++] & 0xFF;
+                if (bits == 0) {
+                    throw new IOException("descend: Empty inner node");
+                }
+                for (int octant = 0; octant < 8; octant++) {
+                    if ((bits & (1 << octant)) != 0) {
+                        mChildren[numberOfChildren++] = (mNodes[i] << 3) | octant;
+                    }
+                }
+            }
+            long[] swap = mNodes;
+            mNodes = mChildren;
+            mChildren = swap;
+            count = numberOfChildren;
+        }
+        mPosition = position;
+        return count;
+    }
+
+    private int readVarint(final byte[] bytes, final int length) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (mPosition >= length) {
+                throw new IOException("readVarint: Payload ends inside a varint");
+            }
+            int b = bytes[mPosition++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("readVarint: Varint longer than 5 bytes");
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInputStream.close();
+    }
+
+
+    // getter and setter
+    public long getNumberOfPoints() {
+        return mNumberOfPoints;
+    }
+
+    public int getNumberOfSubtrees() {
+        return mSubtreeRoots.length;
+    }
+
+    public float getLeafSize() {
+        return mLeafSize;
+    }
+
+    public int getDepth() {
+        return mDepth;
+    }
+}
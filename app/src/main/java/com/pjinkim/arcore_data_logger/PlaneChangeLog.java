@@ -0,0 +1,224 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes detected planes as compact binary records, but only when a plane changed by more than
+ * a tolerance since it was last recorded.
+ *
+ * A plane counts as changed when its type changes, its center moves or turns, its extents grow or
+ * shrink, or the hash of its polygon quantized to the polygon tolerance differs. File layout
+ * (little-endian): magic "ARPL", int32 version, then records starting with uint8 kind, int32 plane
+ * ID and int64 timestamp (ns). An update adds uint8 type, float32 qx qy qz qw tx ty tz of the
+ * center pose, float32 extent x and z, uint16 vertex count and float32 x z per polygon vertex in
+ * the plane's local frame. A subsumed record adds the int32 ID of the subsuming plane, and a
+ * stopped record adds nothing. See {@link PlaneLogReader}.
+ */
+public class PlaneChangeLog {
+
+    // properties
+    public static final byte[] MAGIC = {'A', 'R', 'P', 'L'};
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+
+    public static final byte RECORD_UPDATE = 1;
+    public static final byte RECORD_SUBSUMED = 2;
+    public static final byte RECORD_STOPPED = 3;
+
+    private static final byte FLAG_SUBSUMED = 1;
+    private static final byte FLAG_STOPPED = 2;
+
+    private final float mPositionTolerance;
+    private final float mCosHalfAngleTolerance;
+    private final float mExtentTolerance;
+    private final float mPolygonTolerance;
+
+    // last recorded state of every plane, indexed by slot
+    private final IntIntHashMap mSlots = new IntIntHashMap(64);
+    private int mNumberOfPlanes = 0;
+    private byte[] mTypes = new byte[16];
+    private byte[] mFlags = new byte[16];
+    private float[] mPoses = new float[16 * 7];
+    private float[] mExtents = new float[16 * 2];
+    private long[] mPolygonHashes = new long[16];
+
+    // encoded records since the last 'clear'
+    private ByteBuffer mBuffer = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long mNumberOfRecords = 0;
+    private long mNumberOfSkippedUpdates = 0;
+
+
+    // constructor
+    public PlaneChangeLog(final float positionTolerance, final float angleTolerance, final float extentTolerance, final float polygonTolerance) {
+        mPositionTolerance = positionTolerance;
+        mCosHalfAngleTolerance = (float) Math.cos(angleTolerance / 2.0);
+        mExtentTolerance = extentTolerance;
+        mPolygonTolerance = polygonTolerance;
+    }
+
+
+    // methods
+    public static byte[] header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(FORMAT_VERSION);
+        return header.array();
+    }
+
+    public boolean update(final long timestamp, final int planeId, final int type,
+                          final float qx, final float qy, final float qz, final float qw,
+                          final float tx, final float ty, final float tz,
+                          final float extentX, final float extentZ, final FloatBuffer polygon) {
+
+        // 1) compare against the last recorded state of the plane
+        long polygonHash = hashPolygon(polygon);
+        int slot = mSlots.get(planeId);
+        if (slot >= 0) {
+            int p = slot * 7;
+            float dx = tx - mPoses[p + 4];
+            float dy = ty - mPoses[p + 5];
+            float dz = tz - mPoses[p + 6];
+            float dot = Math.abs((qx * mPoses[p]) + (qy * mPoses[p + 1]) + (qz * mPoses[p + 2]) + (qw * mPoses[p + 3]));
+            boolean isChanged = (type != mTypes[slot])
+                    || (((dx * dx) + (dy * dy) + (dz * dz)) > (mPositionTolerance * mPositionTolerance))
+                    || (dot < mCosHalfAngleTolerance)
+                    || (Math.abs(extentX - mExtents[slot * 2]) > mExtentTolerance)
+                    || (Math.abs(extentZ - mExtents[slot * 2 + 1]) > mExtentTolerance)
+                    || (polygonHash != mPolygonHashes[slot]);
+            if (!isChanged) {
+                mNumberOfSkippedUpdates++;
+                return false;
+            }
+        } else {
+            slot = addPlane(planeId);
+        }
+
+        // 2) remember what is recorded now as the new reference
+        int p = slot * 7;
+        mTypes[slot] = (byte) type;
+        mPoses[p] = qx;
+        mPoses[p + 1] = qy;
+        mPoses[p + 2] = qz;
+        mPoses[p + 3] = qw;
+        mPoses[p + 4] = tx;
+        mPoses[p + 5] = ty;
+        mPoses[p + 6] = tz;
+        mExtents[slot * 2] = extentX;
+        mExtents[slot * 2 + 1] = extentZ;
+        mPolygonHashes[slot] = polygonHash;
+
+        // 3) encode the full plane
+        int numberOfVertices = Math.min(polygon.remaining() / 2, 0xFFFF);
+        ensureRemaining(1 + 4 + 8 + 1 + 9 * 4 + 2 + numberOfVertices * 8);
+        mBuffer.put(RECORD_UPDATE).putInt(planeId).putLong(timestamp).put((byte) type);
+        mBuffer.putFloat(qx).putFloat(qy).putFloat(qz).putFloat(qw).putFloat(tx).putFloat(ty).putFloat(tz);
+        mBuffer.putFloat(extentX).putFloat(extentZ);
+        mBuffer.putShort((short) numberOfVertices);
+        for (int i = 0; i < numberOfVertices * 2; i++) {
+            mBuffer.putFloat(polygon.get(polygon.position() + i));
+        }
+        mNumberOfRecords++;
+        return true;
+    }
+
+    public boolean subsumed(final long timestamp, final int planeId, final int subsumingPlaneId) {
+
+        // a merge is recorded once per plane
+        if (!setFlag(planeId, FLAG_SUBSUMED)) {
+            return false;
+        }
+        ensureRemaining(1 + 4 + 8 + 4);
+        mBuffer.put(RECORD_SUBSUMED).putInt(planeId).putLong(timestamp).putInt(subsumingPlaneId);
+        mNumberOfRecords++;
+        return true;
+    }
+
+    public boolean stopped(final long timestamp, final int planeId) {
+        if (!setFlag(planeId, FLAG_STOPPED)) {
+            return false;
+        }
+        ensureRemaining(1 + 4 + 8);
+        mBuffer.put(RECORD_STOPPED).putInt(planeId).putLong(timestamp);
+        mNumberOfRecords++;
+        return true;
+    }
+
+    public void clear() {
+        mBuffer.clear();
+    }
+
+    private long hashPolygon(final FloatBuffer polygon) {
+
+        // FNV-1a over the vertices snapped to the tolerance grid
+        long hash = 0xcbf29ce484222325L;
+        int count = polygon.remaining();
+        hash = (hash ^ count) * 0x100000001b3L;
+        for (int i = 0; i < count; i++) {
+            int quantized = Math.round(polygon.get(polygon.position() + i) / mPolygonTolerance);
+            hash = (hash ^ quantized) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private int addPlane(final int planeId) {
+        int slot = mNumberOfPlanes++;
+        if (slot == mTypes.length) {
+            int capacity = mTypes.length * 2;
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mFlags = Arrays.copyOf(mFlags, capacity);
+            mPoses = Arrays.copyOf(mPoses, capacity * 7);
+            mExtents = Arrays.copyOf(mExtents, capacity * 2);
+            mPolygonHashes = Arrays.copyOf(mPolygonHashes, capacity);
+        }
+        mTypes[slot] = -1;
+        mFlags[slot] = 0;
+        mSlots.put(planeId, slot);
+        return slot;
+    }
+
+    private boolean setFlag(final int planeId, final byte flag) {
+        int slot = mSlots.get(planeId);
+        if (slot < 0) {
+            slot = addPlane(planeId);
+        }
+        if ((mFlags[slot] & flag) != 0) {
+            return false;
+        }
+        mFlags[slot] |= flag;
+        return true;
+    }
+
+    private void ensureRemaining(final int bytes) {
+        if (mBuffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(mBuffer.capacity() * 2, mBuffer.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+            mBuffer.flip();
+            larger.put(mBuffer);
+            mBuffer = larger;
+        }
+    }
+
+
+    // getter and setter
+    public byte[] getBytes() {
+        return mBuffer.array();
+    }
+
+    public int getLength() {
+        return mBuffer.position();
+    }
+
+    public int getNumberOfPlanes() {
+        return mNumberOfPlanes;
+    }
+
+    public long getNumberOfRecords() {
+        return mNumberOfRecords;
+    }
+
+    public long getNumberOfSkippedUpdates() {
+        return mNumberOfSkippedUpdates;
+    }
+}
@@ -0,0 +1,168 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Reads the binary plane records written through {@link PlaneChangeLog} one at a time. A file cut
+ * off by a crash ends at the last complete record, and so do the zeros a file system can leave at
+ * the end of a file after a power loss, as no record kind is 0.
+ */
+public class PlaneLogReader implements Closeable {
+
+    // properties
+    private final InputStream mInputStream;
+    private final byte[] mScratch = new byte[64];
+    private final ByteBuffer mScratchBuffer = ByteBuffer.wrap(mScratch).order(ByteOrder.LITTLE_ENDIAN);
+
+    // current record
+    private byte mKind;
+    private int mPlaneId;
+    private long mTimestamp;
+    private int mType;
+    private final float[] mPose = new float[7];
+    private float mExtentX;
+    private float mExtentZ;
+    private int mNumberOfVertices;
+    private float[] mVertices = new float[64];
+    private int mSubsumingPlaneId;
+
+
+    // constructors
+    public PlaneLogReader(final File file) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    public PlaneLogReader(final InputStream inputStream) throws IOException {
+        mInputStream = inputStream;
+        try {
+            readFully(PlaneChangeLog.HEADER_BYTES);
+        } catch (EOFException e) {
+            throw new IOException("PlaneLogReader: Missing header", e);
+        }
+        for (int i = 0; i < PlaneChangeLog.MAGIC.length; i++) {
+            if (mScratch[i] != PlaneChangeLog.MAGIC[i]) {
+                throw new IOException("PlaneLogReader: Not a plane log");
+            }
+        }
+        int version = mScratchBuffer.getInt(4);
+        if (version != PlaneChangeLog.FORMAT_VERSION) {
+            throw new IOException("PlaneLogReader: Unsupported version " + version);
+        }
+    }
+
+
+    // methods
+    public boolean next() throws IOException {
+        try {
+
+            // 1) kind, plane ID and timestamp
+            readFully(1 + 4 + 8);
+            if (mScratch[0] == 0) {
+                return false;
+            }
+            mKind = mScratch[0];
+            mPlaneId = mScratchBuffer.getInt(1);
+            mTimestamp = mScratchBuffer.getLong(5);
+
+            // 2) the body of the record kind
+            if (mKind == PlaneChangeLog.RECORD_UPDATE) {
+                readFully(1 + 9 * 4 + 2);
+                mType = mScratch[0];
+                for (int i = 0; i < 7; i++) {
+                    mPose[i] = mScratchBuffer.getFloat(1 + i * 4);
+                }
+                mExtentX = mScratchBuffer.getFloat(29);
+                mExtentZ = mScratchBuffer.getFloat(33);
+                mNumberOfVertices = mScratchBuffer.getShort(37) & 0xFFFF;
+                if (mVertices.length < mNumberOfVertices * 2) {
+                    mVertices = Arrays.copyOf(mVertices, mNumberOfVertices * 2);
+                }
+                for (int i = 0; i < mNumberOfVertices; i++) {
+                    readFully(8);
+                    mVertices[i * 2] = mScratchBuffer.getFloat(0);
+                    mVertices[i * 2 + 1] = mScratchBuffer.getFloat(4);
+                }
+            } else if (mKind == PlaneChangeLog.RECORD_SUBSUMED) {
+                readFully(4);
+                mSubsumingPlaneId = mScratchBuffer.getInt(0);
+            } else if (mKind != PlaneChangeLog.RECORD_STOPPED) {
+                throw new IOException("next: Unknown record kind " + mKind);
+            }
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private void readFully(final int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = mInputStream.read(mScratch, offset, length - offset);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            offset += count;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInputStream.close();
+    }
+
+
+    // getter and setter
+    public byte getKind() {
+        return mKind;
+    }
+
+    public int getPlaneId() {
+        return mPlaneId;
+    }
+
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    // qx qy qz qw tx ty tz of the center pose
+    public float getPose(final int component) {
+        return mPose[component];
+    }
+
+    public float getExtentX() {
+        return mExtentX;
+    }
+
+    public float getExtentZ() {
+        return mExtentZ;
+    }
+
+    public int getNumberOfVertices() {
+        return mNumberOfVertices;
+    }
+
+    public float getVertexX(final int vertex) {
+        return mVertices[vertex * 2];
+    }
+
+    public float getVertexZ(final int vertex) {
+        return mVertices[vertex * 2 + 1];
+    }
+
+    public int getSubsumingPlaneId() {
+        return mSubsumingPlaneId;
+    }
+}
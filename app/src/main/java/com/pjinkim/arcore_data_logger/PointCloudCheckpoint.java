@@ -0,0 +1,201 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only checkpoints of the {@link AccumulatedPointCloud} while recording, so that a crash
+ * loses at most the last checkpoint interval of the colored map instead of all of it.
+ *
+ * A checkpoint copies only the points added or updated since the previous one, as tracked by the
+ * cloud while it is tracking changes, into one delta segment on the thread that owns the cloud; a
+ * background thread appends the segment and syncs the file. The copy costs as much as the changes, not the map. While
+ * the previous segment is still being written the checkpoint is skipped, and its changes go into
+ * the next one.
+ *
+ * File layout (little-endian): magic "ARCK", int32 version, then one segment per checkpoint: int32
+ * sequence number, int64 timestamp (ns), int32 point count, int32 CRC32 of the points, and per point
+ * int32 ID, float32 x y z and uint8 r g b. Replaying the segments in order gives the cloud as of the
+ * last complete segment. See {@link PointCloudCheckpointReader}.
+ */
+public class PointCloudCheckpoint implements Closeable {
+
+    // properties
+    public static final byte[] MAGIC = {'A', 'R', 'C', 'K'};
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+    public static final int SEGMENT_HEADER_BYTES = 20;
+    public static final int POINT_BYTES = 19;
+    public static final String FILE_NAME = "ARCore_point_cloud_checkpoint.bin";
+    public static final long CHECKPOINT_INTERVAL_MILLIS = 10000;
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final ExecutorService mWriteExecutor = Executors.newSingleThreadExecutor();
+
+    // one segment buffer, refilled only after its previous segment is in the file
+    private ByteBuffer mBuffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 mChecksum = new CRC32();
+    private final float[] mPoint = new float[6];
+    private Future<?> mPendingWrite = null;
+    private volatile IOException mWriteError = null;
+
+    private int mSequence = 0;
+    private long mLastCheckpointMillis = 0;
+    private long mNumberOfSkipped = 0;
+    private long mNumberOfPoints = 0;
+    private long mCopyNanos = 0;
+    private volatile long mBytesWritten = HEADER_BYTES;
+
+
+    // constructor
+    public PointCloudCheckpoint(final File file) throws IOException {
+        mFile = file;
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        mRandomAccessFile.setLength(0);
+        mChannel = mRandomAccessFile.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(FORMAT_VERSION).flip();
+        while (header.hasRemaining()) {
+            mChannel.write(header);
+        }
+    }
+
+
+    // methods
+    public boolean isDue(final long currentTimeMillis) {
+        return (currentTimeMillis - mLastCheckpointMillis) >= CHECKPOINT_INTERVAL_MILLIS;
+    }
+
+    public boolean checkpoint(final AccumulatedPointCloud cloud, final long timestamp, final long currentTimeMillis) throws IOException {
+        mLastCheckpointMillis = currentTimeMillis;
+
+        // 1) never wait for the disk: a segment still being written defers these changes to the next checkpoint
+        if ((mPendingWrite != null) && !mPendingWrite.isDone()) {
+            mNumberOfSkipped++;
+            return false;
+        }
+        awaitWrite();
+        int numberOfPoints = cloud.getNumberOfDirtyPoints();
+        if (numberOfPoints == 0) {
+            return true;
+        }
+
+        // 2) copy the changed points into the segment, in the order they first changed
+        long startTime = System.nanoTime();
+        int length = SEGMENT_HEADER_BYTES + numberOfPoints * POINT_BYTES;
+        if (mBuffer.capacity() < length) {
+            mBuffer = ByteBuffer.allocate(Math.max(length, mBuffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        mBuffer.clear();
+        mBuffer.position(SEGMENT_HEADER_BYTES);
+        for (int k = 0; k < numberOfPoints; k++) {
+            int pointID = cloud.getDirtyPointId(k);
+            cloud.getPoint(cloud.indexOf(pointID), mPoint);
+            mBuffer.putInt(pointID).putFloat(mPoint[0]).putFloat(mPoint[1]).putFloat(mPoint[2]);
+            for (int channel = 3; channel < 6; channel++) {
+                mBuffer.put((byte) Math.max(0, Math.min(255, Math.round(mPoint[channel]))));
+            }
+        }
+        cloud.clearDirtyPoints();
+        mChecksum.reset();
+        mChecksum.update(mBuffer.array(), SEGMENT_HEADER_BYTES, length - SEGMENT_HEADER_BYTES);
+        mBuffer.putInt(0, mSequence).putLong(4, timestamp).putInt(12, numberOfPoints).putInt(16, (int) mChecksum.getValue());
+        mBuffer.flip();
+        mSequence++;
+        mNumberOfPoints += numberOfPoints;
+        mCopyNanos += System.nanoTime() - startTime;
+
+        // 3) append and sync on the write thread
+        final ByteBuffer segment = mBuffer;
+        mPendingWrite = mWriteExecutor.submit(() -> writeSegment(segment));
+        return true;
+    }
+
+    private void writeSegment(final ByteBuffer segment) {
+        try {
+            int length = segment.remaining();
+            while (segment.hasRemaining()) {
+                mChannel.write(segment);
+            }
+            mChannel.force(false);
+            mBytesWritten += length;
+        } catch (IOException e) {
+            mWriteError = e;
+        }
+    }
+
+    private void awaitWrite() throws IOException {
+        if (mPendingWrite != null) {
+            try {
+                mPendingWrite.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("awaitWrite: Interrupted while writing " + mFile);
+            } catch (ExecutionException e) {
+                throw new IOException("awaitWrite: Cannot write " + mFile, e.getCause());
+            }
+            mPendingWrite = null;
+        }
+        if (mWriteError != null) {
+            throw mWriteError;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        // the last segment is finished, not abandoned
+        try {
+            awaitWrite();
+        } finally {
+            mWriteExecutor.shutdown();
+            try {
+                mWriteExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mChannel.close();
+            mRandomAccessFile.close();
+        }
+    }
+
+
+    // getter and setter
+    public File getFile() {
+        return mFile;
+    }
+
+    public int getNumberOfCheckpoints() {
+        return mSequence;
+    }
+
+    public long getNumberOfSkipped() {
+        return mNumberOfSkipped;
+    }
+
+    public long getNumberOfPoints() {
+        return mNumberOfPoints;
+    }
+
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    public double getMeanCopyMillis() {
+        return (mSequence == 0) ? 0 : mCopyNanos / 1e6 / mSequence;
+    }
+}
@@ -0,0 +1,161 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * Streams the delta segments written through {@link PointCloudCheckpoint} one at a time and replays
+ * them into an {@link AccumulatedPointCloud}. A crash can only cut off the segment being appended,
+ * so reading stops at the first incomplete segment or the first one whose checksum or sequence
+ * number does not match, and everything before it is a consistent cloud.
+ */
+public class PointCloudCheckpointReader implements Closeable {
+
+    // properties
+    private final InputStream mInputStream;
+    private final byte[] mHeader = new byte[PointCloudCheckpoint.SEGMENT_HEADER_BYTES];
+    private final ByteBuffer mHeaderBuffer = ByteBuffer.wrap(mHeader).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 mChecksum = new CRC32();
+
+    // current segment
+    private byte[] mPoints = new byte[64 * 1024];
+    private ByteBuffer mPointBuffer = ByteBuffer.wrap(mPoints).order(ByteOrder.LITTLE_ENDIAN);
+    private int mSequence = -1;
+    private long mTimestamp = 0;
+    private int mNumberOfPoints = 0;
+    private boolean mIsTruncated = false;
+
+
+    // constructors
+    public PointCloudCheckpointReader(final File file) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    public PointCloudCheckpointReader(final InputStream inputStream) throws IOException {
+        mInputStream = inputStream;
+        if (read(mHeader, PointCloudCheckpoint.HEADER_BYTES) != PointCloudCheckpoint.HEADER_BYTES) {
+            throw new IOException("PointCloudCheckpointReader: Missing header");
+        }
+        for (int i = 0; i < PointCloudCheckpoint.MAGIC.length; i++) {
+            if (mHeader[i] != PointCloudCheckpoint.MAGIC[i]) {
+                throw new IOException("PointCloudCheckpointReader: Not a point cloud checkpoint");
+            }
+        }
+        int version = mHeaderBuffer.getInt(4);
+        if (version != PointCloudCheckpoint.FORMAT_VERSION) {
+            throw new IOException("PointCloudCheckpointReader: Unsupported version " + version);
+        }
+    }
+
+
+    // methods
+    public boolean next() throws IOException {
+        if (mIsTruncated) {
+            return false;
+        }
+
+        // 1) segment header, where a clean end of the file is the only expected way out
+        int headerLength = read(mHeader, PointCloudCheckpoint.SEGMENT_HEADER_BYTES);
+        if (headerLength == 0) {
+            return false;
+        }
+        int sequence = mHeaderBuffer.getInt(0);
+        long timestamp = mHeaderBuffer.getLong(4);
+        int numberOfPoints = mHeaderBuffer.getInt(12);
+        int checksum = mHeaderBuffer.getInt(16);
+        if ((headerLength < PointCloudCheckpoint.SEGMENT_HEADER_BYTES) || (sequence != mSequence + 1)
+                || (numberOfPoints <= 0) || (numberOfPoints > Integer.MAX_VALUE / PointCloudCheckpoint.POINT_BYTES)) {
+            mIsTruncated = true;
+            return false;
+        }
+
+        // 2) points, accepted only whole and with a matching checksum
+        int length = numberOfPoints * PointCloudCheckpoint.POINT_BYTES;
+        if (mPoints.length < length) {
+            mPoints = new byte[Math.max(length, mPoints.length * 2)];
+            mPointBuffer = ByteBuffer.wrap(mPoints).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        boolean isComplete = (read(mPoints, length) == length);
+        mChecksum.reset();
+        mChecksum.update(mPoints, 0, length);
+        if (!isComplete || ((int) mChecksum.getValue() != checksum)) {
+            mIsTruncated = true;
+            return false;
+        }
+        mSequence = sequence;
+        mTimestamp = timestamp;
+        mNumberOfPoints = numberOfPoints;
+        return true;
+    }
+
+    public int replay(final AccumulatedPointCloud cloud) throws IOException {
+
+        // later segments overwrite earlier ones point by point, as the recording did
+        int numberOfSegments = 0;
+        float[] point = new float[6];
+        while (next()) {
+            for (int i = 0; i < mNumberOfPoints; i++) {
+                getPoint(i, point);
+                cloud.appendPointCloud(getPointId(i), point[0], point[1], point[2], point[3], point[4], point[5]);
+            }
+            numberOfSegments++;
+        }
+        return numberOfSegments;
+    }
+
+    private int read(final byte[] bytes, final int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = mInputStream.read(bytes, offset, length - offset);
+            if (count < 0) {
+                break;
+            }
+            offset += count;
+        }
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInputStream.close();
+    }
+
+
+    // getter and setter
+    public int getSequence() {
+        return mSequence;
+    }
+
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public int getNumberOfPoints() {
+        return mNumberOfPoints;
+    }
+
+    public int getPointId(final int point) {
+        return mPointBuffer.getInt(point * PointCloudCheckpoint.POINT_BYTES);
+    }
+
+    public void getPoint(final int point, final float[] values) {
+        int offset = point * PointCloudCheckpoint.POINT_BYTES;
+        values[0] = mPointBuffer.getFloat(offset + 4);
+        values[1] = mPointBuffer.getFloat(offset + 8);
+        values[2] = mPointBuffer.getFloat(offset + 12);
+        values[3] = mPoints[offset + 16] & 0xFF;
+        values[4] = mPoints[offset + 17] & 0xFF;
+        values[5] = mPoints[offset + 18] & 0xFF;
+    }
+
+    public boolean isTruncated() {
+        return mIsTruncated;
+    }
+}
@@ -0,0 +1,302 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Implicit k-d tree over a flat {x, y, z} float array.
+ *
+ * The tree has no node objects: the points are permuted in place so that every range [lo, hi)
+ * stores its splitting point at the middle index, with the split axis cycling x, y, z by depth.
+ * Both halves of each range are partitioned in parallel on the common fork/join pool.
+ *
+ * Built from an {@link AccumulatedPointCloud}, the index takes over the one {x, y, z} copy of its
+ * positions, so the caller needs no flat array of its own.
+ */
+public class PointCloudIndex {
+
+    // properties
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    private final float[] mCoords;
+    private final int[] mIndices;
+    private final int mNumberOfPoints;
+
+
+    // constructor
+    public PointCloudIndex(final float[] points, final int numberOfPoints) {
+
+        // copy the points so that the caller's array is not reordered
+        mNumberOfPoints = numberOfPoints;
+        mCoords = new float[numberOfPoints * 3];
+        System.arraycopy(points, 0, mCoords, 0, numberOfPoints * 3);
+        mIndices = new int[numberOfPoints];
+        build();
+    }
+
+    public PointCloudIndex(final AccumulatedPointCloud pointCloud) {
+
+        // the flattened positions belong to the index alone, so they are reordered without another copy
+        mNumberOfPoints = pointCloud.getNumberOfFeatures();
+        mCoords = pointCloud.getPointArray();
+        mIndices = new int[mNumberOfPoints];
+        build();
+    }
+
+    private void build() {
+        for (int i = 0; i < mNumberOfPoints; i++) {
+            mIndices[i] = i;
+        }
+
+        // build the implicit tree
+        if (mNumberOfPoints > 1) {
+            ForkJoinPool.commonPool().invoke(new BuildTask(0, mNumberOfPoints, 0));
+        }
+    }
+
+
+    // methods
+    public int radiusSearch(final float x, final float y, final float z, final float radius, final int[] result) {
+        return radiusSearch(0, mNumberOfPoints, 0, x, y, z, radius * radius, result, 0);
+    }
+
+    public int nearestNeighbors(final float x, final float y, final float z, final int k, final int[] resultIndices, final float[] resultSquaredDistances) {
+
+        // the result arrays hold a max-heap on squared distance while searching
+        int count = nearestNeighbors(0, mNumberOfPoints, 0, x, y, z, k, resultIndices, resultSquaredDistances, 0);
+
+        // heap sort in place so that the closest neighbor comes first
+        for (int end = count - 1; end > 0; end--) {
+            swapHeap(resultIndices, resultSquaredDistances, 0, end);
+            siftDown(resultIndices, resultSquaredDistances, 0, end);
+        }
+        return count;
+    }
+
+    public int nearestNeighborsOf(final int slot, final int k, final int[] resultIndices, final float[] resultSquaredDistances) {
+
+        // neighbors of a point of the tree itself, the point being the closest
+        return nearestNeighbors(mCoords[slot * 3], mCoords[slot * 3 + 1], mCoords[slot * 3 + 2], k, resultIndices, resultSquaredDistances);
+    }
+
+    private int radiusSearch(final int lo, final int hi, final int depth, final float x, final float y, final float z,
+                             final float squaredRadius, final int[] result, int count) {
+        if (lo >= hi) {
+            return count;
+        }
+
+        // check the splitting point of this range
+        int mid = (lo + hi) >>> 1;
+        if (squaredDistance(mid, x, y, z) <= squaredRadius) {
+            if (count < result.length) {
+                result[count] = mIndices[mid];
+            }
+            count++;
+        }
+
+        // visit the near side first and the far side only if the sphere crosses the plane
+        int axis = depth % 3;
+        float delta = component(x, y, z, axis) - mCoords[mid * 3 + axis];
+        if (delta <= 0) {
+            count = radiusSearch(lo, mid, depth + 1, x, y, z, squaredRadius, result, count);
+            if (delta * delta <= squaredRadius) {
+                count = radiusSearch(mid + 1, hi, depth + 1, x, y, z, squaredRadius, result, count);
+            }
+        } else {
+            count = radiusSearch(mid + 1, hi, depth + 1, x, y, z, squaredRadius, result, count);
+            if (delta * delta <= squaredRadius) {
+                count = radiusSearch(lo, mid, depth + 1, x, y, z, squaredRadius, result, count);
+            }
+        }
+        return count;
+    }
+
+    private int nearestNeighbors(final int lo, final int hi, final int depth, final float x, final float y, final float z,
+                                 final int k, final int[] heapIndices, final float[] heapDistances, int count) {
+        if (lo >= hi) {
+            return count;
+        }
+
+        // offer the splitting point of this range to the bounded max-heap
+        int mid = (lo + hi) >>> 1;
+        float distance = squaredDistance(mid, x, y, z);
+        if (count < k) {
+            heapIndices[count] = mIndices[mid];
+            heapDistances[count] = distance;
+            siftUp(heapIndices, heapDistances, count);
+            count++;
+        } else if (distance < heapDistances[0]) {
+            heapIndices[0] = mIndices[mid];
+            heapDistances[0] = distance;
+            siftDown(heapIndices, heapDistances, 0, count);
+        }
+
+        // visit the near side first and prune the far side against the current k-th distance
+        int axis = depth % 3;
+        float delta = component(x, y, z, axis) - mCoords[mid * 3 + axis];
+        int nearLo = (delta <= 0) ? lo : mid + 1;
+        int nearHi = (delta <= 0) ? mid : hi;
+        int farLo = (delta <= 0) ? mid + 1 : lo;
+        int farHi = (delta <= 0) ? hi : mid;
+        count = nearestNeighbors(nearLo, nearHi, depth + 1, x, y, z, k, heapIndices, heapDistances, count);
+        if ((count < k) || (delta * delta < heapDistances[0])) {
+            count = nearestNeighbors(farLo, farHi, depth + 1, x, y, z, k, heapIndices, heapDistances, count);
+        }
+        return count;
+    }
+
+    private float squaredDistance(final int slot, final float x, final float y, final float z) {
+        float dx = mCoords[slot * 3] - x;
+        float dy = mCoords[slot * 3 + 1] - y;
+        float dz = mCoords[slot * 3 + 2] - z;
+        return (dx * dx) + (dy * dy) + (dz * dz);
+    }
+
+    private static float component(final float x, final float y, final float z, final int axis) {
+        return (axis == 0) ? x : ((axis == 1) ? y : z);
+    }
+
+    private static void siftUp(final int[] indices, final float[] distances, int child) {
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (distances[parent] >= distances[child]) {
+                return;
+            }
+            swapHeap(indices, distances, parent, child);
+            child = parent;
+        }
+    }
+
+    private static void siftDown(final int[] indices, final float[] distances, int parent, final int size) {
+        while (true) {
+            int largest = parent;
+            int left = (parent * 2) + 1;
+            int right = left + 1;
+            if ((left < size) && (distances[left] > distances[largest])) {
+                largest = left;
+            }
+            if ((right < size) && (distances[right] > distances[largest])) {
+                largest = right;
+            }
+            if (largest == parent) {
+                return;
+            }
+            swapHeap(indices, distances, parent, largest);
+            parent = largest;
+        }
+    }
+
+    private static void swapHeap(final int[] indices, final float[] distances, final int a, final int b) {
+        int index = indices[a];
+        indices[a] = indices[b];
+        indices[b] = index;
+        float distance = distances[a];
+        distances[a] = distances[b];
+        distances[b] = distance;
+    }
+
+    private void select(int lo, int hi, final int nth, final int axis) {
+
+        // iterative quickselect on one axis over the range [lo, hi)
+        hi = hi - 1;
+        while (hi > lo) {
+            int middle = (lo + hi) >>> 1;
+            float pivot = medianOfThree(lo, middle, hi, axis);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (mCoords[i * 3 + axis] < pivot) {
+                    i++;
+                }
+                while (mCoords[j * 3 + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swapPoints(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (nth <= j) {
+                hi = j;
+            } else if (nth >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private float medianOfThree(final int a, final int b, final int c, final int axis) {
+        float va = mCoords[a * 3 + axis];
+        float vb = mCoords[b * 3 + axis];
+        float vc = mCoords[c * 3 + axis];
+        return Math.max(Math.min(va, vb), Math.min(Math.max(va, vb), vc));
+    }
+
+    private void swapPoints(final int a, final int b) {
+        for (int axis = 0; axis < 3; axis++) {
+            float value = mCoords[a * 3 + axis];
+            mCoords[a * 3 + axis] = mCoords[b * 3 + axis];
+            mCoords[b * 3 + axis] = value;
+        }
+        int index = mIndices[a];
+        mIndices[a] = mIndices[b];
+        mIndices[b] = index;
+    }
+
+
+    // definition of 'BuildTask' class
+    private class BuildTask extends RecursiveAction {
+
+        // properties
+        private static final long serialVersionUID = 1L;
+        private final int mLo;
+        private final int mHi;
+        private final int mDepth;
+
+
+        // constructor
+        BuildTask(final int lo, final int hi, final int depth) {
+            mLo = lo;
+            mHi = hi;
+            mDepth = depth;
+        }
+
+
+        // methods
+        @Override
+        protected void compute() {
+            build(mLo, mHi, mDepth);
+        }
+
+        private void build(final int lo, final int hi, final int depth) {
+            if (hi - lo < 2) {
+                return;
+            }
+
+            // place the median of this range at the middle index
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi, mid, depth % 3);
+
+            // partition both halves, forking while the ranges are large
+            if (hi - lo > PARALLEL_THRESHOLD) {
+                invokeAll(new BuildTask(lo, mid, depth + 1), new BuildTask(mid + 1, hi, depth + 1));
+            } else {
+                build(lo, mid, depth + 1);
+                build(mid + 1, hi, depth + 1);
+            }
+        }
+    }
+
+
+    // getter and setter
+    public int getNumberOfPoints() {
+        return mNumberOfPoints;
+    }
+
+    // index of the point stored at a slot of the tree, in the order the points were given
+    public int getPointIndex(final int slot) {
+        return mIndices[slot];
+    }
+}
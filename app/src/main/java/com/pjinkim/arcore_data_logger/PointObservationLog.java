@@ -0,0 +1,182 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes the raw point observations of every frame (ID, position and confidence) compactly for
+ * offline bundle adjustment.
+ *
+ * File layout (little-endian): magic "ARPO", int32 version, then one record per frame: int32
+ * length and int32 CRC32 of the rest of the record, int64 timestamp (ns), float32 quantization step
+ * (m), float32 origin x y z, varint point count, and per point in ascending ID order the zigzag
+ * varint ID delta to the previous point, the zigzag varint position relative to the origin in
+ * steps, and uint8 confidence scaled to 0-255. The length and checksum let a reader tell a frame
+ * cut off by a crash from a complete one, whatever follows the cut. The origin is
+ * the center of the frame's bounding box, so a dense cloud takes about 8 bytes per point instead
+ * of 20. See {@link PointObservationReader}.
+ */
+public class PointObservationLog {
+
+    // properties
+    public static final byte[] MAGIC = {'A', 'R', 'P', 'O'};
+    public static final int FORMAT_VERSION = 2;
+    public static final int HEADER_BYTES = 8;
+    public static final int FRAME_PREFIX_BYTES = 4 + 4;
+    public static final int MAX_FRAME_BYTES = 1 << 24;
+    public static final int RAW_POINT_BYTES = 20;
+
+    private static final int MAX_FRAME_HEADER_BYTES = FRAME_PREFIX_BYTES + 8 + 4 * 4 + 5;
+    private static final int MAX_POINT_BYTES = 5 + 3 * 5 + 1;
+
+    private final float mStep;
+
+    // point indices of the current frame sorted by ID, packed as (ID << 32 | index)
+    private long[] mSortKeys = new long[1024];
+    private final CRC32 mChecksum = new CRC32();
+
+    // encoded records since the last 'clear'
+    private ByteBuffer mBuffer = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private long mNumberOfBytes = HEADER_BYTES;
+    private long mNumberOfFrames = 0;
+    private long mNumberOfObservations = 0;
+    private long mFirstTimestamp = 0;
+    private long mLastTimestamp = 0;
+
+
+    // constructor
+    public PointObservationLog(final float step) {
+        mStep = step;
+    }
+
+
+    // methods
+    public static byte[] header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(FORMAT_VERSION);
+        return header.array();
+    }
+
+    public void addFrame(final long timestamp, final IntBuffer ids, final FloatBuffer points) {
+        int count = (ids == null) ? 0 : ids.remaining();
+        ensureRemaining(MAX_FRAME_HEADER_BYTES + count * MAX_POINT_BYTES);
+
+        // 1) sort the point indices by ID and find the center of the bounding box
+        if (mSortKeys.length < count) {
+            mSortKeys = new long[Math.max(count, mSortKeys.length * 2)];
+        }
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            mSortKeys[i] = ((long) ids.get(ids.position() + i) << 32) | i;
+            float x = points.get(points.position() + i * 4);
+            float y = points.get(points.position() + i * 4 + 1);
+            float z = points.get(points.position() + i * 4 + 2);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+        Arrays.sort(mSortKeys, 0, count);
+        float originX = (count > 0) ? (minX + maxX) / 2 : 0;
+        float originY = (count > 0) ? (minY + maxY) / 2 : 0;
+        float originZ = (count > 0) ? (minZ + maxZ) / 2 : 0;
+
+        // 2) frame header, behind the length and checksum filled in once the frame is encoded
+        int frameStart = mBuffer.position();
+        mBuffer.position(frameStart + FRAME_PREFIX_BYTES);
+        mBuffer.putLong(timestamp).putFloat(mStep).putFloat(originX).putFloat(originY).putFloat(originZ);
+        putVarLong(count);
+
+        // 3) ID deltas, quantized offsets and confidence of each point
+        long previousId = 0;
+        for (int k = 0; k < count; k++) {
+            long id = mSortKeys[k] >> 32;
+            int i = (int) mSortKeys[k];
+            int p = points.position() + i * 4;
+            putVarLong(zigzag(id - previousId));
+            putVarLong(zigzag(Math.round((points.get(p) - originX) / mStep)));
+            putVarLong(zigzag(Math.round((points.get(p + 1) - originY) / mStep)));
+            putVarLong(zigzag(Math.round((points.get(p + 2) - originZ) / mStep)));
+            float confidence = Math.max(0.0f, Math.min(1.0f, points.get(p + 3)));
+            mBuffer.put((byte) Math.round(confidence * 255));
+            previousId = id;
+        }
+
+        // 4) length and checksum of the frame
+        int frameLength = mBuffer.position() - frameStart - FRAME_PREFIX_BYTES;
+        mChecksum.reset();
+        mChecksum.update(mBuffer.array(), frameStart + FRAME_PREFIX_BYTES, frameLength);
+        mBuffer.putInt(frameStart, frameLength).putInt(frameStart + 4, (int) mChecksum.getValue());
+
+        if (mNumberOfFrames == 0) {
+            mFirstTimestamp = timestamp;
+        }
+        mLastTimestamp = timestamp;
+        mNumberOfFrames++;
+        mNumberOfObservations += count;
+    }
+
+    public void clear() {
+        mNumberOfBytes += mBuffer.position();
+        mBuffer.clear();
+    }
+
+    private static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void putVarLong(long value) {
+
+        // 7 bits per byte with a continuation bit
+        while ((value & ~0x7FL) != 0) {
+            mBuffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        mBuffer.put((byte) value);
+    }
+
+    private void ensureRemaining(final int bytes) {
+        if (mBuffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(mBuffer.capacity() * 2, mBuffer.position() + bytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            mBuffer.flip();
+            larger.put(mBuffer);
+            mBuffer = larger;
+        }
+    }
+
+
+    // getter and setter
+    public byte[] getBytes() {
+        return mBuffer.array();
+    }
+
+    public int getLength() {
+        return mBuffer.position();
+    }
+
+    // total file size including the header and the records not yet cleared
+    public long getNumberOfBytes() {
+        return mNumberOfBytes + mBuffer.position();
+    }
+
+    public long getNumberOfFrames() {
+        return mNumberOfFrames;
+    }
+
+    public long getNumberOfObservations() {
+        return mNumberOfObservations;
+    }
+
+    public double getBytesPerMinute() {
+        long durationNanos = mLastTimestamp - mFirstTimestamp;
+        return (durationNanos > 0) ? getNumberOfBytes() * 60e9 / durationNanos : 0;
+    }
+}
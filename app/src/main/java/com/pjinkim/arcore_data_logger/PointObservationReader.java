@@ -0,0 +1,185 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Streams the frames written through {@link PointObservationLog} one at a time, decoding point IDs
+ * and positions into arrays that are reused from frame to frame. A frame is only decoded once its
+ * length and checksum verify, so a file cut off by a crash ends at the last complete frame, even
+ * when the cut falls inside a point and is followed by the zeros a file system can leave after a
+ * power loss.
+ */
+public class PointObservationReader implements Closeable {
+
+    // properties
+    private final InputStream mInputStream;
+    private final byte[] mScratch = new byte[32];
+    private final ByteBuffer mScratchBuffer = ByteBuffer.wrap(mScratch).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 mChecksum = new CRC32();
+
+    // current frame, as read and verified
+    private byte[] mFrame = new byte[16 * 1024];
+    private ByteBuffer mFrameBuffer = ByteBuffer.wrap(mFrame).order(ByteOrder.LITTLE_ENDIAN);
+
+    // decoded current frame
+    private long mTimestamp;
+    private int mNumberOfPoints;
+    private int[] mIds = new int[1024];
+    private float[] mPositions = new float[1024 * 3];
+    private float[] mConfidences = new float[1024];
+
+
+    // constructors
+    public PointObservationReader(final File file) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    public PointObservationReader(final InputStream inputStream) throws IOException {
+        mInputStream = inputStream;
+        try {
+            readFully(mScratch, PointObservationLog.HEADER_BYTES);
+        } catch (EOFException e) {
+            throw new IOException("PointObservationReader: Missing header", e);
+        }
+        for (int i = 0; i < PointObservationLog.MAGIC.length; i++) {
+            if (mScratch[i] != PointObservationLog.MAGIC[i]) {
+                throw new IOException("PointObservationReader: Not a point observation log");
+            }
+        }
+        int version = mScratchBuffer.getInt(4);
+        if (version != PointObservationLog.FORMAT_VERSION) {
+            throw new IOException("PointObservationReader: Unsupported version " + version);
+        }
+    }
+
+
+    // methods
+    public boolean next() throws IOException {
+        try {
+
+            // 1) length and checksum, then the whole frame, which ends the file unless it verifies
+            readFully(mScratch, PointObservationLog.FRAME_PREFIX_BYTES);
+            int frameLength = mScratchBuffer.getInt(0);
+            int frameChecksum = mScratchBuffer.getInt(4);
+            if ((frameLength <= 0) || (frameLength > PointObservationLog.MAX_FRAME_BYTES)) {
+                return false;
+            }
+            if (mFrame.length < frameLength) {
+                mFrame = new byte[Math.max(frameLength, mFrame.length * 2)];
+                mFrameBuffer = ByteBuffer.wrap(mFrame).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            readFully(mFrame, frameLength);
+            mChecksum.reset();
+            mChecksum.update(mFrame, 0, frameLength);
+            if ((int) mChecksum.getValue() != frameChecksum) {
+                return false;
+            }
+            mFrameBuffer.clear();
+            mFrameBuffer.limit(frameLength);
+
+            // 2) timestamp, quantization step, origin and point count
+            mTimestamp = mFrameBuffer.getLong();
+            float step = mFrameBuffer.getFloat();
+            float originX = mFrameBuffer.getFloat();
+            float originY = mFrameBuffer.getFloat();
+            float originZ = mFrameBuffer.getFloat();
+            int numberOfPoints = (int) readVarLong();
+            if (mIds.length < numberOfPoints) {
+                int capacity = Math.max(numberOfPoints, mIds.length * 2);
+                mIds = Arrays.copyOf(mIds, capacity);
+                mPositions = Arrays.copyOf(mPositions, capacity * 3);
+                mConfidences = Arrays.copyOf(mConfidences, capacity);
+            }
+
+            // 3) points in ascending ID order
+            long id = 0;
+            for (int i = 0; i < numberOfPoints; i++) {
+                id += unzigzag(readVarLong());
+                mIds[i] = (int) id;
+                mPositions[i * 3] = originX + unzigzag(readVarLong()) * step;
+                mPositions[i * 3 + 1] = originY + unzigzag(readVarLong()) * step;
+                mPositions[i * 3 + 2] = originZ + unzigzag(readVarLong()) * step;
+                mConfidences[i] = (mFrameBuffer.get() & 0xFF) / 255.0f;
+            }
+            mNumberOfPoints = numberOfPoints;
+            return true;
+        } catch (EOFException e) {
+            return false;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("next: Frame shorter than its points", e);
+        }
+    }
+
+    private static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = mFrameBuffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("readVarLong: Malformed varint");
+    }
+
+    private void readFully(final byte[] bytes, final int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = mInputStream.read(bytes, offset, length - offset);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            offset += count;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInputStream.close();
+    }
+
+
+    // getter and setter
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public int getNumberOfPoints() {
+        return mNumberOfPoints;
+    }
+
+    public int getPointId(final int point) {
+        return mIds[point];
+    }
+
+    public float getX(final int point) {
+        return mPositions[point * 3];
+    }
+
+    public float getY(final int point) {
+        return mPositions[point * 3 + 1];
+    }
+
+    public float getZ(final int point) {
+        return mPositions[point * 3 + 2];
+    }
+
+    public float getConfidence(final int point) {
+        return mConfidences[point];
+    }
+}
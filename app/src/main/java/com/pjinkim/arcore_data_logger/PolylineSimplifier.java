@@ -0,0 +1,239 @@
+package com.pjinkim.arcore_data_logger;
+
+/**
+ * Online simplification of a 3D path into a polyline with a bounded number of vertices.
+ *
+ * Every new position extends the open tail that starts at the last committed vertex. While all
+ * positions of the tail stay within the tolerance of the straight segment from that vertex to the
+ * newest position, the tail is a single segment; once one does not, the previous position becomes
+ * a committed vertex and a new tail starts there. Committed vertices never move, so a renderer
+ * only needs to rebuild the tail. Positions closer than the minimum distance to the last one are
+ * dropped, which keeps a device standing still from filling the tail.
+ *
+ * When the committed vertices reach the limit, the tolerance is doubled and the whole polyline is
+ * simplified again with Douglas-Peucker until at most half of the limit is left, so a session of
+ * any length keeps the vertex count bounded at a cost amortized over the positions that filled it.
+ */
+public class PolylineSimplifier {
+
+    // properties
+    public static final int IGNORED = 0;
+    public static final int EXTENDED = 1;
+    public static final int COMMITTED = 2;
+    public static final int COARSENED = 3;
+
+    private static final int MAX_TAIL_POINTS = 256;
+
+    private final float mMinDistanceSquared;
+    private final int mMaxVertices;
+    private final float mInitialTolerance;
+    private float mTolerance;
+
+    private final float[] mVertices;
+    private int mNumberOfVertices = 0;
+
+    // positions since the last committed vertex, the last one being the end of the open segment
+    private final float[] mTail = new float[MAX_TAIL_POINTS * 3];
+    private int mNumberOfTailPoints = 0;
+
+    // scratch space of the Douglas-Peucker pass
+    private final boolean[] mIsKept;
+    private final int[] mStack;
+
+    private long mNumberOfPoints = 0;
+    private int mNumberOfCoarsenings = 0;
+
+
+    // constructor
+    public PolylineSimplifier(final float tolerance, final float minDistance, final int maxVertices) {
+        if (maxVertices < 4) {
+            throw new IllegalArgumentException("PolylineSimplifier: At least 4 vertices are needed, not " + maxVertices);
+        }
+        mInitialTolerance = tolerance;
+        mTolerance = tolerance;
+        mMinDistanceSquared = minDistance * minDistance;
+        mMaxVertices = maxVertices;
+        mVertices = new float[maxVertices * 3];
+        mIsKept = new boolean[maxVertices];
+        mStack = new int[maxVertices * 2];
+    }
+
+
+    // methods
+    public int add(final float x, final float y, final float z) {
+
+        // 1) the first position starts the polyline, positions that barely moved are dropped
+        if (mNumberOfVertices == 0) {
+            putVertex(x, y, z);
+            mNumberOfPoints++;
+            return COMMITTED;
+        }
+        float[] last = (mNumberOfTailPoints == 0) ? mVertices : mTail;
+        int lastOffset = ((mNumberOfTailPoints == 0) ? mNumberOfVertices : mNumberOfTailPoints) * 3 - 3;
+        if (distanceSquared(last, lastOffset, x, y, z) < mMinDistanceSquared) {
+            return IGNORED;
+        }
+        mNumberOfPoints++;
+
+        // 2) extend the open segment while every position of the tail stays within the tolerance of it
+        if ((mNumberOfTailPoints < MAX_TAIL_POINTS) && isTailWithinTolerance(x, y, z)) {
+            putTailPoint(x, y, z);
+            return EXTENDED;
+        }
+
+        // 3) otherwise the previous position becomes a vertex and starts the next tail
+        int offset = mNumberOfTailPoints * 3 - 3;
+        putVertex(mTail[offset], mTail[offset + 1], mTail[offset + 2]);
+        mNumberOfTailPoints = 0;
+        putTailPoint(x, y, z);
+        if (mNumberOfVertices < mMaxVertices) {
+            return COMMITTED;
+        }
+
+        // 4) a full polyline is coarsened as a whole, until half of it is free again
+        while (mNumberOfVertices > mMaxVertices / 2) {
+            mTolerance *= 2;
+            simplify();
+        }
+        mNumberOfCoarsenings++;
+        return COARSENED;
+    }
+
+    private boolean isTailWithinTolerance(final float x, final float y, final float z) {
+        int anchor = mNumberOfVertices * 3 - 3;
+        float toleranceSquared = mTolerance * mTolerance;
+        for (int i = 0; i < mNumberOfTailPoints; i++) {
+            if (segmentDistanceSquared(mTail, i * 3, mVertices[anchor], mVertices[anchor + 1], mVertices[anchor + 2], x, y, z) > toleranceSquared) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void simplify() {
+
+        // Douglas-Peucker over the committed vertices with an explicit stack, keeping both ends
+        int last = mNumberOfVertices - 1;
+        for (int i = 0; i <= last; i++) {
+            mIsKept[i] = false;
+        }
+        mIsKept[0] = true;
+        mIsKept[last] = true;
+        float toleranceSquared = mTolerance * mTolerance;
+        int stackSize = 0;
+        mStack[stackSize++] = 0;
+        mStack[stackSize++] = last;
+        while (stackSize > 0) {
+            int end = mStack[--stackSize];
+            int start = mStack[--stackSize];
+            float maxDistanceSquared = toleranceSquared;
+            int farthest = -1;
+            for (int i = start + 1; i < end; i++) {
+                float distanceSquared = segmentDistanceSquared(mVertices, i * 3, mVertices[start * 3], mVertices[start * 3 + 1],
+                        mVertices[start * 3 + 2], mVertices[end * 3], mVertices[end * 3 + 1], mVertices[end * 3 + 2]);
+                if (distanceSquared > maxDistanceSquared) {
+                    maxDistanceSquared = distanceSquared;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                mIsKept[farthest] = true;
+                mStack[stackSize++] = start;
+                mStack[stackSize++] = farthest;
+                mStack[stackSize++] = farthest;
+                mStack[stackSize++] = end;
+            }
+        }
+
+        // compact the kept vertices in place
+        int count = 0;
+        for (int i = 0; i <= last; i++) {
+            if (mIsKept[i]) {
+                System.arraycopy(mVertices, i * 3, mVertices, count * 3, 3);
+                count++;
+            }
+        }
+        mNumberOfVertices = count;
+    }
+
+    private void putVertex(final float x, final float y, final float z) {
+        int offset = mNumberOfVertices * 3;
+        mVertices[offset] = x;
+        mVertices[offset + 1] = y;
+        mVertices[offset + 2] = z;
+        mNumberOfVertices++;
+    }
+
+    private void putTailPoint(final float x, final float y, final float z) {
+        int offset = mNumberOfTailPoints * 3;
+        mTail[offset] = x;
+        mTail[offset + 1] = y;
+        mTail[offset + 2] = z;
+        mNumberOfTailPoints++;
+    }
+
+    private static float distanceSquared(final float[] points, final int offset, final float x, final float y, final float z) {
+        float dx = points[offset] - x;
+        float dy = points[offset + 1] - y;
+        float dz = points[offset + 2] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    static float segmentDistanceSquared(final float[] points, final int offset, final float ax, final float ay, final float az,
+                                        final float bx, final float by, final float bz) {
+
+        // distance to the closest point of the segment, its ends included
+        float abx = bx - ax;
+        float aby = by - ay;
+        float abz = bz - az;
+        float lengthSquared = abx * abx + aby * aby + abz * abz;
+        float t = 0;
+        if (lengthSquared > 0) {
+            t = ((points[offset] - ax) * abx + (points[offset + 1] - ay) * aby + (points[offset + 2] - az) * abz) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        return distanceSquared(points, offset, ax + t * abx, ay + t * aby, az + t * abz);
+    }
+
+    public void reset() {
+        mNumberOfVertices = 0;
+        mNumberOfTailPoints = 0;
+        mNumberOfPoints = 0;
+        mNumberOfCoarsenings = 0;
+        mTolerance = mInitialTolerance;
+    }
+
+
+    // getter and setter
+    public int getNumberOfVertices() {
+        return mNumberOfVertices;
+    }
+
+    public void getVertex(final int index, final float[] vertex) {
+        System.arraycopy(mVertices, index * 3, vertex, 0, 3);
+    }
+
+    public boolean hasTail() {
+        return mNumberOfTailPoints > 0;
+    }
+
+    public void getTailEnd(final float[] vertex) {
+        System.arraycopy(mTail, mNumberOfTailPoints * 3 - 3, vertex, 0, 3);
+    }
+
+    public long getNumberOfPoints() {
+        return mNumberOfPoints;
+    }
+
+    public int getMaxVertices() {
+        return mMaxVertices;
+    }
+
+    public float getTolerance() {
+        return mTolerance;
+    }
+
+    public int getNumberOfCoarsenings() {
+        return mNumberOfCoarsenings;
+    }
+}
@@ -0,0 +1,53 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the 6-DoF pose lines of ARCore_sensor_pose.txt and their {@link SparseTimeIndex}, the
+ * line formatted into a reused {@link CharFormatter} so that recording a pose does not allocate.
+ */
+public class PoseRecordWriter {
+
+    // properties
+    private final Writer mWriter;
+    private final ChannelFileWriter mIndexWriter;
+    private final CharFormatter mRecord = new CharFormatter(192);
+    private final SparseTimeIndex mIndex = new SparseTimeIndex();
+    private long mOffset;
+
+
+    // constructor
+    public PoseRecordWriter(final Writer writer, final ChannelFileWriter indexWriter, final long headerLength) {
+        mWriter = writer;
+        mIndexWriter = indexWriter;
+        mOffset = headerLength;
+    }
+
+
+    // methods
+    public void write(final long timestamp, final float qx, final float qy, final float qz, final float qw,
+                      final float tx, final float ty, final float tz) throws IOException {
+
+        // record timestamp and 6-DoF device pose in text file
+        mRecord.reset().appendLong(timestamp, 1);
+        mRecord.append(' ').appendFixed(qx, 6).append(' ').appendFixed(qy, 6);
+        mRecord.append(' ').appendFixed(qz, 6).append(' ').appendFixed(qw, 6);
+        mRecord.append(' ').appendFixed(tx, 6).append(' ').appendFixed(ty, 6);
+        mRecord.append(' ').appendFixed(tz, 6).append(" \n");
+
+        // index the line start every few hundred poses, so a time range can be read without a full scan
+        if (mIndex.addRecord(timestamp, mOffset)) {
+            mIndexWriter.writeBytes(mIndex.getBytes(), 0, mIndex.getLength());
+            mIndex.clear();
+        }
+        mWriter.write(mRecord.getChars(), 0, mRecord.length());
+        mOffset += mRecord.length();
+    }
+
+
+    // getter and setter
+    public long getOffset() {
+        return mOffset;
+    }
+}
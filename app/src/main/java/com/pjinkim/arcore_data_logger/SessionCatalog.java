@@ -0,0 +1,65 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Lists recorded sessions under a root folder (Downloads by default) by reading only their
+ * {@link SessionManifest} files, never the recorded data itself. Folders without a readable
+ * manifest are skipped.
+ */
+public class SessionCatalog {
+
+    // properties
+    private final File mRootDirectory;
+
+
+    // constructor
+    public SessionCatalog(final File rootDirectory) {
+        mRootDirectory = rootDirectory;
+    }
+
+
+    // methods
+    public List<SessionManifest> listSessions() {
+        return findSessions(manifest -> true);
+    }
+
+    public List<SessionManifest> findSessions(final Predicate<SessionManifest> filter) {
+
+        // every sub-folder with a manifest is a session
+        File[] folders = mRootDirectory.listFiles(File::isDirectory);
+        if (folders == null) {
+            return new ArrayList<>();
+        }
+
+        // manifests are tiny, so read them in parallel and sort by start time
+        return Arrays.stream(folders).parallel()
+                .map(SessionCatalog::loadManifest)
+                .filter(Objects::nonNull)
+                .filter(filter)
+                .sorted(Comparator.comparingLong(SessionManifest::getStartTimeMillis))
+                .collect(Collectors.toList());
+    }
+
+    private static SessionManifest loadManifest(final File folder) {
+        try {
+            return SessionManifest.load(folder);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+
+    // getter and setter
+    public File getRootDirectory() {
+        return mRootDirectory;
+    }
+}
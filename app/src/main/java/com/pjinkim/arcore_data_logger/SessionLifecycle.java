@@ -0,0 +1,122 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free lifecycle of one recording at a time: IDLE -> STARTING -> RECORDING -> DRAINING ->
+ * CLOSED, and from CLOSED (or IDLE) the next recording may start again. While recording, another
+ * thread may briefly take the writers over with RECORDING -> MAINTAINING -> RECORDING.
+ *
+ * The frame thread brackets the records of every frame with {@link #enterRecord()} and
+ * {@link #exitRecord()}, which only touch two atomics. Stopping moves RECORDING to DRAINING and
+ * then waits until no frame is inside its bracket, so once {@link #beginStop()} returns the
+ * stopping thread is the only one using the session writers and can flush and close them without
+ * any per-record locking. Entering increments the writer count before it reads the state, and
+ * stopping changes the state before it reads the count, so a frame either sees DRAINING and backs
+ * out or is waited for. Maintenance drains the frame thread the same way, and the frames that
+ * arrive meanwhile are not recorded.
+ */
+public class SessionLifecycle {
+
+    // properties
+    public static final int IDLE = 0;
+    public static final int STARTING = 1;
+    public static final int RECORDING = 2;
+    public static final int DRAINING = 3;
+    public static final int CLOSED = 4;
+    public static final int MAINTAINING = 5;
+
+    private static final long DRAIN_POLL_NANOS = 100 * 1000;
+
+    private final AtomicInteger mState = new AtomicInteger(IDLE);
+    private final AtomicInteger mNumberOfWriters = new AtomicInteger(0);
+
+
+    // methods
+    public boolean beginStart() {
+
+        // only one thread gets to set up the next recording
+        return mState.compareAndSet(IDLE, STARTING) || mState.compareAndSet(CLOSED, STARTING);
+    }
+
+    public void endStart() {
+
+        // publishes everything set up since 'beginStart' to the frame thread
+        if (!mState.compareAndSet(STARTING, RECORDING)) {
+            throw new IllegalStateException("endStart: Not starting");
+        }
+    }
+
+    public void abortStart() {
+        if (!mState.compareAndSet(STARTING, IDLE)) {
+            throw new IllegalStateException("abortStart: Not starting");
+        }
+    }
+
+    public boolean enterRecord() {
+        mNumberOfWriters.incrementAndGet();
+        if (mState.get() == RECORDING) {
+            return true;
+        }
+        mNumberOfWriters.decrementAndGet();
+        return false;
+    }
+
+    public void exitRecord() {
+        mNumberOfWriters.decrementAndGet();
+    }
+
+    public boolean beginStop() {
+
+        // stop admitting frames, once a maintenance in progress is over
+        while (!mState.compareAndSet(RECORDING, DRAINING)) {
+            if (mState.get() != MAINTAINING) {
+                return false;
+            }
+            LockSupport.parkNanos(DRAIN_POLL_NANOS);
+        }
+
+        // then wait for the frames already inside to leave
+        awaitWriters();
+        return true;
+    }
+
+    public boolean beginMaintenance() {
+
+        // the same drain as stopping, but the recording goes on afterwards
+        if (!mState.compareAndSet(RECORDING, MAINTAINING)) {
+            return false;
+        }
+        awaitWriters();
+        return true;
+    }
+
+    public void endMaintenance() {
+        if (!mState.compareAndSet(MAINTAINING, RECORDING)) {
+            throw new IllegalStateException("endMaintenance: Not maintaining");
+        }
+    }
+
+    private void awaitWriters() {
+        while (mNumberOfWriters.get() != 0) {
+            LockSupport.parkNanos(DRAIN_POLL_NANOS);
+        }
+    }
+
+    public void endStop() {
+        if (!mState.compareAndSet(DRAINING, CLOSED)) {
+            throw new IllegalStateException("endStop: Not draining");
+        }
+    }
+
+
+    // getter and setter
+    public int getState() {
+        return mState.get();
+    }
+
+    public boolean isRecording() {
+        return (mState.get() == RECORDING);
+    }
+}
@@ -0,0 +1,308 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Small key=value summary of one recorded session, kept next to its data files.
+ *
+ * The manifest is updated in memory while recording and rewritten atomically (temporary file
+ * and rename) at most every {@link #SAVE_INTERVAL_MILLIS}, so a crashed session still leaves a
+ * manifest that is at most a few seconds old. {@link #snapshot} copies the fields on the recording
+ * thread and {@link #write} can then run on an I/O thread. {@link SessionCatalog} reads only these files.
+ */
+public class SessionManifest {
+
+    // properties
+    public static final String FILE_NAME = "session_manifest.txt";
+    public static final long SAVE_INTERVAL_MILLIS = 2000;
+    private static final int FORMAT_VERSION = 1;
+
+    private final File mFolder;
+    private long mStartTimeMillis = 0;
+    private long mEndTimeMillis = 0;
+    private long mFirstTimestamp = 0;
+    private long mLastTimestamp = 0;
+    private long mPointCount = 0;
+    private long mStartLatencyMicros = 0;
+    private boolean mIsComplete = false;
+    private long mLastSaveTimeMillis = 0;
+    private long mNumberOfSnapshots = 0;
+
+    private final Object mWriteLock = new Object();
+    private long mWrittenSequence = 0;
+
+    private final TreeMap<String, long[]> mRecordCounts = new TreeMap<>();
+    private final TreeMap<String, long[]> mTrackingStateCounts = new TreeMap<>();
+    private final TreeMap<String, long[]> mTrackingFailureCounts = new TreeMap<>();
+    private final TreeMap<String, long[]> mFileBytes = new TreeMap<>();
+    private final TreeMap<String, long[]> mFileChecksums = new TreeMap<>();
+
+
+    // constructor
+    public SessionManifest(final File folder) {
+        mFolder = folder;
+    }
+
+
+    // methods
+    public void start(final long startTimeMillis) {
+        mStartTimeMillis = startTimeMillis;
+        mEndTimeMillis = startTimeMillis;
+    }
+
+    public void setStartLatencyMicros(final long startLatencyMicros) {
+        mStartLatencyMicros = startLatencyMicros;
+    }
+
+    public void addRecords(final String channel, final long numberOfRecords) {
+        increment(mRecordCounts, channel, numberOfRecords);
+    }
+
+    public void updateTimestamp(final long timestamp) {
+        if (mFirstTimestamp == 0) {
+            mFirstTimestamp = timestamp;
+        }
+        mLastTimestamp = Math.max(mLastTimestamp, timestamp);
+    }
+
+    public void addTrackingFrame(final String trackingState, final String trackingFailureReason) {
+        increment(mTrackingStateCounts, trackingState, 1);
+        increment(mTrackingFailureCounts, trackingFailureReason, 1);
+    }
+
+    public void setFileStatistics(final String fileName, final long bytes, final long checksum) {
+        set(mFileBytes, fileName, bytes);
+        set(mFileChecksums, fileName, checksum);
+    }
+
+    public void finish(final long endTimeMillis, final long pointCount) {
+        mEndTimeMillis = endTimeMillis;
+        mPointCount = pointCount;
+        mIsComplete = true;
+    }
+
+    public boolean isSaveDue(final long currentTimeMillis) {
+        return (currentTimeMillis - mLastSaveTimeMillis) >= SAVE_INTERVAL_MILLIS;
+    }
+
+    public void save(final long currentTimeMillis) throws IOException {
+        write(snapshot(currentTimeMillis));
+    }
+
+    public Snapshot snapshot(final long currentTimeMillis) {
+        if (!mIsComplete) {
+            mEndTimeMillis = Math.max(mEndTimeMillis, currentTimeMillis);
+        }
+        mLastSaveTimeMillis = currentTimeMillis;
+
+        // serialize every field into key=value pairs, so the fields can keep changing while it is written
+        Properties properties = new Properties();
+        properties.setProperty("format", Integer.toString(FORMAT_VERSION));
+        properties.setProperty("start_time_ms", Long.toString(mStartTimeMillis));
+        properties.setProperty("end_time_ms", Long.toString(mEndTimeMillis));
+        properties.setProperty("first_timestamp_ns", Long.toString(mFirstTimestamp));
+        properties.setProperty("last_timestamp_ns", Long.toString(mLastTimestamp));
+        properties.setProperty("point_count", Long.toString(mPointCount));
+        properties.setProperty("start_latency_us", Long.toString(mStartLatencyMicros));
+        properties.setProperty("complete", Boolean.toString(mIsComplete));
+        store(properties, "records.", mRecordCounts);
+        store(properties, "tracking_state.", mTrackingStateCounts);
+        store(properties, "tracking_failure.", mTrackingFailureCounts);
+        store(properties, "file_bytes.", mFileBytes);
+        store(properties, "file_crc32.", mFileChecksums);
+        return new Snapshot(++mNumberOfSnapshots, properties);
+    }
+
+    public void write(final Snapshot snapshot) throws IOException {
+
+        // snapshots may be written from another thread, one at a time and never older over newer
+        synchronized (mWriteLock) {
+            if (snapshot.mSequence <= mWrittenSequence) {
+                return;
+            }
+
+            // replace the previous manifest atomically so readers never see a partial file
+            File temporaryFile = new File(mFolder, FILE_NAME + ".tmp");
+            try (OutputStream outputStream = new FileOutputStream(temporaryFile)) {
+                snapshot.mProperties.store(outputStream, "ARCore Data Logger session manifest");
+            }
+            if (!temporaryFile.renameTo(new File(mFolder, FILE_NAME))) {
+                throw new IOException("write: Cannot replace " + FILE_NAME + " in " + mFolder);
+            }
+            mWrittenSequence = snapshot.mSequence;
+        }
+    }
+
+    public static SessionManifest load(final File folder) throws IOException {
+
+        // check if the session folder has a manifest
+        File manifestFile = new File(folder, FILE_NAME);
+        if (!manifestFile.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream inputStream = new FileInputStream(manifestFile)) {
+            properties.load(inputStream);
+        }
+
+        // parse every field back from key=value pairs
+        SessionManifest manifest = new SessionManifest(folder);
+        try {
+            manifest.mStartTimeMillis = Long.parseLong(properties.getProperty("start_time_ms", "0"));
+            manifest.mEndTimeMillis = Long.parseLong(properties.getProperty("end_time_ms", "0"));
+            manifest.mFirstTimestamp = Long.parseLong(properties.getProperty("first_timestamp_ns", "0"));
+            manifest.mLastTimestamp = Long.parseLong(properties.getProperty("last_timestamp_ns", "0"));
+            manifest.mPointCount = Long.parseLong(properties.getProperty("point_count", "0"));
+            manifest.mStartLatencyMicros = Long.parseLong(properties.getProperty("start_latency_us", "0"));
+            manifest.mIsComplete = Boolean.parseBoolean(properties.getProperty("complete", "false"));
+            for (String key : properties.stringPropertyNames()) {
+                if (key.indexOf('.') < 0) {
+                    continue;
+                }
+                long value = Long.parseLong(properties.getProperty(key));
+                if (key.startsWith("records.")) {
+                    set(manifest.mRecordCounts, key.substring(8), value);
+                } else if (key.startsWith("tracking_state.")) {
+                    set(manifest.mTrackingStateCounts, key.substring(15), value);
+                } else if (key.startsWith("tracking_failure.")) {
+                    set(manifest.mTrackingFailureCounts, key.substring(17), value);
+                } else if (key.startsWith("file_bytes.")) {
+                    set(manifest.mFileBytes, key.substring(11), value);
+                } else if (key.startsWith("file_crc32.")) {
+                    set(manifest.mFileChecksums, key.substring(11), value);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("load: Malformed " + manifestFile, e);
+        }
+        return manifest;
+    }
+
+    private static void store(final Properties properties, final String prefix, final Map<String, long[]> counters) {
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            properties.setProperty(prefix + entry.getKey(), Long.toString(entry.getValue()[0]));
+        }
+    }
+
+    private static void increment(final Map<String, long[]> counters, final String key, final long amount) {
+        long[] counter = counters.get(key);
+        if (counter == null) {
+            counter = new long[1];
+            counters.put(key, counter);
+        }
+        counter[0] += amount;
+    }
+
+    private static void set(final Map<String, long[]> counters, final String key, final long value) {
+        long[] counter = counters.get(key);
+        if (counter == null) {
+            counters.put(key, new long[]{value});
+        } else {
+            counter[0] = value;
+        }
+    }
+
+    private static long get(final Map<String, long[]> counters, final String key) {
+        long[] counter = counters.get(key);
+        return (counter == null) ? 0 : counter[0];
+    }
+
+
+    // getter and setter
+    public File getFolder() {
+        return mFolder;
+    }
+
+    public long getStartTimeMillis() {
+        return mStartTimeMillis;
+    }
+
+    public long getEndTimeMillis() {
+        return mEndTimeMillis;
+    }
+
+    public long getDurationMillis() {
+        return mEndTimeMillis - mStartTimeMillis;
+    }
+
+    public long getFirstTimestamp() {
+        return mFirstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return mLastTimestamp;
+    }
+
+    public long getStartLatencyMicros() {
+        return mStartLatencyMicros;
+    }
+
+    public long getPointCount() {
+        return mPointCount;
+    }
+
+    public boolean isComplete() {
+        return mIsComplete;
+    }
+
+    public long getRecordCount(final String channel) {
+        return get(mRecordCounts, channel);
+    }
+
+    public Set<String> getChannels() {
+        return mRecordCounts.keySet();
+    }
+
+    public long getTrackingStateCount(final String trackingState) {
+        return get(mTrackingStateCounts, trackingState);
+    }
+
+    public long getTrackingFailureCount(final String trackingFailureReason) {
+        return get(mTrackingFailureCounts, trackingFailureReason);
+    }
+
+    public Set<String> getFileNames() {
+        return mFileBytes.keySet();
+    }
+
+    public long getFileBytes(final String fileName) {
+        return get(mFileBytes, fileName);
+    }
+
+    public long getFileChecksum(final String fileName) {
+        return get(mFileChecksums, fileName);
+    }
+
+    public long getTotalBytes() {
+        long totalBytes = 0;
+        for (long[] bytes : mFileBytes.values()) {
+            totalBytes += bytes[0];
+        }
+        return totalBytes;
+    }
+
+
+    // definition of 'Snapshot' class
+    public static final class Snapshot {
+
+        // properties
+        private final long mSequence;
+        private final Properties mProperties;
+
+
+        // constructor
+        private Snapshot(final long sequence, final Properties properties) {
+            mSequence = sequence;
+            mProperties = properties;
+        }
+    }
+}
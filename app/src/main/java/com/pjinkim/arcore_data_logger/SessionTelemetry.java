@@ -0,0 +1,129 @@
+package com.pjinkim.arcore_data_logger;
+
+/**
+ * Per-frame telemetry published by the AR thread and read by the UI without locks or allocation.
+ *
+ * A sequence lock guards the fields: the single writer makes the sequence odd, writes the
+ * fields and makes it even again, and a reader retries until it saw the same even sequence
+ * before and after copying them into its own {@link Snapshot}. All fields are volatile so the
+ * writes cannot be reordered around the sequence updates.
+ */
+public class SessionTelemetry {
+
+    // properties
+    private volatile int mSequence = 0;
+    private volatile long mTimestamp = 0;
+    private volatile int mNumberOfFeatures = 0;
+    private volatile int mTrackingState = -1;
+    private volatile int mTrackingFailureReason = -1;
+    private volatile double mUpdateRate = 0;
+    private volatile long mNumberOfRecordedFrames = 0;
+    private volatile int mQueueDepth = 0;
+    private volatile long mNumberOfDrops = 0;
+    private volatile long mBytesWritten = 0;
+
+
+    // definition of 'Snapshot' class
+    public static class Snapshot {
+
+        // properties
+        private int mSequence;
+        private long mTimestamp;
+        private int mNumberOfFeatures;
+        private int mTrackingState;
+        private int mTrackingFailureReason;
+        private double mUpdateRate;
+        private long mNumberOfRecordedFrames;
+        private int mQueueDepth;
+        private long mNumberOfDrops;
+        private long mBytesWritten;
+
+
+        // getter and setter
+        public int getSequence() {
+            return mSequence;
+        }
+
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        public int getNumberOfFeatures() {
+            return mNumberOfFeatures;
+        }
+
+        // ordinal of the tracking state, or -1 before the first frame
+        public int getTrackingState() {
+            return mTrackingState;
+        }
+
+        // ordinal of the tracking failure reason, or -1 before the first frame
+        public int getTrackingFailureReason() {
+            return mTrackingFailureReason;
+        }
+
+        public double getUpdateRate() {
+            return mUpdateRate;
+        }
+
+        public long getNumberOfRecordedFrames() {
+            return mNumberOfRecordedFrames;
+        }
+
+        public int getQueueDepth() {
+            return mQueueDepth;
+        }
+
+        public long getNumberOfDrops() {
+            return mNumberOfDrops;
+        }
+
+        public long getBytesWritten() {
+            return mBytesWritten;
+        }
+    }
+
+
+    // methods
+    public void publish(final long timestamp, final int numberOfFeatures, final int trackingState, final int trackingFailureReason,
+                        final double updateRate, final long numberOfRecordedFrames, final int queueDepth,
+                        final long numberOfDrops, final long bytesWritten) {
+
+        // only the AR thread writes, so the sequence needs no atomic increment
+        int sequence = mSequence;
+        mSequence = sequence + 1;
+        mTimestamp = timestamp;
+        mNumberOfFeatures = numberOfFeatures;
+        mTrackingState = trackingState;
+        mTrackingFailureReason = trackingFailureReason;
+        mUpdateRate = updateRate;
+        mNumberOfRecordedFrames = numberOfRecordedFrames;
+        mQueueDepth = queueDepth;
+        mNumberOfDrops = numberOfDrops;
+        mBytesWritten = bytesWritten;
+        mSequence = sequence + 2;
+    }
+
+    public void read(final Snapshot snapshot) {
+        while (true) {
+            int sequence = mSequence;
+            if ((sequence & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            snapshot.mTimestamp = mTimestamp;
+            snapshot.mNumberOfFeatures = mNumberOfFeatures;
+            snapshot.mTrackingState = mTrackingState;
+            snapshot.mTrackingFailureReason = mTrackingFailureReason;
+            snapshot.mUpdateRate = mUpdateRate;
+            snapshot.mNumberOfRecordedFrames = mNumberOfRecordedFrames;
+            snapshot.mQueueDepth = mQueueDepth;
+            snapshot.mNumberOfDrops = mNumberOfDrops;
+            snapshot.mBytesWritten = mBytesWritten;
+            if (mSequence == sequence) {
+                snapshot.mSequence = sequence;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes a sparse time index of a session log: the timestamp and byte offset of one record every
+ * few hundred records or every few dozen kilobytes, whichever comes first. A reader binary-searches
+ * the index and starts decoding the log at the entry just before the time it wants, so extracting
+ * a time range costs the same at the start and at the end of a long session.
+ *
+ * File layout (little-endian): magic "ARTI", int32 version, then per entry int64 timestamp (ns)
+ * and int64 byte offset of the record start. Offsets of block compressed files refer to their
+ * uncompressed text, which {@link BlockCompressedInputStream#seek(long)} jumps to.
+ */
+public class SparseTimeIndex {
+
+    // properties
+    public static final byte[] MAGIC = {'A', 'R', 'T', 'I'};
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+    public static final int ENTRY_BYTES = 16;
+    public static final String FILE_SUFFIX = "_index.bin";
+
+    public static final int DEFAULT_RECORD_INTERVAL = 256;
+    public static final long DEFAULT_BYTE_INTERVAL = 64 * 1024;
+
+    private final int mRecordInterval;
+    private final long mByteInterval;
+
+    // last indexed record
+    private int mRecordsSinceEntry = 0;
+    private long mLastEntryOffset = 0;
+    private long mNumberOfEntries = 0;
+
+    // encoded entries since the last 'clear'
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(ENTRY_BYTES * 16).order(ByteOrder.LITTLE_ENDIAN);
+
+
+    // constructors
+    public SparseTimeIndex() {
+        this(DEFAULT_RECORD_INTERVAL, DEFAULT_BYTE_INTERVAL);
+    }
+
+    public SparseTimeIndex(final int recordInterval, final long byteInterval) {
+        mRecordInterval = recordInterval;
+        mByteInterval = byteInterval;
+    }
+
+
+    // methods
+    public static byte[] header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(FORMAT_VERSION);
+        return header.array();
+    }
+
+    public static File indexFileFor(final File logFile) {
+
+        // ARCore_sensor_pose.txt(.blk) -> ARCore_sensor_pose_index.bin, pose.bin -> pose_index.bin
+        String name = logFile.getName();
+        if (name.endsWith(BlockCompressedWriter.FILE_SUFFIX)) {
+            name = name.substring(0, name.length() - BlockCompressedWriter.FILE_SUFFIX.length());
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return new File(logFile.getParentFile(), name + FILE_SUFFIX);
+    }
+
+    public boolean addRecord(final long timestamp, final long offset) {
+
+        // called before every record with its start offset, returns true when it was indexed
+        boolean isIndexed = (mNumberOfEntries == 0) || (mRecordsSinceEntry >= mRecordInterval)
+                || (offset - mLastEntryOffset >= mByteInterval);
+        mRecordsSinceEntry++;
+        if (!isIndexed) {
+            return false;
+        }
+        if (!mBuffer.hasRemaining()) {
+            throw new IllegalStateException("addRecord: Index entries were not cleared");
+        }
+        mBuffer.putLong(timestamp).putLong(offset);
+        mRecordsSinceEntry = 1;
+        mLastEntryOffset = offset;
+        mNumberOfEntries++;
+        return true;
+    }
+
+    public void clear() {
+        mBuffer.clear();
+    }
+
+
+    // getter and setter
+    public byte[] getBytes() {
+        return mBuffer.array();
+    }
+
+    public int getLength() {
+        return mBuffer.position();
+    }
+
+    public long getNumberOfEntries() {
+        return mNumberOfEntries;
+    }
+}
@@ -0,0 +1,102 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Loads a {@link SparseTimeIndex} file and binary-searches it for the byte offset at which a
+ * reader should start decoding the log to find a given time. An entry cut off by a crash is
+ * ignored, and the index ends at the first entry that does not follow its predecessor, such as
+ * the zeros a file system can leave at the end of a file after a power loss.
+ */
+public class SparseTimeIndexReader {
+
+    // properties
+    private final long[] mTimestamps;
+    private final long[] mOffsets;
+
+
+    // constructor
+    public SparseTimeIndexReader(final File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < SparseTimeIndex.HEADER_BYTES) {
+            throw new IOException("SparseTimeIndexReader: Missing header");
+        }
+        for (int i = 0; i < SparseTimeIndex.MAGIC.length; i++) {
+            if (buffer.get() != SparseTimeIndex.MAGIC[i]) {
+                throw new IOException("SparseTimeIndexReader: Not a time index file");
+            }
+        }
+        int version = buffer.getInt();
+        if (version != SparseTimeIndex.FORMAT_VERSION) {
+            throw new IOException("SparseTimeIndexReader: Unsupported version " + version);
+        }
+        int maxEntries = buffer.remaining() / SparseTimeIndex.ENTRY_BYTES;
+        long[] timestamps = new long[maxEntries];
+        long[] offsets = new long[maxEntries];
+        int numberOfEntries = 0;
+        while (numberOfEntries < maxEntries) {
+
+            // offsets only grow and timestamps never go back, anything else is not an entry
+            long timestamp = buffer.getLong();
+            long offset = buffer.getLong();
+            if ((offset <= 0) || ((numberOfEntries > 0)
+                    && ((offset <= offsets[numberOfEntries - 1]) || (timestamp < timestamps[numberOfEntries - 1])))) {
+                break;
+            }
+            timestamps[numberOfEntries] = timestamp;
+            offsets[numberOfEntries] = offset;
+            numberOfEntries++;
+        }
+        mTimestamps = Arrays.copyOf(timestamps, numberOfEntries);
+        mOffsets = Arrays.copyOf(offsets, numberOfEntries);
+    }
+
+
+    // methods
+    public int findEntry(final long timestamp, final long lengthLimit) {
+
+        // last entry strictly before the timestamp, so records sharing it are not skipped
+        int low = 0;
+        int high = mTimestamps.length - 1;
+        int entry = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (mTimestamps[middle] < timestamp) {
+                entry = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        // the index may point past the end of a log cut off by a crash
+        while ((entry >= 0) && (mOffsets[entry] >= lengthLimit)) {
+            entry--;
+        }
+        return entry;
+    }
+
+    public long findOffset(final long timestamp, final long lengthLimit, final long firstRecordOffset) {
+        int entry = findEntry(timestamp, lengthLimit);
+        return (entry < 0) ? firstRecordOffset : mOffsets[entry];
+    }
+
+
+    // getter and setter
+    public int getNumberOfEntries() {
+        return mTimestamps.length;
+    }
+
+    public long getTimestamp(final int entry) {
+        return mTimestamps[entry];
+    }
+
+    public long getOffset(final int entry) {
+        return mOffsets[entry];
+    }
+}
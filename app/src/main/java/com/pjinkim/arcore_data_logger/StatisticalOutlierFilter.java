@@ -0,0 +1,70 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.util.stream.IntStream;
+
+/**
+ * Statistical outlier removal over a {@link PointCloudIndex}.
+ *
+ * For every point the mean distance to its k nearest neighbors is computed, and a point is kept
+ * only if that mean lies within (global mean + stdRatio * global standard deviation).
+ */
+public class StatisticalOutlierFilter {
+
+    // properties
+    private final int mNumberOfNeighbors;
+    private final double mStdRatio;
+
+
+    // constructor
+    public StatisticalOutlierFilter(final int numberOfNeighbors, final double stdRatio) {
+        mNumberOfNeighbors = numberOfNeighbors;
+        mStdRatio = stdRatio;
+    }
+
+
+    // methods
+    public boolean[] filter(final PointCloudIndex index) {
+
+        // keep everything if there are not enough points for the statistics
+        int numberOfPoints = index.getNumberOfPoints();
+        boolean[] inliers = new boolean[numberOfPoints];
+        if (numberOfPoints <= mNumberOfNeighbors) {
+            for (int i = 0; i < numberOfPoints; i++) {
+                inliers[i] = true;
+            }
+            return inliers;
+        }
+
+        // mean neighbor distance of each point (the query point itself is the first neighbor),
+        // queried with the positions the index holds, so no copy of the points is needed
+        final int k = mNumberOfNeighbors + 1;
+        float[] meanDistances = new float[numberOfPoints];
+        IntStream.range(0, numberOfPoints).parallel().forEach(slot -> {
+            int[] neighborIndices = new int[k];
+            float[] neighborDistances = new float[k];
+            int found = index.nearestNeighborsOf(slot, k, neighborIndices, neighborDistances);
+            double sum = 0;
+            for (int j = 1; j < found; j++) {
+                sum += Math.sqrt(neighborDistances[j]);
+            }
+            meanDistances[index.getPointIndex(slot)] = (float) (sum / (found - 1));
+        });
+
+        // global mean and standard deviation of the mean distances
+        double sum = 0;
+        double squaredSum = 0;
+        for (int i = 0; i < numberOfPoints; i++) {
+            sum += meanDistances[i];
+            squaredSum += (double) meanDistances[i] * meanDistances[i];
+        }
+        double mean = sum / numberOfPoints;
+        double variance = Math.max(0, (squaredSum / numberOfPoints) - (mean * mean));
+        double threshold = mean + (mStdRatio * Math.sqrt(variance));
+
+        // classify each point
+        for (int i = 0; i < numberOfPoints; i++) {
+            inliers[i] = (meanDistances[i] <= threshold);
+        }
+        return inliers;
+    }
+}
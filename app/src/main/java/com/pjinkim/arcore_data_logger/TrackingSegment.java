@@ -0,0 +1,77 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.util.Locale;
+
+/**
+ * A span of frames with one tracking state and failure reason, and the byte offset of its first
+ * record in ARCore_camera_metadata.bin, so that a reader can seek straight to it.
+ * Stored one per line as {@code start_ns end_ns state reason byte_offset frames}.
+ */
+public class TrackingSegment {
+
+    // properties
+    private final long mStartTimestamp;
+    private final long mEndTimestamp;
+    private final String mTrackingState;
+    private final String mTrackingFailureReason;
+    private final long mByteOffset;
+    private final int mNumberOfFrames;
+
+
+    // constructor
+    public TrackingSegment(final long startTimestamp, final long endTimestamp, final String trackingState,
+                           final String trackingFailureReason, final long byteOffset, final int numberOfFrames) {
+        mStartTimestamp = startTimestamp;
+        mEndTimestamp = endTimestamp;
+        mTrackingState = trackingState;
+        mTrackingFailureReason = trackingFailureReason;
+        mByteOffset = byteOffset;
+        mNumberOfFrames = numberOfFrames;
+    }
+
+
+    // methods
+    public static TrackingSegment parse(final String line) {
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length < 6) {
+            throw new IllegalArgumentException("parse: Malformed tracking segment: " + line);
+        }
+        return new TrackingSegment(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2], fields[3],
+                Long.parseLong(fields[4]), Integer.parseInt(fields[5]));
+    }
+
+    public String toLine() {
+        return String.format(Locale.US, "%d %d %s %s %d %d \n", mStartTimestamp, mEndTimestamp,
+                mTrackingState, mTrackingFailureReason, mByteOffset, mNumberOfFrames);
+    }
+
+
+    // getter and setter
+    public long getStartTimestamp() {
+        return mStartTimestamp;
+    }
+
+    public long getEndTimestamp() {
+        return mEndTimestamp;
+    }
+
+    public long getDurationNanos() {
+        return mEndTimestamp - mStartTimestamp;
+    }
+
+    public String getTrackingState() {
+        return mTrackingState;
+    }
+
+    public String getTrackingFailureReason() {
+        return mTrackingFailureReason;
+    }
+
+    public long getByteOffset() {
+        return mByteOffset;
+    }
+
+    public int getNumberOfFrames() {
+        return mNumberOfFrames;
+    }
+}
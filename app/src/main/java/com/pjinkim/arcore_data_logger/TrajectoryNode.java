@@ -0,0 +1,183 @@
+package com.pjinkim.arcore_data_logger;
+
+import android.content.Context;
+
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.Color;
+import com.google.ar.sceneform.rendering.Material;
+import com.google.ar.sceneform.rendering.MaterialFactory;
+import com.google.ar.sceneform.rendering.ModelRenderable;
+import com.google.ar.sceneform.rendering.RenderableDefinition;
+import com.google.ar.sceneform.rendering.Vertex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Renders the recorded camera path as a trail of thin square tubes, simplified online by a
+ * {@link PolylineSimplifier} so the number of vertices stays bounded however long the session is.
+ *
+ * Every full chunk of committed segments is built once into its own child node; only the tail
+ * node, holding the committed segments after the last chunk and the open segment to the current
+ * position, is rebuilt on an update. The chunks are built again only after the simplifier has
+ * coarsened the whole path.
+ */
+public class TrajectoryNode extends Node {
+
+    // properties
+    private static final int CHUNK_SEGMENTS = 32;
+    private static final float TRAIL_HALF_WIDTH = 0.005f;
+    private static final float TOLERANCE = 0.02f;
+    private static final float MIN_DISTANCE = 0.01f;
+    private static final int MAX_VERTICES = 2048;
+
+    private final CompletableFuture<Material> mMaterialHolder;
+    private final PolylineSimplifier mSimplifier = new PolylineSimplifier(TOLERANCE, MIN_DISTANCE, MAX_VERTICES);
+    private final ArrayList<Node> mChunkNodes = new ArrayList<>();
+    private final Node mTailNode = new Node();
+    private int mNumberOfChunkedSegments = 0;
+    private long mTailVersion = 0;
+
+    private final float[] mStart = new float[3];
+    private final float[] mEnd = new float[3];
+
+
+    // constructor
+    public TrajectoryNode(Context context) {
+        Color color = new Color(0 / 255f, 200 / 255f, 255 / 255f, 1.0f);
+        mMaterialHolder = MaterialFactory.makeOpaqueWithColor(context, color);
+        addChild(mTailNode);
+    }
+
+
+    // methods
+    public void visualize(final float x, final float y, final float z) {
+
+        // 1) the path is simplified even while hidden, so it is complete when shown again
+        int result = mSimplifier.add(x, y, z);
+        if (result == PolylineSimplifier.IGNORED) {
+            return;
+        }
+
+        // a coarsened path moved every vertex, so its chunks are built again
+        if (result == PolylineSimplifier.COARSENED) {
+            removeChunks();
+        }
+        Material material = mMaterialHolder.getNow(null);
+        if (!isEnabled() || (material == null)) {
+            return;
+        }
+
+        // 2) freeze every full chunk of committed segments into a node of its own
+        while (mSimplifier.getNumberOfVertices() - 1 - mNumberOfChunkedSegments >= CHUNK_SEGMENTS) {
+            Node chunkNode = new Node();
+            addChild(chunkNode);
+            mChunkNodes.add(chunkNode);
+            buildSegments(chunkNode, material, mNumberOfChunkedSegments, mNumberOfChunkedSegments + CHUNK_SEGMENTS, false, -1);
+            mNumberOfChunkedSegments += CHUNK_SEGMENTS;
+        }
+
+        // 3) rebuild only the tail, keeping the newest build should an older one finish later
+        mTailVersion++;
+        buildSegments(mTailNode, material, mNumberOfChunkedSegments, mSimplifier.getNumberOfVertices() - 1, mSimplifier.hasTail(), mTailVersion);
+    }
+
+    public void clear() {
+        mSimplifier.reset();
+        removeChunks();
+        mTailVersion++;
+        mTailNode.setRenderable(null);
+    }
+
+    private void removeChunks() {
+        for (Node chunkNode : mChunkNodes) {
+            removeChild(chunkNode);
+        }
+        mChunkNodes.clear();
+        mNumberOfChunkedSegments = 0;
+    }
+
+    @SuppressWarnings({"AndroidApiChecker", "FutureReturnValueIgnored"})
+    private void buildSegments(final Node node, final Material material, final int firstVertex, final int lastVertex,
+                               final boolean isTailIncluded, final long tailVersion) {
+
+        // segments between the committed vertices, and the open segment to the current position
+        int numberOfSegments = (lastVertex - firstVertex) + (isTailIncluded ? 1 : 0);
+        if (numberOfSegments < 1) {
+            node.setRenderable(null);
+            return;
+        }
+        ArrayList<Vertex> vertices = new ArrayList<>(numberOfSegments * 8);
+        ArrayList<Integer> indices = new ArrayList<>(numberOfSegments * 24);
+        for (int i = firstVertex; i < lastVertex; i++) {
+            mSimplifier.getVertex(i, mStart);
+            mSimplifier.getVertex(i + 1, mEnd);
+            addSegment(vertices, indices, mStart, mEnd);
+        }
+        if (isTailIncluded) {
+            mSimplifier.getVertex(lastVertex, mStart);
+            mSimplifier.getTailEnd(mEnd);
+            addSegment(vertices, indices, mStart, mEnd);
+        }
+
+        RenderableDefinition.Submesh submesh =
+                RenderableDefinition.Submesh.builder()
+                        .setName("trajectory")
+                        .setMaterial(material)
+                        .setTriangleIndices(indices)
+                        .build();
+        RenderableDefinition definition =
+                RenderableDefinition.builder()
+                        .setVertices(vertices)
+                        .setSubmeshes(Collections.singletonList(submesh))
+                        .build();
+        ModelRenderable.builder().setSource(definition).build().thenAccept(renderable -> {
+            if ((tailVersion >= 0) && (tailVersion != mTailVersion)) {
+                return;
+            }
+            renderable.setShadowCaster(false);
+            node.setRenderable(renderable);
+        });
+    }
+
+    private static void addSegment(final ArrayList<Vertex> vertices, final ArrayList<Integer> indices, final float[] start, final float[] end) {
+
+        // two directions across the segment, away from the vertical unless the segment is vertical
+        Vector3 direction = new Vector3(end[0] - start[0], end[1] - start[1], end[2] - start[2]).normalized();
+        Vector3 up = (Math.abs(direction.y) > 0.9f) ? Vector3.right() : Vector3.up();
+        Vector3 across = Vector3.cross(direction, up).normalized();
+        Vector3 across2 = Vector3.cross(direction, across).normalized();
+        Vector3[] normals = {across, across2, across.negated(), across2.negated()};
+
+        // a corner of the square cross section at each end, then its four sides as two counter clockwise triangles each
+        int base = vertices.size();
+        Vertex.UvCoordinate uv0 = new Vertex.UvCoordinate(0, 0);
+        for (float[] point : new float[][]{start, end}) {
+            for (Vector3 normal : normals) {
+                Vector3 position = Vector3.add(new Vector3(point[0], point[1], point[2]), normal.scaled(TRAIL_HALF_WIDTH));
+                vertices.add(Vertex.builder().setPosition(position).setUvCoordinate(uv0).setNormal(normal).build());
+            }
+        }
+        for (int side = 0; side < 4; side++) {
+            int next = (side + 1) % 4;
+            indices.add(base + side);
+            indices.add(base + 4 + next);
+            indices.add(base + 4 + side);
+            indices.add(base + side);
+            indices.add(base + next);
+            indices.add(base + 4 + next);
+        }
+    }
+
+
+    // getter and setter
+    public int getNumberOfVertices() {
+        return mSimplifier.getNumberOfVertices();
+    }
+
+    public long getNumberOfPoints() {
+        return mSimplifier.getNumberOfPoints();
+    }
+}
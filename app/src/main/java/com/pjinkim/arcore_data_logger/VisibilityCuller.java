@@ -0,0 +1,161 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Culling stage that runs before point colorization.
+ *
+ * Every confident point is transformed once by the view-projection matrix (column-major, as in
+ * android.opengl.Matrix) and rejected unless it is inside the clip volume with a positive w, so
+ * points behind the camera never reach the image. Surviving points are splatted into a coarse
+ * depth buffer of {@link #CELL_SIZE} pixel cells, and only the nearest point of each cell is kept,
+ * so a point hidden behind closer geometry is not colored from its occluder.
+ */
+public class VisibilityCuller {
+
+    // properties
+    public static final int CELL_SIZE = 16;
+    private static final float MIN_W = 1e-6f;
+
+    private final float[] mViewProjection = new float[16];
+
+    // coarse depth buffer, invalidated per frame by a stamp instead of clearing
+    private int mCellsX = 0;
+    private int mCellsY = 0;
+    private float[] mCellDepth = new float[0];
+    private int[] mCellPoint = new int[0];
+    private int[] mCellStamp = new int[0];
+    private int mFrameStamp = 0;
+
+    // per-point candidates of the current frame
+    private int[] mCandidateCell = new int[1024];
+    private float[] mCandidatePixelX = new float[1024];
+    private float[] mCandidatePixelY = new float[1024];
+
+    // visible points of the current frame
+    private int mNumberOfVisiblePoints = 0;
+    private int[] mVisibleIndices = new int[1024];
+    private int[] mVisiblePixelX = new int[1024];
+    private int[] mVisiblePixelY = new int[1024];
+
+
+    // methods
+    public void setViewProjection(final float[] viewMatrix, final float[] projectionMatrix) {
+
+        // viewProjection = projection * view
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += projectionMatrix[k * 4 + row] * viewMatrix[column * 4 + k];
+                }
+                mViewProjection[column * 4 + row] = sum;
+            }
+        }
+    }
+
+    public int cull(final FloatBuffer points, final float minConfidence, final int imageWidth, final int imageHeight) {
+
+        // prepare buffers for this frame
+        int numberOfPoints = points.limit() / 4;
+        ensureCapacity(numberOfPoints);
+        resizeDepthBuffer(imageWidth, imageHeight);
+        mFrameStamp++;
+        float[] m = mViewProjection;
+
+        // 1) frustum test in clip space and splat the nearest depth per cell
+        for (int i = 0; i < numberOfPoints; i++) {
+            mCandidateCell[i] = -1;
+            if (points.get(i * 4 + 3) < minConfidence) {
+                continue;
+            }
+            float x = points.get(i * 4);
+            float y = points.get(i * 4 + 1);
+            float z = points.get(i * 4 + 2);
+            float clipW = (m[3] * x) + (m[7] * y) + (m[11] * z) + m[15];
+            if (clipW <= MIN_W) {
+                continue;
+            }
+            float clipX = (m[0] * x) + (m[4] * y) + (m[8] * z) + m[12];
+            float clipY = (m[1] * x) + (m[5] * y) + (m[9] * z) + m[13];
+            float clipZ = (m[2] * x) + (m[6] * y) + (m[10] * z) + m[14];
+            if ((clipX < -clipW) || (clipX > clipW) || (clipY < -clipW) || (clipY > clipW) || (clipZ < -clipW) || (clipZ > clipW)) {
+                continue;
+            }
+
+            // pixel position in the image, same convention as the previous world-to-screen mapping
+            float pixelX = imageWidth * (((clipX / clipW) + 1.0f) / 2.0f);
+            float pixelY = imageHeight * ((1.0f - (clipY / clipW)) / 2.0f);
+            int cellX = Math.min((int) pixelX, imageWidth - 1) / CELL_SIZE;
+            int cellY = Math.min((int) pixelY, imageHeight - 1) / CELL_SIZE;
+            int cell = (cellY * mCellsX) + cellX;
+            mCandidateCell[i] = cell;
+            mCandidatePixelX[i] = pixelX;
+            mCandidatePixelY[i] = pixelY;
+            if ((mCellStamp[cell] != mFrameStamp) || (clipW < mCellDepth[cell])) {
+                mCellStamp[cell] = mFrameStamp;
+                mCellDepth[cell] = clipW;
+                mCellPoint[cell] = i;
+            }
+        }
+
+        // 2) keep only the nearest point of each cell, in input order
+        mNumberOfVisiblePoints = 0;
+        for (int i = 0; i < numberOfPoints; i++) {
+            int cell = mCandidateCell[i];
+            if ((cell < 0) || (mCellPoint[cell] != i)) {
+                continue;
+            }
+            mVisibleIndices[mNumberOfVisiblePoints] = i;
+            mVisiblePixelX[mNumberOfVisiblePoints] = Math.min((int) mCandidatePixelX[i], imageWidth - 1);
+            mVisiblePixelY[mNumberOfVisiblePoints] = Math.min((int) mCandidatePixelY[i], imageHeight - 1);
+            mNumberOfVisiblePoints++;
+        }
+        return mNumberOfVisiblePoints;
+    }
+
+    private void ensureCapacity(final int numberOfPoints) {
+        if (mCandidateCell.length >= numberOfPoints) {
+            return;
+        }
+        int capacity = Math.max(numberOfPoints, mCandidateCell.length * 2);
+        mCandidateCell = new int[capacity];
+        mCandidatePixelX = new float[capacity];
+        mCandidatePixelY = new float[capacity];
+        mVisibleIndices = new int[capacity];
+        mVisiblePixelX = new int[capacity];
+        mVisiblePixelY = new int[capacity];
+    }
+
+    private void resizeDepthBuffer(final int imageWidth, final int imageHeight) {
+        int cellsX = (imageWidth + CELL_SIZE - 1) / CELL_SIZE;
+        int cellsY = (imageHeight + CELL_SIZE - 1) / CELL_SIZE;
+        if ((cellsX == mCellsX) && (cellsY == mCellsY)) {
+            return;
+        }
+        mCellsX = cellsX;
+        mCellsY = cellsY;
+        mCellDepth = new float[cellsX * cellsY];
+        mCellPoint = new int[cellsX * cellsY];
+        mCellStamp = new int[cellsX * cellsY];
+        mFrameStamp = 0;
+    }
+
+
+    // getter and setter
+    public int getNumberOfVisiblePoints() {
+        return mNumberOfVisiblePoints;
+    }
+
+    public int getVisibleIndex(final int k) {
+        return mVisibleIndices[k];
+    }
+
+    public int getVisiblePixelX(final int k) {
+        return mVisiblePixelX[k];
+    }
+
+    public int getVisiblePixelY(final int k) {
+        return mVisiblePixelY[k];
+    }
+}
@@ -0,0 +1,95 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the accumulated point cloud with and without spilling to mapped segments.
+ */
+public class AccumulatedPointCloudTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private static void fill(final AccumulatedPointCloud cloud, final int numberOfPoints) throws Exception {
+        for (int i = 0; i < numberOfPoints; i++) {
+            int pointID = i * 7 + 3;
+            cloud.appendPointCloud(pointID, i, -i, 0.5f * i, i % 256, 1, 2);
+        }
+    }
+
+    @Test
+    public void appendPointCloud_updatesExistingIDInPlace() throws Exception {
+        AccumulatedPointCloud cloud = new AccumulatedPointCloud();
+        cloud.appendPointCloud(500000, 1, 2, 3, 10, 20, 30);
+        cloud.appendPointCloud(42, 4, 5, 6, 40, 50, 60);
+        cloud.appendPointCloud(500000, 7, 8, 9, 70, 80, 90);
+        assertEquals(2, cloud.getNumberOfFeatures());
+
+        float[] point = new float[6];
+        cloud.getPoint(0, point);
+        assertArrayEquals(new float[]{7, 8, 9, 70, 80, 90}, point, 0.0f);
+    }
+
+    @Test
+    public void appendPointCloud_spillsBeyondHeapBudget() throws Exception {
+        File folder = mTemporaryFolder.newFolder();
+        AccumulatedPointCloud cloud = new AccumulatedPointCloud(AccumulatedPointCloud.SEGMENT_BYTES);
+        cloud.setSpillFolder(folder.getAbsolutePath());
+        fill(cloud, 200000);
+        fill(cloud, 200000);
+
+        // one heap segment and three mapped segments for 200000 points of 65536 slots each
+        assertEquals(200000, cloud.getNumberOfFeatures());
+        assertEquals(3, cloud.getNumberOfMappedSegments());
+        assertEquals(3, folder.listFiles().length);
+
+        float[] point = new float[6];
+        for (int i = 0; i < 200000; i += 997) {
+            cloud.getPoint(i, point);
+            assertArrayEquals(new float[]{i, -i, 0.5f * i, i % 256, 1, 2}, point, 0.0f);
+        }
+        float[] pointArray = cloud.getPointArray();
+        assertEquals(199999.0f, pointArray[199999 * 3], 0.0f);
+
+        // the files go at the end of the session, the mapped points stay readable
+        assertEquals(3, cloud.deleteSpillFiles());
+        assertEquals(0, folder.listFiles().length);
+        cloud.getPoint(199999, point);
+        assertArrayEquals(new float[]{199999, -199999, 0.5f * 199999, 199999 % 256, 1, 2}, point, 0.0f);
+    }
+
+    @Test
+    public void setHeapBudget_spillsHeapSegmentsInPlace() throws Exception {
+        File folder = mTemporaryFolder.newFolder();
+        AccumulatedPointCloud cloud = new AccumulatedPointCloud(4 * AccumulatedPointCloud.SEGMENT_BYTES);
+        cloud.setSpillFolder(folder.getAbsolutePath());
+        fill(cloud, 200000);
+        assertEquals(4, cloud.getNumberOfHeapSegments());
+        assertEquals(0, cloud.getNumberOfMappedSegments());
+
+        // under pressure all but one segment move to mapped files, and new segments follow them
+        assertEquals(3, cloud.setHeapBudget(AccumulatedPointCloud.SEGMENT_BYTES));
+        assertEquals(1, cloud.getNumberOfHeapSegments());
+        assertEquals(3, folder.listFiles().length);
+        fill(cloud, 300000);
+        assertEquals(1, cloud.getNumberOfHeapSegments());
+        assertEquals(4, cloud.getNumberOfMappedSegments());
+
+        float[] point = new float[6];
+        for (int i = 0; i < 300000; i += 997) {
+            cloud.getPoint(i, point);
+            assertArrayEquals(new float[]{i, -i, 0.5f * i, i % 256, 1, 2}, point, 0.0f);
+        }
+
+        // a larger budget again keeps the spilled segments where they are
+        assertEquals(0, cloud.setHeapBudget(AccumulatedPointCloud.UNLIMITED_HEAP_BUDGET));
+        assertEquals(1, cloud.setHeapBudget(0));
+        assertEquals(0, cloud.getNumberOfHeapSegments());
+    }
+}
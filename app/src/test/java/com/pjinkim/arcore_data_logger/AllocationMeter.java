@@ -0,0 +1,68 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap bytes allocated by the current thread per iteration of a frame stage, using
+ * the HotSpot per-thread allocation counter. The stage is warmed up first so that the measured
+ * iterations run compiled code, and the counter's own cost is measured once and subtracted.
+ */
+public class AllocationMeter {
+
+    // definition of 'Stage' interface
+    public interface Stage {
+        void run(int iteration) throws Exception;
+    }
+
+
+    // properties
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = threadMXBean();
+    private static final int WARMUP_ITERATIONS = 20000;
+
+    private final int mIterations;
+    private final long mCounterOverhead;
+
+
+    // constructor
+    public AllocationMeter(final int iterations) throws Exception {
+        mIterations = iterations;
+        Stage emptyStage = iteration -> {};
+        measureTotal(emptyStage, WARMUP_ITERATIONS);
+        mCounterOverhead = measureTotal(emptyStage, mIterations);
+    }
+
+
+    // methods
+    public static boolean isSupported() {
+        return (THREAD_MX_BEAN != null) && THREAD_MX_BEAN.isThreadAllocatedMemorySupported();
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotSpotThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (hotSpotThreadMXBean.isThreadAllocatedMemorySupported()) {
+                hotSpotThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return hotSpotThreadMXBean;
+        }
+        return null;
+    }
+
+    public long bytesPerIteration(final Stage stage) throws Exception {
+
+        // warm up, then count everything the measured iterations allocate
+        measureTotal(stage, WARMUP_ITERATIONS);
+        long allocatedBytes = measureTotal(stage, mIterations) - mCounterOverhead;
+        return Math.max(0, allocatedBytes) / mIterations;
+    }
+
+    private static long measureTotal(final Stage stage, final int iterations) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long startBytes = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            stage.run(i);
+        }
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - startBytes;
+    }
+}
@@ -0,0 +1,238 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the block compressed session file writer and its reader.
+ */
+public class BlockCompressedWriterTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private final ExecutorService mCompressExecutor = Executors.newFixedThreadPool(3);
+    private final ExecutorService mIoExecutor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        mCompressExecutor.shutdown();
+        mIoExecutor.shutdown();
+    }
+
+    private static String poseLines(final int numberOfLines) {
+        StringBuilder stringBuilder = new StringBuilder("# Created at Thu Jan 01 00:00:00 UTC 1970 in Burnaby Canada \n");
+        for (int i = 0; i < numberOfLines; i++) {
+            stringBuilder.append(1000000000L + i * 33333333L);
+            stringBuilder.append(String.format(Locale.US, " %.6f %.6f %.6f %.6f %.6f %.6f %.6f \n",
+                    0.01f * (i % 100), -0.2f, 0.3f, 0.9f, 0.001f * i, -2.5f, 3.5f));
+        }
+        return stringBuilder.toString();
+    }
+
+    private File write(final String name, final String text) throws Exception {
+        File file = mTemporaryFolder.newFile(name);
+        BlockCompressedWriter writer = new BlockCompressedWriter(file, new DeflateBlockCodec(DeflateBlockCodec.DEFAULT_LEVEL),
+                mCompressExecutor, mIoExecutor, BLOCK_SIZE, 2);
+
+        // one write per line, as the session streams write their records
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start) + 1;
+            writer.write(text, start, end - start);
+            start = end;
+        }
+        writer.close();
+
+        // the reported size and checksum describe the file on disk
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, bytes.length);
+        assertEquals(bytes.length, writer.getBytesWritten());
+        assertEquals(checksum.getValue(), writer.getChecksum());
+        assertEquals(text.length(), writer.getRawBytesWritten());
+        return file;
+    }
+
+    private static String readAll(final InputStream inputStream) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        while ((count = inputStream.read(buffer)) > 0) {
+            outputStream.write(buffer, 0, count);
+        }
+        inputStream.close();
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void text_roundTripsAndCompresses() throws Exception {
+        String text = poseLines(5000);
+        File file = write("ARCore_sensor_pose.txt.blk", text);
+
+        assertTrue(BlockCompressedInputStream.isBlockCompressed(file));
+        assertEquals(text, readAll(BlockCompressedInputStream.open(file)));
+        assertTrue("compressed " + file.length() + " of " + text.length(), file.length() < text.length() / 2);
+        try (BlockCompressedInputStream inputStream = new BlockCompressedInputStream(file)) {
+            assertTrue(inputStream.hasIndex());
+            assertEquals(text.length(), inputStream.getLength());
+            assertEquals((text.length() + BLOCK_SIZE - 1) / BLOCK_SIZE, inputStream.getNumberOfBlocks());
+        }
+    }
+
+    @Test
+    public void plainFile_isReadAsIs() throws Exception {
+        File file = mTemporaryFolder.newFile("ARCore_sensor_pose.txt");
+        String text = poseLines(10);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        assertFalse(BlockCompressedInputStream.isBlockCompressed(file));
+        assertEquals(text, readAll(BlockCompressedInputStream.open(file)));
+    }
+
+    @Test
+    public void seek_decodesFromAnyOffset() throws Exception {
+        String text = poseLines(3000);
+        File file = write("seek.blk", text);
+        try (BlockCompressedInputStream inputStream = new BlockCompressedInputStream(file)) {
+            for (long offset : new long[]{0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, 5 * BLOCK_SIZE + 17, text.length() - 3}) {
+                inputStream.seek(offset);
+                byte[] bytes = new byte[3];
+                assertEquals(3, inputStream.read(bytes, 0, 3));
+                assertEquals(text.substring((int) offset, (int) offset + 3), new String(bytes, StandardCharsets.UTF_8));
+            }
+            inputStream.seek(text.length());
+            assertEquals(-1, inputStream.read());
+        }
+    }
+
+    @Test
+    public void flushInBackground_sealsThePartialBlock() throws Exception {
+        String text = poseLines(20);
+        File file = mTemporaryFolder.newFile("flushed.blk");
+        BlockCompressedWriter writer = new BlockCompressedWriter(file, new DeflateBlockCodec(DeflateBlockCodec.DEFAULT_LEVEL),
+                mCompressExecutor, mIoExecutor, BLOCK_SIZE, 2);
+        writer.write(text);
+        writer.flushInBackground(true);
+
+        // readable without the index once the I/O thread has written the block
+        mIoExecutor.submit(() -> { }).get();
+        assertEquals(text, readAll(BlockCompressedInputStream.open(file)));
+        writer.close();
+        assertEquals(text, readAll(BlockCompressedInputStream.open(file)));
+    }
+
+    @Test
+    public void truncatedFile_keepsEveryCompleteBlock() throws Exception {
+        String text = poseLines(3000);
+        File file = write("truncated.blk", text);
+
+        // cut the file in the middle of its fourth block, which also drops the index
+        long cut;
+        try (BlockCompressedInputStream inputStream = new BlockCompressedInputStream(file)) {
+            cut = -1;
+            for (int i = 0; i < inputStream.getNumberOfBlocks(); i++) {
+                if (inputStream.getBlockRawOffset(i) == 3 * BLOCK_SIZE) {
+                    cut = i;
+                }
+            }
+        }
+        assertEquals(3, cut);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        long blockStart = BlockCompressedWriter.HEADER_BYTES;
+        for (int i = 0; i < 3; i++) {
+            blockStart += BlockCompressedWriter.BLOCK_HEADER_BYTES
+                    + (bytes[(int) blockStart] & 0xFF) + ((bytes[(int) blockStart + 1] & 0xFF) << 8);
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(blockStart + 20);
+        }
+
+        try (BlockCompressedInputStream inputStream = new BlockCompressedInputStream(file)) {
+            assertFalse(inputStream.hasIndex());
+            assertEquals(3, inputStream.getNumberOfBlocks());
+            assertEquals(text.substring(0, 3 * BLOCK_SIZE), readAll(inputStream));
+        }
+    }
+
+    @Test
+    public void tornLastBlock_endsTheStream() throws Exception {
+        String text = poseLines(3000);
+        File file = write("torn.blk", text);
+
+        // keep four blocks, the header of the fourth but zeros instead of the end of its payload
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        long blockStart = BlockCompressedWriter.HEADER_BYTES;
+        for (int i = 0; i < 4; i++) {
+            blockStart += BlockCompressedWriter.BLOCK_HEADER_BYTES
+                    + (bytes[(int) blockStart] & 0xFF) + ((bytes[(int) blockStart + 1] & 0xFF) << 8);
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(blockStart);
+            randomAccessFile.seek(blockStart - 20);
+            randomAccessFile.write(new byte[20]);
+
+            // and the zeros a file system can leave after it
+            randomAccessFile.setLength(blockStart + 4096);
+        }
+
+        try (BlockCompressedInputStream inputStream = new BlockCompressedInputStream(file)) {
+            assertFalse(inputStream.hasIndex());
+            assertEquals(3, inputStream.getNumberOfBlocks());
+            assertEquals(text.substring(0, 3 * BLOCK_SIZE), readAll(inputStream));
+        }
+    }
+
+    @Test
+    public void write_keepsASurrogatePairSplitBetweenWrites() throws Exception {
+        File file = mTemporaryFolder.newFile("surrogates.blk");
+        BlockCompressedWriter writer = new BlockCompressedWriter(file, new DeflateBlockCodec(DeflateBlockCodec.DEFAULT_LEVEL),
+                mCompressExecutor, mIoExecutor, BLOCK_SIZE, 2);
+        writer.write("a\ud83d");
+        writer.flush();
+        writer.write('\ude00');
+        writer.write('\ud83d');
+        writer.write("\ude00b\ud83d");
+        writer.close();
+
+        // the pairs come out whole, the unpaired high surrogate at the end as a replacement
+        assertEquals("a\ud83d\ude00\ud83d\ude00b?", readAll(BlockCompressedInputStream.open(file)));
+        assertEquals(11, writer.getRawBytesWritten());
+    }
+
+    @Test
+    public void corruptBlock_isDetected() throws Exception {
+        File file = write("corrupt.blk", poseLines(500));
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(BlockCompressedWriter.HEADER_BYTES + BlockCompressedWriter.BLOCK_HEADER_BYTES + 40);
+            int b = randomAccessFile.read();
+            randomAccessFile.seek(BlockCompressedWriter.HEADER_BYTES + BlockCompressedWriter.BLOCK_HEADER_BYTES + 40);
+            randomAccessFile.write(b ^ 0x10);
+        }
+        try {
+            readAll(BlockCompressedInputStream.open(file));
+            fail("a corrupt block must not be returned");
+        } catch (java.io.IOException e) {
+            // expected
+        }
+    }
+}
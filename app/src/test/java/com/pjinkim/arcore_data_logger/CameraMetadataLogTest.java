@@ -0,0 +1,179 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the camera metadata channel, its segment index and its reader.
+ */
+public class CameraMetadataLogTest {
+
+    private static final String[] STATES = {"TRACKING", "PAUSED", "STOPPED"};
+    private static final String[] REASONS = {"NONE", "BAD_STATE", "INSUFFICIENT_LIGHT", "EXCESSIVE_MOTION", "INSUFFICIENT_FEATURES"};
+    private static final long FRAME_NANOS = 33333333L;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private final List<TrackingSegment> mSegments = new ArrayList<>();
+
+    // 100 tracked frames, 50 paused for lack of features, 150 tracked with new intrinsics from frame 200
+    private File record(final int numberOfFrames) throws Exception {
+        CameraMetadataLog log = new CameraMetadataLog(STATES, REASONS);
+        File file = mTemporaryFolder.newFile("ARCore_camera_metadata.bin");
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(CameraMetadataLog.header());
+            for (int i = 0; i < numberOfFrames; i++) {
+                boolean isPaused = (i >= 100) && (i < 150);
+                float fx = (i < 200) ? 490.0f : 492.5f;
+                long timestamp = 5000000000L + i * FRAME_NANOS;
+                if (log.addFrame(timestamp, timestamp + 1234, isPaused ? 1 : 0, isPaused ? 4 : 0, fx, fx, 320.0f, 240.0f, 640, 480)) {
+                    mSegments.add(log.getClosedSegment());
+                }
+                outputStream.write(log.getBytes(), 0, log.getLength());
+                log.clear();
+            }
+        }
+        TrackingSegment lastSegment = log.finish();
+        if (lastSegment != null) {
+            mSegments.add(lastSegment);
+        }
+        return file;
+    }
+
+    @Test
+    public void segments_coverTrackingTransitions() throws Exception {
+        record(300);
+        assertEquals(3, mSegments.size());
+        assertEquals("TRACKING", mSegments.get(0).getTrackingState());
+        assertEquals(100, mSegments.get(0).getNumberOfFrames());
+        assertEquals(CameraMetadataLog.HEADER_BYTES, mSegments.get(0).getByteOffset());
+        assertEquals(99 * FRAME_NANOS, mSegments.get(0).getDurationNanos());
+        assertEquals("PAUSED", mSegments.get(1).getTrackingState());
+        assertEquals("INSUFFICIENT_FEATURES", mSegments.get(1).getTrackingFailureReason());
+        assertEquals(5000000000L + 100 * FRAME_NANOS, mSegments.get(1).getStartTimestamp());
+        assertEquals(150, mSegments.get(2).getNumberOfFrames());
+    }
+
+    @Test
+    public void steadyFrames_takeFewBytes() throws Exception {
+        File file = record(300);
+
+        // 3 tracking records of 19 bytes, 4 intrinsics records of 33 bytes, the rest frame records
+        // of 3 bytes, except the second frame of each segment where the interval is first set
+        long frameBytes = file.length() - CameraMetadataLog.HEADER_BYTES - 3 * 19 - 4 * 33;
+        assertEquals(300 * 3 + 3 * 6, frameBytes);
+    }
+
+    @Test
+    public void reader_decodesEveryFrameAndEvent() throws Exception {
+        File file = record(300);
+        int frames = 0;
+        int trackingEvents = 0;
+        int intrinsicsEvents = 0;
+        try (CameraMetadataReader reader = new CameraMetadataReader(file)) {
+            while (reader.next()) {
+                if (reader.getKind() == CameraMetadataLog.RECORD_FRAME) {
+                    assertEquals(5000000000L + frames * FRAME_NANOS, reader.getTimestamp());
+                    assertEquals(reader.getTimestamp() + 1234, reader.getCameraTimestamp());
+                    assertEquals(((frames >= 100) && (frames < 150)) ? 1 : 0, reader.getTrackingState());
+                    assertEquals((frames < 200) ? 490.0f : 492.5f, reader.getIntrinsic(0), 0.0f);
+                    assertEquals(480, reader.getImageHeight());
+                    frames++;
+                } else if (reader.getKind() == CameraMetadataLog.RECORD_TRACKING) {
+                    trackingEvents++;
+                } else {
+                    intrinsicsEvents++;
+                }
+            }
+        }
+        assertEquals(300, frames);
+        assertEquals(3, trackingEvents);
+        assertEquals(4, intrinsicsEvents);
+    }
+
+    @Test
+    public void seek_startsDecodingAtSegment() throws Exception {
+        File file = record(300);
+
+        // round trip the index through its text form, as written next to the binary file
+        File indexFile = mTemporaryFolder.newFile("ARCore_tracking_segments.txt");
+        try (Writer writer = new FileWriter(indexFile)) {
+            writer.write("# Created at Thu Jan 01 00:00:00 UTC 1970 in Burnaby Canada \n");
+            for (TrackingSegment segment : mSegments) {
+                writer.write(segment.toLine());
+            }
+            writer.write("123 456 TRACK");
+        }
+        List<TrackingSegment> segments = CameraMetadataReader.readSegments(indexFile);
+        assertEquals(3, segments.size());
+
+        try (CameraMetadataReader reader = new CameraMetadataReader(file)) {
+            reader.seek(segments.get(2).getByteOffset());
+            assertTrue(reader.next());
+            assertEquals(CameraMetadataLog.RECORD_TRACKING, reader.getKind());
+            assertEquals(segments.get(2).getStartTimestamp(), reader.getTimestamp());
+            assertTrue(reader.next());
+            assertEquals(CameraMetadataLog.RECORD_INTRINSICS, reader.getKind());
+            assertEquals(490.0f, reader.getIntrinsic(0), 0.0f);
+            int frames = 0;
+            while (reader.next()) {
+                if (reader.getKind() == CameraMetadataLog.RECORD_FRAME) {
+                    assertEquals(5000000000L + (150 + frames) * FRAME_NANOS, reader.getTimestamp());
+                    frames++;
+                }
+            }
+            assertEquals(segments.get(2).getNumberOfFrames(), frames);
+        }
+    }
+
+    @Test
+    public void truncatedFile_endsAtLastCompleteRecord() throws Exception {
+        File file = record(10);
+        byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
+        File truncated = mTemporaryFolder.newFile("truncated.bin");
+        try (OutputStream outputStream = new FileOutputStream(truncated)) {
+            outputStream.write(Arrays.copyOf(bytes, bytes.length - 1));
+        }
+        int frames = 0;
+        try (CameraMetadataReader reader = new CameraMetadataReader(truncated)) {
+            while (reader.next()) {
+                if (reader.getKind() == CameraMetadataLog.RECORD_FRAME) {
+                    frames++;
+                }
+            }
+        }
+        assertEquals(9, frames);
+    }
+
+    @Test
+    public void zeroPaddedFile_endsAtLastRecord() throws Exception {
+        File file = record(10);
+        try (OutputStream outputStream = new FileOutputStream(file, true)) {
+
+            // the zeros a file system can leave after a power loss
+            outputStream.write(new byte[4096]);
+        }
+        int frames = 0;
+        try (CameraMetadataReader reader = new CameraMetadataReader(file)) {
+            while (reader.next()) {
+                if (reader.getKind() == CameraMetadataLog.RECORD_FRAME) {
+                    frames++;
+                }
+            }
+        }
+        assertEquals(10, frames);
+    }
+}
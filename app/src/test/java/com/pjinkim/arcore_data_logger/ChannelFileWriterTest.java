@@ -0,0 +1,151 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the double-buffered channel writer.
+ */
+public class ChannelFileWriterTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void close_leavesTheWrittenBytesAndMatchesChecksum() throws Exception {
+        File file = mTemporaryFolder.newFile();
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+
+        // small buffers and space check intervals so that many swaps and space checks happen
+        ChannelFileWriter writer = new ChannelFileWriter(file, ioExecutor, 64, 1000, 0, null);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            String line = i + " \u00e9\u4e2d\ud83d\ude00 pose\n";
+            writer.write(line);
+            expected.append(line);
+        }
+        char[] longLine = new char[3000];
+        for (int i = 0; i < longLine.length; i += 2) {
+            longLine[i] = '\ud83d';
+            longLine[i + 1] = '\ude00';
+        }
+        writer.write(longLine);
+        expected.append(longLine);
+        writer.close();
+        ioExecutor.shutdown();
+
+        byte[] expectedBytes = expected.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] actualBytes = Files.readAllBytes(file.toPath());
+        assertArrayEquals(expectedBytes, actualBytes);
+        assertEquals(expectedBytes.length, writer.getBytesWritten());
+
+        CRC32 checksum = new CRC32();
+        checksum.update(expectedBytes);
+        assertEquals(checksum.getValue(), writer.getChecksum());
+    }
+
+    @Test
+    public void writeBytes_keepsOrderWithText() throws Exception {
+        File file = mTemporaryFolder.newFile();
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+        ChannelFileWriter writer = new ChannelFileWriter(file, ioExecutor);
+        writer.write("ab");
+        writer.writeBytes(new byte[]{1, 2, 3}, 1, 2);
+        writer.write('c');
+        writer.close();
+        ioExecutor.shutdown();
+
+        try (InputStream inputStream = new FileInputStream(file)) {
+            byte[] bytes = new byte[16];
+            assertEquals(5, inputStream.read(bytes));
+            assertArrayEquals(new byte[]{'a', 'b', 2, 3, 'c'}, Arrays.copyOf(bytes, 5));
+        }
+    }
+
+    @Test
+    public void write_keepsASurrogatePairSplitBetweenWrites() throws Exception {
+        File file = mTemporaryFolder.newFile();
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+        ChannelFileWriter writer = new ChannelFileWriter(file, ioExecutor);
+        writer.write("a\ud83d");
+        writer.flush();
+        writer.write('\ude00');
+        writer.write(new char[]{'b', '\ud83d'});
+        writer.write("\ude00c\ud83d");
+        writer.close();
+        ioExecutor.shutdown();
+
+        // the pairs come out whole, the unpaired high surrogate at the end as a replacement
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals("a\ud83d\ude00b\ud83d\ude00c?", new String(bytes, StandardCharsets.UTF_8));
+        assertEquals(bytes.length, writer.getBytesWritten());
+    }
+
+    @Test
+    public void sync_leavesTheRecordsSoFarInTheFile() throws Exception {
+        File file = mTemporaryFolder.newFile();
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+        ChannelFileWriter writer = new ChannelFileWriter(file, ioExecutor, 64, 1000, 0, null);
+        for (int i = 0; i < 100; i++) {
+            writer.write(i + " pose\n");
+        }
+        writer.sync();
+
+        // the file ends at the last record, as it does after a crash
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals(writer.getBytesWritten(), bytes.length);
+        assertTrue(new String(bytes, 0, (int) writer.getBytesWritten(), StandardCharsets.UTF_8).endsWith("99 pose\n"));
+        writer.write("100 pose\n");
+        writer.close();
+        ioExecutor.shutdown();
+        assertEquals(writer.getBytesWritten(), file.length());
+    }
+
+    @Test
+    public void flushInBackground_leavesTheRecordsInTheFileOnceTheIoThreadIsDone() throws Exception {
+        File file = mTemporaryFolder.newFile();
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+        ChannelFileWriter writer = new ChannelFileWriter(file, ioExecutor, 64, 1000, 0, null);
+        for (int i = 0; i < 100; i++) {
+            writer.write(i + " pose\n");
+        }
+        writer.flushInBackground(true);
+
+        // the writes and the force run before anything submitted later
+        ioExecutor.submit(() -> { }).get();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertTrue(new String(bytes, 0, (int) writer.getBytesWritten(), StandardCharsets.UTF_8).endsWith("99 pose\n"));
+        writer.write("100 pose\n");
+        writer.close();
+        ioExecutor.shutdown();
+        assertEquals(writer.getBytesWritten(), file.length());
+    }
+
+    @Test
+    public void lowSpaceListener_firesOnceBelowThreshold() throws Exception {
+        File file = mTemporaryFolder.newFile();
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+        final int[] calls = new int[1];
+        ChannelFileWriter writer = new ChannelFileWriter(file, ioExecutor, 64, 128, Long.MAX_VALUE,
+                (lowFile, usableBytes) -> calls[0]++);
+        for (int i = 0; i < 100; i++) {
+            writer.write("0123456789\n");
+        }
+        writer.close();
+        ioExecutor.shutdown();
+        assertEquals(1, calls[0]);
+    }
+}
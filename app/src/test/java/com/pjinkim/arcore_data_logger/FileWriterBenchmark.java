@@ -0,0 +1,53 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Throughput of the session file writer backends on pose-formatted text, run as a plain main.
+ */
+public class FileWriterBenchmark {
+
+    private static final int NUMBER_OF_LINES = 2000000;
+
+    public static void main(String[] args) throws IOException {
+        File folder = new File((args.length > 0) ? args[0] : System.getProperty("java.io.tmpdir"));
+
+        // pre-format a pool of pose lines so that only the writer path is measured
+        String[] lines = new String[1024];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = (1000000000L + i * 33333333L) + String.format(Locale.US, " %.6f %.6f %.6f %.6f %.6f %.6f %.6f",
+                    0.1f * i, -0.2f, 0.3f, 0.9f, 1.5f * i, -2.5f, 3.5f) + " \n";
+        }
+
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+        for (int trial = 0; trial < 3; trial++) {
+            File file = new File(folder, "benchmark_pose.txt");
+            measure("BufferedWriter(FileWriter)", new BufferedWriter(new FileWriter(file)), lines, file);
+            measure("BufferedWriter(ChecksumOutputStream)", new BufferedWriter(new OutputStreamWriter(
+                    new ChecksumOutputStream(new FileOutputStream(file)))), lines, file);
+            measure("ChannelFileWriter", new ChannelFileWriter(file, ioExecutor), lines, file);
+            file.delete();
+        }
+        ioExecutor.shutdown();
+    }
+
+    private static void measure(final String name, final Writer writer, final String[] lines, final File file) throws IOException {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < NUMBER_OF_LINES; i++) {
+            writer.write(lines[i & (lines.length - 1)]);
+        }
+        writer.close();
+        long elapsed = System.nanoTime() - startTime;
+        System.out.println(String.format(Locale.US, "%-40s %8.1f MB/s  %6.1f ns/record",
+                name, file.length() / 1e6 / (elapsed / 1e9), (double) elapsed / NUMBER_OF_LINES));
+    }
+}
@@ -0,0 +1,108 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the flight recorder ring buffers and trigger windows.
+ */
+public class FlightRecorderTest {
+
+    private static final long FRAME_NANOS = 10000000L;
+
+    // frame i at i * 10 ms with 'count' points whose IDs start at i * 1000
+    private static void recordFrames(final FlightRecorder recorder, final int first, final int last,
+                                     final int count, final int failureReason) {
+        for (int i = first; i < last; i++) {
+            IntBuffer ids = IntBuffer.allocate(count);
+            FloatBuffer points = FloatBuffer.allocate(count * 4);
+            for (int k = 0; k < count; k++) {
+                ids.put(i * 1000 + k);
+                points.put(new float[]{i, k, 0, 0.5f});
+            }
+            ids.flip();
+            points.flip();
+            recorder.record(i * FRAME_NANOS, 0, 0, 0, 1, i * 0.01f, 0, 0, 2, failureReason, ids, points);
+        }
+    }
+
+    @Test
+    public void steadyState_producesNoSnapshot() {
+        FlightRecorder recorder = new FlightRecorder(100, 1000, 200 * FRAME_NANOS, 50 * FRAME_NANOS);
+        recordFrames(recorder, 0, 1000, 5, 0);
+        assertFalse(recorder.isTriggered());
+        assertNull(recorder.takeSnapshotIfDue(1000 * FRAME_NANOS));
+        assertNull(recorder.takeSnapshot());
+    }
+
+    @Test
+    public void manualTrigger_waitsForPostTriggerWindow() {
+        FlightRecorder recorder = new FlightRecorder(1000, 10000, 20 * FRAME_NANOS, 10 * FRAME_NANOS);
+        recordFrames(recorder, 0, 100, 2, 0);
+        recorder.trigger(99 * FRAME_NANOS, "button");
+        recordFrames(recorder, 100, 105, 2, 0);
+
+        // a second trigger inside the open window is merged
+        recorder.trigger(104 * FRAME_NANOS, "button");
+        assertNull(recorder.takeSnapshotIfDue(104 * FRAME_NANOS));
+        recordFrames(recorder, 105, 120, 2, 0);
+        FlightRecorder.Snapshot snapshot = recorder.takeSnapshotIfDue(119 * FRAME_NANOS);
+
+        // frames 79 .. 109 inclusive
+        assertNotNull(snapshot);
+        assertEquals("button", snapshot.getCause());
+        assertEquals(99 * FRAME_NANOS, snapshot.getTriggerTimestamp());
+        assertEquals(31, snapshot.getNumberOfFrames());
+        assertEquals(79 * FRAME_NANOS, snapshot.getTimestamp(0));
+        assertEquals(109 * FRAME_NANOS, snapshot.getTimestamp(30));
+        assertEquals(0.79f, snapshot.getPose(0, 4), 1e-6f);
+        assertEquals(62, snapshot.getNumberOfPoints());
+        assertEquals(79000, snapshot.getPointId(0));
+        assertEquals(109001, snapshot.getPointId(61));
+        assertEquals(1.0f, snapshot.getPointValue(61, 1), 0.0f);
+        assertFalse(recorder.isTriggered());
+        assertEquals(1, recorder.getNumberOfSnapshots());
+    }
+
+    @Test
+    public void failureReasonChange_triggersAutomatically() {
+        FlightRecorder recorder = new FlightRecorder(1000, 10000, 5 * FRAME_NANOS, 5 * FRAME_NANOS);
+        recordFrames(recorder, 0, 50, 1, 0);
+        assertFalse(recorder.isTriggered());
+        recordFrames(recorder, 50, 60, 1, 3);
+        assertTrue(recorder.isTriggered());
+
+        FlightRecorder.Snapshot snapshot = recorder.takeSnapshotIfDue(59 * FRAME_NANOS);
+        assertEquals(FlightRecorder.CAUSE_TRACKING_FAILURE, snapshot.getCause());
+        assertEquals(11, snapshot.getNumberOfFrames());
+        assertEquals(0, snapshot.getFailureReason(4));
+        assertEquals(3, snapshot.getFailureReason(5));
+        assertEquals(2, snapshot.getTrackingState(5));
+    }
+
+    @Test
+    public void wrappedRings_keepOnlySurvivingRecords() {
+
+        // 50 frames and 120 points fit: the window asks for more than both rings hold
+        FlightRecorder recorder = new FlightRecorder(50, 120, 1000 * FRAME_NANOS, 0);
+        recordFrames(recorder, 0, 500, 4, 0);
+        recorder.trigger(499 * FRAME_NANOS, "button");
+        FlightRecorder.Snapshot snapshot = recorder.takeSnapshotIfDue(499 * FRAME_NANOS);
+
+        assertEquals(50, snapshot.getNumberOfFrames());
+        assertEquals(450 * FRAME_NANOS, snapshot.getTimestamp(0));
+        assertEquals(120, snapshot.getNumberOfPoints());
+        int total = 0;
+        for (int i = 0; i < snapshot.getNumberOfFrames(); i++) {
+            total += snapshot.getPointCount(i);
+        }
+        assertEquals(120, total);
+        assertEquals(0, snapshot.getPointCount(0));
+        assertEquals(470000, snapshot.getPointId(0));
+        assertEquals(499003, snapshot.getPointId(119));
+    }
+}
@@ -0,0 +1,242 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the heap allocation budget of each per-frame stage of onUpdateFrame,
+ * run over synthetic frames. A stage that starts allocating beyond its budget fails here.
+ */
+public class FramePathAllocationTest {
+
+    private static final int NUMBER_OF_FRAMES = 64;
+    private static final int POINTS_PER_FRAME = 256;
+    private static final int NUMBER_OF_WORLD_POINTS = 4096;
+    private static final int NUMBER_OF_PLANES = 8;
+    private static final int MEASURED_FRAMES = 5000;
+
+    // synthetic frames: a camera sliding along x, seeing a window of world points that moves with it
+    private static final long[] sTimestamps = new long[NUMBER_OF_FRAMES];
+    private static final float[][] sPoses = new float[NUMBER_OF_FRAMES][7];
+    private static final IntBuffer[] sPointIds = new IntBuffer[NUMBER_OF_FRAMES];
+    private static final FloatBuffer[] sPoints = new FloatBuffer[NUMBER_OF_FRAMES];
+    private static final FloatBuffer sPlanePolygon = FloatBuffer.wrap(new float[]{-1, -1, 1, -1, 1, 1, -1, 1});
+    private static final float[] sViewMatrix = new float[16];
+    private static final float[] sProjectionMatrix = new float[16];
+
+    private static AllocationMeter sMeter;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Assume.assumeTrue("thread allocation counters are not available", AllocationMeter.isSupported());
+        sMeter = new AllocationMeter(MEASURED_FRAMES);
+
+        for (int i = 0; i < NUMBER_OF_FRAMES; i++) {
+            sTimestamps[i] = 1000000000L + i * 33333333L;
+            float angle = 0.01f * i;
+            sPoses[i] = new float[]{0, (float) Math.sin(angle / 2), 0, (float) Math.cos(angle / 2), 0.02f * i, 0, 0};
+            int[] ids = new int[POINTS_PER_FRAME];
+            float[] points = new float[POINTS_PER_FRAME * 4];
+            for (int k = 0; k < POINTS_PER_FRAME; k++) {
+                int id = (i * 4 + k) % NUMBER_OF_WORLD_POINTS;
+                ids[k] = id;
+                points[k * 4] = ((id * 37) % 200) / 100.0f - 1.0f;
+                points[k * 4 + 1] = ((id * 53) % 150) / 100.0f - 0.75f;
+                points[k * 4 + 2] = -1.0f - ((id * 71) % 400) / 100.0f;
+                points[k * 4 + 3] = 0.3f + ((id * 13) % 70) / 100.0f;
+            }
+            sPointIds[i] = IntBuffer.wrap(ids);
+            sPoints[i] = FloatBuffer.wrap(points);
+        }
+
+        // camera at the origin looking down -z, 90 degree field of view
+        sViewMatrix[0] = 1;
+        sViewMatrix[5] = 1;
+        sViewMatrix[10] = 1;
+        sViewMatrix[15] = 1;
+        sProjectionMatrix[0] = 1;
+        sProjectionMatrix[5] = 1;
+        sProjectionMatrix[10] = -100.1f / 99.9f;
+        sProjectionMatrix[11] = -1;
+        sProjectionMatrix[14] = -20.0f / 99.9f;
+    }
+
+    private static void assertWithinBudget(final String stage, final long budgetBytesPerFrame, final long bytesPerFrame) {
+        assertTrue(stage + " allocates " + bytesPerFrame + " bytes per frame, over its budget of " + budgetBytesPerFrame,
+                bytesPerFrame <= budgetBytesPerFrame);
+    }
+
+    @Test
+    public void keyframeSelection_doesNotAllocate() throws Exception {
+        KeyframeSelector keyframeSelector = new KeyframeSelector(0.10f, (float) Math.toRadians(10.0), 0.6f);
+        long bytesPerFrame = sMeter.bytesPerIteration(iteration -> {
+            int f = iteration % NUMBER_OF_FRAMES;
+            float[] pose = sPoses[f];
+            keyframeSelector.isKeyframe(sTimestamps[f], pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6], sPointIds[f]);
+        });
+        assertWithinBudget("KeyframeSelector.isKeyframe", 0, bytesPerFrame);
+    }
+
+    @Test
+    public void visibilityCulling_doesNotAllocate() throws Exception {
+        VisibilityCuller visibilityCuller = new VisibilityCuller();
+        long bytesPerFrame = sMeter.bytesPerIteration(iteration -> {
+            visibilityCuller.setViewProjection(sViewMatrix, sProjectionMatrix);
+            visibilityCuller.cull(sPoints[iteration % NUMBER_OF_FRAMES], 0.5f, 480, 640);
+        });
+        assertWithinBudget("VisibilityCuller.cull", 0, bytesPerFrame);
+    }
+
+    @Test
+    public void pointCloudUpdate_doesNotAllocate() throws Exception {
+
+        // every world point is already known, so each frame overwrites existing slots
+        AccumulatedPointCloud pointCloud = new AccumulatedPointCloud();
+        for (int id = 0; id < NUMBER_OF_WORLD_POINTS; id++) {
+            pointCloud.appendPointCloud(id, 0, 0, 0, 0, 0, 0);
+        }
+        long bytesPerFrame = sMeter.bytesPerIteration(iteration -> {
+            IntBuffer ids = sPointIds[iteration % NUMBER_OF_FRAMES];
+            FloatBuffer points = sPoints[iteration % NUMBER_OF_FRAMES];
+            for (int k = 0; k < POINTS_PER_FRAME; k++) {
+                pointCloud.appendPointCloud(ids.get(k), points.get(k * 4), points.get(k * 4 + 1), points.get(k * 4 + 2), 128, 128, 128);
+            }
+        });
+        assertWithinBudget("AccumulatedPointCloud.appendPointCloud", 0, bytesPerFrame);
+    }
+
+    @Test
+    public void pointCloudGrowth_staysAmortized() throws Exception {
+
+        // new points only pay for their 24 bytes of segment and the growth of the ID map, whose
+        // doubling costs up to 48 bytes per point when a resize falls in the measured window
+        AccumulatedPointCloud pointCloud = new AccumulatedPointCloud();
+        AllocationMeter growthMeter = new AllocationMeter(4 * 65536);
+        long bytesPerPoint = growthMeter.bytesPerIteration(iteration ->
+                pointCloud.appendPointCloud(pointCloud.getNumberOfFeatures(), 1, 2, 3, 128, 128, 128));
+        assertWithinBudget("AccumulatedPointCloud.appendPointCloud (new points, per point)", 80, bytesPerPoint);
+    }
+
+    @Test
+    public void pointObservationLog_doesNotAllocate() throws Exception {
+        PointObservationLog pointObservationLog = new PointObservationLog(0.001f);
+        long bytesPerFrame = sMeter.bytesPerIteration(iteration -> {
+            int f = iteration % NUMBER_OF_FRAMES;
+            pointObservationLog.addFrame(sTimestamps[f], sPointIds[f], sPoints[f]);
+            pointObservationLog.clear();
+        });
+        assertWithinBudget("PointObservationLog.addFrame", 0, bytesPerFrame);
+    }
+
+    @Test
+    public void flightRecorder_doesNotAllocate() throws Exception {
+        FlightRecorder flightRecorder = new FlightRecorder(600, 600 * POINTS_PER_FRAME, 8000000000L, 2000000000L);
+        long bytesPerFrame = sMeter.bytesPerIteration(iteration -> {
+            int f = iteration % NUMBER_OF_FRAMES;
+            float[] pose = sPoses[f];
+            flightRecorder.record(sTimestamps[f], pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6],
+                    0, 0, sPointIds[f], sPoints[f]);
+        });
+        assertWithinBudget("FlightRecorder.record", 0, bytesPerFrame);
+    }
+
+    @Test
+    public void planeChangeLog_doesNotAllocate() throws Exception {
+
+        // planes jitter below the tolerances, and every 16th frame one plane grows beyond them
+        PlaneChangeLog planeChangeLog = new PlaneChangeLog(0.02f, (float) Math.toRadians(2.0), 0.02f, 0.02f);
+        long bytesPerFrame = sMeter.bytesPerIteration(iteration -> {
+            float jitter = ((iteration % 3) - 1) * 0.001f;
+            float extent = 2.0f + (iteration / 16) * 0.05f;
+            for (int planeId = 0; planeId < NUMBER_OF_PLANES; planeId++) {
+                planeChangeLog.update(iteration, planeId, 0, 0, 0, 0, 1, planeId + jitter, -1.5f, 0,
+                        (planeId == 0) ? extent : 2.0f, 2.0f, sPlanePolygon);
+            }
+            planeChangeLog.clear();
+        });
+        assertWithinBudget("PlaneChangeLog.update", 0, bytesPerFrame);
+    }
+
+    @Test
+    public void cameraMetadataLog_staysWithinBudget() throws Exception {
+
+        // a tracking segment closes every 300 frames, which allocates its index entry
+        CameraMetadataLog cameraMetadataLog = new CameraMetadataLog(new String[]{"TRACKING", "PAUSED"}, new String[]{"NONE", "BAD_STATE"});
+        long bytesPerFrame = sMeter.bytesPerIteration(iteration -> {
+            long timestamp = 1000000000L + iteration * 33333333L;
+            int trackingState = (iteration / 300) % 2;
+            cameraMetadataLog.addFrame(timestamp, timestamp + 500, trackingState, trackingState,
+                    490.0f, 490.0f, 320.0f, 240.0f, 640, 480);
+            cameraMetadataLog.clear();
+        });
+        assertWithinBudget("CameraMetadataLog.addFrame", 1, bytesPerFrame);
+    }
+
+    @Test
+    public void manifestCounters_doNotAllocate() throws Exception {
+        SessionManifest sessionManifest = new SessionManifest(mTemporaryFolder.getRoot());
+        long bytesPerFrame = sMeter.bytesPerIteration(iteration -> {
+            sessionManifest.addRecords("ARCore_sensor_pose", 1);
+            sessionManifest.updateTimestamp(sTimestamps[iteration % NUMBER_OF_FRAMES]);
+            sessionManifest.addTrackingFrame("TRACKING", "NONE");
+        });
+        assertWithinBudget("SessionManifest counters", 0, bytesPerFrame);
+    }
+
+    @Test
+    public void telemetryAndLabels_doNotAllocate() throws Exception {
+
+        // publish on the frame path, read and format as the display loop does
+        SessionTelemetry telemetry = new SessionTelemetry();
+        SessionTelemetry.Snapshot snapshot = new SessionTelemetry.Snapshot();
+        CharFormatter updateRateText = new CharFormatter(16);
+        CharFormatter ioStatusText = new CharFormatter(48);
+        long bytesPerFrame = sMeter.bytesPerIteration(iteration -> {
+            telemetry.publish(sTimestamps[iteration % NUMBER_OF_FRAMES], POINTS_PER_FRAME, 0, 0, 29.97, iteration, 3, 0, 1024L * iteration);
+            telemetry.read(snapshot);
+            updateRateText.reset().appendFixed(snapshot.getUpdateRate(), 3).append(" Hz");
+            ioStatusText.reset().appendBytes(snapshot.getBytesWritten())
+                    .append("  Q ").appendLong(snapshot.getQueueDepth(), 1)
+                    .append("  D ").appendLong(snapshot.getNumberOfDrops(), 1);
+        });
+        assertWithinBudget("SessionTelemetry and CharFormatter", 0, bytesPerFrame);
+    }
+
+    @Test
+    public void poseRecord_staysWithinBudget() throws Exception {
+
+        // the pose writer of ARCoreResultStreamer on channel writers, which only allocate when they
+        // hand a full buffer to the I/O thread
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+        File file = mTemporaryFolder.newFile("ARCore_sensor_pose.txt");
+        ChannelFileWriter writer = new ChannelFileWriter(file, ioExecutor);
+        ChannelFileWriter indexWriter = new ChannelFileWriter(SparseTimeIndex.indexFileFor(file), ioExecutor);
+        PoseRecordWriter poseRecordWriter = new PoseRecordWriter(writer, indexWriter, 0);
+        try {
+            long bytesPerFrame = sMeter.bytesPerIteration(iteration -> {
+                int f = iteration % NUMBER_OF_FRAMES;
+                float[] pose = sPoses[f];
+                poseRecordWriter.write(sTimestamps[f], pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6]);
+            });
+            assertWithinBudget("PoseRecordWriter.write", 1, bytesPerFrame);
+        } finally {
+            writer.close();
+            indexWriter.close();
+            ioExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the keyframe image encoding pool, with a raw encoder in place of JPEG/PNG.
+ */
+public class ImageExportPoolTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    // writes the quality and the NV21 bytes, optionally waiting for a latch or failing
+    private static class RawEncoder implements ImageExportPool.Encoder {
+        private final CountDownLatch mLatch;
+        private final boolean mIsFailing;
+
+        RawEncoder(final CountDownLatch latch, final boolean isFailing) {
+            mLatch = latch;
+            mIsFailing = isFailing;
+        }
+
+        @Override
+        public void encode(final ImageExportPool.ImageBuffer image, final int quality, final OutputStream outputStream) throws IOException {
+            try {
+                mLatch.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (mIsFailing) {
+                throw new IOException("encode: failing on purpose");
+            }
+            outputStream.write(quality);
+            outputStream.write(image.getNv21(), 0, image.getWidth() * image.getHeight() * 3 / 2);
+        }
+
+        @Override
+        public String getExtension() {
+            return "raw";
+        }
+    }
+
+    // camera-like planes: padded luma rows and interleaved chroma with a pixel stride of 2
+    private static void putImage(final ImageExportPool.ImageBuffer buffer, final long timestamp, final int seed) {
+        int yRowStride = WIDTH + 8;
+        ByteBuffer yPlane = ByteBuffer.allocate(yRowStride * HEIGHT);
+        for (int i = 0; i < yPlane.capacity(); i++) {
+            yPlane.put(i, (byte) (seed + i));
+        }
+        int uvRowStride = WIDTH + 4;
+        ByteBuffer chroma = ByteBuffer.allocate(uvRowStride * HEIGHT / 2 + 1);
+        for (int i = 0; i < chroma.capacity(); i++) {
+            chroma.put(i, (byte) (100 + seed + i));
+        }
+        ByteBuffer uPlane = chroma.duplicate();
+        chroma.position(1);
+        ByteBuffer vPlane = chroma.slice();
+        buffer.putYuv(timestamp, WIDTH, HEIGHT, yPlane, yRowStride, uPlane, vPlane, uvRowStride, 2);
+        assertEquals(0, yPlane.position());
+    }
+
+    @Test
+    public void putYuv_packsPlanesAsNv21() {
+        ImageExportPool.ImageBuffer buffer = new ImageExportPool.ImageBuffer();
+        putImage(buffer, 7, 0);
+        byte[] nv21 = buffer.getNv21();
+        assertEquals(WIDTH * HEIGHT * 3 / 2, nv21.length);
+        assertEquals((byte) (2 * (WIDTH + 8) + 3), nv21[2 * WIDTH + 3]);
+
+        // second chroma row, third sample: V then U
+        int offset = WIDTH * HEIGHT + (WIDTH / 2) * 2 + 2 * 2;
+        int index = (WIDTH + 4) + 2 * 2;
+        assertEquals((byte) (100 + index + 1), nv21[offset]);
+        assertEquals((byte) (100 + index), nv21[offset + 1]);
+    }
+
+    @Test
+    public void images_areWrittenByTimestampAndIndexed() throws Exception {
+        File folder = new File(mTemporaryFolder.getRoot(), "keyframe_images");
+        ImageExportPool pool = new ImageExportPool(folder, new RawEncoder(new CountDownLatch(0), false), 85, 3, 4);
+        for (int i = 0; i < 50; i++) {
+            ImageExportPool.ImageBuffer buffer;
+            while ((buffer = pool.acquireBuffer()) == null) {
+                Thread.sleep(1);
+            }
+            putImage(buffer, 5000 - i * 10, i);
+            pool.submit(buffer);
+        }
+        pool.close();
+
+        assertEquals(50, pool.getNumberOfWritten());
+        byte[] bytes = Files.readAllBytes(new File(folder, "4990.raw").toPath());
+        assertEquals(1 + WIDTH * HEIGHT * 3 / 2, bytes.length);
+        assertEquals(85, bytes[0]);
+        assertEquals((byte) 1, bytes[1]);
+
+        List<String> lines = Files.readAllLines(new File(folder, ImageExportPool.INDEX_FILE_NAME).toPath(), StandardCharsets.US_ASCII);
+        assertEquals(50, lines.size());
+        assertEquals("4510 4510.raw " + bytes.length + " ", lines.get(0));
+        assertEquals("5000 5000.raw " + bytes.length + " ", lines.get(49));
+    }
+
+    @Test
+    public void slowEncoders_dropFramesInsteadOfQueueing() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        ImageExportPool pool = new ImageExportPool(mTemporaryFolder.newFolder(), new RawEncoder(latch, false), 90, 2, 3);
+        int numberOfSubmitted = 0;
+        for (int i = 0; i < 10; i++) {
+            ImageExportPool.ImageBuffer buffer = pool.acquireBuffer();
+            if (buffer != null) {
+                putImage(buffer, i, i);
+                pool.submit(buffer);
+                numberOfSubmitted++;
+            }
+        }
+        assertEquals(3, numberOfSubmitted);
+        assertEquals(7, pool.getNumberOfDropped());
+
+        latch.countDown();
+        pool.close();
+        assertEquals(3, pool.getNumberOfWritten());
+    }
+
+    @Test
+    public void bufferLimit_releasesFreeAndReturningBuffers() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        ImageExportPool pool = new ImageExportPool(mTemporaryFolder.newFolder(), new RawEncoder(latch, false), 90, 1, 4);
+        ImageExportPool.ImageBuffer buffer = pool.acquireBuffer();
+        putImage(buffer, 1, 1);
+        pool.submit(buffer);
+
+        // three free buffers go at once, the busy one when its image is written
+        pool.setBufferLimit(0);
+        assertEquals(1, pool.getNumberOfBuffers());
+        assertNull(pool.acquireBuffer());
+        latch.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((pool.getNumberOfBuffers() > 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, pool.getNumberOfBuffers());
+
+        // buffers are allocated again up to a raised limit, never beyond the original pool
+        pool.setBufferLimit(10);
+        assertEquals(4, pool.getBufferLimit());
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(pool.acquireBuffer());
+        }
+        assertNull(pool.acquireBuffer());
+        assertEquals(2, pool.getNumberOfDropped());
+        pool.close();
+        assertEquals(1, pool.getNumberOfWritten());
+    }
+
+    @Test
+    public void failedImages_areCountedAndRemoved() throws Exception {
+        File folder = mTemporaryFolder.newFolder();
+        ImageExportPool pool = new ImageExportPool(folder, new RawEncoder(new CountDownLatch(0), true), 90, 1, 2);
+        ImageExportPool.ImageBuffer buffer = pool.acquireBuffer();
+        putImage(buffer, 42, 0);
+        pool.submit(buffer);
+        pool.close();
+
+        assertEquals(1, pool.getNumberOfFailed());
+        assertEquals(0, pool.getNumberOfWritten());
+        assertFalse(new File(folder, "42.raw").exists());
+        assertNotNull(pool.acquireBuffer());
+        assertNotNull(pool.acquireBuffer());
+    }
+
+    @Test
+    public void uncheckedEncoderFailures_areCountedAndRemoved() throws Exception {
+        File folder = mTemporaryFolder.newFolder();
+        ImageExportPool.Encoder encoder = new ImageExportPool.Encoder() {
+            @Override
+            public void encode(final ImageExportPool.ImageBuffer image, final int quality, final OutputStream outputStream) throws IOException {
+                outputStream.write(new byte[1 << 17]);
+                throw new IllegalArgumentException("encode: bad image on purpose");
+            }
+
+            @Override
+            public String getExtension() {
+                return "raw";
+            }
+        };
+        ImageExportPool pool = new ImageExportPool(folder, encoder, 90, 1, 2);
+        ImageExportPool.ImageBuffer buffer = pool.acquireBuffer();
+        putImage(buffer, 42, 0);
+        pool.submit(buffer);
+        pool.close();
+
+        assertEquals(1, pool.getNumberOfFailed());
+        assertEquals(0, pool.getNumberOfWritten());
+        assertFalse(new File(folder, "42.raw").exists());
+        assertNotNull(pool.acquireBuffer());
+    }
+}
@@ -0,0 +1,68 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the motion and covisibility based keyframe selection.
+ */
+public class KeyframeSelectorTest {
+
+    private static IntBuffer ids(final int first, final int count) {
+        IntBuffer buffer = IntBuffer.allocate(count);
+        for (int i = count - 1; i >= 0; i--) {
+            buffer.put(first + i);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private final KeyframeSelector mSelector = new KeyframeSelector(0.1f, (float) Math.toRadians(10.0), 0.6f);
+
+    @Test
+    public void firstFrame_isKeyframe() {
+        assertTrue(mSelector.isKeyframe(1, 0, 0, 0, 1, 0, 0, 0, ids(0, 100)));
+        assertEquals(0, mSelector.getKeyframeId());
+        assertFalse(mSelector.isKeyframe(2, 0, 0, 0, 1, 0.05f, 0, 0, ids(0, 100)));
+    }
+
+    @Test
+    public void translation_triggersKeyframe() {
+        mSelector.isKeyframe(1, 0, 0, 0, 1, 0, 0, 0, ids(0, 100));
+        assertFalse(mSelector.isKeyframe(2, 0, 0, 0, 1, 0.09f, 0, 0, ids(0, 100)));
+        assertTrue(mSelector.isKeyframe(3, 0, 0, 0, 1, 0.11f, 0, 0, ids(0, 100)));
+        assertEquals(3, mSelector.getKeyframeTimestamp());
+
+        // the reference moved with the new keyframe
+        assertFalse(mSelector.isKeyframe(4, 0, 0, 0, 1, 0.2f, 0, 0, ids(0, 100)));
+    }
+
+    @Test
+    public void rotation_triggersKeyframe() {
+        mSelector.isKeyframe(1, 0, 0, 0, 1, 0, 0, 0, ids(0, 100));
+        float half5 = (float) Math.toRadians(5.0) / 2;
+        float half15 = (float) Math.toRadians(15.0) / 2;
+        assertFalse(mSelector.isKeyframe(2, 0, (float) Math.sin(half5), 0, (float) Math.cos(half5), 0, 0, 0, ids(0, 100)));
+        assertTrue(mSelector.isKeyframe(3, 0, (float) Math.sin(half15), 0, (float) Math.cos(half15), 0, 0, 0, ids(0, 100)));
+    }
+
+    @Test
+    public void lostCovisibility_triggersKeyframe() {
+        mSelector.isKeyframe(1, 0, 0, 0, 1, 0, 0, 0, ids(0, 100));
+        assertFalse(mSelector.isKeyframe(2, 0, 0, 0, 1, 0, 0, 0, ids(30, 100)));
+        assertEquals(0.7f, mSelector.getLastCovisibility(), 1e-6f);
+        assertTrue(mSelector.isKeyframe(3, 0, 0, 0, 1, 0, 0, 0, ids(50, 100)));
+        assertEquals(2, mSelector.getNumberOfKeyframes());
+    }
+
+    @Test
+    public void reset_restartsKeyframeIds() {
+        mSelector.isKeyframe(1, 0, 0, 0, 1, 0, 0, 0, ids(0, 10));
+        mSelector.reset();
+        assertTrue(mSelector.isKeyframe(2, 0, 0, 0, 1, 0, 0, 0, ids(0, 10)));
+        assertEquals(0, mSelector.getKeyframeId());
+    }
+}
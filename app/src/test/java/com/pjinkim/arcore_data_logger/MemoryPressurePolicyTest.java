@@ -0,0 +1,102 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the memory pressure policy, driven with simulated trim levels.
+ */
+public class MemoryPressurePolicyTest {
+
+    private static final long HEAP_BUDGET = 32 * AccumulatedPointCloud.SEGMENT_BYTES;
+    private static final long RECOVERY_MILLIS = 30000;
+
+    private final MemoryPressurePolicy mPolicy = new MemoryPressurePolicy(4, HEAP_BUDGET, RECOVERY_MILLIS);
+
+    private static boolean has(final int actions, final int action) {
+        return (actions & action) != 0;
+    }
+
+    @Test
+    public void trimLevels_mapToStages() {
+        assertEquals(MemoryPressurePolicy.NORMAL, MemoryPressurePolicy.stageOf(MemoryPressurePolicy.RECOVERED));
+        assertEquals(MemoryPressurePolicy.MODERATE, MemoryPressurePolicy.stageOf(MemoryPressurePolicy.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(MemoryPressurePolicy.MODERATE, MemoryPressurePolicy.stageOf(MemoryPressurePolicy.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(MemoryPressurePolicy.LOW, MemoryPressurePolicy.stageOf(MemoryPressurePolicy.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(MemoryPressurePolicy.LOW, MemoryPressurePolicy.stageOf(MemoryPressurePolicy.TRIM_MEMORY_BACKGROUND));
+        assertEquals(MemoryPressurePolicy.CRITICAL, MemoryPressurePolicy.stageOf(MemoryPressurePolicy.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(MemoryPressurePolicy.CRITICAL, MemoryPressurePolicy.stageOf(MemoryPressurePolicy.TRIM_MEMORY_MODERATE));
+        assertEquals(MemoryPressurePolicy.CRITICAL, MemoryPressurePolicy.stageOf(MemoryPressurePolicy.TRIM_MEMORY_COMPLETE));
+        assertEquals(MemoryPressurePolicy.CRITICAL, MemoryPressurePolicy.stageOf(MemoryPressurePolicy.LOW_MEMORY));
+        assertEquals("RUNNING_CRITICAL", MemoryPressurePolicy.levelName(MemoryPressurePolicy.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals("LEVEL_7", MemoryPressurePolicy.levelName(7));
+    }
+
+    @Test
+    public void escalation_lowersTheLimitsStageByStage() {
+        assertEquals(4, mPolicy.getImageBufferLimit());
+        assertEquals(HEAP_BUDGET, mPolicy.getPointCloudHeapBudget());
+        assertEquals(1, mPolicy.getColorizationInterval());
+
+        // 1) moderate: flush and halve the image buffers
+        int actions = mPolicy.onTrimMemory(MemoryPressurePolicy.TRIM_MEMORY_RUNNING_MODERATE, 1000);
+        assertEquals(MemoryPressurePolicy.ACTION_FLUSH | MemoryPressurePolicy.ACTION_IMAGE_BUFFERS, actions);
+        assertEquals(2, mPolicy.getImageBufferLimit());
+        assertEquals(HEAP_BUDGET, mPolicy.getPointCloudHeapBudget());
+
+        // 2) low: sync, spill most of the point cloud and colorize every second keyframe
+        actions = mPolicy.onTrimMemory(MemoryPressurePolicy.TRIM_MEMORY_RUNNING_LOW, 2000);
+        assertTrue(has(actions, MemoryPressurePolicy.ACTION_SYNC));
+        assertTrue(has(actions, MemoryPressurePolicy.ACTION_POINT_CLOUD_BUDGET));
+        assertTrue(has(actions, MemoryPressurePolicy.ACTION_COLORIZATION));
+        assertEquals(1, mPolicy.getImageBufferLimit());
+        assertEquals(HEAP_BUDGET / 4, mPolicy.getPointCloudHeapBudget());
+        assertEquals(2, mPolicy.getColorizationInterval());
+
+        // 3) critical: no image buffers and no point cloud on the heap
+        mPolicy.onTrimMemory(MemoryPressurePolicy.TRIM_MEMORY_RUNNING_CRITICAL, 3000);
+        assertEquals(MemoryPressurePolicy.CRITICAL, mPolicy.getStage());
+        assertEquals(0, mPolicy.getImageBufferLimit());
+        assertEquals(0, mPolicy.getPointCloudHeapBudget());
+        assertEquals(4, mPolicy.getColorizationInterval());
+        assertEquals(3, mPolicy.getNumberOfSignals());
+    }
+
+    @Test
+    public void milderSignals_keepTheStageButStillFlush() {
+        mPolicy.onTrimMemory(MemoryPressurePolicy.TRIM_MEMORY_COMPLETE, 1000);
+        int actions = mPolicy.onTrimMemory(MemoryPressurePolicy.TRIM_MEMORY_RUNNING_MODERATE, 2000);
+        assertEquals(MemoryPressurePolicy.CRITICAL, mPolicy.getStage());
+        assertEquals(MemoryPressurePolicy.ACTION_FLUSH | MemoryPressurePolicy.ACTION_SYNC, actions);
+    }
+
+    @Test
+    public void quietPeriods_relaxOneStageEach() {
+        mPolicy.onTrimMemory(MemoryPressurePolicy.LOW_MEMORY, 1000);
+        assertEquals(0, mPolicy.update(1000 + RECOVERY_MILLIS - 1));
+
+        // 1) critical to low raises the limits again, without flushing
+        int actions = mPolicy.update(1000 + RECOVERY_MILLIS);
+        assertEquals(MemoryPressurePolicy.LOW, mPolicy.getStage());
+        assertFalse(has(actions, MemoryPressurePolicy.ACTION_FLUSH));
+        assertTrue(has(actions, MemoryPressurePolicy.ACTION_IMAGE_BUFFERS));
+        assertEquals(1, mPolicy.getImageBufferLimit());
+        assertEquals(HEAP_BUDGET / 4, mPolicy.getPointCloudHeapBudget());
+
+        // 2) a new signal restarts the recovery period
+        mPolicy.onTrimMemory(MemoryPressurePolicy.TRIM_MEMORY_UI_HIDDEN, 1000 + RECOVERY_MILLIS + 10);
+        assertEquals(0, mPolicy.update(1000 + 2 * RECOVERY_MILLIS));
+        assertEquals(MemoryPressurePolicy.LOW, mPolicy.getStage());
+
+        // 3) then back to normal one period at a time
+        long time = 1000 + 2 * RECOVERY_MILLIS + 10;
+        assertTrue(has(mPolicy.update(time), MemoryPressurePolicy.ACTION_POINT_CLOUD_BUDGET));
+        assertEquals(MemoryPressurePolicy.MODERATE, mPolicy.getStage());
+        assertEquals(MemoryPressurePolicy.ACTION_IMAGE_BUFFERS, mPolicy.update(time + RECOVERY_MILLIS));
+        assertEquals(MemoryPressurePolicy.NORMAL, mPolicy.getStage());
+        assertEquals(4, mPolicy.getImageBufferLimit());
+        assertEquals(0, mPolicy.update(time + 10 * RECOVERY_MILLIS));
+        assertEquals(MemoryPressurePolicy.CRITICAL, mPolicy.getHighestStage());
+    }
+}
@@ -0,0 +1,205 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the octree point cloud codec and its streaming reader.
+ */
+public class OctreePointCloudCodecTest {
+
+    private static final float LEAF_SIZE = 0.005f;
+
+    // a room-sized cloud of noisy points on a few surfaces, with smoothly varying colors
+    private static float[] roomCloud(final int numberOfPoints, final long seed) {
+        Random random = new Random(seed);
+        float[] points = new float[numberOfPoints * 6];
+        for (int i = 0; i < numberOfPoints; i++) {
+            float u = random.nextFloat() * 4 - 2;
+            float v = random.nextFloat() * 3 - 1;
+            float noise = (float) random.nextGaussian() * 0.01f;
+            int surface = random.nextInt(3);
+            points[i * 6] = (surface == 0) ? u : ((surface == 1) ? -2 + noise : u);
+            points[i * 6 + 1] = (surface == 0) ? -1.5f + noise : v;
+            points[i * 6 + 2] = (surface == 2) ? -3 + noise : ((surface == 0) ? v - 1 : u - 1);
+            points[i * 6 + 3] = 100 + 50 * (float) Math.sin(u);
+            points[i * 6 + 4] = 120 + 40 * (float) Math.cos(v);
+            points[i * 6 + 5] = random.nextInt(256);
+        }
+        return points;
+    }
+
+    private static byte[] encode(final OctreePointCloudCodec codec, final float[] points, final int numberOfPoints) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        long numberOfBytes = codec.encode(points, numberOfPoints, outputStream);
+        assertEquals(outputStream.size(), numberOfBytes);
+        return outputStream.toByteArray();
+    }
+
+    // decoded points in the order of the reader
+    private static float[] decode(final byte[] bytes) throws IOException {
+        try (OctreePointCloudReader reader = new OctreePointCloudReader(new ByteArrayInputStream(bytes))) {
+            float[] points = new float[(int) reader.getNumberOfPoints() * 6];
+            float[] point = new float[6];
+            int count = 0;
+            while (reader.next()) {
+                reader.getPoint(point);
+                System.arraycopy(point, 0, points, count * 6, 6);
+                count++;
+            }
+            assertEquals(reader.getNumberOfPoints(), count);
+            assertFalse(reader.next());
+            return points;
+        }
+    }
+
+    // every input point must be matched by a decoded point of the same color in the same leaf
+    private static void assertSameCloud(final float[] expected, final float[] actual, final float tolerance) {
+        assertEquals(expected.length, actual.length);
+        int numberOfPoints = expected.length / 6;
+        String[] expectedKeys = new String[numberOfPoints];
+        String[] actualKeys = new String[numberOfPoints];
+        for (int i = 0; i < numberOfPoints; i++) {
+            expectedKeys[i] = key(expected, i, tolerance);
+            actualKeys[i] = key(actual, i, tolerance);
+        }
+        Arrays.sort(expectedKeys);
+        Arrays.sort(actualKeys);
+        assertArrayEquals(expectedKeys, actualKeys);
+    }
+
+    private static String key(final float[] points, final int i, final float leafSize) {
+        return String.format("%d %d %d %d %d %d",
+                (int) Math.floor(points[i * 6] / leafSize), (int) Math.floor(points[i * 6 + 1] / leafSize), (int) Math.floor(points[i * 6 + 2] / leafSize),
+                Math.round(points[i * 6 + 3]), Math.round(points[i * 6 + 4]), Math.round(points[i * 6 + 5]));
+    }
+
+    @Test
+    public void roundTrip_keepsPointsWithinHalfALeaf() throws Exception {
+        float[] points = roomCloud(20000, 1);
+        OctreePointCloudCodec codec = new OctreePointCloudCodec(LEAF_SIZE, new DeflateBlockCodec(9));
+        byte[] bytes = encode(codec, points, 20000);
+        float[] decoded = decode(bytes);
+
+        // the decoded points come in Morton order; match each to the nearest input point of its leaf
+        float maxError = 0;
+        for (int i = 0; i < 20000; i++) {
+            float bestError = Float.MAX_VALUE;
+            for (int j = 0; j < 20000; j++) {
+                float error = Math.max(Math.abs(points[j * 6] - decoded[i * 6]),
+                        Math.max(Math.abs(points[j * 6 + 1] - decoded[i * 6 + 1]), Math.abs(points[j * 6 + 2] - decoded[i * 6 + 2])));
+                bestError = Math.min(bestError, error);
+                if (bestError <= LEAF_SIZE / 2) {
+                    break;
+                }
+            }
+            maxError = Math.max(maxError, bestError);
+        }
+        assertTrue("max error " + maxError, maxError <= LEAF_SIZE / 2 + 1e-5f);
+        assertTrue(codec.getNumberOfSubtrees() > 1);
+
+        // 24 bytes of floats per point, and about 45 bytes per point as text
+        assertTrue("bytes per point " + (bytes.length / 20000.0), bytes.length < 20000 * 6);
+    }
+
+    @Test
+    public void pointsOnTheLeafGrid_roundTripWithDuplicatesAndColors() throws Exception {
+
+        // points on leaf corners decode into the same leaves, including leaves shared by several points
+        Random random = new Random(2);
+        int numberOfPoints = 5000;
+        float[] points = new float[numberOfPoints * 6];
+        for (int i = 0; i < numberOfPoints; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                points[i * 6 + axis] = random.nextInt(64) * 0.25f;
+            }
+            points[i * 6 + 3] = random.nextInt(256);
+            points[i * 6 + 4] = 255;
+            points[i * 6 + 5] = 0;
+        }
+        points[0] = 0;
+        points[1] = 0;
+        points[2] = 0;
+        for (BlockCodec blockCodec : new BlockCodec[] {null, new DeflateBlockCodec(1)}) {
+            OctreePointCloudCodec codec = new OctreePointCloudCodec(0.25f, blockCodec);
+            float[] decoded = decode(encode(codec, points, numberOfPoints));
+            assertSameCloud(points, decoded, 0.25f);
+            assertTrue(codec.getNumberOfLeaves() < numberOfPoints);
+        }
+    }
+
+    @Test
+    public void smallClouds_roundTrip() throws Exception {
+        OctreePointCloudCodec codec = new OctreePointCloudCodec(0.01f, null);
+        assertEquals(0, decode(encode(codec, new float[0], 0)).length);
+
+        float[] single = {1.5f, -2, 3, 10, 20, 30};
+        float[] decoded = decode(encode(codec, single, 1));
+        assertEquals(1.5f + 0.005f, decoded[0], 1e-6f);
+        assertEquals(-2 + 0.005f, decoded[1], 1e-6f);
+        assertEquals(30, decoded[5], 0);
+
+        float[] pair = {0, 0, 0, 1, 2, 3, 0.015f, 0, 0, 4, 5, 6};
+        assertSameCloud(pair, decode(encode(codec, pair, 2)), 0.01f);
+    }
+
+    @Test
+    public void selectedPointsOfAnAccumulatedCloud_encodeLikeTheirCopy() throws Exception {
+        float[] points = roomCloud(5000, 9);
+        AccumulatedPointCloud pointCloud = new AccumulatedPointCloud();
+        for (int i = 0; i < 5000; i++) {
+            pointCloud.appendPointCloud(i, points[i * 6], points[i * 6 + 1], points[i * 6 + 2], points[i * 6 + 3], points[i * 6 + 4], points[i * 6 + 5]);
+        }
+
+        // every third point left out, as the outliers are at stop
+        boolean[] isSelected = new boolean[5000];
+        float[] selected = new float[5000 * 6];
+        int numberOfSelected = 0;
+        for (int i = 0; i < 5000; i++) {
+            isSelected[i] = ((i % 3) != 0);
+            if (isSelected[i]) {
+                System.arraycopy(points, i * 6, selected, numberOfSelected * 6, 6);
+                numberOfSelected++;
+            }
+        }
+        OctreePointCloudCodec codec = new OctreePointCloudCodec(LEAF_SIZE, new DeflateBlockCodec(1));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        codec.encode(pointCloud, isSelected, outputStream);
+        assertEquals(numberOfSelected, codec.getNumberOfPoints());
+        assertArrayEquals(encode(codec, selected, numberOfSelected), outputStream.toByteArray());
+    }
+
+    @Test
+    public void truncatedFiles_throwInsteadOfReturningPartialClouds() throws Exception {
+        byte[] bytes = encode(new OctreePointCloudCodec(LEAF_SIZE, new DeflateBlockCodec(1)), roomCloud(2000, 3), 2000);
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 10);
+        try {
+            decode(truncated);
+            fail("decode: Truncated file was read");
+        } catch (IOException e) {
+            // expected
+        }
+
+        byte[] corrupt = bytes.clone();
+        corrupt[0] = 'X';
+        try {
+            decode(corrupt);
+            fail("decode: Corrupt magic was read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cloudsWiderThanTheDeepestOctree_areRejected() throws Exception {
+        float[] points = {0, 0, 0, 0, 0, 0, 3000, 0, 0, 0, 0, 0};
+        new OctreePointCloudCodec(0.001f, null).encode(points, 2, new ByteArrayOutputStream());
+    }
+}
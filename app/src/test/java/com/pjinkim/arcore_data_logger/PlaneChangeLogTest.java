@@ -0,0 +1,147 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of change-only plane logging and its binary reader.
+ */
+public class PlaneChangeLogTest {
+
+    private final PlaneChangeLog mLog = new PlaneChangeLog(0.02f, (float) Math.toRadians(2.0), 0.02f, 0.02f);
+    private final ByteArrayOutputStream mFile = new ByteArrayOutputStream();
+
+    private static FloatBuffer square(final float halfSize) {
+        return FloatBuffer.wrap(new float[]{-halfSize, -halfSize, halfSize, -halfSize, halfSize, halfSize, -halfSize, halfSize});
+    }
+
+    private boolean update(final long timestamp, final int planeId, final float tx, final float halfSize) {
+        return mLog.update(timestamp, planeId, 0, 0, 0, 0, 1, tx, -1.5f, 0, halfSize * 2, halfSize * 2, square(halfSize));
+    }
+
+    private PlaneLogReader flushAndRead() throws Exception {
+        mFile.write(PlaneChangeLog.header());
+        mFile.write(mLog.getBytes(), 0, mLog.getLength());
+        mLog.clear();
+        return new PlaneLogReader(new ByteArrayInputStream(mFile.toByteArray()));
+    }
+
+    @Test
+    public void smallChanges_areSkipped() {
+        assertTrue(update(1, 7, 0.0f, 1.0f));
+        assertFalse(update(2, 7, 0.005f, 1.0f));
+        assertFalse(update(3, 7, 0.010f, 1.004f));
+
+        // drift adds up against the last recorded state
+        assertTrue(update(4, 7, 0.025f, 1.0f));
+        assertEquals(2, mLog.getNumberOfRecords());
+        assertEquals(2, mLog.getNumberOfSkippedUpdates());
+    }
+
+    @Test
+    public void polygonOrRotationChange_isRecorded() {
+        assertTrue(update(1, 1, 0, 1.0f));
+
+        // same pose and extents, one more vertex
+        FloatBuffer pentagon = FloatBuffer.wrap(new float[]{-1, -1, 1, -1, 1, 1, 0, 1.5f, -1, 1});
+        assertTrue(mLog.update(2, 1, 0, 0, 0, 0, 1, 0, -1.5f, 0, 2, 2, pentagon));
+
+        // turned by 5 degrees about y
+        float s = (float) Math.sin(Math.toRadians(2.5));
+        float c = (float) Math.cos(Math.toRadians(2.5));
+        assertTrue(mLog.update(3, 1, 0, 0, s, 0, c, 0, -1.5f, 0, 2, 2, pentagon));
+        assertFalse(mLog.update(4, 1, 0, 0, s, 0, c, 0, -1.5f, 0, 2, 2, pentagon));
+
+        // type change
+        assertTrue(mLog.update(5, 1, 2, 0, s, 0, c, 0, -1.5f, 0, 2, 2, pentagon));
+    }
+
+    @Test
+    public void records_roundTripThroughReader() throws Exception {
+        update(100, 3, 0.5f, 1.0f);
+        update(100, 4, 2.0f, 0.5f);
+        assertTrue(mLog.subsumed(200, 4, 3));
+        assertFalse(mLog.subsumed(300, 4, 3));
+        assertTrue(mLog.stopped(400, 4));
+
+        PlaneLogReader reader = flushAndRead();
+        assertTrue(reader.next());
+        assertEquals(PlaneChangeLog.RECORD_UPDATE, reader.getKind());
+        assertEquals(3, reader.getPlaneId());
+        assertEquals(100, reader.getTimestamp());
+        assertEquals(1.0f, reader.getPose(3), 0.0f);
+        assertEquals(0.5f, reader.getPose(4), 0.0f);
+        assertEquals(-1.5f, reader.getPose(5), 0.0f);
+        assertEquals(2.0f, reader.getExtentX(), 0.0f);
+        assertEquals(4, reader.getNumberOfVertices());
+        assertEquals(1.0f, reader.getVertexX(2), 0.0f);
+        assertEquals(-1.0f, reader.getVertexZ(0), 0.0f);
+
+        assertTrue(reader.next());
+        assertEquals(4, reader.getPlaneId());
+        assertEquals(0.5f, reader.getVertexZ(3), 0.0f);
+
+        assertTrue(reader.next());
+        assertEquals(PlaneChangeLog.RECORD_SUBSUMED, reader.getKind());
+        assertEquals(4, reader.getPlaneId());
+        assertEquals(3, reader.getSubsumingPlaneId());
+        assertEquals(200, reader.getTimestamp());
+
+        assertTrue(reader.next());
+        assertEquals(PlaneChangeLog.RECORD_STOPPED, reader.getKind());
+        assertEquals(400, reader.getTimestamp());
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void truncatedFile_endsAtLastCompleteRecord() throws Exception {
+        update(1, 1, 0, 1.0f);
+        update(2, 2, 1, 1.0f);
+        byte[] bytes;
+        mFile.write(PlaneChangeLog.header());
+        mFile.write(mLog.getBytes(), 0, mLog.getLength());
+        bytes = mFile.toByteArray();
+
+        PlaneLogReader reader = new PlaneLogReader(new ByteArrayInputStream(bytes, 0, bytes.length - 5));
+        assertTrue(reader.next());
+        assertEquals(1, reader.getPlaneId());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void zeroPaddedFile_endsAtLastRecord() throws Exception {
+        update(1, 1, 0, 1.0f);
+        update(2, 2, 1, 1.0f);
+        mFile.write(PlaneChangeLog.header());
+        mFile.write(mLog.getBytes(), 0, mLog.getLength());
+
+        // the zeros a file system can leave after a power loss
+        mFile.write(new byte[4096]);
+        PlaneLogReader reader = new PlaneLogReader(new ByteArrayInputStream(mFile.toByteArray()));
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertEquals(2, reader.getPlaneId());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void manyPlanes_growStateAndBuffer() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(update(i, i, i, 1.0f));
+        }
+        assertEquals(1000, mLog.getNumberOfPlanes());
+        PlaneLogReader reader = flushAndRead();
+        int count = 0;
+        while (reader.next()) {
+            assertEquals(count, reader.getPlaneId());
+            count++;
+        }
+        assertEquals(1000, count);
+    }
+}
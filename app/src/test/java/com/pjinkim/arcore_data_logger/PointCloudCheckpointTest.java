@@ -0,0 +1,163 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the point cloud checkpoints, their replay and their recovery from a torn tail.
+ */
+public class PointCloudCheckpointTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private static void update(final AccumulatedPointCloud cloud, final int firstPoint, final int numberOfPoints, final int round) throws Exception {
+        for (int i = firstPoint; i < firstPoint + numberOfPoints; i++) {
+            cloud.appendPointCloud(i * 13 + 1, i + round, -i, 0.25f * i, (i + round) % 256, round, 7);
+        }
+    }
+
+    // a checkpoint is skipped while the previous segment is still being written, so retry until it is taken
+    private static void checkpoint(final PointCloudCheckpoint checkpoint, final AccumulatedPointCloud cloud, final long timestamp) throws Exception {
+        while (!checkpoint.checkpoint(cloud, timestamp, timestamp)) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void assertSameCloud(final AccumulatedPointCloud expected, final AccumulatedPointCloud actual) {
+        assertEquals(expected.getNumberOfFeatures(), actual.getNumberOfFeatures());
+        float[] expectedPoint = new float[6];
+        float[] actualPoint = new float[6];
+        for (int i = 0; i < expected.getNumberOfFeatures(); i++) {
+            expected.getPoint(i, expectedPoint);
+            actual.getPoint(i, actualPoint);
+            assertArrayEquals(expectedPoint, actualPoint, 0.0f);
+        }
+    }
+
+    @Test
+    public void replay_reproducesTheCloudAsOfTheLastCheckpoint() throws Exception {
+        File file = mTemporaryFolder.newFile();
+        AccumulatedPointCloud cloud = new AccumulatedPointCloud();
+        cloud.setTrackingChanges(true);
+        try (PointCloudCheckpoint checkpoint = new PointCloudCheckpoint(file)) {
+            update(cloud, 0, 5000, 0);
+            checkpoint(checkpoint, cloud, 1);
+            update(cloud, 2500, 5000, 1);
+            checkpoint(checkpoint, cloud, 2);
+            update(cloud, 100, 10, 2);
+            checkpoint(checkpoint, cloud, 3);
+            assertEquals(3, checkpoint.getNumberOfCheckpoints());
+            assertEquals(5000 + 5000 + 10, checkpoint.getNumberOfPoints());
+        }
+
+        AccumulatedPointCloud recovered = new AccumulatedPointCloud();
+        try (PointCloudCheckpointReader reader = new PointCloudCheckpointReader(file)) {
+            assertEquals(3, reader.replay(recovered));
+            assertEquals(2, reader.getSequence());
+            assertEquals(3, reader.getTimestamp());
+            assertFalse(reader.isTruncated());
+        }
+        assertSameCloud(cloud, recovered);
+    }
+
+    @Test
+    public void checkpoint_copiesOnlyTheChangedPoints() throws Exception {
+        File file = mTemporaryFolder.newFile();
+        AccumulatedPointCloud cloud = new AccumulatedPointCloud();
+        cloud.setTrackingChanges(true);
+        try (PointCloudCheckpoint checkpoint = new PointCloudCheckpoint(file)) {
+            update(cloud, 0, 100000, 0);
+            assertEquals(100000, cloud.getNumberOfDirtyPoints());
+            checkpoint(checkpoint, cloud, 1);
+            assertEquals(0, cloud.getNumberOfDirtyPoints());
+
+            // 1) repeated updates of the same points are written once
+            update(cloud, 40000, 10, 1);
+            update(cloud, 40000, 10, 2);
+            assertEquals(10, cloud.getNumberOfDirtyPoints());
+            checkpoint(checkpoint, cloud, 2);
+
+            // 2) nothing changed, nothing written
+            checkpoint(checkpoint, cloud, 3);
+            assertEquals(2, checkpoint.getNumberOfCheckpoints());
+        }
+        assertEquals(PointCloudCheckpoint.HEADER_BYTES + 2 * PointCloudCheckpoint.SEGMENT_HEADER_BYTES
+                + 100010 * PointCloudCheckpoint.POINT_BYTES, file.length());
+    }
+
+    @Test
+    public void setTrackingChanges_checkpointsAPreviousSessionsCloudInSlotOrder() throws Exception {
+        AccumulatedPointCloud cloud = new AccumulatedPointCloud();
+        update(cloud, 0, 1000, 0);
+        assertEquals(0, cloud.getNumberOfDirtyPoints());
+        cloud.setTrackingChanges(true);
+        update(cloud, 500, 1, 1);
+        cloud.setTrackingChanges(true);
+        assertEquals(1000, cloud.getNumberOfDirtyPoints());
+        for (int k = 0; k < 1000; k++) {
+            assertEquals(k, cloud.indexOf(cloud.getDirtyPointId(k)));
+        }
+
+        File file = mTemporaryFolder.newFile();
+        try (PointCloudCheckpoint checkpoint = new PointCloudCheckpoint(file)) {
+            checkpoint(checkpoint, cloud, 1);
+        }
+        AccumulatedPointCloud recovered = new AccumulatedPointCloud();
+        try (PointCloudCheckpointReader reader = new PointCloudCheckpointReader(file)) {
+            reader.replay(recovered);
+        }
+        assertSameCloud(cloud, recovered);
+    }
+
+    @Test
+    public void replay_stopsBeforeATornOrCorruptLastSegment() throws Exception {
+        File file = mTemporaryFolder.newFile();
+        AccumulatedPointCloud cloud = new AccumulatedPointCloud();
+        AccumulatedPointCloud expected = new AccumulatedPointCloud();
+        cloud.setTrackingChanges(true);
+        try (PointCloudCheckpoint checkpoint = new PointCloudCheckpoint(file)) {
+            update(cloud, 0, 300, 0);
+            update(expected, 0, 300, 0);
+            checkpoint(checkpoint, cloud, 1);
+            update(cloud, 200, 300, 1);
+            update(expected, 200, 300, 1);
+            checkpoint(checkpoint, cloud, 2);
+            update(cloud, 0, 50, 2);
+            checkpoint(checkpoint, cloud, 3);
+        }
+        long length = file.length();
+
+        // 1) a flipped byte in the last segment's points
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(length - 5);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(length - 5);
+            randomAccessFile.write(value ^ 0x40);
+        }
+        AccumulatedPointCloud recovered = new AccumulatedPointCloud();
+        try (PointCloudCheckpointReader reader = new PointCloudCheckpointReader(file)) {
+            assertEquals(2, reader.replay(recovered));
+            assertTrue(reader.isTruncated());
+        }
+        assertSameCloud(expected, recovered);
+
+        // 2) a crash in the middle of the last segment
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(length - 20 * PointCloudCheckpoint.POINT_BYTES);
+        }
+        recovered = new AccumulatedPointCloud();
+        try (PointCloudCheckpointReader reader = new PointCloudCheckpointReader(file)) {
+            assertEquals(2, reader.replay(recovered));
+            assertEquals(2, reader.getTimestamp());
+            assertTrue(reader.isTruncated());
+        }
+        assertSameCloud(expected, recovered);
+    }
+}
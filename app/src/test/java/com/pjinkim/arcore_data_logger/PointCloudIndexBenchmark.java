@@ -0,0 +1,54 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Build and query timing of {@link PointCloudIndex} at map scale, run from the IDE as a plain main.
+ */
+public class PointCloudIndexBenchmark {
+
+    public static void main(String[] args) {
+        int numberOfPoints = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int numberOfQueries = 100000;
+
+        // uniform points inside a 20 m room
+        Random random = new Random(7);
+        float[] points = new float[numberOfPoints * 3];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextFloat() * 20.0f;
+        }
+
+        for (int trial = 0; trial < 3; trial++) {
+            long startTime = System.nanoTime();
+            PointCloudIndex index = new PointCloudIndex(points, numberOfPoints);
+            long buildTime = System.nanoTime();
+
+            int[] indices = new int[8];
+            float[] distances = new float[8];
+            for (int i = 0; i < numberOfQueries; i++) {
+                int q = random.nextInt(numberOfPoints);
+                index.nearestNeighbors(points[q * 3], points[q * 3 + 1], points[q * 3 + 2], 8, indices, distances);
+            }
+            long knnTime = System.nanoTime();
+
+            int[] result = new int[1024];
+            long found = 0;
+            for (int i = 0; i < numberOfQueries; i++) {
+                int q = random.nextInt(numberOfPoints);
+                found += index.radiusSearch(points[q * 3], points[q * 3 + 1], points[q * 3 + 2], 0.1f, result);
+            }
+            long radiusTime = System.nanoTime();
+
+            boolean[] inliers = new StatisticalOutlierFilter(8, 2.0).filter(index);
+            long filterTime = System.nanoTime();
+
+            System.out.println(String.format(Locale.US,
+                    "%d points: build %.1f ms, 8-NN %.2f us/query, radius %.2f us/query (%.1f hits), outlier filter %.1f ms (%d points)",
+                    numberOfPoints, (buildTime - startTime) / 1e6,
+                    (knnTime - buildTime) / 1e3 / numberOfQueries,
+                    (radiusTime - knnTime) / 1e3 / numberOfQueries, (double) found / numberOfQueries,
+                    (filterTime - radiusTime) / 1e6, inliers.length));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the implicit k-d tree and the statistical outlier filter against brute force.
+ */
+public class PointCloudIndexTest {
+
+    private static float[] randomPoints(final int numberOfPoints, final long seed) {
+        Random random = new Random(seed);
+        float[] points = new float[numberOfPoints * 3];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = (random.nextFloat() * 10.0f) - 5.0f;
+        }
+        return points;
+    }
+
+    private static float squaredDistance(final float[] points, final int i, final float x, final float y, final float z) {
+        float dx = points[i * 3] - x;
+        float dy = points[i * 3 + 1] - y;
+        float dz = points[i * 3 + 2] - z;
+        return (dx * dx) + (dy * dy) + (dz * dz);
+    }
+
+    @Test
+    public void radiusSearch_matchesBruteForce() {
+        float[] points = randomPoints(20000, 1);
+        PointCloudIndex index = new PointCloudIndex(points, 20000);
+        int[] result = new int[20000];
+        Random random = new Random(2);
+        for (int query = 0; query < 50; query++) {
+            float x = random.nextFloat() * 10.0f - 5.0f;
+            float y = random.nextFloat() * 10.0f - 5.0f;
+            float z = random.nextFloat() * 10.0f - 5.0f;
+            int count = index.radiusSearch(x, y, z, 0.8f, result);
+
+            int expected = 0;
+            for (int i = 0; i < 20000; i++) {
+                if (squaredDistance(points, i, x, y, z) <= 0.64f) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, count);
+            for (int i = 0; i < count; i++) {
+                assertTrue(squaredDistance(points, result[i], x, y, z) <= 0.64f);
+            }
+        }
+    }
+
+    @Test
+    public void nearestNeighbors_matchesBruteForce() {
+        float[] points = randomPoints(20000, 3);
+        PointCloudIndex index = new PointCloudIndex(points, 20000);
+        int[] indices = new int[10];
+        float[] distances = new float[10];
+        float[] bruteForce = new float[20000];
+        Random random = new Random(4);
+        for (int query = 0; query < 50; query++) {
+            float x = random.nextFloat() * 10.0f - 5.0f;
+            float y = random.nextFloat() * 10.0f - 5.0f;
+            float z = random.nextFloat() * 10.0f - 5.0f;
+            assertEquals(10, index.nearestNeighbors(x, y, z, 10, indices, distances));
+
+            for (int i = 0; i < 20000; i++) {
+                bruteForce[i] = squaredDistance(points, i, x, y, z);
+            }
+            Arrays.sort(bruteForce);
+            for (int i = 0; i < 10; i++) {
+                assertEquals(bruteForce[i], distances[i], 0.0f);
+                assertEquals(bruteForce[i], squaredDistance(points, indices[i], x, y, z), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void outlierFilter_removesIsolatedPoints() {
+        float[] points = randomPoints(5000, 5);
+        for (int i = 0; i < points.length; i++) {
+            points[i] *= 0.1f;
+        }
+        points[0] = 40.0f;
+        points[3] = -35.0f;
+        PointCloudIndex index = new PointCloudIndex(points, 5000);
+        boolean[] inliers = new StatisticalOutlierFilter(8, 2.0).filter(index);
+        assertFalse(inliers[0]);
+        assertFalse(inliers[1]);
+        int numberOfInliers = 0;
+        for (boolean inlier : inliers) {
+            numberOfInliers += inlier ? 1 : 0;
+        }
+        assertTrue(numberOfInliers > 4800);
+    }
+
+    @Test
+    public void indexOfAccumulatedCloud_filtersLikeTheFlatArray() throws Exception {
+        float[] points = randomPoints(5000, 6);
+        AccumulatedPointCloud cloud = new AccumulatedPointCloud();
+        for (int i = 0; i < 5000; i++) {
+            cloud.appendPointCloud(1000 + i, points[i * 3], points[i * 3 + 1], points[i * 3 + 2], 0, 0, 0);
+        }
+        StatisticalOutlierFilter filter = new StatisticalOutlierFilter(8, 1.0);
+        boolean[] inliers = filter.filter(new PointCloudIndex(points, 5000));
+        assertArrayEquals(inliers, filter.filter(new PointCloudIndex(cloud)));
+        assertEquals(5000, new PointCloudIndex(cloud).getNumberOfPoints());
+    }
+}
@@ -0,0 +1,173 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the compact per-frame point observation log and its streaming reader.
+ */
+public class PointObservationLogTest {
+
+    private static final float STEP = 0.001f;
+
+    private final PointObservationLog mLog = new PointObservationLog(STEP);
+    private final ByteArrayOutputStream mFile = new ByteArrayOutputStream();
+
+    // a frame of points around (2, 0, -3) with increasing but shuffled IDs
+    private static float[] randomFrame(final Random random, final int[] ids, final int firstId) {
+        float[] points = new float[ids.length * 4];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = firstId + i * 3;
+            points[i * 4] = 2.0f + (random.nextFloat() - 0.5f) * 4.0f;
+            points[i * 4 + 1] = (random.nextFloat() - 0.5f) * 2.0f;
+            points[i * 4 + 2] = -3.0f + (random.nextFloat() - 0.5f) * 6.0f;
+            points[i * 4 + 3] = random.nextFloat();
+        }
+        for (int i = ids.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            for (int c = 0; c < 4; c++) {
+                float value = points[i * 4 + c];
+                points[i * 4 + c] = points[j * 4 + c];
+                points[j * 4 + c] = value;
+            }
+        }
+        return points;
+    }
+
+    private PointObservationReader flushAndRead() throws Exception {
+        mFile.write(PointObservationLog.header());
+        mFile.write(mLog.getBytes(), 0, mLog.getLength());
+        mLog.clear();
+        return new PointObservationReader(new ByteArrayInputStream(mFile.toByteArray()));
+    }
+
+    @Test
+    public void frames_roundTripWithinHalfAStep() throws Exception {
+        Random random = new Random(5);
+        int[][] ids = new int[3][200];
+        float[][] points = new float[3][];
+        for (int f = 0; f < 3; f++) {
+            points[f] = randomFrame(random, ids[f], 1000 + f * 50);
+            mLog.addFrame(100 + f, IntBuffer.wrap(ids[f]), FloatBuffer.wrap(points[f]));
+        }
+
+        PointObservationReader reader = flushAndRead();
+        for (int f = 0; f < 3; f++) {
+            assertTrue(reader.next());
+            assertEquals(100 + f, reader.getTimestamp());
+            assertEquals(200, reader.getNumberOfPoints());
+            for (int i = 0; i < 200; i++) {
+
+                // points come back sorted by ID
+                int k = 0;
+                while (ids[f][k] != reader.getPointId(i)) {
+                    k++;
+                }
+                assertEquals(1000 + f * 50 + i * 3, reader.getPointId(i));
+                assertEquals(points[f][k * 4], reader.getX(i), STEP / 2 + 1e-6f);
+                assertEquals(points[f][k * 4 + 1], reader.getY(i), STEP / 2 + 1e-6f);
+                assertEquals(points[f][k * 4 + 2], reader.getZ(i), STEP / 2 + 1e-6f);
+                assertEquals(points[f][k * 4 + 3], reader.getConfidence(i), 0.5f / 255 + 1e-6f);
+            }
+        }
+        assertFalse(reader.next());
+        assertEquals(600, mLog.getNumberOfObservations());
+    }
+
+    @Test
+    public void denseFrame_takesLessThanHalfTheRawSize() {
+        Random random = new Random(7);
+        int[] ids = new int[256];
+        float[] points = randomFrame(random, ids, 52000);
+        for (int f = 0; f < 30; f++) {
+            mLog.addFrame(f * 33333333L, IntBuffer.wrap(ids), FloatBuffer.wrap(points));
+        }
+        double bytesPerPoint = (double) (mLog.getNumberOfBytes() - PointObservationLog.HEADER_BYTES) / mLog.getNumberOfObservations();
+        assertTrue("bytes per point " + bytesPerPoint, bytesPerPoint < PointObservationLog.RAW_POINT_BYTES / 2.0);
+
+        // 30 frames over 29 frame intervals
+        assertEquals(mLog.getNumberOfBytes() * 60.0 / (29 * 0.033333333), mLog.getBytesPerMinute(), 1.0);
+    }
+
+    @Test
+    public void emptyAndNegativeIds_roundTrip() throws Exception {
+        mLog.addFrame(1, null, null);
+        mLog.addFrame(2, IntBuffer.wrap(new int[]{5, -7}), FloatBuffer.wrap(new float[]{1, 1, 1, 1, -1, -1, -1, 0}));
+
+        PointObservationReader reader = flushAndRead();
+        assertTrue(reader.next());
+        assertEquals(0, reader.getNumberOfPoints());
+        assertTrue(reader.next());
+        assertEquals(2, reader.getNumberOfPoints());
+        assertEquals(-7, reader.getPointId(0));
+        assertEquals(-1.0f, reader.getX(0), STEP);
+        assertEquals(0.0f, reader.getConfidence(0), 0.0f);
+        assertEquals(5, reader.getPointId(1));
+        assertEquals(1.0f, reader.getZ(1), STEP);
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void truncatedFile_endsAtLastCompleteFrame() throws Exception {
+        int[] ids = new int[64];
+        float[] points = randomFrame(new Random(3), ids, 0);
+        mLog.addFrame(1, IntBuffer.wrap(ids), FloatBuffer.wrap(points));
+        mLog.addFrame(2, IntBuffer.wrap(ids), FloatBuffer.wrap(points));
+        mFile.write(PointObservationLog.header());
+        mFile.write(mLog.getBytes(), 0, mLog.getLength());
+        byte[] bytes = mFile.toByteArray();
+
+        PointObservationReader reader = new PointObservationReader(new ByteArrayInputStream(bytes, 0, bytes.length - 3));
+        assertTrue(reader.next());
+        assertEquals(1, reader.getTimestamp());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void zeroPaddedFile_endsAtLastFrame() throws Exception {
+        int[] ids = new int[64];
+        float[] points = randomFrame(new Random(4), ids, 0);
+        mLog.addFrame(1, IntBuffer.wrap(ids), FloatBuffer.wrap(points));
+        mLog.addFrame(2, IntBuffer.wrap(ids), FloatBuffer.wrap(points));
+        mFile.write(PointObservationLog.header());
+        mFile.write(mLog.getBytes(), 0, mLog.getLength());
+
+        // the zeros a file system can leave after a power loss
+        mFile.write(new byte[4096]);
+        PointObservationReader reader = new PointObservationReader(new ByteArrayInputStream(mFile.toByteArray()));
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertEquals(2, reader.getTimestamp());
+        assertEquals(64, reader.getNumberOfPoints());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void frameCutInsideAPoint_isRejectedBeforeTheZeros() throws Exception {
+        int[] ids = new int[64];
+        float[] points = randomFrame(new Random(6), ids, 0);
+        mLog.addFrame(1, IntBuffer.wrap(ids), FloatBuffer.wrap(points));
+        int firstFrameLength = mLog.getLength();
+        mLog.addFrame(2, IntBuffer.wrap(ids), FloatBuffer.wrap(points));
+        mFile.write(PointObservationLog.header());
+
+        // the second frame cut in the middle of its points, as at a buffer boundary, then the zeros after a power loss
+        int cut = firstFrameLength + (mLog.getLength() - firstFrameLength) / 2;
+        mFile.write(mLog.getBytes(), 0, cut);
+        mFile.write(new byte[4096]);
+        PointObservationReader reader = new PointObservationReader(new ByteArrayInputStream(mFile.toByteArray()));
+        assertTrue(reader.next());
+        assertEquals(1, reader.getTimestamp());
+        assertFalse(reader.next());
+    }
+}
@@ -0,0 +1,144 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the online polyline simplification behind the trajectory trail.
+ */
+public class PolylineSimplifierTest {
+
+    private static final float TOLERANCE = 0.02f;
+    private static final float MIN_DISTANCE = 0.01f;
+
+    // the committed vertices followed by the end of the open segment
+    private static float[] polyline(final PolylineSimplifier simplifier) {
+        int numberOfVertices = simplifier.getNumberOfVertices() + (simplifier.hasTail() ? 1 : 0);
+        float[] points = new float[numberOfVertices * 3];
+        float[] vertex = new float[3];
+        for (int i = 0; i < simplifier.getNumberOfVertices(); i++) {
+            simplifier.getVertex(i, vertex);
+            System.arraycopy(vertex, 0, points, i * 3, 3);
+        }
+        if (simplifier.hasTail()) {
+            simplifier.getTailEnd(vertex);
+            System.arraycopy(vertex, 0, points, numberOfVertices * 3 - 3, 3);
+        }
+        return points;
+    }
+
+    private static float distanceToPolyline(final float[] polyline, final float x, final float y, final float z) {
+        float[] point = {x, y, z};
+        float minDistanceSquared = Float.MAX_VALUE;
+        for (int i = 0; i + 3 < polyline.length; i += 3) {
+            minDistanceSquared = Math.min(minDistanceSquared, PolylineSimplifier.segmentDistanceSquared(point, 0,
+                    polyline[i], polyline[i + 1], polyline[i + 2], polyline[i + 3], polyline[i + 4], polyline[i + 5]));
+        }
+        return (float) Math.sqrt(minDistanceSquared);
+    }
+
+    @Test
+    public void straightWalk_staysOneOpenSegment() {
+        PolylineSimplifier simplifier = new PolylineSimplifier(TOLERANCE, MIN_DISTANCE, 64);
+        assertEquals(PolylineSimplifier.COMMITTED, simplifier.add(0, 1.5f, 0));
+        for (int i = 1; i <= 200; i++) {
+            assertEquals(PolylineSimplifier.EXTENDED, simplifier.add(0.02f * i, 1.5f, -0.01f * i));
+        }
+        assertEquals(1, simplifier.getNumberOfVertices());
+        assertArrayEquals(new float[]{0, 1.5f, 0, 4, 1.5f, -2}, polyline(simplifier), 1e-5f);
+    }
+
+    @Test
+    public void corners_becomeVertices() {
+        PolylineSimplifier simplifier = new PolylineSimplifier(TOLERANCE, MIN_DISTANCE, 64);
+        float[][] corners = {{0, 0, 0}, {1, 0, 0}, {1, 0, 1}, {0, 0, 1}};
+        for (int side = 0; side < 4; side++) {
+            float[] start = corners[side];
+            float[] end = corners[(side + 1) % 4];
+            for (int i = 0; i < 50; i++) {
+                float t = i / 50.0f;
+                simplifier.add(start[0] + t * (end[0] - start[0]), 0, start[2] + t * (end[2] - start[2]));
+            }
+        }
+        simplifier.add(0, 0, 0);
+
+        // the first corner, then one vertex per turn, each one step past the corner at most
+        assertEquals(4, simplifier.getNumberOfVertices());
+        float[] points = polyline(simplifier);
+        for (int side = 1; side < 4; side++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(corners[side][j], points[side * 3 + j], 0.021f);
+            }
+        }
+    }
+
+    @Test
+    public void standingStill_dropsTheJitter() {
+        PolylineSimplifier simplifier = new PolylineSimplifier(TOLERANCE, MIN_DISTANCE, 64);
+        Random random = new Random(3);
+        simplifier.add(0, 0, 0);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(PolylineSimplifier.IGNORED, simplifier.add(random.nextFloat() * 0.005f, random.nextFloat() * 0.005f, 0));
+        }
+        assertEquals(1, simplifier.getNumberOfPoints());
+        assertFalse(simplifier.hasTail());
+    }
+
+    @Test
+    public void committedVertices_onlyChangeWhenCoarsened() {
+        PolylineSimplifier simplifier = new PolylineSimplifier(TOLERANCE, MIN_DISTANCE, 64);
+        Random random = new Random(5);
+        float[] previous = new float[0];
+        float x = 0;
+        float z = 0;
+        for (int i = 0; i < 5000; i++) {
+            x += (float) Math.cos(i * 0.05) * 0.03f + random.nextFloat() * 0.01f;
+            z += (float) Math.sin(i * 0.013) * 0.03f;
+            int result = simplifier.add(x, 1, z);
+            float[] vertices = polyline(simplifier);
+            if (result != PolylineSimplifier.COARSENED) {
+                int numberOfCommitted = Math.min(previous.length / 3 - 1, simplifier.getNumberOfVertices());
+                for (int j = 0; j < numberOfCommitted * 3; j++) {
+                    assertEquals(previous[j], vertices[j], 0.0f);
+                }
+            }
+            previous = vertices;
+        }
+        assertTrue(simplifier.getNumberOfCoarsenings() > 0);
+    }
+
+    @Test
+    public void longSession_keepsTheVerticesBoundedAndThePathClose() {
+        PolylineSimplifier simplifier = new PolylineSimplifier(TOLERANCE, MIN_DISTANCE, 256);
+        Random random = new Random(7);
+        int numberOfPositions = 200000;
+        float[] path = new float[numberOfPositions * 3];
+        float heading = 0;
+        for (int i = 1; i < numberOfPositions; i++) {
+            heading += (float) random.nextGaussian() * 0.05f;
+            path[i * 3] = path[i * 3 - 3] + (float) Math.cos(heading) * 0.02f;
+            path[i * 3 + 1] = 1.4f + (float) random.nextGaussian() * 0.002f;
+            path[i * 3 + 2] = path[i * 3 - 1] + (float) Math.sin(heading) * 0.02f;
+        }
+        for (int i = 0; i < numberOfPositions; i++) {
+            simplifier.add(path[i * 3], path[i * 3 + 1], path[i * 3 + 2]);
+            assertTrue(simplifier.getNumberOfVertices() < simplifier.getMaxVertices());
+        }
+        assertTrue(simplifier.getNumberOfCoarsenings() > 0);
+
+        // each coarsening adds at most its own tolerance, so the error stays below twice the final one
+        float[] polyline = polyline(simplifier);
+        float maxDistance = 0;
+        for (int i = 0; i < numberOfPositions; i += 7) {
+            maxDistance = Math.max(maxDistance, distanceToPolyline(polyline, path[i * 3], path[i * 3 + 1], path[i * 3 + 2]));
+        }
+        assertTrue("max distance " + maxDistance, maxDistance <= 2 * simplifier.getTolerance() + MIN_DISTANCE);
+
+        simplifier.reset();
+        assertEquals(0, simplifier.getNumberOfVertices());
+        assertEquals(TOLERANCE, simplifier.getTolerance(), 0.0f);
+    }
+}
@@ -0,0 +1,95 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the session manifest round trip and manifest-only catalog queries.
+ */
+public class SessionCatalogTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private SessionManifest record(final File root, final String name, final long startTime, final int numberOfFrames) throws Exception {
+        File folder = new File(root, name);
+        assertTrue(folder.mkdir());
+        SessionManifest manifest = new SessionManifest(folder);
+        manifest.start(startTime);
+        manifest.setStartLatencyMicros(16500);
+        for (int i = 0; i < numberOfFrames; i++) {
+            manifest.addRecords("ARCore_sensor_pose", 1);
+            manifest.updateTimestamp(1000L + i);
+            manifest.addTrackingFrame((i % 10 == 0) ? "PAUSED" : "TRACKING", "NONE");
+        }
+        manifest.setFileStatistics("ARCore_sensor_pose.txt", 123456, 0xCAFEBABEL);
+        manifest.finish(startTime + 60000, 5000);
+        manifest.save(startTime + 60000);
+        return manifest;
+    }
+
+    @Test
+    public void manifest_roundTripsThroughFile() throws Exception {
+        File root = mTemporaryFolder.newFolder();
+        record(root, "session", 1000, 100);
+
+        SessionManifest manifest = SessionManifest.load(new File(root, "session"));
+        assertEquals(1000, manifest.getStartTimeMillis());
+        assertEquals(60000, manifest.getDurationMillis());
+        assertEquals(100, manifest.getRecordCount("ARCore_sensor_pose"));
+        assertEquals(1000, manifest.getFirstTimestamp());
+        assertEquals(1099, manifest.getLastTimestamp());
+        assertEquals(10, manifest.getTrackingStateCount("PAUSED"));
+        assertEquals(90, manifest.getTrackingStateCount("TRACKING"));
+        assertEquals(100, manifest.getTrackingFailureCount("NONE"));
+        assertEquals(123456, manifest.getFileBytes("ARCore_sensor_pose.txt"));
+        assertEquals(0xCAFEBABEL, manifest.getFileChecksum("ARCore_sensor_pose.txt"));
+        assertEquals(5000, manifest.getPointCount());
+        assertEquals(16500, manifest.getStartLatencyMicros());
+        assertTrue(manifest.isComplete());
+    }
+
+    @Test
+    public void manifest_olderSnapshotWrittenLate_keepsTheFinalManifest() throws Exception {
+        File folder = mTemporaryFolder.newFolder();
+        SessionManifest manifest = new SessionManifest(folder);
+        manifest.start(1000);
+        manifest.addRecords("ARCore_sensor_pose", 10);
+        SessionManifest.Snapshot periodicSnapshot = manifest.snapshot(3000);
+
+        // the field keeps changing after the snapshot, and the final save overtakes the queued write
+        manifest.addRecords("ARCore_sensor_pose", 10);
+        manifest.finish(5000, 42);
+        manifest.save(5000);
+        manifest.write(periodicSnapshot);
+
+        SessionManifest loaded = SessionManifest.load(folder);
+        assertTrue(loaded.isComplete());
+        assertEquals(20, loaded.getRecordCount("ARCore_sensor_pose"));
+        assertEquals(42, loaded.getPointCount());
+        assertFalse(new File(folder, SessionManifest.FILE_NAME + ".tmp").exists());
+    }
+
+    @Test
+    public void catalog_filtersAndSortsByManifestOnly() throws Exception {
+        File root = mTemporaryFolder.newFolder();
+        record(root, "b", 3000, 50);
+        record(root, "a", 2000, 500);
+        record(root, "c", 1000, 5);
+        assertTrue(new File(root, "no_manifest").mkdir());
+
+        SessionCatalog catalog = new SessionCatalog(root);
+        assertEquals(3, catalog.listSessions().size());
+
+        List<SessionManifest> sessions = catalog.findSessions(manifest -> manifest.getRecordCount("ARCore_sensor_pose") >= 50);
+        assertEquals(2, sessions.size());
+        assertEquals("a", sessions.get(0).getFolder().getName());
+        assertEquals("b", sessions.get(1).getFolder().getName());
+    }
+}
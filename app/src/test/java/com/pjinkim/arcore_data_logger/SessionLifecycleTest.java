@@ -0,0 +1,180 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the recording lifecycle, including start/stop stress against a frame thread.
+ */
+public class SessionLifecycleTest {
+
+    private final SessionLifecycle mLifecycle = new SessionLifecycle();
+
+    // stands in for the session writers, deliberately without any synchronization
+    private static class FakeSession {
+        long mNumberOfRecords = 0;
+        boolean mIsClosed = false;
+    }
+
+    private FakeSession mSession = null;
+
+    @Test
+    public void transitions_followTheLifecycle() {
+        assertEquals(SessionLifecycle.IDLE, mLifecycle.getState());
+        assertFalse(mLifecycle.enterRecord());
+        assertFalse(mLifecycle.beginStop());
+
+        assertTrue(mLifecycle.beginStart());
+        assertFalse(mLifecycle.beginStart());
+        assertFalse(mLifecycle.enterRecord());
+        mLifecycle.endStart();
+        assertTrue(mLifecycle.isRecording());
+        assertFalse(mLifecycle.beginStart());
+
+        assertTrue(mLifecycle.enterRecord());
+        mLifecycle.exitRecord();
+        assertTrue(mLifecycle.beginStop());
+        assertEquals(SessionLifecycle.DRAINING, mLifecycle.getState());
+        assertFalse(mLifecycle.enterRecord());
+        assertFalse(mLifecycle.beginStop());
+        mLifecycle.endStop();
+        assertEquals(SessionLifecycle.CLOSED, mLifecycle.getState());
+
+        // the next recording starts from closed, and an aborted start goes back to idle
+        assertTrue(mLifecycle.beginStart());
+        mLifecycle.abortStart();
+        assertEquals(SessionLifecycle.IDLE, mLifecycle.getState());
+        assertTrue(mLifecycle.beginStart());
+    }
+
+    @Test
+    public void beginStop_waitsForTheFrameInFlight() throws Exception {
+        assertTrue(mLifecycle.beginStart());
+        mLifecycle.endStart();
+
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean isFrameDone = new AtomicBoolean(false);
+        Thread frameThread = new Thread(() -> {
+            assertTrue(mLifecycle.enterRecord());
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            isFrameDone.set(true);
+            mLifecycle.exitRecord();
+        });
+        frameThread.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread stopThread = new Thread(() -> {
+            assertTrue(mLifecycle.beginStop());
+            assertTrue(isFrameDone.get());
+            stopped.countDown();
+        });
+        stopThread.start();
+        assertFalse(stopped.await(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        frameThread.join();
+        stopThread.join();
+    }
+
+    @Test
+    public void maintenance_drainsFramesAndKeepsRecording() throws Exception {
+        assertFalse(mLifecycle.beginMaintenance());
+        assertTrue(mLifecycle.beginStart());
+        mLifecycle.endStart();
+
+        // frames back out while another thread has the writers
+        assertTrue(mLifecycle.beginMaintenance());
+        assertEquals(SessionLifecycle.MAINTAINING, mLifecycle.getState());
+        assertFalse(mLifecycle.enterRecord());
+        assertFalse(mLifecycle.beginMaintenance());
+        assertFalse(mLifecycle.beginStart());
+
+        // a stop requested meanwhile waits for the maintenance to end
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread stopThread = new Thread(() -> {
+            assertTrue(mLifecycle.beginStop());
+            stopped.countDown();
+        });
+        stopThread.start();
+        assertFalse(stopped.await(50, TimeUnit.MILLISECONDS));
+        mLifecycle.endMaintenance();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        stopThread.join();
+        assertEquals(SessionLifecycle.DRAINING, mLifecycle.getState());
+        mLifecycle.endStop();
+    }
+
+    @Test
+    public void startStopStress_neverWritesToAClosedSession() throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500);
+        final AtomicLong framesRecorded = new AtomicLong(0);
+        final AtomicLong recordsCounted = new AtomicLong(0);
+        final AtomicInteger violations = new AtomicInteger(0);
+        final AtomicInteger numberOfSessions = new AtomicInteger(0);
+
+        // one frame thread records into whatever session is current, as onUpdateFrame does
+        Thread frameThread = new Thread(() -> {
+            while (System.nanoTime() < deadline) {
+                if (mLifecycle.enterRecord()) {
+                    FakeSession session = mSession;
+                    if ((session == null) || session.mIsClosed) {
+                        violations.incrementAndGet();
+                    } else {
+                        session.mNumberOfRecords++;
+                        framesRecorded.incrementAndGet();
+                    }
+                    mLifecycle.exitRecord();
+                }
+            }
+        });
+
+        // two controllers race to start and stop, as repeated taps and the stop handler may
+        Runnable controller = () -> {
+            while (System.nanoTime() < deadline) {
+                if (mLifecycle.beginStart()) {
+                    mSession = new FakeSession();
+                    mLifecycle.endStart();
+                    numberOfSessions.incrementAndGet();
+                }
+                if (mLifecycle.beginStop()) {
+                    FakeSession session = mSession;
+                    recordsCounted.addAndGet(session.mNumberOfRecords);
+                    session.mIsClosed = true;
+                    mLifecycle.endStop();
+                }
+            }
+        };
+        Thread firstController = new Thread(controller);
+        Thread secondController = new Thread(controller);
+        frameThread.start();
+        firstController.start();
+        secondController.start();
+        frameThread.join();
+        firstController.join();
+        secondController.join();
+
+        // the session left open is closed like the others
+        if (mLifecycle.beginStop()) {
+            recordsCounted.addAndGet(mSession.mNumberOfRecords);
+            mLifecycle.endStop();
+        }
+        assertEquals(0, violations.get());
+        assertTrue(numberOfSessions.get() > 100);
+        assertTrue(framesRecorded.get() > 0);
+        assertEquals(framesRecorded.get(), recordsCounted.get());
+    }
+}
@@ -0,0 +1,102 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the telemetry sequence lock and the allocation-free label formatting.
+ */
+public class SessionTelemetryTest {
+
+    @Test
+    public void read_neverReturnsTornSnapshot() throws Exception {
+        final SessionTelemetry telemetry = new SessionTelemetry();
+        final AtomicBoolean isRunning = new AtomicBoolean(true);
+
+        // every field of frame i is derived from i, so a mixed snapshot is detectable
+        Thread writer = new Thread(() -> {
+            for (long i = 1; isRunning.get(); i++) {
+                telemetry.publish(i, (int) i, (int) (i % 3), (int) (i % 5), i * 0.5, i, (int) (i % 1000), 2 * i, 3 * i);
+            }
+        });
+        writer.start();
+
+        SessionTelemetry.Snapshot snapshot = new SessionTelemetry.Snapshot();
+        long previous = 0;
+        long deadline = System.currentTimeMillis() + 500;
+        while (System.currentTimeMillis() < deadline) {
+            telemetry.read(snapshot);
+            long i = snapshot.getTimestamp();
+            assertEquals(0, snapshot.getSequence() & 1);
+            assertTrue(i >= previous);
+            if (i > 0) {
+                assertEquals((int) i, snapshot.getNumberOfFeatures());
+                assertEquals((int) (i % 3), snapshot.getTrackingState());
+                assertEquals((int) (i % 5), snapshot.getTrackingFailureReason());
+                assertEquals(i * 0.5, snapshot.getUpdateRate(), 0.0);
+                assertEquals(i, snapshot.getNumberOfRecordedFrames());
+                assertEquals((int) (i % 1000), snapshot.getQueueDepth());
+                assertEquals(2 * i, snapshot.getNumberOfDrops());
+                assertEquals(3 * i, snapshot.getBytesWritten());
+            }
+            previous = i;
+        }
+        isRunning.set(false);
+        writer.join();
+    }
+
+    @Test
+    public void appendLong_matchesStringFormat() {
+        CharFormatter formatter = new CharFormatter(32);
+        for (int value : new int[]{0, 7, 42, 99999, 123456}) {
+            formatter.reset().appendLong(value, 5);
+            assertEquals(String.format(Locale.US, "%05d", value), formatter.toString());
+        }
+        assertEquals("-17", formatter.reset().appendLong(-17, 1).toString());
+        assertEquals(Long.toString(Long.MIN_VALUE), formatter.reset().appendLong(Long.MIN_VALUE, 1).toString());
+        assertEquals(Long.toString(Long.MAX_VALUE), formatter.reset().appendLong(Long.MAX_VALUE, 1).toString());
+    }
+
+    @Test
+    public void appendFixed_matchesStringFormat() {
+        CharFormatter formatter = new CharFormatter(32);
+        for (double value : new double[]{0.0, 29.9999, 30.0004, 59.94, 1234.5678, -0.25, 0.0625}) {
+            formatter.reset().appendFixed(value, 3).append(" Hz");
+            assertEquals(String.format(Locale.US, "%.3f Hz", value), formatter.toString());
+        }
+        assertEquals("Infinity", formatter.reset().appendFixed(Double.POSITIVE_INFINITY, 3).toString());
+        assertEquals("-Infinity", formatter.reset().appendFixed(Double.NEGATIVE_INFINITY, 3).toString());
+        assertEquals(Float.NEGATIVE_INFINITY, Float.parseFloat(formatter.toString()), 0.0f);
+    }
+
+    @Test
+    public void appendBytes_picksUnit() {
+        CharFormatter formatter = new CharFormatter(32);
+        assertEquals("512 B", formatter.reset().appendBytes(512).toString());
+        assertEquals("1.5 KB", formatter.reset().appendBytes(1536).toString());
+        assertEquals("12.3 MB", formatter.reset().appendBytes((long) (12.3 * 1024 * 1024)).toString());
+        assertEquals("2.0 GB", formatter.reset().appendBytes(2L * 1024 * 1024 * 1024).toString());
+    }
+
+    @Test
+    public void formatter_neverWritesPastCapacity() {
+        CharFormatter formatter = new CharFormatter(6);
+        formatter.append("Bytes: ");
+        assertEquals(6, formatter.length());
+        assertEquals("Bytes:", formatter.toString());
+
+        // numbers are never cut to their low-order digits
+        formatter.reset().append("B ");
+        try {
+            formatter.appendLong(-12345, 1);
+            fail("appendLong must not truncate");
+        } catch (IllegalStateException e) {
+            assertEquals("B ", formatter.toString());
+        }
+        assertEquals("B 1234", formatter.appendLong(1234, 1).toString());
+    }
+}
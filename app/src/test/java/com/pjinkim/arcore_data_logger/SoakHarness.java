@@ -0,0 +1,426 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Soak test of the per-frame processing and writing path on {@link SyntheticWorkload} frames, run
+ * as a plain main or with the app's soak task:
+ *
+ * <pre>
+ *   SoakHarness [seconds] [points per frame] [churn] [frame rate, 0 for unthrottled] [output folder]
+ *   ./gradlew :app:soak -PsoakArgs="600 256 0.1 30"
+ * </pre>
+ *
+ * Each frame goes through the {@link FrameRecorder} that ARCoreSession.onUpdateFrame feeds, and the
+ * stop through its outlier filter and point cloud export, so only the ARCore and Android calls and
+ * the file streamer around the writers are missing. Every 10 seconds it prints the
+ * frame rate, frame latency percentiles, heap use and GC time of the interval; at the end the whole
+ * run, the heap retained after a full collection compared with the start, and the time taken by
+ * the stop-time point cloud filtering and export.
+ */
+public class SoakHarness implements FrameRecorder.Output {
+
+    // properties
+    private static final long REPORT_INTERVAL = 10L * 1000000000L;
+    private static final int MAX_LATENCY_MICROS = 1 << 17;
+    private static final long POINT_CLOUD_HEAP_BUDGET = 32 * AccumulatedPointCloud.SEGMENT_BYTES;
+    private static final int NUMBER_OF_PLANES = 6;
+
+    private final SyntheticWorkload mWorkload;
+    private final File mFolder;
+
+    // the frame path of ARCoreSession, with the writers its file streamer opens
+    private final ExecutorService mIoExecutor = Executors.newSingleThreadExecutor();
+    private ChannelFileWriter mWriterPose;
+    private ChannelFileWriter mWriterPoseIndex;
+    private ChannelFileWriter mWriterPoint;
+    private ChannelFileWriter mWriterKeyframe;
+    private ChannelFileWriter mWriterTrackingSegment;
+    private ChannelFileWriter mWriterPlane;
+    private ChannelFileWriter mWriterCameraMetadata;
+    private ChannelFileWriter mWriterPointObservation;
+    private PoseRecordWriter mPoseRecordWriter;
+    private final CharFormatter mKeyframeRecord = new CharFormatter(64);
+    private final CharFormatter mPointRecord = new CharFormatter(128);
+    private final SessionManifest mSessionManifest;
+    private final SessionTelemetry mTelemetry = new SessionTelemetry();
+    private final AccumulatedPointCloud mAccumulatedPointCloud = new AccumulatedPointCloud(POINT_CLOUD_HEAP_BUDGET);
+    private final FrameRecorder mFrameRecorder;
+    private final FloatBuffer mPlanePolygon = FloatBuffer.wrap(new float[]{-1, -1, 1, -1, 1, 1, -1, 1});
+    private ImageExportPool mImageExportPool;
+
+    // frame latency in microseconds, over the whole run and over the current report interval
+    private final long[] mLatencies = new long[MAX_LATENCY_MICROS + 1];
+    private final long[] mIntervalLatencies = new long[MAX_LATENCY_MICROS + 1];
+    private long mNumberOfObservations = 0;
+
+
+    // definition of 'DeflateImageEncoder' class
+    // stands in for the JPEG encoder, which needs android.graphics, with similar CPU cost per image
+    private static class DeflateImageEncoder implements ImageExportPool.Encoder {
+
+        // one Deflater per encoder thread, reset per image, so a long run does not leak native memory
+        private final ThreadLocal<Deflater> mDeflaters = ThreadLocal.withInitial(() -> new Deflater(1));
+
+        @Override
+        public void encode(final ImageExportPool.ImageBuffer image, final int quality, final OutputStream outputStream) throws IOException {
+            Deflater deflater = mDeflaters.get();
+            deflater.reset();
+            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(outputStream, deflater, 1 << 16);
+            deflaterStream.write(image.getNv21(), 0, image.getWidth() * image.getHeight() * 3 / 2);
+            deflaterStream.finish();
+        }
+
+        @Override
+        public String getExtension() {
+            return "nv21.z";
+        }
+    }
+
+
+    // definition of 'Report' class
+    public static class Report {
+
+        // properties
+        long mNumberOfFrames;
+        long mNumberOfObservations;
+        long mNumberOfKeyframes;
+        long mNumberOfImages;
+        long mNumberOfDroppedImages;
+        int mNumberOfIds;
+        int mNumberOfAccumulatedPoints;
+        long mBytesWritten;
+        double mSeconds;
+        long mLateFrames;
+        long mP50Micros;
+        long mP99Micros;
+        long mP999Micros;
+        long mMaxMicros;
+        long mStartHeapBytes;
+        long mEndHeapBytes;
+        long mGcCount;
+        long mGcMillis;
+        double mStopMillis;
+
+
+        // methods
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d frames in %.1f s = %.1f fps, %.0f observations/s, %.2f MB/s written (%.1f MB)%n"
+                            + "frame latency p50 %d us, p99 %d us, p99.9 %d us, max %d us, %d frames over the frame interval%n"
+                            + "%d point IDs seen, %d points accumulated, %d keyframes, %d images written, %d dropped%n"
+                            + "retained heap %.1f MB -> %.1f MB, %d GCs taking %d ms (%.2f%% of the run)%n"
+                            + "stop: outlier filter and octree export in %.1f ms",
+                    mNumberOfFrames, mSeconds, mNumberOfFrames / mSeconds, mNumberOfObservations / mSeconds,
+                    mBytesWritten / 1e6 / mSeconds, mBytesWritten / 1e6,
+                    mP50Micros, mP99Micros, mP999Micros, mMaxMicros, mLateFrames,
+                    mNumberOfIds, mNumberOfAccumulatedPoints, mNumberOfKeyframes, mNumberOfImages, mNumberOfDroppedImages,
+                    mStartHeapBytes / 1e6, mEndHeapBytes / 1e6, mGcCount, mGcMillis, 100.0 * mGcMillis / (mSeconds * 1000),
+                    mStopMillis);
+        }
+    }
+
+
+    // constructor
+    public SoakHarness(final SyntheticWorkload workload, final File folder) {
+        mWorkload = workload;
+        mFolder = folder;
+        mSessionManifest = new SessionManifest(folder);
+        mFrameRecorder = new FrameRecorder(this, mSessionManifest, mAccumulatedPointCloud,
+                new String[]{"TRACKING", "PAUSED"}, new String[]{"NONE", "INSUFFICIENT_FEATURES"});
+    }
+
+
+    // methods
+    public static void main(String[] args) throws Exception {
+        long seconds = (args.length > 0) ? Long.parseLong(args[0]) : 60;
+        int pointsPerFrame = (args.length > 1) ? Integer.parseInt(args[1]) : 256;
+        float churn = (args.length > 2) ? Float.parseFloat(args[2]) : 0.1f;
+        double frameRate = (args.length > 3) ? Double.parseDouble(args[3]) : 30.0;
+        File folder = new File((args.length > 4) ? args[4] : System.getProperty("java.io.tmpdir"), "soak_" + System.currentTimeMillis());
+        if (!folder.mkdirs()) {
+            throw new IOException("main: Cannot create " + folder);
+        }
+        System.out.println(String.format(Locale.US, "soak: %d s, %d points per frame, churn %.2f, %s, writing to %s",
+                seconds, pointsPerFrame, churn, (frameRate > 0) ? frameRate + " fps" : "unthrottled", folder));
+
+        SyntheticWorkload workload = new SyntheticWorkload(1, pointsPerFrame, churn, 640, 480);
+        Report report = new SoakHarness(workload, folder).run(seconds * 1000000000L, frameRate, true);
+        System.out.println(report);
+    }
+
+    public Report run(final long durationNanos, final double frameRate, final boolean isPrintingIntervals) throws Exception {
+        Report report = new Report();
+        report.mStartHeapBytes = retainedHeapBytes();
+        long startGcCount = gcCount();
+        long startGcMillis = gcMillis();
+        openFiles();
+
+        // frames at the requested rate, or back to back; latency covers the processing only
+        long frameNanos = (frameRate > 0) ? (long) (1e9 / frameRate) : 0;
+        long startTime = System.nanoTime();
+        long nextFrameTime = startTime;
+        long nextReportTime = startTime + REPORT_INTERVAL;
+        long intervalFrames = 0;
+        long intervalGcMillis = startGcMillis;
+        while (System.nanoTime() - startTime < durationNanos) {
+            if (frameNanos > 0) {
+                long waitNanos = nextFrameTime - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+                nextFrameTime += frameNanos;
+            }
+            mWorkload.nextFrame();
+            long frameStart = System.nanoTime();
+            processFrame();
+            long latencyNanos = System.nanoTime() - frameStart;
+            int latencyMicros = (int) Math.min(MAX_LATENCY_MICROS, latencyNanos / 1000);
+            mLatencies[latencyMicros]++;
+            mIntervalLatencies[latencyMicros]++;
+            if ((frameNanos > 0) && (latencyNanos > frameNanos)) {
+                report.mLateFrames++;
+            }
+            report.mNumberOfFrames++;
+            intervalFrames++;
+
+            long currentTime = System.nanoTime();
+            if (currentTime >= nextReportTime) {
+                long currentGcMillis = gcMillis();
+                if (isPrintingIntervals) {
+                    Runtime runtime = Runtime.getRuntime();
+                    System.out.println(String.format(Locale.US, "%4.0f s: %.1f fps, p50 %d us, p99 %d us, max %d us, heap %.1f MB, GC %d ms, %d IDs",
+                            (currentTime - startTime) / 1e9, intervalFrames * 1e9 / (REPORT_INTERVAL + currentTime - nextReportTime),
+                            percentile(mIntervalLatencies, intervalFrames, 0.5), percentile(mIntervalLatencies, intervalFrames, 0.99),
+                            percentile(mIntervalLatencies, intervalFrames, 1.0),
+                            (runtime.totalMemory() - runtime.freeMemory()) / 1e6, currentGcMillis - intervalGcMillis, mWorkload.getNumberOfIds()));
+                }
+                Arrays.fill(mIntervalLatencies, 0);
+                intervalFrames = 0;
+                intervalGcMillis = currentGcMillis;
+                nextReportTime = currentTime + REPORT_INTERVAL;
+            }
+        }
+        report.mSeconds = (System.nanoTime() - startTime) / 1e9;
+
+        // stop as stopSession does: filter and export the point cloud, then close everything
+        long stopStart = System.nanoTime();
+        exportPointCloud();
+        report.mStopMillis = (System.nanoTime() - stopStart) / 1e6;
+        report.mBytesWritten = closeFiles();
+        report.mNumberOfImages = mImageExportPool.getNumberOfWritten();
+        report.mNumberOfDroppedImages = mImageExportPool.getNumberOfDropped();
+
+        report.mNumberOfObservations = mNumberOfObservations;
+        report.mNumberOfKeyframes = mFrameRecorder.getNumberOfKeyframes();
+        report.mNumberOfIds = mWorkload.getNumberOfIds();
+        report.mNumberOfAccumulatedPoints = mAccumulatedPointCloud.getNumberOfFeatures();
+        report.mP50Micros = percentile(mLatencies, report.mNumberOfFrames, 0.5);
+        report.mP99Micros = percentile(mLatencies, report.mNumberOfFrames, 0.99);
+        report.mP999Micros = percentile(mLatencies, report.mNumberOfFrames, 0.999);
+        report.mMaxMicros = percentile(mLatencies, report.mNumberOfFrames, 1.0);
+        report.mGcCount = gcCount() - startGcCount;
+        report.mGcMillis = gcMillis() - startGcMillis;
+        report.mEndHeapBytes = retainedHeapBytes();
+        return report;
+    }
+
+    private void openFiles() throws IOException {
+        mWriterPose = new ChannelFileWriter(new File(mFolder, "ARCore_sensor_pose.txt"), mIoExecutor);
+        mWriterPoseIndex = openBinaryFile("ARCore_sensor_pose" + SparseTimeIndex.FILE_SUFFIX, SparseTimeIndex.header());
+        mPoseRecordWriter = new PoseRecordWriter(mWriterPose, mWriterPoseIndex, 0);
+        mWriterPoint = new ChannelFileWriter(new File(mFolder, "ARCore_point_cloud.txt"), mIoExecutor);
+        mWriterKeyframe = new ChannelFileWriter(new File(mFolder, "ARCore_keyframes.txt"), mIoExecutor);
+        mWriterTrackingSegment = new ChannelFileWriter(new File(mFolder, "ARCore_tracking_segments.txt"), mIoExecutor);
+        mWriterPlane = openBinaryFile("ARCore_planes.bin", PlaneChangeLog.header());
+        mWriterCameraMetadata = openBinaryFile("ARCore_camera_metadata.bin", CameraMetadataLog.header());
+        mWriterPointObservation = openBinaryFile("ARCore_point_observations.bin", PointObservationLog.header());
+        mImageExportPool = new ImageExportPool(new File(mFolder, "keyframe_images"), new DeflateImageEncoder(), 90, 2, 4);
+        mAccumulatedPointCloud.setSpillFolder(mFolder.getPath());
+        mSessionManifest.start(System.currentTimeMillis());
+    }
+
+    private ChannelFileWriter openBinaryFile(final String fileName, final byte[] header) throws IOException {
+        ChannelFileWriter writer = new ChannelFileWriter(new File(mFolder, fileName), mIoExecutor);
+        writer.writeBytes(header, 0, header.length);
+        return writer;
+    }
+
+    private void processFrame() throws IOException {
+        long timestamp = mWorkload.getTimestamp();
+        float[] pose = mWorkload.getPose();
+        IntBuffer pointIds = mWorkload.getPointIds();
+        FloatBuffer points = mWorkload.getPoints();
+        int trackingState = mWorkload.getTrackingState();
+        mTelemetry.publish(timestamp, mAccumulatedPointCloud.getNumberOfFeatures(), trackingState, trackingState, 30.0,
+                mWorkload.getFrameIndex(), 0, 0, 0);
+
+        // 1) pose record and its sparse index
+        mFrameRecorder.recordPose(timestamp, pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6], trackingState, trackingState);
+
+        // 2) camera metadata
+        mFrameRecorder.recordCameraMetadata(timestamp, timestamp + 500, trackingState, trackingState,
+                490.0f, 490.0f, 320.0f, 240.0f, mWorkload.getImageWidth(), mWorkload.getImageHeight());
+
+        // 3) raw point observations
+        mFrameRecorder.recordPointObservations(timestamp, pointIds, points);
+        mNumberOfObservations += pointIds.remaining();
+
+        // 4) keyframe selection
+        boolean isKeyframe = mFrameRecorder.recordKeyframe(trackingState == SyntheticWorkload.TRACKING,
+                timestamp, pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6], pointIds);
+        if (isKeyframe) {
+
+            // 5) keyframe image and the colored visible points, colored by the luma under each point
+            mWorkload.fillImage();
+            ImageExportPool.ImageBuffer imageBuffer = mImageExportPool.acquireBuffer();
+            if (imageBuffer != null) {
+                imageBuffer.putYuv(timestamp, mWorkload.getImageWidth(), mWorkload.getImageHeight(), mWorkload.getYPlane(),
+                        mWorkload.getYRowStride(), mWorkload.getUPlane(), mWorkload.getVPlane(), mWorkload.getUvRowStride(),
+                        SyntheticWorkload.UV_PIXEL_STRIDE);
+                mImageExportPool.submit(imageBuffer);
+            }
+            mFrameRecorder.colorizePoints(pointIds, points, mWorkload.getViewMatrix(), mWorkload.getProjectionMatrix(),
+                    mWorkload.getImageWidth(), mWorkload.getImageHeight(), this::getLumaPixel);
+        }
+
+        // 6) planes jitter below the tolerances, and one of them keeps growing
+        long frameIndex = mWorkload.getFrameIndex();
+        float jitter = ((frameIndex % 3) - 1) * 0.001f;
+        PlaneChangeLog planeChangeLog = mFrameRecorder.getPlaneChangeLog();
+        for (int planeId = 0; planeId < NUMBER_OF_PLANES; planeId++) {
+            float extent = (planeId == 0) ? 2.0f + (frameIndex / 30) * 0.05f : 2.0f;
+            planeChangeLog.update(timestamp, planeId, 0, 0, 0, 0, 1, planeId + jitter, -1.5f, 0, extent, 2.0f, mPlanePolygon);
+        }
+        mFrameRecorder.recordPlanes();
+
+        // 7) session manifest every few seconds
+        long currentTimeMillis = System.currentTimeMillis();
+        if (mSessionManifest.isSaveDue(currentTimeMillis)) {
+            mSessionManifest.save(currentTimeMillis);
+        }
+    }
+
+    private int getLumaPixel(final int x, final int y) {
+        int luma = mWorkload.getYPlane().get(y * mWorkload.getYRowStride() + x) & 0xFF;
+        return 0xFF000000 | (luma << 16) | (luma << 8) | luma;
+    }
+
+    private void exportPointCloud() throws IOException {
+
+        // statistical outlier removal, the text records and the octree export, as endFiles does at stop
+        boolean[] inliers = mFrameRecorder.filterOutliers();
+        mFrameRecorder.exportPointCloud(inliers);
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(new File(mFolder, "ARCore_point_cloud.oct")), 1 << 16)) {
+            new OctreePointCloudCodec(0.001f, new DeflateBlockCodec(9)).encode(mAccumulatedPointCloud, inliers, outputStream);
+        }
+        mFrameRecorder.finish();
+    }
+
+    private long closeFiles() throws IOException {
+        ChannelFileWriter[] writers = {mWriterPose, mWriterPoseIndex, mWriterPoint, mWriterKeyframe, mWriterTrackingSegment,
+                mWriterPlane, mWriterCameraMetadata, mWriterPointObservation};
+        long bytesWritten = 0;
+        for (ChannelFileWriter writer : writers) {
+            writer.close();
+            bytesWritten += writer.getBytesWritten();
+        }
+        mImageExportPool.close();
+        mSessionManifest.finish(System.currentTimeMillis(), mAccumulatedPointCloud.getNumberOfFeatures());
+        mSessionManifest.save(System.currentTimeMillis());
+        mIoExecutor.shutdown();
+        return bytesWritten;
+    }
+
+    @Override
+    public void addARCorePoseRecord(final long timestamp, final float qx, final float qy, final float qz, final float qw,
+                                    final float tx, final float ty, final float tz) throws IOException {
+        mPoseRecordWriter.write(timestamp, qx, qy, qz, qw, tx, ty, tz);
+    }
+
+    @Override
+    public void addARCoreCameraMetadataRecords(final CameraMetadataLog cameraMetadataLog) throws IOException {
+        mWriterCameraMetadata.writeBytes(cameraMetadataLog.getBytes(), 0, cameraMetadataLog.getLength());
+        cameraMetadataLog.clear();
+    }
+
+    @Override
+    public void addARCoreTrackingSegmentRecord(final TrackingSegment trackingSegment) throws IOException {
+        mWriterTrackingSegment.write(trackingSegment.toLine());
+    }
+
+    @Override
+    public void addARCorePointObservationRecords(final PointObservationLog pointObservationLog) throws IOException {
+        mWriterPointObservation.writeBytes(pointObservationLog.getBytes(), 0, pointObservationLog.getLength());
+        pointObservationLog.clear();
+    }
+
+    @Override
+    public void addARCoreKeyframeRecord(final int keyframeId, final long timestamp) throws IOException {
+        mKeyframeRecord.reset().appendLong(keyframeId, 1).append(' ').appendLong(timestamp, 1).append(" \n");
+        mWriterKeyframe.write(mKeyframeRecord.getChars(), 0, mKeyframeRecord.length());
+    }
+
+    @Override
+    public void addARCorePlaneRecords(final PlaneChangeLog planeChangeLog) throws IOException {
+        mWriterPlane.writeBytes(planeChangeLog.getBytes(), 0, planeChangeLog.getLength());
+        planeChangeLog.clear();
+    }
+
+    @Override
+    public void addARCorePointRecord(final float pointX, final float pointY, final float pointZ, final float r, final float g, final float b) throws IOException {
+        mPointRecord.reset().appendFixed(pointX, 6).append(' ').appendFixed(pointY, 6).append(' ').appendFixed(pointZ, 6);
+        mPointRecord.append(' ').appendFixed(r, 2).append(' ').appendFixed(g, 2).append(' ').appendFixed(b, 2).append(" \n");
+        mWriterPoint.write(mPointRecord.getChars(), 0, mPointRecord.length());
+    }
+
+    private static long percentile(final long[] latencies, final long count, final double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(count * fraction));
+        long cumulative = 0;
+        for (int micros = 0; micros < latencies.length; micros++) {
+            cumulative += latencies[micros];
+            if (cumulative >= rank) {
+                return micros;
+            }
+        }
+        return MAX_LATENCY_MICROS;
+    }
+
+    private static long retainedHeapBytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, garbageCollector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, garbageCollector.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,98 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the sparse time index and its binary search.
+ */
+public class SparseTimeIndexTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File write(final SparseTimeIndex index, final long[] timestamps, final int recordBytes, final int extraBytes) throws Exception {
+        File file = mTemporaryFolder.newFile();
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(SparseTimeIndex.header());
+            for (int i = 0; i < timestamps.length; i++) {
+                if (index.addRecord(timestamps[i], 100 + (long) i * recordBytes)) {
+                    outputStream.write(index.getBytes(), 0, index.getLength());
+                    index.clear();
+                }
+            }
+
+            // part of an entry cut off by a crash
+            outputStream.write(new byte[extraBytes]);
+        }
+        return file;
+    }
+
+    private static long[] timestamps(final int numberOfRecords) {
+        long[] timestamps = new long[numberOfRecords];
+        for (int i = 0; i < numberOfRecords; i++) {
+            timestamps[i] = 1000000000L + i * 33333333L;
+        }
+        return timestamps;
+    }
+
+    @Test
+    public void entries_followRecordAndByteIntervals() throws Exception {
+        SparseTimeIndex index = new SparseTimeIndex(100, 1000);
+        SparseTimeIndexReader reader = new SparseTimeIndexReader(write(index, timestamps(1000), 4, 0));
+        assertEquals(10, reader.getNumberOfEntries());
+        assertEquals(1000000000L + 300 * 33333333L, reader.getTimestamp(3));
+        assertEquals(100 + 300 * 4, reader.getOffset(3));
+
+        // long records hit the byte interval first
+        SparseTimeIndex byteIndex = new SparseTimeIndex(100, 1000);
+        SparseTimeIndexReader byteReader = new SparseTimeIndexReader(write(byteIndex, timestamps(1000), 90, 7));
+        assertEquals(1000 / 12 + 1, byteReader.getNumberOfEntries());
+        assertEquals(100 + 12 * 90, byteReader.getOffset(1));
+    }
+
+    @Test
+    public void findOffset_returnsLastEntryBeforeTheTimestamp() throws Exception {
+        long[] timestamps = timestamps(1000);
+        SparseTimeIndexReader reader = new SparseTimeIndexReader(write(new SparseTimeIndex(100, Long.MAX_VALUE), timestamps, 4, 0));
+
+        // before the first record, on an indexed record and between indexed records
+        assertEquals(100, reader.findOffset(0, Long.MAX_VALUE, 100));
+        assertEquals(100 + 100 * 4, reader.findOffset(timestamps[200], Long.MAX_VALUE, 100));
+        assertEquals(100 + 500 * 4, reader.findOffset(timestamps[555], Long.MAX_VALUE, 100));
+        assertEquals(100 + 900 * 4, reader.findOffset(Long.MAX_VALUE, Long.MAX_VALUE, 100));
+
+        // entries past the end of a truncated log are not used
+        assertEquals(100 + 600 * 4, reader.findOffset(timestamps[999], 100 + 700 * 4, 100));
+        assertEquals(-1, reader.findEntry(timestamps[999], 100));
+    }
+
+    @Test
+    public void sameTimestamps_areNotSkipped() throws Exception {
+        long[] timestamps = new long[300];
+        Arrays.fill(timestamps, 5);
+        SparseTimeIndexReader reader = new SparseTimeIndexReader(write(new SparseTimeIndex(100, Long.MAX_VALUE), timestamps, 4, 0));
+        assertEquals(3, reader.getNumberOfEntries());
+        assertEquals(100, reader.findOffset(5, Long.MAX_VALUE, 100));
+        assertEquals(100 + 200 * 4, reader.findOffset(6, Long.MAX_VALUE, 100));
+    }
+
+    @Test
+    public void zeroPaddedFile_endsAtTheLastEntry() throws Exception {
+
+        // the zeros a file system can leave after a power loss
+        long[] timestamps = timestamps(1000);
+        SparseTimeIndexReader reader = new SparseTimeIndexReader(write(new SparseTimeIndex(100, Long.MAX_VALUE), timestamps, 4, 4096));
+        assertEquals(10, reader.getNumberOfEntries());
+        assertEquals(100 + 900 * 4, reader.findOffset(Long.MAX_VALUE, Long.MAX_VALUE, 100));
+        assertEquals(100 + 500 * 4, reader.findOffset(timestamps[555], Long.MAX_VALUE, 100));
+    }
+}
@@ -0,0 +1,279 @@
+package com.pjinkim.arcore_data_logger;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic ARCore frames for soak tests and benchmarks: a smooth 6-DoF trajectory
+ * through a room, a point cloud of a configurable size in which a configurable fraction of the
+ * points is replaced by new IDs every frame, per-point confidences, a tracking loss once a minute
+ * and camera images laid out as YUV_420_888 planes. The same seed always gives the same frames.
+ *
+ * Only the points of the current frame are kept, so a long run can churn through millions of IDs
+ * without the generator growing.
+ */
+public class SyntheticWorkload {
+
+    // properties
+    public static final long FRAME_INTERVAL = 33333333L;
+    public static final int TRACKING = 0;
+    public static final int PAUSED = 1;
+    public static final int UV_PIXEL_STRIDE = 2;
+
+    private static final float VERTICAL_FIELD_OF_VIEW = (float) Math.toRadians(60.0);
+    private static final float NEAR = 0.1f;
+    private static final float FAR = 100.0f;
+    private static final long TRACKING_LOSS_PERIOD = 60L * 30;
+    private static final long TRACKING_LOSS_FRAMES = 30;
+
+    private final Random mRandom;
+    private final int mPointsPerFrame;
+    private final float mChurn;
+    private final int mImageWidth;
+    private final int mImageHeight;
+
+    private long mFrameIndex = -1;
+    private long mTimestamp = 0;
+    private final float[] mPose = new float[7];
+    private final float[] mRotation = new float[9];
+    private final float[] mViewMatrix = new float[16];
+    private final float[] mProjectionMatrix = new float[16];
+    private int mTrackingState = TRACKING;
+
+    // points of the current frame in ARCore's layout, and where each slot's point really is
+    private final int[] mIds;
+    private final float[] mPoints;
+    private final float[] mAnchors;
+    private final float[] mConfidences;
+    private final IntBuffer mIdBuffer;
+    private final FloatBuffer mPointBuffer;
+    private int mNextId = 0;
+    private double mChurnCarry = 0;
+
+    // padded luma rows, and chroma interleaved with a pixel stride of 2 as on most devices
+    private final int mYRowStride;
+    private final int mUvRowStride;
+    private final ByteBuffer mYPlane;
+    private final ByteBuffer mUPlane;
+    private final ByteBuffer mVPlane;
+
+
+    // constructor
+    public SyntheticWorkload(final long seed, final int pointsPerFrame, final float churn, final int imageWidth, final int imageHeight) {
+        mRandom = new Random(seed);
+        mPointsPerFrame = pointsPerFrame;
+        mChurn = churn;
+        mImageWidth = imageWidth;
+        mImageHeight = imageHeight;
+
+        mIds = new int[pointsPerFrame];
+        mPoints = new float[pointsPerFrame * 4];
+        mAnchors = new float[pointsPerFrame * 3];
+        mConfidences = new float[pointsPerFrame];
+        mIdBuffer = IntBuffer.wrap(mIds);
+        mPointBuffer = FloatBuffer.wrap(mPoints);
+
+        mYRowStride = imageWidth + 64;
+        mUvRowStride = imageWidth + 64;
+        mYPlane = ByteBuffer.allocateDirect(mYRowStride * imageHeight);
+        ByteBuffer chroma = ByteBuffer.allocateDirect(mUvRowStride * (imageHeight / 2));
+        mUPlane = chroma.duplicate();
+        chroma.position(1);
+        mVPlane = chroma.slice();
+
+        // OpenGL perspective projection, as Camera.getProjectionMatrix
+        float focal = 1.0f / (float) Math.tan(VERTICAL_FIELD_OF_VIEW / 2);
+        mProjectionMatrix[0] = focal * imageHeight / imageWidth;
+        mProjectionMatrix[5] = focal;
+        mProjectionMatrix[10] = -(FAR + NEAR) / (FAR - NEAR);
+        mProjectionMatrix[11] = -1;
+        mProjectionMatrix[14] = -2 * FAR * NEAR / (FAR - NEAR);
+    }
+
+
+    // methods
+    public void nextFrame() {
+        mFrameIndex++;
+        mTimestamp = 1000000000L + mFrameIndex * FRAME_INTERVAL;
+        double seconds = mFrameIndex * (FRAME_INTERVAL / 1e9);
+
+        // 1) a slow walk around the room while turning and looking up and down
+        updatePose(seconds);
+        long lossFrame = mFrameIndex % TRACKING_LOSS_PERIOD;
+        mTrackingState = ((mFrameIndex >= TRACKING_LOSS_PERIOD) && (lossFrame < TRACKING_LOSS_FRAMES)) ? PAUSED : TRACKING;
+
+        // 2) the first frame sees all new points, later frames replace the churned fraction
+        int numberOfNewPoints = mPointsPerFrame;
+        if (mFrameIndex > 0) {
+            mChurnCarry += mChurn * mPointsPerFrame;
+            numberOfNewPoints = (int) mChurnCarry;
+            mChurnCarry -= numberOfNewPoints;
+        }
+        for (int k = 0; k < numberOfNewPoints; k++) {
+            int slot = (mFrameIndex == 0) ? k : mRandom.nextInt(mPointsPerFrame);
+            placePoint(slot);
+        }
+
+        // 3) every observation jitters around its true position by a few millimeters
+        for (int slot = 0; slot < mPointsPerFrame; slot++) {
+            for (int axis = 0; axis < 3; axis++) {
+                mPoints[slot * 4 + axis] = mAnchors[slot * 3 + axis] + (float) mRandom.nextGaussian() * 0.002f;
+            }
+            mPoints[slot * 4 + 3] = mConfidences[slot];
+        }
+        mIdBuffer.rewind();
+        mPointBuffer.rewind();
+    }
+
+    private void updatePose(final double seconds) {
+
+        // translation on a Lissajous curve at eye height, orientation as yaw * pitch * roll
+        mPose[4] = 1.5f * (float) Math.sin(0.21 * seconds);
+        mPose[5] = 1.4f + 0.1f * (float) Math.sin(0.53 * seconds);
+        mPose[6] = 1.5f * (float) Math.sin(0.13 * seconds);
+        double yaw = 0.3 * seconds + 0.5 * Math.sin(0.1 * seconds);
+        double pitch = 0.25 * Math.sin(0.37 * seconds);
+        double roll = 0.05 * Math.sin(0.71 * seconds);
+        double cy = Math.cos(yaw / 2);
+        double sy = Math.sin(yaw / 2);
+        double cp = Math.cos(pitch / 2);
+        double sp = Math.sin(pitch / 2);
+        double cr = Math.cos(roll / 2);
+        double sr = Math.sin(roll / 2);
+        float qx = (float) (cy * sp * cr + sy * cp * sr);
+        float qy = (float) (sy * cp * cr - cy * sp * sr);
+        float qz = (float) (cy * cp * sr - sy * sp * cr);
+        float qw = (float) (cy * cp * cr + sy * sp * sr);
+        mPose[0] = qx;
+        mPose[1] = qy;
+        mPose[2] = qz;
+        mPose[3] = qw;
+
+        // camera-to-world rotation, row-major
+        mRotation[0] = 1 - 2 * (qy * qy + qz * qz);
+        mRotation[1] = 2 * (qx * qy - qz * qw);
+        mRotation[2] = 2 * (qx * qz + qy * qw);
+        mRotation[3] = 2 * (qx * qy + qz * qw);
+        mRotation[4] = 1 - 2 * (qx * qx + qz * qz);
+        mRotation[5] = 2 * (qy * qz - qx * qw);
+        mRotation[6] = 2 * (qx * qz - qy * qw);
+        mRotation[7] = 2 * (qy * qz + qx * qw);
+        mRotation[8] = 1 - 2 * (qx * qx + qy * qy);
+
+        // world-to-camera view matrix, column-major as Camera.getViewMatrix
+        for (int row = 0; row < 3; row++) {
+            float translation = 0;
+            for (int column = 0; column < 3; column++) {
+                mViewMatrix[column * 4 + row] = mRotation[column * 3 + row];
+                translation -= mRotation[column * 3 + row] * mPose[4 + column];
+            }
+            mViewMatrix[12 + row] = translation;
+            mViewMatrix[row * 4 + 3] = 0;
+        }
+        mViewMatrix[15] = 1;
+    }
+
+    private void placePoint(final int slot) {
+
+        // a new ID somewhere inside the current view, 0.5 to 5 m in front of the camera
+        float tanY = (float) Math.tan(VERTICAL_FIELD_OF_VIEW / 2);
+        float tanX = tanY * mImageWidth / mImageHeight;
+        float depth = 0.5f + 4.5f * mRandom.nextFloat();
+        float cameraX = (mRandom.nextFloat() * 1.8f - 0.9f) * tanX * depth;
+        float cameraY = (mRandom.nextFloat() * 1.8f - 0.9f) * tanY * depth;
+        float cameraZ = -depth;
+        for (int axis = 0; axis < 3; axis++) {
+            mAnchors[slot * 3 + axis] = mPose[4 + axis] + mRotation[axis * 3] * cameraX
+                    + mRotation[axis * 3 + 1] * cameraY + mRotation[axis * 3 + 2] * cameraZ;
+        }
+        mConfidences[slot] = 0.1f + 0.9f * mRandom.nextFloat();
+        mIds[slot] = mNextId++;
+    }
+
+    public void fillImage() {
+
+        // a pattern that moves with the frame; row padding and the trailing chroma byte stay untouched
+        int shift = (int) (mFrameIndex * 3);
+        for (int row = 0; row < mImageHeight; row++) {
+            int offset = row * mYRowStride;
+            for (int column = 0; column < mImageWidth; column++) {
+                mYPlane.put(offset + column, (byte) (((column + shift) ^ row) & 0xFF));
+            }
+        }
+        for (int row = 0; row < mImageHeight / 2; row++) {
+            for (int column = 0; column < mImageWidth / 2; column++) {
+                int index = row * mUvRowStride + column * UV_PIXEL_STRIDE;
+                mUPlane.put(index, (byte) (128 + ((column + shift) & 0x3F)));
+                mVPlane.put(index, (byte) (128 - (row & 0x3F)));
+            }
+        }
+    }
+
+
+    // getter and setter
+    public long getFrameIndex() {
+        return mFrameIndex;
+    }
+
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public float[] getPose() {
+        return mPose;
+    }
+
+    public float[] getViewMatrix() {
+        return mViewMatrix;
+    }
+
+    public float[] getProjectionMatrix() {
+        return mProjectionMatrix;
+    }
+
+    public int getTrackingState() {
+        return mTrackingState;
+    }
+
+    public IntBuffer getPointIds() {
+        return mIdBuffer;
+    }
+
+    public FloatBuffer getPoints() {
+        return mPointBuffer;
+    }
+
+    public int getNumberOfIds() {
+        return mNextId;
+    }
+
+    public int getImageWidth() {
+        return mImageWidth;
+    }
+
+    public int getImageHeight() {
+        return mImageHeight;
+    }
+
+    public ByteBuffer getYPlane() {
+        return mYPlane;
+    }
+
+    public ByteBuffer getUPlane() {
+        return mUPlane;
+    }
+
+    public ByteBuffer getVPlane() {
+        return mVPlane;
+    }
+
+    public int getYRowStride() {
+        return mYRowStride;
+    }
+
+    public int getUvRowStride() {
+        return mUvRowStride;
+    }
+}
@@ -0,0 +1,143 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the synthetic workload generator, and a short run of the soak harness on it.
+ */
+public class SyntheticWorkloadTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sameSeed_givesSameFrames() {
+        SyntheticWorkload first = new SyntheticWorkload(5, 128, 0.2f, 64, 48);
+        SyntheticWorkload second = new SyntheticWorkload(5, 128, 0.2f, 64, 48);
+        for (int i = 0; i < 100; i++) {
+            first.nextFrame();
+            second.nextFrame();
+            assertEquals(first.getTimestamp(), second.getTimestamp());
+            assertArrayEquals(first.getPose(), second.getPose(), 0);
+            assertEquals(first.getPointIds(), second.getPointIds());
+            assertEquals(first.getPoints(), second.getPoints());
+        }
+        first.fillImage();
+        second.fillImage();
+        assertEquals(first.getYPlane(), second.getYPlane());
+        assertEquals(first.getVPlane(), second.getVPlane());
+
+        SyntheticWorkload other = new SyntheticWorkload(6, 128, 0.2f, 64, 48);
+        other.nextFrame();
+        SyntheticWorkload reference = new SyntheticWorkload(5, 128, 0.2f, 64, 48);
+        reference.nextFrame();
+        assertNotEquals(reference.getPoints(), other.getPoints());
+    }
+
+    @Test
+    public void churn_replacesTheConfiguredFractionOfIdsPerFrame() {
+
+        // a quarter of 256 points is 64 new IDs per frame after the first
+        SyntheticWorkload workload = new SyntheticWorkload(1, 256, 0.25f, 64, 48);
+        HashSet<Integer> previousIds = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            workload.nextFrame();
+            IntBuffer ids = workload.getPointIds();
+            HashSet<Integer> frameIds = new HashSet<>();
+            for (int k = 0; k < ids.remaining(); k++) {
+                frameIds.add(ids.get(k));
+            }
+            assertEquals(256, frameIds.size());
+            if (i > 0) {
+                frameIds.retainAll(previousIds);
+                assertTrue(frameIds.size() >= 256 - 64);
+            }
+            previousIds.clear();
+            for (int k = 0; k < ids.remaining(); k++) {
+                previousIds.add(ids.get(k));
+            }
+        }
+        assertEquals(256 + 64 * 999, workload.getNumberOfIds());
+    }
+
+    @Test
+    public void trajectory_isSmoothAndKeepsThePointsInView() {
+        SyntheticWorkload workload = new SyntheticWorkload(2, 512, 0.1f, 640, 480);
+        VisibilityCuller visibilityCuller = new VisibilityCuller();
+        float[] previousPose = null;
+        for (int i = 0; i < 300; i++) {
+            workload.nextFrame();
+            float[] pose = workload.getPose();
+            float norm = pose[0] * pose[0] + pose[1] * pose[1] + pose[2] * pose[2] + pose[3] * pose[3];
+            assertEquals(1.0f, norm, 1e-5f);
+            if (previousPose != null) {
+                float dx = pose[4] - previousPose[4];
+                float dy = pose[5] - previousPose[5];
+                float dz = pose[6] - previousPose[6];
+                assertTrue(Math.sqrt(dx * dx + dy * dy + dz * dz) < 0.02);
+                float dot = Math.abs(pose[0] * previousPose[0] + pose[1] * previousPose[1] + pose[2] * previousPose[2] + pose[3] * previousPose[3]);
+                assertTrue(2 * Math.acos(Math.min(1.0f, dot)) < Math.toRadians(2.0));
+            }
+            previousPose = pose.clone();
+
+            // confidences in (0, 1], and most points project into the image
+            FloatBuffer points = workload.getPoints();
+            for (int k = 0; k < 512; k++) {
+                assertTrue((points.get(k * 4 + 3) > 0) && (points.get(k * 4 + 3) <= 1));
+            }
+            visibilityCuller.setViewProjection(workload.getViewMatrix(), workload.getProjectionMatrix());
+            visibilityCuller.cull(points, 0, 640, 480);
+            if (i % 50 == 0) {
+                assertTrue("visible " + visibilityCuller.getNumberOfVisiblePoints(), visibilityCuller.getNumberOfVisiblePoints() > 200);
+            }
+        }
+    }
+
+    @Test
+    public void images_haveTheYuv420Layout() {
+        SyntheticWorkload workload = new SyntheticWorkload(3, 16, 0, 64, 48);
+        workload.nextFrame();
+        workload.fillImage();
+        assertTrue(workload.getYRowStride() > 64);
+        assertEquals(workload.getYRowStride() * 48, workload.getYPlane().capacity());
+
+        ImageExportPool.ImageBuffer imageBuffer = new ImageExportPool.ImageBuffer();
+        imageBuffer.putYuv(workload.getTimestamp(), 64, 48, workload.getYPlane(), workload.getYRowStride(),
+                workload.getUPlane(), workload.getVPlane(), workload.getUvRowStride(), SyntheticWorkload.UV_PIXEL_STRIDE);
+        byte[] nv21 = imageBuffer.getNv21();
+        ByteBuffer yPlane = workload.getYPlane();
+        assertEquals(yPlane.get(5 * workload.getYRowStride() + 7), nv21[5 * 64 + 7]);
+        int chromaIndex = 3 * workload.getUvRowStride() + 4 * SyntheticWorkload.UV_PIXEL_STRIDE;
+        assertEquals(workload.getVPlane().get(chromaIndex), nv21[64 * 48 + 3 * 64 + 8]);
+        assertEquals(workload.getUPlane().get(chromaIndex), nv21[64 * 48 + 3 * 64 + 9]);
+    }
+
+    @Test
+    public void soakHarness_runsTheFramePathAndReports() throws Exception {
+        File folder = mTemporaryFolder.newFolder();
+        SyntheticWorkload workload = new SyntheticWorkload(4, 256, 0.5f, 320, 240);
+        SoakHarness.Report report = new SoakHarness(workload, folder).run(1000000000L, 0, false);
+
+        assertTrue(report.mNumberOfFrames > 10);
+        assertEquals(report.mNumberOfFrames * 256, report.mNumberOfObservations);
+        assertTrue(report.mNumberOfKeyframes > 0);
+        assertTrue(report.mNumberOfAccumulatedPoints > 0);
+        assertTrue(report.mP50Micros <= report.mP99Micros);
+        assertTrue(report.mP99Micros <= report.mMaxMicros);
+        assertTrue(report.mBytesWritten > 0);
+        assertTrue(new File(folder, "ARCore_sensor_pose.txt").length() > 0);
+        assertTrue(new File(folder, "ARCore_point_cloud.oct").length() > 0);
+        assertTrue(new File(folder, SessionManifest.FILE_NAME).exists());
+        assertNotNull(report.toString());
+    }
+}
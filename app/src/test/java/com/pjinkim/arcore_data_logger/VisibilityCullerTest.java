@@ -0,0 +1,78 @@
+package com.pjinkim.arcore_data_logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the frustum and coarse depth buffer culling.
+ */
+public class VisibilityCullerTest {
+
+    private final VisibilityCuller mCuller = new VisibilityCuller();
+
+    @Before
+    public void setUp() {
+
+        // camera at the origin looking down -z, 90 degree field of view, near 0.1 and far 100
+        float near = 0.1f;
+        float far = 100.0f;
+        float[] view = new float[16];
+        view[0] = 1;
+        view[5] = 1;
+        view[10] = 1;
+        view[15] = 1;
+        float[] projection = new float[16];
+        projection[0] = 1;
+        projection[5] = 1;
+        projection[10] = -(far + near) / (far - near);
+        projection[11] = -1;
+        projection[14] = -(2 * far * near) / (far - near);
+        mCuller.setViewProjection(view, projection);
+    }
+
+    private static FloatBuffer points(final float... values) {
+        return FloatBuffer.wrap(values);
+    }
+
+    @Test
+    public void cull_rejectsPointsBehindCameraAndOutsideFrustum() {
+        FloatBuffer cloud = points(
+                0, 0, -2, 1,      // in front, image center
+                0, 0, 2, 1,       // behind the camera
+                5, 0, -2, 1,      // outside the right plane
+                0.5f, 0, -2, 0.2f // low confidence
+        );
+        assertEquals(1, mCuller.cull(cloud, 0.5f, 640, 480));
+        assertEquals(0, mCuller.getVisibleIndex(0));
+        assertEquals(320, mCuller.getVisiblePixelX(0));
+        assertEquals(240, mCuller.getVisiblePixelY(0));
+    }
+
+    @Test
+    public void cull_keepsNearestPointPerCell() {
+        FloatBuffer cloud = points(
+                0, 0, -4, 1,       // occluded by the next point
+                0, 0, -2, 1,       // nearest in the center cell
+                -1, -1, -2, 1,     // far away in another cell
+                0.5f, 0.5f, -3, 1  // its own cell
+        );
+        assertEquals(3, mCuller.cull(cloud, 0.5f, 640, 480));
+        assertEquals(1, mCuller.getVisibleIndex(0));
+        assertEquals(2, mCuller.getVisibleIndex(1));
+        assertEquals(3, mCuller.getVisibleIndex(2));
+
+        // the depth buffer starts empty again for the next frame
+        assertEquals(1, mCuller.cull(points(0, 0, -4, 1), 0.5f, 640, 480));
+    }
+
+    @Test
+    public void cull_clampsPixelsOnTheImageBorder() {
+        assertEquals(1, mCuller.cull(points(2, -2, -2, 1), 0.5f, 640, 480));
+        assertEquals(639, mCuller.getVisiblePixelX(0));
+        assertEquals(479, mCuller.getVisiblePixelY(0));
+    }
+}
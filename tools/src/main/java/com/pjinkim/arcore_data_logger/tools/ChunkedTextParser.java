@@ -0,0 +1,317 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import com.pjinkim.arcore_data_logger.BlockCompressedInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel parser for the whitespace separated session text files.
+ *
+ * The file is split into chunks of about {@link #CHUNK_SIZE} bytes whose boundaries are moved to
+ * the next line start; every chunk is memory-mapped and parsed on its own core, and the chunk
+ * results are concatenated in file order. Lines starting with '#' (the file header) and lines
+ * with too few columns (for example a line cut off by a crash) are skipped. The data ends at the
+ * first NUL byte, where the zeros a file system can leave at the end of a file after a power loss
+ * start. Block compressed
+ * files are decoded transparently: their blocks are decompressed in parallel into memory, which is
+ * then split and parsed the same way.
+ */
+public class ChunkedTextParser {
+
+    // properties
+    public static final int CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    private final int mValueColumns;
+    private final boolean mHasTimestamps;
+    private final int mChunkSize;
+
+
+    // constructors
+    public ChunkedTextParser(final int valueColumns, final boolean hasTimestamps) {
+        this(valueColumns, hasTimestamps, CHUNK_SIZE);
+    }
+
+    public ChunkedTextParser(final int valueColumns, final boolean hasTimestamps, final int chunkSize) {
+        mValueColumns = valueColumns;
+        mHasTimestamps = hasTimestamps;
+        mChunkSize = chunkSize;
+    }
+
+
+    // methods
+    public ParsedTable parse(final File file) throws IOException {
+        if (BlockCompressedInputStream.isBlockCompressed(file)) {
+            return parseCompressed(file);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            // split the file at line starts and parse the chunks in parallel
+            List<long[]> ranges = splitAtLines(channel);
+            List<ParsedTable> parts;
+            try {
+                parts = ranges.parallelStream()
+                        .map(range -> parseRange(channel, range[0], range[1]))
+                        .collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return ParsedTable.concat(parts, mValueColumns, mHasTimestamps);
+        }
+    }
+
+    private ParsedTable parseCompressed(final File file) throws IOException {
+        try (BlockCompressedInputStream inputStream = new BlockCompressedInputStream(file)) {
+
+            // decode every block in parallel straight into its place in one array
+            long length = inputStream.getLength();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("parseCompressed: " + file + " is too large to decode in memory");
+            }
+            byte[] bytes = new byte[(int) length];
+            try {
+                IntStream.range(0, inputStream.getNumberOfBlocks()).parallel().forEach(i -> {
+                    byte[] block = new byte[inputStream.getBlockSize()];
+                    try {
+                        int blockLength = inputStream.readBlock(i, block);
+                        System.arraycopy(block, 0, bytes, (int) inputStream.getBlockRawOffset(i), blockLength);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // split the decoded text at line starts and parse the chunks in parallel
+            List<int[]> ranges = new ArrayList<>();
+            int start = 0;
+            while (start < bytes.length) {
+                int end = Math.min(bytes.length, start + mChunkSize);
+                while ((end < bytes.length) && (bytes[end - 1] != '\n')) {
+                    end++;
+                }
+                ranges.add(new int[]{start, end});
+                start = end;
+            }
+            List<ParsedTable> parts = ranges.parallelStream().map(range -> {
+                ParsedTable table = new ParsedTable(mValueColumns, mHasTimestamps, (range[1] - range[0]) / 48);
+                parseLines(ByteBuffer.wrap(bytes, range[0], range[1] - range[0]).slice(), table);
+                return table;
+            }).collect(Collectors.toList());
+            return ParsedTable.concat(parts, mValueColumns, mHasTimestamps);
+        }
+    }
+
+    private List<long[]> splitAtLines(final FileChannel channel) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        long size = channel.size();
+        long start = 0;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (start < size) {
+
+            // move the nominal chunk end forward to just after the next newline
+            long end = Math.min(size, start + mChunkSize);
+            boolean isLineStart = (end == size);
+            while (!isLineStart) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                if (read <= 0) {
+                    end = size;
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        end += i + 1;
+                        isLineStart = true;
+                        break;
+                    }
+                }
+                if (!isLineStart) {
+                    end = Math.min(size, end + read);
+                    isLineStart = (end == size);
+                }
+            }
+            ranges.add(new long[]{start, end});
+            start = end;
+        }
+        return ranges;
+    }
+
+    private ParsedTable parseRange(final FileChannel channel, final long start, final long end) {
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ParsedTable table = new ParsedTable(mValueColumns, mHasTimestamps, (int) ((end - start) / 48));
+        parseLines(buffer, table);
+        return table;
+    }
+
+    void parseLines(final ByteBuffer buffer, final ParsedTable table) {
+        float[] values = new float[mValueColumns];
+        int limit = buffer.limit();
+        int position = 0;
+        while (position < limit) {
+
+            // find the end of this line, the first NUL byte ends the data along with the line cut off before it
+            int lineEnd = position;
+            byte b;
+            while ((lineEnd < limit) && ((b = buffer.get(lineEnd)) != '\n')) {
+                if (b == 0) {
+                    table.markEndOfData();
+                    return;
+                }
+                lineEnd++;
+            }
+
+            // a last line without its newline was cut off by a crash, and its last number may be cut too
+            if (lineEnd == limit) {
+                return;
+            }
+
+            // skip the header comment, otherwise parse every column of the line
+            if ((lineEnd > position) && (buffer.get(position) != '#')) {
+                long timestamp = 0;
+                int column = mHasTimestamps ? -1 : 0;
+                int cursor = position;
+                while (column < mValueColumns) {
+                    while ((cursor < lineEnd) && isSeparator(buffer.get(cursor))) {
+                        cursor++;
+                    }
+                    if (cursor >= lineEnd) {
+                        break;
+                    }
+                    int tokenEnd = cursor;
+                    while ((tokenEnd < lineEnd) && !isSeparator(buffer.get(tokenEnd))) {
+                        tokenEnd++;
+                    }
+                    if (column < 0) {
+                        timestamp = parseLong(buffer, cursor, tokenEnd);
+                    } else {
+                        values[column] = parseFloat(buffer, cursor, tokenEnd);
+                    }
+                    column++;
+                    cursor = tokenEnd;
+                }
+                if (column == mValueColumns) {
+                    table.addRow(timestamp, values);
+                }
+            }
+            position = lineEnd + 1;
+        }
+    }
+
+    private static boolean isSeparator(final byte b) {
+        return (b == ' ') || (b == '\t') || (b == ',') || (b == '\r');
+    }
+
+    static long parseLong(final ByteBuffer buffer, int start, final int end) {
+        boolean isNegative = (buffer.get(start) == '-');
+        if (isNegative) {
+            start++;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = (value * 10) + (buffer.get(i) - '0');
+        }
+        return isNegative ? -value : value;
+    }
+
+    static float parseFloat(final ByteBuffer buffer, final int start, final int end) {
+
+        // fast path for plain decimals such as "-0.123456"
+        int i = start;
+        boolean isNegative = false;
+        if ((buffer.get(i) == '-') || (buffer.get(i) == '+')) {
+            isNegative = (buffer.get(i) == '-');
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean isFraction = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if ((b >= '0') && (b <= '9')) {
+                mantissa = (mantissa * 10) + (b - '0');
+                digits++;
+                if (isFraction) {
+                    fractionDigits++;
+                }
+            } else if ((b == '.') && !isFraction) {
+                isFraction = true;
+            } else {
+                break;
+            }
+        }
+        if ((i == end) && (digits > 0) && (digits <= 18)) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return (float) (isNegative ? -value : value);
+        }
+
+        // exponents, NaN, Infinity and very long numbers go through the JDK parser
+        byte[] token = new byte[end - start];
+        for (int j = 0; j < token.length; j++) {
+            token[j] = buffer.get(start + j);
+        }
+        return Float.parseFloat(new String(token, StandardCharsets.US_ASCII));
+    }
+
+    public static int detectColumns(final File file) throws IOException {
+
+        // count the columns of the first line that is not a comment, in plain or block compressed files, up to the first NUL byte
+        try (InputStream inputStream = BlockCompressedInputStream.open(file)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            int count;
+            while (buffer.hasRemaining() && ((count = inputStream.read(buffer.array(), buffer.position(), buffer.remaining())) > 0)) {
+                buffer.position(buffer.position() + count);
+            }
+            buffer.flip();
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) == 0) {
+                    buffer.limit(i);
+                    break;
+                }
+            }
+            int position = 0;
+            while (position < buffer.limit()) {
+                int lineEnd = position;
+                while ((lineEnd < buffer.limit()) && (buffer.get(lineEnd) != '\n')) {
+                    lineEnd++;
+                }
+                if ((lineEnd > position) && (buffer.get(position) != '#')) {
+                    int columns = 0;
+                    boolean isInToken = false;
+                    for (int i = position; i < lineEnd; i++) {
+                        boolean isToken = !isSeparator(buffer.get(i));
+                        if (isToken && !isInToken) {
+                            columns++;
+                        }
+                        isInToken = isToken;
+                    }
+                    if (columns > 0) {
+                        return columns;
+                    }
+                }
+                position = lineEnd + 1;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import com.pjinkim.arcore_data_logger.LiveStreamProtocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Reference receiver of the live pose/point stream sent by the logger's LiveStreamSink.
+ * Decodes {@link LiveStreamProtocol} frames from a connected channel into a {@link Listener}.
+ */
+public class LiveStreamReceiver {
+
+    // properties
+    private final Listener mListener;
+    private ByteBuffer mPayload = ByteBuffer.allocate(64 * 1024);
+    private final ByteBuffer mHeader = ByteBuffer.allocate(LiveStreamProtocol.HEADER_BYTES);
+
+    // reused decode arrays
+    private long[] mTimestamps = new long[0];
+    private float[] mPoses = new float[0];
+    private int[] mIds = new int[0];
+    private float[] mPoints = new float[0];
+
+    private long mNumberOfFrames = 0;
+    private long mBytesReceived = 0;
+
+
+    // definition of 'Listener' interface
+    public interface Listener {
+
+        // 'poses' holds qx qy qz qw tx ty tz for each of the 'count' timestamps
+        void onPoses(long[] timestamps, float[] poses, int count);
+
+        // 'points' holds x y z confidence for each of the 'count' IDs
+        void onPoints(long timestamp, int[] ids, float[] points, int count);
+    }
+
+
+    // constructor
+    public LiveStreamReceiver(final Listener listener) {
+        mListener = listener;
+    }
+
+
+    // methods
+    public static ServerSocketChannel bind(final int port) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        return serverChannel;
+    }
+
+    public void serve(final ServerSocketChannel serverChannel) throws IOException {
+
+        // one logger at a time; wait for the next one after a disconnect
+        while (serverChannel.isOpen()) {
+            try (SocketChannel channel = serverChannel.accept()) {
+                receive(channel);
+            } catch (EOFException e) {
+                // the logger disconnected
+            }
+        }
+    }
+
+    public void receive(final SocketChannel channel) throws IOException {
+        while (true) {
+
+            // 1) frame header
+            mHeader.clear();
+            readFully(channel, mHeader);
+            mHeader.flip();
+            short magic = mHeader.getShort();
+            byte type = mHeader.get();
+            mHeader.get();
+            int payloadBytes = mHeader.getInt();
+            if ((magic != LiveStreamProtocol.MAGIC) || (payloadBytes < 0) || (payloadBytes > LiveStreamProtocol.MAX_PAYLOAD_BYTES)) {
+                throw new IOException("receive: Corrupt frame header");
+            }
+
+            // 2) payload
+            if (mPayload.capacity() < payloadBytes) {
+                mPayload = ByteBuffer.allocate(payloadBytes);
+            }
+            mPayload.clear();
+            mPayload.limit(payloadBytes);
+            readFully(channel, mPayload);
+            mPayload.flip();
+            mBytesReceived += LiveStreamProtocol.HEADER_BYTES + payloadBytes;
+            mNumberOfFrames++;
+
+            // 3) decode; unknown frame types are skipped
+            if (type == LiveStreamProtocol.TYPE_POSE_BATCH) {
+                decodePoses(mPayload);
+            } else if (type == LiveStreamProtocol.TYPE_POINT_BATCH) {
+                decodePoints(mPayload);
+            }
+        }
+    }
+
+    private void decodePoses(final ByteBuffer payload) throws IOException {
+        int count = payload.getInt();
+        if (payload.remaining() != count * LiveStreamProtocol.POSE_RECORD_BYTES) {
+            throw new IOException("decodePoses: Payload does not match the pose count");
+        }
+        if (mTimestamps.length < count) {
+            mTimestamps = new long[count];
+            mPoses = new float[count * 7];
+        }
+        for (int i = 0; i < count; i++) {
+            mTimestamps[i] = payload.getLong();
+            for (int j = 0; j < 7; j++) {
+                mPoses[i * 7 + j] = payload.getFloat();
+            }
+        }
+        mListener.onPoses(mTimestamps, mPoses, count);
+    }
+
+    private void decodePoints(final ByteBuffer payload) throws IOException {
+        long timestamp = payload.getLong();
+        int count = payload.getInt();
+        if (payload.remaining() != count * LiveStreamProtocol.POINT_RECORD_BYTES) {
+            throw new IOException("decodePoints: Payload does not match the point count");
+        }
+        if (mIds.length < count) {
+            mIds = new int[count];
+            mPoints = new float[count * 4];
+        }
+        for (int i = 0; i < count; i++) {
+            mIds[i] = payload.getInt();
+            for (int j = 0; j < 4; j++) {
+                mPoints[i * 4 + j] = payload.getFloat();
+            }
+        }
+        mListener.onPoints(timestamp, mIds, mPoints, count);
+    }
+
+    private static void readFully(final SocketChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+
+    // getter and setter
+    public long getNumberOfFrames() {
+        return mNumberOfFrames;
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+}
@@ -0,0 +1,99 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import java.util.List;
+
+/**
+ * Rows of a parsed session text file in primitive arrays: an optional int64 timestamp column
+ * followed by a fixed number of float columns per row.
+ */
+public class ParsedTable {
+
+    // properties
+    private final int mValueColumns;
+    private int mNumberOfRows = 0;
+    private long[] mTimestamps;
+    private float[] mValues;
+    private boolean mIsEndOfData = false;
+
+
+    // constructor
+    public ParsedTable(final int valueColumns, final boolean hasTimestamps, final int initialRows) {
+        mValueColumns = valueColumns;
+        mTimestamps = hasTimestamps ? new long[Math.max(1, initialRows)] : null;
+        mValues = new float[Math.max(1, initialRows) * valueColumns];
+    }
+
+
+    // methods
+    public void addRow(final long timestamp, final float[] values) {
+        if (mNumberOfRows * mValueColumns == mValues.length) {
+            grow();
+        }
+        if (mTimestamps != null) {
+            mTimestamps[mNumberOfRows] = timestamp;
+        }
+        System.arraycopy(values, 0, mValues, mNumberOfRows * mValueColumns, mValueColumns);
+        mNumberOfRows++;
+    }
+
+    public void markEndOfData() {
+        mIsEndOfData = true;
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, mNumberOfRows * 2);
+        float[] values = new float[capacity * mValueColumns];
+        System.arraycopy(mValues, 0, values, 0, mNumberOfRows * mValueColumns);
+        mValues = values;
+        if (mTimestamps != null) {
+            long[] timestamps = new long[capacity];
+            System.arraycopy(mTimestamps, 0, timestamps, 0, mNumberOfRows);
+            mTimestamps = timestamps;
+        }
+    }
+
+    public static ParsedTable concat(final List<ParsedTable> parts, final int valueColumns, final boolean hasTimestamps) {
+
+        // copy the chunk results back together in file order, up to the chunk that hit the end of the data
+        int numberOfParts = 0;
+        int numberOfRows = 0;
+        while (numberOfParts < parts.size()) {
+            ParsedTable part = parts.get(numberOfParts++);
+            numberOfRows += part.mNumberOfRows;
+            if (part.mIsEndOfData) {
+                break;
+            }
+        }
+        ParsedTable table = new ParsedTable(valueColumns, hasTimestamps, numberOfRows);
+        for (ParsedTable part : parts.subList(0, numberOfParts)) {
+            System.arraycopy(part.mValues, 0, table.mValues, table.mNumberOfRows * valueColumns, part.mNumberOfRows * valueColumns);
+            if (hasTimestamps) {
+                System.arraycopy(part.mTimestamps, 0, table.mTimestamps, table.mNumberOfRows, part.mNumberOfRows);
+            }
+            table.mNumberOfRows += part.mNumberOfRows;
+        }
+        return table;
+    }
+
+
+    // getter and setter
+    public int getNumberOfRows() {
+        return mNumberOfRows;
+    }
+
+    public int getValueColumns() {
+        return mValueColumns;
+    }
+
+    public long getTimestamp(final int row) {
+        return mTimestamps[row];
+    }
+
+    public float getValue(final int row, final int column) {
+        return mValues[row * mValueColumns + column];
+    }
+
+    public boolean hasTimestamps() {
+        return mTimestamps != null;
+    }
+}
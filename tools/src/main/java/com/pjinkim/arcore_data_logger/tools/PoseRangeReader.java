@@ -0,0 +1,201 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import com.pjinkim.arcore_data_logger.BlockCompressedInputStream;
+import com.pjinkim.arcore_data_logger.SparseTimeIndex;
+import com.pjinkim.arcore_data_logger.SparseTimeIndexReader;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Streams the poses of a time range from a text pose file (plain or block compressed) or a binary
+ * pose file written by {@link SessionExporter}. With a {@link SparseTimeIndex} next to the file,
+ * decoding starts at the last indexed record before the range and stops after it, so the cost is
+ * a binary search plus the poses in the range; without one the file is scanned from the start.
+ */
+public class PoseRangeReader implements Closeable {
+
+    // properties
+    private final InputStream mInputStream;
+    private final boolean mIsBinary;
+    private final long mStartTimestamp;
+    private final long mEndTimestamp;
+    private final boolean mIsIndexed;
+    private final long mStartOffset;
+    private long mBytesRead = 0;
+    private boolean mIsDone = false;
+
+    // current line or binary record
+    private byte[] mRecord = new byte[256];
+    private ByteBuffer mRecordBuffer = ByteBuffer.wrap(mRecord).order(ByteOrder.LITTLE_ENDIAN);
+
+    // current pose
+    private long mTimestamp;
+    private final float[] mValues = new float[7];
+
+
+    // constructor
+    public PoseRangeReader(final File file, final long startTimestamp, final long endTimestamp) throws IOException {
+        mStartTimestamp = startTimestamp;
+        mEndTimestamp = endTimestamp;
+
+        // 1) binary pose files start with their magic, text files with the '#' header line
+        boolean isCompressed = BlockCompressedInputStream.isBlockCompressed(file);
+        mIsBinary = !isCompressed && hasMagic(file, SessionExporter.POSE_MAGIC);
+        long firstRecordOffset = mIsBinary ? SessionExporter.HEADER_BYTES : 0;
+
+        // 2) start at the last indexed record before the range, if the file has an index
+        BlockCompressedInputStream compressedStream = isCompressed ? new BlockCompressedInputStream(file) : null;
+        long length = isCompressed ? compressedStream.getLength() : file.length();
+        File indexFile = SparseTimeIndex.indexFileFor(file);
+        mIsIndexed = indexFile.isFile();
+        mStartOffset = mIsIndexed ? new SparseTimeIndexReader(indexFile).findOffset(startTimestamp, length, firstRecordOffset)
+                : firstRecordOffset;
+
+        // 3) position the stream there
+        if (isCompressed) {
+            compressedStream.seek(mStartOffset);
+            mInputStream = compressedStream;
+        } else {
+            FileInputStream fileInputStream = new FileInputStream(file);
+            fileInputStream.getChannel().position(mStartOffset);
+            mInputStream = new BufferedInputStream(fileInputStream, 1 << 16);
+        }
+    }
+
+
+    // methods
+    private static boolean hasMagic(final File file, final byte[] magic) throws IOException {
+        byte[] bytes = new byte[magic.length];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int length = 0;
+            int count;
+            while ((length < bytes.length) && ((count = inputStream.read(bytes, length, bytes.length - length)) > 0)) {
+                length += count;
+            }
+        }
+        return Arrays.equals(bytes, magic);
+    }
+
+    public boolean next() throws IOException {
+
+        // skip the poses before the range and stop at the first one after it
+        while (!mIsDone && (mIsBinary ? readBinaryRecord() : readTextRecord())) {
+            if (mTimestamp > mEndTimestamp) {
+                mIsDone = true;
+            } else if (mTimestamp >= mStartTimestamp) {
+                return true;
+            }
+        }
+        mIsDone = true;
+        return false;
+    }
+
+    private boolean readBinaryRecord() throws IOException {
+        if (!readFully(SessionExporter.POSE_RECORD_BYTES)) {
+            return false;
+        }
+        mTimestamp = mRecordBuffer.getLong(0);
+        for (int j = 0; j < 7; j++) {
+            mValues[j] = mRecordBuffer.getFloat(8 + j * 4);
+        }
+        return true;
+    }
+
+    private boolean readTextRecord() throws IOException {
+        while (true) {
+
+            // one complete line, a line cut off by a crash or the zeros a power loss can leave end the file
+            int length = 0;
+            int b;
+            while (((b = mInputStream.read()) > 0) && (b != '\n')) {
+                if (length == mRecord.length) {
+                    mRecord = Arrays.copyOf(mRecord, length * 2);
+                    mRecordBuffer = ByteBuffer.wrap(mRecord).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                mRecord[length++] = (byte) b;
+            }
+            if (b <= 0) {
+                return false;
+            }
+            mBytesRead += length + 1;
+
+            // skip the header and malformed lines, otherwise parse the timestamp and 7 values
+            if ((length > 0) && (mRecord[0] != '#') && parseLine(length)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean parseLine(final int length) {
+        int column = -1;
+        int cursor = 0;
+        while (column < 7) {
+            while ((cursor < length) && (mRecord[cursor] == ' ')) {
+                cursor++;
+            }
+            if (cursor >= length) {
+                return false;
+            }
+            int tokenEnd = cursor;
+            while ((tokenEnd < length) && (mRecord[tokenEnd] != ' ')) {
+                tokenEnd++;
+            }
+            if (column < 0) {
+                mTimestamp = ChunkedTextParser.parseLong(mRecordBuffer, cursor, tokenEnd);
+            } else {
+                mValues[column] = ChunkedTextParser.parseFloat(mRecordBuffer, cursor, tokenEnd);
+            }
+            column++;
+            cursor = tokenEnd;
+        }
+        return true;
+    }
+
+    private boolean readFully(final int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = mInputStream.read(mRecord, offset, length - offset);
+            if (count < 0) {
+                return false;
+            }
+            offset += count;
+        }
+        mBytesRead += length;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInputStream.close();
+    }
+
+
+    // getter and setter
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public float getValue(final int column) {
+        return mValues[column];
+    }
+
+    public boolean isIndexed() {
+        return mIsIndexed;
+    }
+
+    public long getStartOffset() {
+        return mStartOffset;
+    }
+
+    public long getBytesRead() {
+        return mBytesRead;
+    }
+}
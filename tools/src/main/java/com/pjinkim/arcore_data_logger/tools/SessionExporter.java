@@ -0,0 +1,198 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import com.pjinkim.arcore_data_logger.AccumulatedPointCloud;
+import com.pjinkim.arcore_data_logger.CharFormatter;
+import com.pjinkim.arcore_data_logger.OctreePointCloudCodec;
+import com.pjinkim.arcore_data_logger.OctreePointCloudReader;
+import com.pjinkim.arcore_data_logger.SparseTimeIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes parsed session tables as compact binary records, as binary PLY or as an octree-coded
+ * point cloud, and octree-coded or recovered point clouds back as PLY or text.
+ *
+ * Binary pose file: magic "ARPB", int32 version, then per pose int64 timestamp (ns) and
+ * float32 qx qy qz qw tx ty tz, all little-endian, 36 bytes per record. A {@link SparseTimeIndex}
+ * is written next to it, as the logger does for its text pose file.
+ * Binary point file: magic "ARPC", int32 version, then per point float32 x y z r g b.
+ */
+public class SessionExporter {
+
+    // properties
+    public static final byte[] POSE_MAGIC = {'A', 'R', 'P', 'B'};
+    public static final byte[] POINT_MAGIC = {'A', 'R', 'P', 'C'};
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+    public static final int POSE_RECORD_BYTES = 8 + 7 * 4;
+
+
+    // methods
+    public static void writeBinaryPoses(final ParsedTable poses, final File file) throws IOException {
+        SparseTimeIndex index = new SparseTimeIndex();
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file), 1 << 20);
+             OutputStream indexStream = new BufferedOutputStream(new FileOutputStream(SparseTimeIndex.indexFileFor(file)))) {
+            writeHeader(outputStream, POSE_MAGIC);
+            indexStream.write(SparseTimeIndex.header());
+            ByteBuffer record = ByteBuffer.allocate(POSE_RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < poses.getNumberOfRows(); i++) {
+                if (index.addRecord(poses.getTimestamp(i), HEADER_BYTES + (long) i * POSE_RECORD_BYTES)) {
+                    indexStream.write(index.getBytes(), 0, index.getLength());
+                    index.clear();
+                }
+                record.clear();
+                record.putLong(poses.getTimestamp(i));
+                for (int j = 0; j < 7; j++) {
+                    record.putFloat(poses.getValue(i, j));
+                }
+                outputStream.write(record.array(), 0, POSE_RECORD_BYTES);
+            }
+        }
+    }
+
+    public static void writeBinaryPoints(final ParsedTable points, final File file) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            writeHeader(outputStream, POINT_MAGIC);
+            ByteBuffer record = ByteBuffer.allocate(6 * 4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < points.getNumberOfRows(); i++) {
+                record.clear();
+                for (int j = 0; j < 6; j++) {
+                    record.putFloat(points.getValue(i, j));
+                }
+                outputStream.write(record.array(), 0, record.capacity());
+            }
+        }
+    }
+
+    public static void writePly(final ParsedTable table, final int positionColumn, final int colorColumn, final File file) throws IOException {
+
+        // positions start at 'positionColumn', colors at 'colorColumn' (or -1 for no colors)
+        boolean hasColors = (colorColumn >= 0);
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            StringBuilder header = new StringBuilder();
+            header.append("ply\nformat binary_little_endian 1.0\n");
+            header.append("comment ARCore Data Logger export\n");
+            header.append("element vertex ").append(table.getNumberOfRows()).append('\n');
+            header.append("property float x\nproperty float y\nproperty float z\n");
+            if (hasColors) {
+                header.append("property uchar red\nproperty uchar green\nproperty uchar blue\n");
+            }
+            header.append("end_header\n");
+            outputStream.write(header.toString().getBytes(StandardCharsets.US_ASCII));
+
+            ByteBuffer record = ByteBuffer.allocate(15).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < table.getNumberOfRows(); i++) {
+                record.clear();
+                record.putFloat(table.getValue(i, positionColumn));
+                record.putFloat(table.getValue(i, positionColumn + 1));
+                record.putFloat(table.getValue(i, positionColumn + 2));
+                if (hasColors) {
+                    for (int j = 0; j < 3; j++) {
+                        record.put((byte) Math.max(0, Math.min(255, Math.round(table.getValue(i, colorColumn + j)))));
+                    }
+                }
+                outputStream.write(record.array(), 0, record.position());
+            }
+        }
+    }
+
+    public static float[] pointArray(final ParsedTable points) {
+
+        // {x, y, z, r, g, b} per point, as the octree codec takes them
+        float[] pointArray = new float[points.getNumberOfRows() * OctreePointCloudCodec.FLOATS_PER_POINT];
+        for (int i = 0; i < points.getNumberOfRows(); i++) {
+            for (int j = 0; j < OctreePointCloudCodec.FLOATS_PER_POINT; j++) {
+                pointArray[i * OctreePointCloudCodec.FLOATS_PER_POINT + j] = points.getValue(i, j);
+            }
+        }
+        return pointArray;
+    }
+
+    public static long writeOctree(final ParsedTable points, final OctreePointCloudCodec codec, final File file) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            return codec.encode(pointArray(points), points.getNumberOfRows(), outputStream);
+        }
+    }
+
+    public static void writePly(final OctreePointCloudReader reader, final File file) throws IOException {
+
+        // streams the decoded subtrees straight into the PLY body
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            String header = "ply\nformat binary_little_endian 1.0\n"
+                    + "comment ARCore Data Logger export\n"
+                    + "element vertex " + reader.getNumberOfPoints() + "\n"
+                    + "property float x\nproperty float y\nproperty float z\n"
+                    + "property uchar red\nproperty uchar green\nproperty uchar blue\n"
+                    + "end_header\n";
+            outputStream.write(header.getBytes(StandardCharsets.US_ASCII));
+
+            ByteBuffer record = ByteBuffer.allocate(15).order(ByteOrder.LITTLE_ENDIAN);
+            float[] point = new float[OctreePointCloudCodec.FLOATS_PER_POINT];
+            while (reader.next()) {
+                reader.getPoint(point);
+                record.clear();
+                record.putFloat(point[0]).putFloat(point[1]).putFloat(point[2]);
+                record.put((byte) point[3]).put((byte) point[4]).put((byte) point[5]);
+                outputStream.write(record.array(), 0, record.position());
+            }
+        }
+    }
+
+    public static void writeText(final OctreePointCloudReader reader, final File file) throws IOException {
+
+        // the logger's 'x y z r g b' point cloud lines
+        try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 20)) {
+            writer.write("# Decoded from an octree point cloud with " + reader.getLeafSize() + " m leaves \n");
+            CharFormatter line = new CharFormatter(192);
+            float[] point = new float[OctreePointCloudCodec.FLOATS_PER_POINT];
+            while (reader.next()) {
+                reader.getPoint(point);
+                writePointLine(writer, line, point);
+            }
+        }
+    }
+
+    public static void writeText(final AccumulatedPointCloud cloud, final String comment, final File file) throws IOException {
+
+        // the same lines, in the order the points were first seen
+        try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 20)) {
+            writer.write("# " + comment + " \n");
+            CharFormatter line = new CharFormatter(192);
+            float[] point = new float[6];
+            for (int i = 0; i < cloud.getNumberOfFeatures(); i++) {
+                cloud.getPoint(i, point);
+                writePointLine(writer, line, point);
+            }
+        }
+    }
+
+    private static void writePointLine(final Writer writer, final CharFormatter line, final float[] point) throws IOException {
+        line.reset();
+        for (int j = 0; j < 3; j++) {
+            line.appendFixed(point[j], 6).append(' ');
+        }
+        for (int j = 3; j < 6; j++) {
+            line.appendFixed(point[j], 2).append(' ');
+        }
+        line.append('\n');
+        writer.write(line.getChars(), 0, line.length());
+    }
+
+    private static void writeHeader(final OutputStream outputStream, final byte[] magic) throws IOException {
+        outputStream.write(magic);
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeInt(Integer.reverseBytes(FORMAT_VERSION));
+        dataOutputStream.flush();
+    }
+}
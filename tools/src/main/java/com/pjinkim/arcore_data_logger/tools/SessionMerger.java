@@ -0,0 +1,529 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import com.pjinkim.arcore_data_logger.BlockCompressedInputStream;
+import com.pjinkim.arcore_data_logger.CameraMetadataLog;
+import com.pjinkim.arcore_data_logger.CameraMetadataReader;
+import com.pjinkim.arcore_data_logger.CharFormatter;
+import com.pjinkim.arcore_data_logger.PlaneChangeLog;
+import com.pjinkim.arcore_data_logger.PlaneLogReader;
+import com.pjinkim.arcore_data_logger.PointObservationReader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming k-way merge of the time-stamped channels of a session into one time-ordered record
+ * stream.
+ *
+ * Every channel is read one record at a time through a fixed buffer, and a {@link TimestampHeap}
+ * holds the next timestamp of each channel, so memory stays constant however long the session
+ * is. Records with equal timestamps come out in channel order. The merged text lines are
+ * {@code timestamp channel fields \n}, where the fields are those of the channel's own line
+ * without the timestamp, or the decoded fields of a binary record. Camera frame records are left
+ * out, as the sensor pose channel already has a line per frame.
+ *
+ * A channel whose own records go back in time cannot be merged in order; such records are still
+ * written where the merge meets them, and counted.
+ */
+public class SessionMerger implements Closeable {
+
+    // properties
+    public static final String MERGED_FILE_NAME = "ARCore_merged.txt";
+    private static final int LINE_CAPACITY = 4096;
+
+    private final Channel[] mChannels;
+    private final TimestampHeap mHeap;
+    private final long[] mNumberOfRecords;
+    private int mChannel = -1;
+    private long mTimestamp = Long.MIN_VALUE;
+    private long mNumberOfOutOfOrder = 0;
+
+
+    // constructor
+    public SessionMerger(final List<Channel> channels) throws IOException {
+        mChannels = channels.toArray(new Channel[0]);
+        mHeap = new TimestampHeap(mChannels.length);
+        mNumberOfRecords = new long[mChannels.length];
+
+        // every channel starts on its first record
+        for (int i = 0; i < mChannels.length; i++) {
+            if (mChannels[i].next()) {
+                mHeap.add(mChannels[i].getTimestamp(), i);
+            }
+        }
+    }
+
+
+    // methods
+    public static SessionMerger open(final File folder) throws IOException {
+
+        // the channels this logger writes, as far as they were recorded in this session
+        List<Channel> channels = new ArrayList<>();
+        try {
+            addTextChannel(channels, folder, "ARCore_sensor_pose", 0);
+            addTextChannel(channels, folder, "ARCore_keyframes", 1);
+            addTextChannel(channels, folder, "ARCore_tracking_segments", 0);
+            addTextChannel(channels, folder, "ARCore_memory_events", 0);
+            File file = new File(folder, "ARCore_camera_metadata.bin");
+            if (file.exists()) {
+                channels.add(new CameraMetadataChannel(file));
+            }
+            file = new File(folder, "ARCore_planes.bin");
+            if (file.exists()) {
+                channels.add(new PlaneChannel(file));
+            }
+            file = new File(folder, "ARCore_point_observations.bin");
+            if (file.exists()) {
+                channels.add(new PointObservationChannel(file));
+            }
+            if (channels.isEmpty()) {
+                throw new IOException("open: No recorded channels in " + folder);
+            }
+            return new SessionMerger(channels);
+        } catch (IOException e) {
+            for (Channel channel : channels) {
+                channel.close();
+            }
+            throw e;
+        }
+    }
+
+    private static void addTextChannel(final List<Channel> channels, final File folder, final String name, final int timestampColumn) throws IOException {
+        File file = SessionProcessor.sessionFile(folder, name + ".txt");
+        if (file.exists()) {
+            channels.add(new TextChannel(name, file, timestampColumn));
+        }
+    }
+
+    public boolean next() throws IOException {
+
+        // 1) the channel of the previous record moves on, or leaves the merge once it is done
+        if (mChannel >= 0) {
+            Channel channel = mChannels[mChannel];
+            if (channel.next()) {
+                mHeap.replaceTop(channel.getTimestamp());
+            } else {
+                mHeap.removeTop();
+            }
+        }
+        if (mHeap.isEmpty()) {
+            mChannel = -1;
+            return false;
+        }
+
+        // 2) the earliest next record of all channels
+        long timestamp = mHeap.peekTimestamp();
+        if (timestamp < mTimestamp) {
+            mNumberOfOutOfOrder++;
+        }
+        mTimestamp = timestamp;
+        mChannel = mHeap.peekChannel();
+        mNumberOfRecords[mChannel]++;
+        return true;
+    }
+
+    public long merge(final Writer writer) throws IOException {
+
+        // one reused line for every record
+        CharFormatter line = new CharFormatter(LINE_CAPACITY);
+        long numberOfRecords = 0;
+        while (next()) {
+            Channel channel = mChannels[mChannel];
+            line.reset().appendLong(mTimestamp, 1).append(' ').append(channel.getName());
+            channel.appendFields(line);
+            line.append(" \n");
+            writer.write(line.getChars(), 0, line.length());
+            numberOfRecords++;
+        }
+        return numberOfRecords;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (Channel channel : mChannels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                exception = (exception == null) ? e : exception;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+
+    // getter and setter
+    public int getNumberOfChannels() {
+        return mChannels.length;
+    }
+
+    public Channel getChannel(final int channel) {
+        return mChannels[channel];
+    }
+
+    public Channel getChannel() {
+        return mChannels[mChannel];
+    }
+
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public long getNumberOfRecords(final int channel) {
+        return mNumberOfRecords[channel];
+    }
+
+    public long getNumberOfOutOfOrder() {
+        return mNumberOfOutOfOrder;
+    }
+
+
+    // definition of 'Channel' interface
+    public interface Channel extends Closeable {
+        String getName();
+
+        boolean next() throws IOException;
+
+        long getTimestamp();
+
+        // the fields of the current record after its timestamp, each after a space
+        void appendFields(CharFormatter line);
+    }
+
+
+    // definition of 'TextChannel' class
+    public static class TextChannel implements Channel {
+
+        // properties
+        private final String mName;
+        private final InputStream mInputStream;
+        private final int mTimestampColumn;
+        private final byte[] mBuffer = new byte[1 << 16];
+        private int mPosition = 0;
+        private int mLimit = 0;
+        private boolean mIsEndOfData = false;
+
+        // current line, which only grows to the longest line of the file
+        private byte[] mLine = new byte[256];
+        private int mLineLength = 0;
+        private long mTimestamp = 0;
+        private long mNumberOfSkipped = 0;
+
+
+        // constructor
+        public TextChannel(final String name, final File file, final int timestampColumn) throws IOException {
+            mName = name;
+            mInputStream = BlockCompressedInputStream.open(file);
+            mTimestampColumn = timestampColumn;
+        }
+
+
+        // methods
+        @Override
+        public boolean next() throws IOException {
+
+            // comments and lines without a timestamp, like one cut off by a crash, are skipped
+            while (readLine()) {
+                if ((mLineLength == 0) || (mLine[0] == '#')) {
+                    continue;
+                }
+                if (parseTimestamp()) {
+                    return true;
+                }
+                mNumberOfSkipped++;
+            }
+            return false;
+        }
+
+        private boolean readLine() throws IOException {
+
+            // only complete lines count, an unterminated last line is dropped, and so is the line
+            // before the first NUL byte, where the zeros a file system can leave after a power loss start
+            mLineLength = 0;
+            while (!mIsEndOfData) {
+                if (mPosition == mLimit) {
+                    mLimit = Math.max(0, mInputStream.read(mBuffer, 0, mBuffer.length));
+                    mPosition = 0;
+                    mIsEndOfData = (mLimit == 0);
+                    continue;
+                }
+                byte value = mBuffer[mPosition++];
+                if (value == '\n') {
+                    return true;
+                }
+                if (value == 0) {
+                    mIsEndOfData = true;
+                    continue;
+                }
+                if (mLineLength == mLine.length) {
+                    mLine = Arrays.copyOf(mLine, mLine.length * 2);
+                }
+                mLine[mLineLength++] = value;
+            }
+            if (mLineLength > 0) {
+                mNumberOfSkipped++;
+                mLineLength = 0;
+            }
+            return false;
+        }
+
+        private boolean parseTimestamp() {
+            int column = 0;
+            int position = 0;
+            while (true) {
+                while ((position < mLineLength) && isSeparator(mLine[position])) {
+                    position++;
+                }
+                if (position == mLineLength) {
+                    return false;
+                }
+                int end = position;
+                while ((end < mLineLength) && !isSeparator(mLine[end])) {
+                    end++;
+                }
+                if (column == mTimestampColumn) {
+                    return parseLong(position, end);
+                }
+                column++;
+                position = end;
+            }
+        }
+
+        private boolean parseLong(final int start, final int end) {
+            boolean isNegative = (mLine[start] == '-');
+            int first = isNegative ? start + 1 : start;
+            if ((first == end) || (end - first > 18)) {
+                return false;
+            }
+            long value = 0;
+            for (int i = first; i < end; i++) {
+                int digit = mLine[i] - '0';
+                if ((digit < 0) || (digit > 9)) {
+                    return false;
+                }
+                value = value * 10 + digit;
+            }
+            mTimestamp = isNegative ? -value : value;
+            return true;
+        }
+
+        private static boolean isSeparator(final byte value) {
+            return (value == ' ') || (value == '\t') || (value == ',') || (value == '\r');
+        }
+
+        @Override
+        public void appendFields(final CharFormatter line) {
+
+            // every column but the timestamp, single spaced
+            int column = 0;
+            int position = 0;
+            while (position < mLineLength) {
+                while ((position < mLineLength) && isSeparator(mLine[position])) {
+                    position++;
+                }
+                int end = position;
+                while ((end < mLineLength) && !isSeparator(mLine[end])) {
+                    end++;
+                }
+                if ((end > position) && (column != mTimestampColumn)) {
+                    line.append(' ');
+                    for (int i = position; i < end; i++) {
+                        line.append((char) mLine[i]);
+                    }
+                }
+                if (end > position) {
+                    column++;
+                }
+                position = end;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            mInputStream.close();
+        }
+
+
+        // getter and setter
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        public long getNumberOfSkipped() {
+            return mNumberOfSkipped;
+        }
+    }
+
+
+    // definition of 'CameraMetadataChannel' class
+    public static class CameraMetadataChannel implements Channel {
+
+        // properties
+        private final CameraMetadataReader mReader;
+
+
+        // constructor
+        public CameraMetadataChannel(final File file) throws IOException {
+            mReader = new CameraMetadataReader(file);
+        }
+
+
+        // methods
+        @Override
+        public boolean next() throws IOException {
+
+            // tracking transitions and intrinsics changes only
+            while (mReader.next()) {
+                if (mReader.getKind() != CameraMetadataLog.RECORD_FRAME) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void appendFields(final CharFormatter line) {
+            if (mReader.getKind() == CameraMetadataLog.RECORD_TRACKING) {
+                line.append(" tracking ").appendLong(mReader.getTrackingState(), 1);
+                line.append(' ').appendLong(mReader.getFailureReason(), 1);
+                line.append(' ').appendLong(mReader.getCameraTimestamp(), 1);
+            } else {
+                line.append(" intrinsics");
+                for (int i = 0; i < 4; i++) {
+                    line.append(' ').appendFixed(mReader.getIntrinsic(i), 3);
+                }
+                line.append(' ').appendLong(mReader.getImageWidth(), 1);
+                line.append(' ').appendLong(mReader.getImageHeight(), 1);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            mReader.close();
+        }
+
+
+        // getter and setter
+        @Override
+        public String getName() {
+            return "ARCore_camera_metadata";
+        }
+
+        @Override
+        public long getTimestamp() {
+            return mReader.getTimestamp();
+        }
+    }
+
+
+    // definition of 'PlaneChannel' class
+    public static class PlaneChannel implements Channel {
+
+        // properties
+        private final PlaneLogReader mReader;
+
+
+        // constructor
+        public PlaneChannel(final File file) throws IOException {
+            mReader = new PlaneLogReader(file);
+        }
+
+
+        // methods
+        @Override
+        public boolean next() throws IOException {
+            return mReader.next();
+        }
+
+        @Override
+        public void appendFields(final CharFormatter line) {
+            if (mReader.getKind() == PlaneChangeLog.RECORD_UPDATE) {
+                line.append(" update ").appendLong(mReader.getPlaneId(), 1).append(' ').appendLong(mReader.getType(), 1);
+                for (int i = 4; i < 7; i++) {
+                    line.append(' ').appendFixed(mReader.getPose(i), 6);
+                }
+                line.append(' ').appendFixed(mReader.getExtentX(), 6).append(' ').appendFixed(mReader.getExtentZ(), 6);
+            } else if (mReader.getKind() == PlaneChangeLog.RECORD_SUBSUMED) {
+                line.append(" subsumed ").appendLong(mReader.getPlaneId(), 1).append(' ').appendLong(mReader.getSubsumingPlaneId(), 1);
+            } else {
+                line.append(" stopped ").appendLong(mReader.getPlaneId(), 1);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            mReader.close();
+        }
+
+
+        // getter and setter
+        @Override
+        public String getName() {
+            return "ARCore_planes";
+        }
+
+        @Override
+        public long getTimestamp() {
+            return mReader.getTimestamp();
+        }
+    }
+
+
+    // definition of 'PointObservationChannel' class
+    public static class PointObservationChannel implements Channel {
+
+        // properties
+        private final PointObservationReader mReader;
+
+
+        // constructor
+        public PointObservationChannel(final File file) throws IOException {
+            mReader = new PointObservationReader(file);
+        }
+
+
+        // methods
+        @Override
+        public boolean next() throws IOException {
+            return mReader.next();
+        }
+
+        @Override
+        public void appendFields(final CharFormatter line) {
+
+            // the size of the frame's observations, the points themselves stay in their own file
+            line.append(' ').appendLong(mReader.getNumberOfPoints(), 1);
+        }
+
+        @Override
+        public void close() throws IOException {
+            mReader.close();
+        }
+
+
+        // getter and setter
+        @Override
+        public String getName() {
+            return "ARCore_point_observations";
+        }
+
+        @Override
+        public long getTimestamp() {
+            return mReader.getTimestamp();
+        }
+    }
+}
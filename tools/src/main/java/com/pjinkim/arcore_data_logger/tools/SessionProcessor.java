@@ -0,0 +1,572 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import com.pjinkim.arcore_data_logger.AccumulatedPointCloud;
+import com.pjinkim.arcore_data_logger.BlockCompressedWriter;
+import com.pjinkim.arcore_data_logger.CameraMetadataLog;
+import com.pjinkim.arcore_data_logger.CameraMetadataReader;
+import com.pjinkim.arcore_data_logger.CharFormatter;
+import com.pjinkim.arcore_data_logger.DeflateBlockCodec;
+import com.pjinkim.arcore_data_logger.OctreePointCloudCodec;
+import com.pjinkim.arcore_data_logger.OctreePointCloudReader;
+import com.pjinkim.arcore_data_logger.PlaneChangeLog;
+import com.pjinkim.arcore_data_logger.PlaneLogReader;
+import com.pjinkim.arcore_data_logger.PointCloudCheckpoint;
+import com.pjinkim.arcore_data_logger.PointCloudCheckpointReader;
+import com.pjinkim.arcore_data_logger.PointObservationLog;
+import com.pjinkim.arcore_data_logger.PointObservationReader;
+import com.pjinkim.arcore_data_logger.TrackingSegment;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Command-line processor for recorded sessions.
+ *
+ * <pre>
+ *   stats   &lt;session folder | ARCore_sensor_pose.txt&gt;
+ *   convert &lt;input .txt&gt; &lt;output .bin | .ply | .oct&gt;
+ *   convert &lt;input .oct&gt; &lt;output .ply | .txt&gt;
+ *   bench   &lt;input .txt&gt; [repeats]
+ *   bench   --synthetic &lt;number of poses&gt; [repeats]
+ *   receive &lt;port&gt;
+ *   planes  &lt;ARCore_planes.bin&gt;
+ *   tracking &lt;session folder&gt;
+ *   observations &lt;ARCore_point_observations.bin&gt;
+ *   range   &lt;ARCore_sensor_pose.txt | pose .bin&gt; &lt;start ns&gt; &lt;end ns&gt;
+ *   octree  &lt;ARCore_point_cloud.txt&gt; [leaf mm] [repeats]
+ *   recover &lt;session folder&gt;
+ *   merge   &lt;session folder&gt; [output .txt]
+ *   merge   --synthetic &lt;hours&gt; [repeats]
+ * </pre>
+ */
+public class SessionProcessor {
+
+    // properties
+    public static final String POSE_FILE_NAME = "ARCore_sensor_pose.txt";
+    public static final String POINT_FILE_NAME = "ARCore_point_cloud.txt";
+    public static final String RECOVERED_POINT_FILE_NAME = "ARCore_point_cloud_recovered.txt";
+    private static final int POSE_COLUMNS = 8;
+    private static final int POINT_COLUMNS = 6;
+    private static final float OCTREE_LEAF_SIZE = 0.001f;
+    private static final int OCTREE_DEFLATE_LEVEL = 9;
+
+
+    // methods
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            printUsage();
+            System.exit(1);
+        }
+        switch (args[0]) {
+            case "stats":
+                stats(new File(args[1]));
+                break;
+            case "convert":
+                if (args.length < 3) {
+                    printUsage();
+                    System.exit(1);
+                }
+                convert(new File(args[1]), new File(args[2]));
+                break;
+            case "bench":
+                bench(args);
+                break;
+            case "receive":
+                receive(Integer.parseInt(args[1]));
+                break;
+            case "planes":
+                planes(new File(args[1]));
+                break;
+            case "tracking":
+                tracking(new File(args[1]));
+                break;
+            case "observations":
+                observations(new File(args[1]));
+                break;
+            case "range":
+                if (args.length < 4) {
+                    printUsage();
+                    System.exit(1);
+                }
+                range(new File(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]));
+                break;
+            case "octree":
+                octree(args);
+                break;
+            case "recover":
+                recover(new File(args[1]));
+                break;
+            case "merge":
+                merge(args);
+                break;
+            default:
+                printUsage();
+                System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("usage: tools stats <session folder | " + POSE_FILE_NAME + ">");
+        System.err.println("       tools convert <input .txt> <output .bin | .ply | .oct>");
+        System.err.println("       tools convert <input .oct> <output .ply | .txt>");
+        System.err.println("       tools bench <input .txt> [repeats]");
+        System.err.println("       tools bench --synthetic <number of poses> [repeats]");
+        System.err.println("       tools receive <port>");
+        System.err.println("       tools planes <ARCore_planes.bin>");
+        System.err.println("       tools tracking <session folder>");
+        System.err.println("       tools observations <ARCore_point_observations.bin>");
+        System.err.println("       tools range <" + POSE_FILE_NAME + " | pose .bin> <start ns> <end ns>");
+        System.err.println("       tools octree <" + POINT_FILE_NAME + "> [leaf mm] [repeats]");
+        System.err.println("       tools recover <session folder>");
+        System.err.println("       tools merge <session folder> [output .txt]");
+        System.err.println("       tools merge --synthetic <hours> [repeats]");
+    }
+
+    public static ParsedTable parse(final File file) throws IOException {
+
+        // pose files have a timestamp and 7 values per line, point files 6 values
+        int columns = ChunkedTextParser.detectColumns(file);
+        if (columns == POSE_COLUMNS) {
+            return new ChunkedTextParser(7, true).parse(file);
+        } else if (columns == POINT_COLUMNS) {
+            return new ChunkedTextParser(6, false).parse(file);
+        }
+        throw new IOException("parse: Unknown file layout with " + columns + " columns: " + file);
+    }
+
+    private static void stats(final File input) throws IOException {
+        File poseFile = input.isDirectory() ? sessionFile(input, POSE_FILE_NAME) : input;
+        long startTime = System.nanoTime();
+        ParsedTable poses = parse(poseFile);
+        long parseTime = System.nanoTime() - startTime;
+        if (!poses.hasTimestamps()) {
+            throw new IOException("stats: Not a pose file: " + poseFile);
+        }
+        System.out.println(new TrajectoryStatistics(poses));
+        System.out.println(String.format(Locale.US, "parsed %.1f MB in %.1f ms", poseFile.length() / 1e6, parseTime / 1e6));
+    }
+
+    static File sessionFile(final File folder, final String fileName) {
+
+        // text files recorded with compression carry the block file suffix
+        File file = new File(folder, fileName);
+        File compressedFile = new File(folder, fileName + BlockCompressedWriter.FILE_SUFFIX);
+        return (!file.exists() && compressedFile.exists()) ? compressedFile : file;
+    }
+
+    private static void convert(final File input, final File output) throws IOException {
+        String name = output.getName().toLowerCase(Locale.US);
+        if (input.getName().toLowerCase(Locale.US).endsWith(OctreePointCloudCodec.FILE_SUFFIX)) {
+            convertOctree(input, output);
+            return;
+        }
+        ParsedTable table = parse(input);
+        if (name.endsWith(OctreePointCloudCodec.FILE_SUFFIX)) {
+            if (table.hasTimestamps()) {
+                throw new IOException("convert: Only point clouds can be octree coded: " + input);
+            }
+            OctreePointCloudCodec codec = new OctreePointCloudCodec(OCTREE_LEAF_SIZE, new DeflateBlockCodec(OCTREE_DEFLATE_LEVEL));
+            SessionExporter.writeOctree(table, codec, output);
+        } else if (name.endsWith(".ply")) {
+            if (table.hasTimestamps()) {
+                SessionExporter.writePly(table, 4, -1, output);
+            } else {
+                SessionExporter.writePly(table, 0, 3, output);
+            }
+        } else if (name.endsWith(".bin")) {
+            if (table.hasTimestamps()) {
+                SessionExporter.writeBinaryPoses(table, output);
+            } else {
+                SessionExporter.writeBinaryPoints(table, output);
+            }
+        } else {
+            throw new IOException("convert: Output must end with .bin, .ply or .oct: " + output);
+        }
+        System.out.println(String.format(Locale.US, "wrote %d records to %s", table.getNumberOfRows(), output));
+    }
+
+    private static void convertOctree(final File input, final File output) throws IOException {
+
+        // decode subtree by subtree into the output, without holding the whole cloud
+        String name = output.getName().toLowerCase(Locale.US);
+        try (OctreePointCloudReader reader = OctreePointCloudReader.open(input)) {
+            if (name.endsWith(".ply")) {
+                SessionExporter.writePly(reader, output);
+            } else if (name.endsWith(".txt")) {
+                SessionExporter.writeText(reader, output);
+            } else {
+                throw new IOException("convert: Octree output must end with .ply or .txt: " + output);
+            }
+            System.out.println(String.format(Locale.US, "wrote %d records to %s", reader.getNumberOfPoints(), output));
+        }
+    }
+
+    private static void bench(final String[] args) throws IOException {
+
+        // parse a real file, or a synthetic pose file of the requested size
+        File file;
+        int repeats;
+        boolean isSynthetic = args[1].equals("--synthetic");
+        if (isSynthetic) {
+            file = File.createTempFile("synthetic_pose", ".txt");
+            file.deleteOnExit();
+            writeSyntheticPoses(file, Integer.parseInt(args[2]));
+            repeats = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+        } else {
+            file = new File(args[1]);
+            repeats = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+        }
+
+        double megabytes = file.length() / 1e6;
+        for (int i = 0; i < repeats; i++) {
+            long startTime = System.nanoTime();
+            ParsedTable table = parse(file);
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.println(String.format(Locale.US, "run %d: %d rows, %.1f MB in %.3f s = %.1f MB/s (%d cores)",
+                    i, table.getNumberOfRows(), megabytes, seconds, megabytes / seconds, Runtime.getRuntime().availableProcessors()));
+        }
+        if (isSynthetic) {
+            file.delete();
+        }
+    }
+
+    private static void receive(final int port) throws IOException {
+
+        // print one line per pose batch and per point cloud from a live logger
+        LiveStreamReceiver receiver = new LiveStreamReceiver(new LiveStreamReceiver.Listener() {
+            @Override
+            public void onPoses(long[] timestamps, float[] poses, int count) {
+                int last = (count - 1) * 7;
+                System.out.println(String.format(Locale.US, "poses: %d, last %d t = (%.3f, %.3f, %.3f)",
+                        count, timestamps[count - 1], poses[last + 4], poses[last + 5], poses[last + 6]));
+            }
+
+            @Override
+            public void onPoints(long timestamp, int[] ids, float[] points, int count) {
+                System.out.println(String.format(Locale.US, "points: %d at %d", count, timestamp));
+            }
+        });
+        System.out.println("listening on port " + port);
+        receiver.serve(LiveStreamReceiver.bind(port));
+    }
+
+    private static void planes(final File file) throws IOException {
+
+        // replay the change log and print the final state of every plane
+        TreeMap<Integer, String> planes = new TreeMap<>();
+        long numberOfRecords = 0;
+        try (PlaneLogReader reader = new PlaneLogReader(file)) {
+            while (reader.next()) {
+                numberOfRecords++;
+                int planeId = reader.getPlaneId();
+                if (reader.getKind() == PlaneChangeLog.RECORD_UPDATE) {
+                    planes.put(planeId, String.format(Locale.US, "plane %d: type %d, center (%.3f, %.3f, %.3f), extents %.2f x %.2f m, %d vertices",
+                            planeId, reader.getType(), reader.getPose(4), reader.getPose(5), reader.getPose(6),
+                            reader.getExtentX(), reader.getExtentZ(), reader.getNumberOfVertices()));
+                } else if (reader.getKind() == PlaneChangeLog.RECORD_SUBSUMED) {
+                    planes.put(planeId, String.format(Locale.US, "plane %d: merged into plane %d", planeId, reader.getSubsumingPlaneId()));
+                } else {
+                    planes.put(planeId, String.format(Locale.US, "plane %d: stopped", planeId));
+                }
+            }
+        }
+        for (String plane : planes.values()) {
+            System.out.println(plane);
+        }
+        System.out.println(String.format(Locale.US, "%d planes from %d change records", planes.size(), numberOfRecords));
+    }
+
+    private static void tracking(final File folder) throws IOException {
+
+        // list the tracking segments and total the time spent in each state
+        List<TrackingSegment> segments = CameraMetadataReader.readSegments(new File(folder, "ARCore_tracking_segments.txt"));
+        TreeMap<String, Long> durations = new TreeMap<>();
+        TrackingSegment longestSegment = null;
+        for (TrackingSegment segment : segments) {
+            System.out.println(String.format(Locale.US, "%.3f s - %.3f s: %s (%s), %d frames",
+                    segment.getStartTimestamp() / 1e9, segment.getEndTimestamp() / 1e9,
+                    segment.getTrackingState(), segment.getTrackingFailureReason(), segment.getNumberOfFrames()));
+            Long duration = durations.get(segment.getTrackingState());
+            durations.put(segment.getTrackingState(), ((duration == null) ? 0 : duration) + segment.getDurationNanos());
+            if (segment.getTrackingState().equals("TRACKING")
+                    && ((longestSegment == null) || (segment.getDurationNanos() > longestSegment.getDurationNanos()))) {
+                longestSegment = segment;
+            }
+        }
+        for (String trackingState : durations.keySet()) {
+            System.out.println(String.format(Locale.US, "%s: %.1f s", trackingState, durations.get(trackingState) / 1e9));
+        }
+        if (longestSegment == null) {
+            return;
+        }
+
+        // seek straight to the longest tracked span and decode only its frames
+        long numberOfFrames = 0;
+        long firstTimestamp = 0;
+        long lastTimestamp = 0;
+        try (CameraMetadataReader reader = new CameraMetadataReader(new File(folder, "ARCore_camera_metadata.bin"))) {
+            reader.seek(longestSegment.getByteOffset());
+            while (reader.next() && (numberOfFrames < longestSegment.getNumberOfFrames())) {
+                if (reader.getKind() != CameraMetadataLog.RECORD_FRAME) {
+                    continue;
+                }
+                if (numberOfFrames == 0) {
+                    firstTimestamp = reader.getTimestamp();
+                }
+                lastTimestamp = reader.getTimestamp();
+                numberOfFrames++;
+            }
+            System.out.println(String.format(Locale.US, "longest tracked span: %d frames over %.3f s, fx %.1f, %d x %d image",
+                    numberOfFrames, (lastTimestamp - firstTimestamp) / 1e9, reader.getIntrinsic(0),
+                    reader.getImageWidth(), reader.getImageHeight()));
+        }
+    }
+
+    private static void observations(final File file) throws IOException {
+
+        // stream every frame and report the size against raw ID, position and confidence records
+        long numberOfFrames = 0;
+        long numberOfObservations = 0;
+        long firstTimestamp = 0;
+        long lastTimestamp = 0;
+        try (PointObservationReader reader = new PointObservationReader(file)) {
+            while (reader.next()) {
+                if (numberOfFrames == 0) {
+                    firstTimestamp = reader.getTimestamp();
+                }
+                lastTimestamp = reader.getTimestamp();
+                numberOfFrames++;
+                numberOfObservations += reader.getNumberOfPoints();
+            }
+        }
+        double minutes = (lastTimestamp - firstTimestamp) / 60e9;
+        System.out.println(String.format(Locale.US, "%d frames, %d observations over %.1f s", numberOfFrames, numberOfObservations, minutes * 60));
+        System.out.println(String.format(Locale.US, "%.2f MB, %.2f bytes per observation (raw %d), %.2f MB per minute",
+                file.length() / 1e6, (double) file.length() / Math.max(1, numberOfObservations),
+                PointObservationLog.RAW_POINT_BYTES, (minutes > 0) ? file.length() / 1e6 / minutes : 0));
+    }
+
+    private static void recover(final File folder) throws IOException {
+
+        // replay the checkpoints up to the last complete one, next to and never over a saved point cloud
+        File file = new File(folder, PointCloudCheckpoint.FILE_NAME);
+        File output = new File(folder, RECOVERED_POINT_FILE_NAME);
+        AccumulatedPointCloud cloud = new AccumulatedPointCloud();
+        try (PointCloudCheckpointReader reader = new PointCloudCheckpointReader(file)) {
+            int numberOfSegments = reader.replay(cloud);
+            SessionExporter.writeText(cloud, "Recovered from " + numberOfSegments + " point cloud checkpoints", output);
+            System.out.println(String.format(Locale.US, "%d checkpoints up to %.3f s, %s", numberOfSegments,
+                    reader.getTimestamp() / 1e9, reader.isTruncated() ? "torn last checkpoint dropped" : "no torn checkpoint"));
+        }
+        System.out.println(String.format(Locale.US, "wrote %d points to %s", cloud.getNumberOfFeatures(), output));
+    }
+
+    private static void merge(final String[] args) throws IOException {
+
+        // merge a recorded session, or time the merge of a synthetic session of the requested length
+        if (args[1].equals("--synthetic")) {
+            if (args.length < 3) {
+                printUsage();
+                System.exit(1);
+            }
+            benchMerge(Double.parseDouble(args[2]), (args.length > 3) ? Integer.parseInt(args[3]) : 3);
+            return;
+        }
+        File folder = new File(args[1]);
+        File output = (args.length > 2) ? new File(args[2]) : new File(folder, SessionMerger.MERGED_FILE_NAME);
+        long startTime = System.nanoTime();
+        try (SessionMerger merger = SessionMerger.open(folder);
+             Writer writer = new BufferedWriter(new FileWriter(output), 1 << 20)) {
+            long numberOfRecords = merger.merge(writer);
+            for (int i = 0; i < merger.getNumberOfChannels(); i++) {
+                System.out.println(String.format(Locale.US, "%s: %d records", merger.getChannel(i).getName(), merger.getNumberOfRecords(i)));
+            }
+            System.out.println(String.format(Locale.US, "wrote %d records to %s in %.3f s, %d out of order",
+                    numberOfRecords, output, (System.nanoTime() - startTime) / 1e9, merger.getNumberOfOutOfOrder()));
+        }
+    }
+
+    private static void benchMerge(final double hours, final int repeats) throws IOException {
+        File folder = Files.createTempDirectory("synthetic_session").toFile();
+        File output = new File(folder, SessionMerger.MERGED_FILE_NAME);
+        try {
+            writeSyntheticSession(folder, hours);
+            long inputBytes = 0;
+            for (File file : folder.listFiles()) {
+                inputBytes += file.length();
+            }
+            for (int i = 0; i < repeats; i++) {
+                long startTime = System.nanoTime();
+                long numberOfRecords;
+                try (SessionMerger merger = SessionMerger.open(folder);
+                     Writer writer = new BufferedWriter(new FileWriter(output), 1 << 20)) {
+                    numberOfRecords = merger.merge(writer);
+                }
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+                Runtime runtime = Runtime.getRuntime();
+                System.out.println(String.format(Locale.US, "run %d: %d records, %.1f MB in, %.1f MB out in %.3f s = %.2f M records/s, %.1f MB/s, heap %.1f MB",
+                        i, numberOfRecords, inputBytes / 1e6, output.length() / 1e6, seconds, numberOfRecords / seconds / 1e6,
+                        inputBytes / seconds / 1e6, (runtime.totalMemory() - runtime.freeMemory()) / 1e6));
+            }
+        } finally {
+            for (File file : folder.listFiles()) {
+                file.delete();
+            }
+            folder.delete();
+        }
+    }
+
+    static void writeSyntheticSession(final File folder, final double hours) throws IOException {
+
+        // 30 Hz poses and point observations, a keyframe every second, a tracking segment every ten minutes and a memory event every hour
+        int numberOfFrames = (int) (hours * 3600 * 30);
+        writeSyntheticPoses(new File(folder, POSE_FILE_NAME), numberOfFrames);
+        Random random = new Random(13);
+        PointObservationLog observationLog = new PointObservationLog(0.001f);
+        IntBuffer ids = IntBuffer.allocate(16);
+        FloatBuffer points = FloatBuffer.allocate(16 * 4);
+        try (Writer keyframeWriter = new BufferedWriter(new FileWriter(new File(folder, "ARCore_keyframes.txt")), 1 << 16);
+             Writer segmentWriter = new BufferedWriter(new FileWriter(new File(folder, "ARCore_tracking_segments.txt")));
+             Writer memoryWriter = new BufferedWriter(new FileWriter(new File(folder, "ARCore_memory_events.txt")));
+             OutputStream observationStream = new BufferedOutputStream(new FileOutputStream(new File(folder, "ARCore_point_observations.bin")), 1 << 20)) {
+            observationStream.write(PointObservationLog.header());
+            long segmentStart = 1000000000L + 33333333L;
+            int segmentFrames = 0;
+            for (int i = 0; i < numberOfFrames; i++) {
+                long timestamp = 1000000000L + (i + 1) * 33333333L;
+                ids.clear();
+                points.clear();
+                for (int j = 0; j < 16; j++) {
+                    ids.put((i / 90) * 8 + j);
+                    points.put(random.nextFloat() * 4 - 2).put(random.nextFloat() * 3 - 1).put(random.nextFloat() * 4 - 2).put(random.nextFloat());
+                }
+                ids.flip();
+                points.flip();
+                observationLog.addFrame(timestamp, ids, points);
+                observationStream.write(observationLog.getBytes(), 0, observationLog.getLength());
+                observationLog.clear();
+                if (i % 30 == 0) {
+                    keyframeWriter.write((i / 30) + " " + timestamp + " \n");
+                }
+                segmentFrames++;
+                if ((segmentFrames == 10 * 60 * 30) || (i == numberOfFrames - 1)) {
+                    segmentWriter.write(new TrackingSegment(segmentStart, timestamp, "TRACKING", "NONE", 0, segmentFrames).toLine());
+                    segmentStart = timestamp + 33333333L;
+                    segmentFrames = 0;
+                }
+                if ((i % (3600 * 30) == 0) && (i > 0)) {
+                    memoryWriter.write(timestamp + " RUNNING_MODERATE MODERATE FLUSH IMAGE_BUFFERS \n");
+                }
+            }
+        }
+    }
+
+    private static void range(final File file, final long startTimestamp, final long endTimestamp) throws IOException {
+
+        // print the poses of the range in the logger's text format, and how little of the file was read
+        long startTime = System.nanoTime();
+        long numberOfPoses = 0;
+        CharFormatter line = new CharFormatter(192);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        try (PoseRangeReader reader = new PoseRangeReader(file, startTimestamp, endTimestamp)) {
+            while (reader.next()) {
+                line.reset().appendLong(reader.getTimestamp(), 1);
+                for (int j = 0; j < 7; j++) {
+                    line.append(' ').appendFixed(reader.getValue(j), 6);
+                }
+                line.append(" \n");
+                writer.write(line.getChars(), 0, line.length());
+                numberOfPoses++;
+            }
+            writer.flush();
+            System.err.println(String.format(Locale.US, "%d poses, %s from byte %d, read %.1f KB in %.1f ms",
+                    numberOfPoses, reader.isIndexed() ? "indexed" : "scanned", reader.getStartOffset(),
+                    reader.getBytesRead() / 1e3, (System.nanoTime() - startTime) / 1e6));
+        }
+    }
+
+    private static void octree(final String[] args) throws IOException {
+
+        // compression ratio against the text file, and encode and decode throughput in points per second
+        File file = new File(args[1]);
+        float leafSize = (args.length > 2) ? Float.parseFloat(args[2]) / 1000 : OCTREE_LEAF_SIZE;
+        int repeats = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+        if (repeats < 1) {
+            throw new IllegalArgumentException("octree: Repeats must be at least 1: " + repeats);
+        }
+        ParsedTable table = parse(file);
+        if (table.hasTimestamps()) {
+            throw new IOException("octree: Not a point cloud file: " + file);
+        }
+        int numberOfPoints = table.getNumberOfRows();
+        float[] points = SessionExporter.pointArray(table);
+        OctreePointCloudCodec codec = new OctreePointCloudCodec(leafSize, new DeflateBlockCodec(OCTREE_DEFLATE_LEVEL));
+        byte[] encoded = null;
+        float[] point = new float[OctreePointCloudCodec.FLOATS_PER_POINT];
+        for (int i = 0; i < repeats; i++) {
+            long startTime = System.nanoTime();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            codec.encode(points, numberOfPoints, outputStream);
+            encoded = outputStream.toByteArray();
+            double encodeSeconds = (System.nanoTime() - startTime) / 1e9;
+
+            startTime = System.nanoTime();
+            long numberOfDecoded = 0;
+            try (OctreePointCloudReader reader = new OctreePointCloudReader(new ByteArrayInputStream(encoded))) {
+                while (reader.next()) {
+                    reader.getPoint(point);
+                    numberOfDecoded++;
+                }
+            }
+            double decodeSeconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.println(String.format(Locale.US, "run %d: encode %.2f M points/s (%.1f MB/s of text), decode %.2f M points/s, %d points",
+                    i, numberOfPoints / encodeSeconds / 1e6, file.length() / encodeSeconds / 1e6,
+                    numberOfDecoded / decodeSeconds / 1e6, numberOfDecoded));
+        }
+
+        // size against the text file and against plain float32 records
+        System.out.println(String.format(Locale.US, "%d points, %d leaves in %d subtrees at %.3f mm",
+                numberOfPoints, codec.getNumberOfLeaves(), codec.getNumberOfSubtrees(), leafSize * 1000));
+        System.out.println(String.format(Locale.US, "text %.1f KB (%.1f bytes/point), float32 %.1f KB, octree %.1f KB (%.2f bytes/point), ratio %.1fx to text, %.1fx to float32",
+                file.length() / 1e3, (double) file.length() / Math.max(1, numberOfPoints), numberOfPoints * 24 / 1e3,
+                encoded.length / 1e3, (double) encoded.length / Math.max(1, numberOfPoints),
+                (double) file.length() / encoded.length, numberOfPoints * 24.0 / encoded.length));
+    }
+
+    static void writeSyntheticPoses(final File file, final int numberOfPoses) throws IOException {
+
+        // a 30 Hz random walk in the same text format as the logger
+        Random random = new Random(11);
+        try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 20)) {
+            writer.write("# Created by SessionProcessor bench \n");
+            long timestamp = 1000000000L;
+            float x = 0;
+            float y = 0;
+            float z = 0;
+            for (int i = 0; i < numberOfPoses; i++) {
+                timestamp += 33333333L;
+                x += (random.nextFloat() - 0.5f) * 0.01f;
+                y += (random.nextFloat() - 0.5f) * 0.01f;
+                z += (random.nextFloat() - 0.5f) * 0.01f;
+                writer.write(String.format(Locale.US, "%d %.6f %.6f %.6f %.6f %.6f %.6f %.6f \n",
+                        timestamp, 0.0f, 0.0f, 0.0f, 1.0f, x, y, z));
+            }
+        }
+    }
+}
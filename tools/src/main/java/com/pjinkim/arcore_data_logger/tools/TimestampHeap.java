@@ -0,0 +1,101 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+/**
+ * Binary min-heap of channel indices keyed by timestamp, in two primitive arrays, for merging a
+ * fixed number of time-ordered channels without boxing a key per record.
+ *
+ * Equal timestamps come out in channel order, so a merge is deterministic. The usual merge step
+ * is {@link #replaceTop(long)}: the channel on top moves on to its next record and sinks to its
+ * place in one pass.
+ */
+public class TimestampHeap {
+
+    // properties
+    private final long[] mTimestamps;
+    private final int[] mChannels;
+    private int mSize = 0;
+
+
+    // constructor
+    public TimestampHeap(final int capacity) {
+        mTimestamps = new long[capacity];
+        mChannels = new int[capacity];
+    }
+
+
+    // methods
+    public void add(final long timestamp, final int channel) {
+        if (mSize == mTimestamps.length) {
+            throw new IllegalStateException("add: The heap holds " + mSize + " channels already");
+        }
+
+        // sift the new entry up from the last leaf
+        int position = mSize++;
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!isBefore(timestamp, channel, mTimestamps[parent], mChannels[parent])) {
+                break;
+            }
+            mTimestamps[position] = mTimestamps[parent];
+            mChannels[position] = mChannels[parent];
+            position = parent;
+        }
+        mTimestamps[position] = timestamp;
+        mChannels[position] = channel;
+    }
+
+    public void replaceTop(final long timestamp) {
+        siftDown(timestamp, mChannels[0]);
+    }
+
+    public void removeTop() {
+        mSize--;
+        if (mSize > 0) {
+            siftDown(mTimestamps[mSize], mChannels[mSize]);
+        }
+    }
+
+    private void siftDown(final long timestamp, final int channel) {
+
+        // move the earlier child up until the entry fits
+        int position = 0;
+        int half = mSize >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if ((right < mSize) && isBefore(mTimestamps[right], mChannels[right], mTimestamps[child], mChannels[child])) {
+                child = right;
+            }
+            if (!isBefore(mTimestamps[child], mChannels[child], timestamp, channel)) {
+                break;
+            }
+            mTimestamps[position] = mTimestamps[child];
+            mChannels[position] = mChannels[child];
+            position = child;
+        }
+        mTimestamps[position] = timestamp;
+        mChannels[position] = channel;
+    }
+
+    private static boolean isBefore(final long timestamp, final int channel, final long otherTimestamp, final int otherChannel) {
+        return (timestamp < otherTimestamp) || ((timestamp == otherTimestamp) && (channel < otherChannel));
+    }
+
+
+    // getter and setter
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long peekTimestamp() {
+        return mTimestamps[0];
+    }
+
+    public int peekChannel() {
+        return mChannels[0];
+    }
+}
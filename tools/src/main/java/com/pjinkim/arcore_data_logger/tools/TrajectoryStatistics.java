@@ -0,0 +1,111 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Length, duration, rate and timing gaps of a parsed ARCore_sensor_pose.txt trajectory
+ * (timestamp in ns, then qx qy qz qw tx ty tz).
+ */
+public class TrajectoryStatistics {
+
+    // properties
+    public static final double GAP_FACTOR = 3.0;
+
+    private final int mNumberOfPoses;
+    private final double mDurationSeconds;
+    private final double mLengthMeters;
+    private final double mRateHz;
+    private final double mMedianIntervalSeconds;
+    private final int mNumberOfGaps;
+    private final double mLongestGapSeconds;
+    private final double mTotalGapSeconds;
+
+
+    // constructor
+    public TrajectoryStatistics(final ParsedTable poses) {
+        mNumberOfPoses = poses.getNumberOfRows();
+        if (mNumberOfPoses < 2) {
+            mDurationSeconds = 0;
+            mLengthMeters = 0;
+            mRateHz = 0;
+            mMedianIntervalSeconds = 0;
+            mNumberOfGaps = 0;
+            mLongestGapSeconds = 0;
+            mTotalGapSeconds = 0;
+            return;
+        }
+
+        // path length and frame intervals
+        double length = 0;
+        long[] intervals = new long[mNumberOfPoses - 1];
+        for (int i = 1; i < mNumberOfPoses; i++) {
+            double dx = poses.getValue(i, 4) - poses.getValue(i - 1, 4);
+            double dy = poses.getValue(i, 5) - poses.getValue(i - 1, 5);
+            double dz = poses.getValue(i, 6) - poses.getValue(i - 1, 6);
+            length += Math.sqrt((dx * dx) + (dy * dy) + (dz * dz));
+            intervals[i - 1] = poses.getTimestamp(i) - poses.getTimestamp(i - 1);
+        }
+        long duration = poses.getTimestamp(mNumberOfPoses - 1) - poses.getTimestamp(0);
+
+        // a gap is an interval longer than GAP_FACTOR times the median interval
+        long[] sortedIntervals = intervals.clone();
+        Arrays.parallelSort(sortedIntervals);
+        long median = sortedIntervals[sortedIntervals.length / 2];
+        int numberOfGaps = 0;
+        long longestGap = 0;
+        long totalGap = 0;
+        for (long interval : intervals) {
+            if (interval > GAP_FACTOR * median) {
+                numberOfGaps++;
+                totalGap += interval;
+                longestGap = Math.max(longestGap, interval);
+            }
+        }
+
+        mDurationSeconds = duration / 1e9;
+        mLengthMeters = length;
+        mRateHz = (duration > 0) ? ((mNumberOfPoses - 1) / mDurationSeconds) : 0;
+        mMedianIntervalSeconds = median / 1e9;
+        mNumberOfGaps = numberOfGaps;
+        mLongestGapSeconds = longestGap / 1e9;
+        mTotalGapSeconds = totalGap / 1e9;
+    }
+
+
+    // methods
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "poses: %d%nduration: %.3f s%nlength: %.3f m%nrate: %.3f Hz%nmedian interval: %.3f ms%n"
+                        + "gaps (> %.1fx median): %d, longest %.3f s, total %.3f s",
+                mNumberOfPoses, mDurationSeconds, mLengthMeters, mRateHz, mMedianIntervalSeconds * 1e3,
+                GAP_FACTOR, mNumberOfGaps, mLongestGapSeconds, mTotalGapSeconds);
+    }
+
+
+    // getter and setter
+    public int getNumberOfPoses() {
+        return mNumberOfPoses;
+    }
+
+    public double getDurationSeconds() {
+        return mDurationSeconds;
+    }
+
+    public double getLengthMeters() {
+        return mLengthMeters;
+    }
+
+    public double getRateHz() {
+        return mRateHz;
+    }
+
+    public int getNumberOfGaps() {
+        return mNumberOfGaps;
+    }
+
+    public double getLongestGapSeconds() {
+        return mLongestGapSeconds;
+    }
+}
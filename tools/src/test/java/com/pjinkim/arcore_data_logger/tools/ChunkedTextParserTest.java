@@ -0,0 +1,156 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import com.pjinkim.arcore_data_logger.BlockCompressedWriter;
+import com.pjinkim.arcore_data_logger.DeflateBlockCodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the chunked parser and the trajectory statistics.
+ */
+public class ChunkedTextParserTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File writePoses(final int numberOfPoses) throws Exception {
+        File file = mTemporaryFolder.newFile("ARCore_sensor_pose.txt");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("# Created at Thu Jan 01 00:00:00 UTC 1970 in Burnaby Canada \n");
+            for (int i = 0; i < numberOfPoses; i++) {
+
+                // a 100 ms gap every 1000 poses, 10 ms otherwise, moving 1 cm along x per pose
+                long timestamp = 1000000000L + i * 10000000L + (i / 1000) * 90000000L;
+                writer.write(String.format(Locale.US, "%d %.6f %.6f %.6f %.6f %.6f %.6f %.6f \n",
+                        timestamp, 0.1f, -0.2f, 0.3f, 0.9f, i * 0.01f, -1.5f, 2.25f));
+            }
+
+            // a line cut off by a crash
+            writer.write("123 0.1 0.2");
+        }
+        return file;
+    }
+
+    @Test
+    public void parse_matchesAcrossManyChunks() throws Exception {
+        File file = writePoses(5000);
+        assertEquals(8, ChunkedTextParser.detectColumns(file));
+
+        ParsedTable table = new ChunkedTextParser(7, true, 997).parse(file);
+        assertEquals(5000, table.getNumberOfRows());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(1000000000L + i * 10000000L + (i / 1000) * 90000000L, table.getTimestamp(i));
+            assertEquals(-0.2f, table.getValue(i, 1), 0.0f);
+            assertEquals(Float.parseFloat(String.format(Locale.US, "%.6f", i * 0.01f)), table.getValue(i, 4), 0.0f);
+            assertEquals(2.25f, table.getValue(i, 6), 0.0f);
+        }
+    }
+
+    @Test
+    public void parse_stopsAtTheFirstNulByte() throws Exception {
+        File file = writePoses(5000);
+
+        // zeros after the torn last line, as a power loss can leave them
+        try (OutputStream outputStream = new FileOutputStream(file, true)) {
+            outputStream.write(new byte[5000]);
+        }
+        assertEquals(8, ChunkedTextParser.detectColumns(file));
+        ParsedTable table = new ChunkedTextParser(7, true, 997).parse(file);
+        assertEquals(5000, table.getNumberOfRows());
+        assertEquals(1000000000L + 4999 * 10000000L + 4 * 90000000L, table.getTimestamp(4999));
+        assertEquals(5000, SessionProcessor.parse(file).getNumberOfRows());
+
+        // a file whose zero tail spans many chunks
+        File emptyFile = mTemporaryFolder.newFile("ARCore_point_cloud.txt");
+        try (OutputStream outputStream = new FileOutputStream(emptyFile)) {
+            outputStream.write("0.1 0.2 0.3 255 255 255 \n".getBytes(StandardCharsets.UTF_8));
+            outputStream.write(new byte[100000]);
+        }
+        assertEquals(1, new ChunkedTextParser(6, false, 997).parse(emptyFile).getNumberOfRows());
+    }
+
+    @Test
+    public void parse_dropsTheUnterminatedLastLine() throws Exception {
+        File file = mTemporaryFolder.newFile("ARCore_sensor_pose.txt");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("1000 0.1 -0.2 0.3 0.9 0.5 -1.5 2.25 \n");
+
+            // every column is there, but the last number lost its digits after 2.2
+            writer.write("2000 0.1 -0.2 0.3 0.9 0.6 -1.5 2.2");
+        }
+        for (int chunkSize : new int[]{7, 1 << 20}) {
+            ParsedTable table = new ChunkedTextParser(7, true, chunkSize).parse(file);
+            assertEquals(1, table.getNumberOfRows());
+            assertEquals(1000, table.getTimestamp(0));
+            assertEquals(2.25f, table.getValue(0, 6), 0.0f);
+        }
+    }
+
+    @Test
+    public void parse_readsBlockCompressedFiles() throws Exception {
+        File plainFile = writePoses(5000);
+        File compressedFile = new File(plainFile.getParentFile(), plainFile.getName() + BlockCompressedWriter.FILE_SUFFIX);
+        ExecutorService compressExecutor = Executors.newFixedThreadPool(2);
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+        try (Writer writer = new BlockCompressedWriter(compressedFile, new DeflateBlockCodec(DeflateBlockCodec.DEFAULT_LEVEL),
+                compressExecutor, ioExecutor, 8192, 4)) {
+            writer.write(new String(Files.readAllBytes(plainFile.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            compressExecutor.shutdown();
+            ioExecutor.shutdown();
+        }
+        assertEquals(8, ChunkedTextParser.detectColumns(compressedFile));
+
+        // the session file resolves to the compressed copy once the plain one is gone
+        assertTrue(plainFile.delete());
+        assertEquals(compressedFile, SessionProcessor.sessionFile(plainFile.getParentFile(), plainFile.getName()));
+
+        ParsedTable table = new ChunkedTextParser(7, true, 997).parse(compressedFile);
+        assertEquals(5000, table.getNumberOfRows());
+        for (int i = 0; i < 5000; i += 7) {
+            assertEquals(1000000000L + i * 10000000L + (i / 1000) * 90000000L, table.getTimestamp(i));
+            assertEquals(Float.parseFloat(String.format(Locale.US, "%.6f", i * 0.01f)), table.getValue(i, 4), 0.0f);
+        }
+    }
+
+    @Test
+    public void parseFloat_handlesSpecialValues() throws Exception {
+        File file = mTemporaryFolder.newFile("ARCore_point_cloud.txt");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("1.5e2 NaN -Infinity -0.000001 +3 255.00 \n");
+        }
+        ParsedTable table = new ChunkedTextParser(6, false).parse(file);
+        assertEquals(150.0f, table.getValue(0, 0), 0.0f);
+        assertTrue(Float.isNaN(table.getValue(0, 1)));
+        assertEquals(Float.NEGATIVE_INFINITY, table.getValue(0, 2), 0.0f);
+        assertEquals(-0.000001f, table.getValue(0, 3), 0.0f);
+        assertEquals(3.0f, table.getValue(0, 4), 0.0f);
+        assertEquals(255.0f, table.getValue(0, 5), 0.0f);
+    }
+
+    @Test
+    public void statistics_reportLengthRateAndGaps() throws Exception {
+        ParsedTable table = SessionProcessor.parse(writePoses(5000));
+        TrajectoryStatistics statistics = new TrajectoryStatistics(table);
+        assertEquals(5000, statistics.getNumberOfPoses());
+        assertEquals(49.99, statistics.getLengthMeters(), 1e-3);
+        assertEquals(4, statistics.getNumberOfGaps());
+        assertEquals(0.1, statistics.getLongestGapSeconds(), 1e-9);
+        assertEquals(49.99 + 4 * 0.09, statistics.getDurationSeconds(), 1e-9);
+    }
+}
@@ -0,0 +1,178 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import com.pjinkim.arcore_data_logger.LiveStreamSink;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the live stream sink against the reference receiver over loopback.
+ */
+public class LiveStreamReceiverTest {
+
+    private static ServerSocketChannel bindLoopback() throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+        return serverChannel;
+    }
+
+    private static void waitForConnection(final LiveStreamSink sink) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!sink.isConnected() && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(5);
+        }
+        assertTrue(sink.isConnected());
+    }
+
+    @Test
+    public void posesAndPointsArriveInOrder() throws Exception {
+        final int numberOfPoses = 500;
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Float> xs = new ArrayList<>();
+        final long[] pointTimestamp = {-1};
+        final int[] lastIds = new int[3];
+        final CountDownLatch posesDone = new CountDownLatch(1);
+        final CountDownLatch pointsDone = new CountDownLatch(1);
+
+        final LiveStreamReceiver receiver = new LiveStreamReceiver(new LiveStreamReceiver.Listener() {
+            @Override
+            public void onPoses(long[] batchTimestamps, float[] poses, int count) {
+                for (int i = 0; i < count; i++) {
+                    timestamps.add(batchTimestamps[i]);
+                    xs.add(poses[i * 7 + 4]);
+                }
+                if (timestamps.size() == numberOfPoses) {
+                    posesDone.countDown();
+                }
+            }
+
+            @Override
+            public void onPoints(long timestamp, int[] ids, float[] points, int count) {
+                if (count == 3) {
+                    pointTimestamp[0] = timestamp;
+                    System.arraycopy(ids, 0, lastIds, 0, 3);
+                    assertEquals(2.5f, points[4 * 2 + 2], 0.0f);
+                    pointsDone.countDown();
+                }
+            }
+        });
+
+        try (ServerSocketChannel serverChannel = bindLoopback()) {
+            Thread receiverThread = new Thread(() -> {
+                try (SocketChannel channel = serverChannel.accept()) {
+                    receiver.receive(channel);
+                } catch (IOException e) {
+                    // closed by the sink
+                }
+            });
+            receiverThread.start();
+
+            LiveStreamSink sink = new LiveStreamSink("127.0.0.1", serverChannel.socket().getLocalPort());
+            waitForConnection(sink);
+            for (int i = 0; i < numberOfPoses; i++) {
+                while (!sink.offerPose(1000L + i, 0, 0, 0, 1, i * 0.01f, 0, 0)) {
+                    Thread.sleep(1);
+                }
+            }
+            sink.offerPoints(2000L, IntBuffer.wrap(new int[]{7, 8, 9}),
+                    FloatBuffer.wrap(new float[]{0, 0, 0, 1, 1, 1, 1, 1, 0, 0, 2.5f, 1}));
+
+            assertTrue(posesDone.await(5, TimeUnit.SECONDS));
+            assertTrue(pointsDone.await(5, TimeUnit.SECONDS));
+            sink.close();
+            receiverThread.join(5000);
+        }
+
+        for (int i = 0; i < numberOfPoses; i++) {
+            assertEquals(1000L + i, (long) timestamps.get(i));
+            assertEquals(i * 0.01f, xs.get(i), 0.0f);
+        }
+        assertEquals(2000L, pointTimestamp[0]);
+        assertArrayEquals(new int[]{7, 8, 9}, lastIds);
+    }
+
+    @Test
+    public void slowConsumerNeverBlocksTheProducer() throws Exception {
+        try (ServerSocketChannel serverChannel = bindLoopback()) {
+
+            // a stand-in workstation that accepts the connection but never reads
+            LiveStreamSink sink = new LiveStreamSink("127.0.0.1", serverChannel.socket().getLocalPort());
+            SocketChannel stalled = serverChannel.accept();
+            waitForConnection(sink);
+
+            int numberOfPoints = 20000;
+            IntBuffer ids = IntBuffer.allocate(numberOfPoints);
+            FloatBuffer points = FloatBuffer.allocate(numberOfPoints * 4);
+            long startTime = System.nanoTime();
+            for (int frame = 0; frame < 2000; frame++) {
+                for (int i = 0; i < 10; i++) {
+                    sink.offerPose(frame * 10L + i, 0, 0, 0, 1, frame, 0, 0);
+                }
+                sink.offerPoints(frame, ids, points);
+            }
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+
+            // the socket buffers filled long ago, so the excess was dropped or coalesced
+            assertTrue("producer stalled for " + seconds + " s", seconds < 5.0);
+            assertTrue(sink.getDroppedPoses() > 0);
+            assertTrue(sink.getCoalescedPointBatches() > 0);
+            sink.close();
+            stalled.close();
+        }
+    }
+
+    @Test
+    public void unresolvableHostOnlyKeepsTheSinkDisconnected() throws Exception {
+
+        // the '.invalid' domain never resolves, and the lookup must not happen in the constructor
+        long startTime = System.nanoTime();
+        LiveStreamSink sink = new LiveStreamSink("receiver.invalid", 5555);
+        assertTrue((System.nanoTime() - startTime) / 1e6 < 100);
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((sink.getUnresolvedAttempts() == 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertTrue(sink.getUnresolvedAttempts() > 0);
+        for (int i = 0; i < 2000; i++) {
+            sink.offerPose(i, 0, 0, 0, 1, 0, 0, 0);
+        }
+        assertFalse(sink.isConnected());
+        assertFalse(sink.isDisabled());
+        assertTrue(sink.getDroppedPoses() > 0);
+        sink.close();
+    }
+
+    @Test
+    public void sinkReconnectsAfterTheReceiverRestarts() throws Exception {
+        try (ServerSocketChannel serverChannel = bindLoopback()) {
+            LiveStreamSink sink = new LiveStreamSink("127.0.0.1", serverChannel.socket().getLocalPort());
+            serverChannel.accept().close();
+
+            // the first write after the close fails and the sink dials again
+            SocketChannel second = null;
+            long deadline = System.currentTimeMillis() + 5000;
+            serverChannel.configureBlocking(false);
+            while ((second == null) && (System.currentTimeMillis() < deadline)) {
+                sink.offerPose(1L, 0, 0, 0, 1, 0, 0, 0);
+                second = serverChannel.accept();
+                Thread.sleep(10);
+            }
+            assertNotNull(second);
+            second.close();
+            sink.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import com.pjinkim.arcore_data_logger.BlockCompressedWriter;
+import com.pjinkim.arcore_data_logger.DeflateBlockCodec;
+import com.pjinkim.arcore_data_logger.SparseTimeIndex;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the indexed time range reader over text, block compressed and binary pose files.
+ */
+public class PoseRangeReaderTest {
+
+    private static final int NUMBER_OF_POSES = 20000;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private static long timestamp(final int i) {
+        return 1000000000L + i * 33333333L;
+    }
+
+    private File writePoses(final String name, final boolean isCompressed) throws Exception {
+
+        // pose lines and their index, offset by offset as the logger writes them
+        File file = new File(mTemporaryFolder.getRoot(), name);
+        ExecutorService compressExecutor = Executors.newFixedThreadPool(2);
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+        SparseTimeIndex index = new SparseTimeIndex();
+        try (Writer writer = isCompressed ? new BlockCompressedWriter(file, new DeflateBlockCodec(DeflateBlockCodec.DEFAULT_LEVEL),
+                compressExecutor, ioExecutor, 16 * 1024, 4) : new FileWriter(file);
+             OutputStream indexStream = new FileOutputStream(SparseTimeIndex.indexFileFor(file))) {
+            String header = "# Created at Thu Jan 01 00:00:00 UTC 1970 in Burnaby Canada \n";
+            writer.write(header);
+            indexStream.write(SparseTimeIndex.header());
+            long offset = header.length();
+            for (int i = 0; i < NUMBER_OF_POSES; i++) {
+                String line = String.format(Locale.US, "%d %.6f %.6f %.6f %.6f %.6f %.6f %.6f \n",
+                        timestamp(i), 0.1f, -0.2f, 0.3f, 0.9f, i * 0.01f, -1.5f, 2.25f);
+                if (index.addRecord(timestamp(i), offset)) {
+                    indexStream.write(index.getBytes(), 0, index.getLength());
+                    index.clear();
+                }
+                writer.write(line);
+                offset += line.length();
+            }
+        } finally {
+            compressExecutor.shutdown();
+            ioExecutor.shutdown();
+        }
+        return file;
+    }
+
+    private static void assertRange(final File file, final int first, final int last, final boolean isIndexed) throws Exception {
+        try (PoseRangeReader reader = new PoseRangeReader(file, timestamp(first), timestamp(last))) {
+            for (int i = first; i <= last; i++) {
+                assertTrue(reader.next());
+                assertEquals(timestamp(i), reader.getTimestamp());
+                assertEquals(i * 0.01f, reader.getValue(4), 1e-6f * i);
+                assertEquals(2.25f, reader.getValue(6), 0.0f);
+            }
+            assertFalse(reader.next());
+            assertEquals(isIndexed, reader.isIndexed());
+
+            // an indexed range reads at most one index interval beyond the poses it returns
+            if (isIndexed) {
+                assertTrue("read " + reader.getBytesRead(), reader.getBytesRead() < (last - first + 2 + SparseTimeIndex.DEFAULT_RECORD_INTERVAL) * 80);
+            }
+        }
+    }
+
+    @Test
+    public void textFile_readsOnlyTheRange() throws Exception {
+        File file = writePoses("ARCore_sensor_pose.txt", false);
+        assertRange(file, 0, 10, true);
+        assertRange(file, 15000, 15100, true);
+        assertRange(file, NUMBER_OF_POSES - 3, NUMBER_OF_POSES - 1, true);
+
+        // without the index the same range is found by a full scan
+        assertTrue(SparseTimeIndex.indexFileFor(file).delete());
+        assertRange(file, 15000, 15100, false);
+    }
+
+    @Test
+    public void compressedFile_readsOnlyTheRange() throws Exception {
+        File file = writePoses("ARCore_sensor_pose.txt.blk", true);
+        assertEquals("ARCore_sensor_pose_index.bin", SparseTimeIndex.indexFileFor(file).getName());
+        assertRange(file, 3, 300, true);
+        assertRange(file, 17777, 17800, true);
+    }
+
+    @Test
+    public void binaryFile_readsOnlyTheRange() throws Exception {
+        File file = new File(mTemporaryFolder.getRoot(), "pose.bin");
+        SessionExporter.writeBinaryPoses(SessionProcessor.parse(writePoses("ARCore_sensor_pose.txt", false)), file);
+        assertTrue(SparseTimeIndex.indexFileFor(file).isFile());
+        assertRange(file, 12345, 12400, true);
+        assertRange(file, 0, 0, true);
+    }
+}
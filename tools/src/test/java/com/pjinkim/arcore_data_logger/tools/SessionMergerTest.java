@@ -0,0 +1,126 @@
+package com.pjinkim.arcore_data_logger.tools;
+
+import com.pjinkim.arcore_data_logger.BlockCompressedWriter;
+import com.pjinkim.arcore_data_logger.DeflateBlockCodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the timestamp heap and the streaming merge of session channels.
+ */
+public class SessionMergerTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private void write(final String name, final String text) throws Exception {
+        try (Writer writer = new FileWriter(new File(mTemporaryFolder.getRoot(), name))) {
+            writer.write(text);
+        }
+    }
+
+    @Test
+    public void timestampHeap_popsInTimeThenChannelOrder() {
+        Random random = new Random(17);
+        TimestampHeap heap = new TimestampHeap(64);
+        long[] keys = new long[64];
+        for (int i = 0; i < keys.length; i++) {
+            long timestamp = random.nextInt(20);
+            heap.add(timestamp, i);
+            keys[i] = (timestamp << 8) | i;
+        }
+        Arrays.sort(keys);
+        for (long key : keys) {
+            assertEquals(key >> 8, heap.peekTimestamp());
+            assertEquals(key & 0xFF, heap.peekChannel());
+            heap.removeTop();
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void merge_interleavesTheChannelsByTimestamp() throws Exception {
+        write("ARCore_sensor_pose.txt", "# Created at Thu Jan 01 00:00:00 UTC 1970 in Burnaby Canada \n"
+                + "100 0.0 0.0 0.0 1.0 0.1 0.2 0.3 \n"
+                + "200 0.0 0.0 0.0 1.0 0.4 0.5 0.6 \n"
+                + "300 0.0 0.0 0.0 1.0 0.7 0.8 0.9 \n"
+                + "40");
+        write("ARCore_keyframes.txt", "0 100 \n1 250 \n");
+        write("ARCore_memory_events.txt", "150 RUNNING_LOW LOW SYNC \nbroken line \n160 RUNNING_LOW\u0000\u0000\n170 ");
+
+        StringWriter writer = new StringWriter();
+        try (SessionMerger merger = SessionMerger.open(mTemporaryFolder.getRoot())) {
+            assertEquals(3, merger.getNumberOfChannels());
+            assertEquals(6, merger.merge(writer));
+            assertEquals(3, merger.getNumberOfRecords(0));
+            assertEquals(0, merger.getNumberOfOutOfOrder());
+
+            // the torn last pose, the line without a timestamp and the line cut off by zeros are skipped
+            assertEquals(1, ((SessionMerger.TextChannel) merger.getChannel(0)).getNumberOfSkipped());
+            assertEquals(2, ((SessionMerger.TextChannel) merger.getChannel(2)).getNumberOfSkipped());
+        }
+        assertEquals("100 ARCore_sensor_pose 0.0 0.0 0.0 1.0 0.1 0.2 0.3 \n"
+                + "100 ARCore_keyframes 0 \n"
+                + "150 ARCore_memory_events RUNNING_LOW LOW SYNC \n"
+                + "200 ARCore_sensor_pose 0.0 0.0 0.0 1.0 0.4 0.5 0.6 \n"
+                + "250 ARCore_keyframes 1 \n"
+                + "300 ARCore_sensor_pose 0.0 0.0 0.0 1.0 0.7 0.8 0.9 \n", writer.toString());
+    }
+
+    @Test
+    public void merge_readsCompressedAndBinaryChannelsOfASyntheticSession() throws Exception {
+        File folder = mTemporaryFolder.getRoot();
+        SessionProcessor.writeSyntheticSession(folder, 0.25);
+
+        // the poses recorded with compression instead
+        File poseFile = new File(folder, SessionProcessor.POSE_FILE_NAME);
+        ExecutorService compressExecutor = Executors.newFixedThreadPool(2);
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+        try (BufferedReader reader = new BufferedReader(new FileReader(poseFile));
+             Writer writer = new BlockCompressedWriter(new File(folder, SessionProcessor.POSE_FILE_NAME + BlockCompressedWriter.FILE_SUFFIX),
+                     new DeflateBlockCodec(DeflateBlockCodec.DEFAULT_LEVEL), compressExecutor, ioExecutor, 16 * 1024, 4)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(line + "\n");
+            }
+        } finally {
+            compressExecutor.shutdown();
+            ioExecutor.shutdown();
+        }
+        assertTrue(poseFile.delete());
+
+        // every record once, never going back in time
+        int numberOfFrames = (int) (0.25 * 3600 * 30);
+        long numberOfRecords = 0;
+        long previousTimestamp = Long.MIN_VALUE;
+        try (SessionMerger merger = SessionMerger.open(folder)) {
+            while (merger.next()) {
+                assertTrue(merger.getTimestamp() >= previousTimestamp);
+                previousTimestamp = merger.getTimestamp();
+                numberOfRecords++;
+            }
+            assertEquals(5, merger.getNumberOfChannels());
+            assertEquals(numberOfFrames, merger.getNumberOfRecords(0));
+            assertEquals(numberOfFrames / 30, merger.getNumberOfRecords(1));
+            assertEquals(2, merger.getNumberOfRecords(2));
+            assertEquals(numberOfFrames, merger.getNumberOfRecords(4));
+            assertEquals(0, merger.getNumberOfOutOfOrder());
+        }
+        assertEquals(2L * numberOfFrames + numberOfFrames / 30 + 2, numberOfRecords);
+    }
+}